@@ -29,6 +29,7 @@ import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -38,8 +39,8 @@ import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
 import marytts.features.FeatureDefinition;
+import marytts.features.FeatureMatrix;
 import marytts.features.FeatureRegistry;
-import marytts.features.FeatureVector;
 import marytts.features.TargetFeatureComputer;
 import marytts.modules.TargetFeatureLister;
 import marytts.server.Mary;
@@ -468,14 +469,8 @@ public class FeatureMaker {
 			String silenceSymbol = featureComputer.getPauseSymbol();
 			int numFeatures = featureComputer.getByteValuedFeatureProcessors().length;
 			List<Target> targets = TargetFeatureLister.createTargetsWithPauses(segmentsAndBoundaries, silenceSymbol);
-			byte[] featureData = new byte[targets.size() * numFeatures];
-			int off = 0;
-			for (Target target : targets) {
-				FeatureVector features = featureComputer.computeFeatureVector(target);
-				System.arraycopy(features.getByteValuedDiscreteFeatures(), 0, featureData, off, numFeatures);
-				off += numFeatures;
-			}
-			return featureData;
+			FeatureMatrix features = featureComputer.computeFeatureMatrix(targets, null);
+			return Arrays.copyOf(features.getByteFeatures(), targets.size() * numFeatures);
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -35,6 +35,20 @@ public class TestableTimelineReader extends TimelineReader {
 		super(fileName, tryMemoryMapping);
 	}
 
+	/**
+	 * Memory-map the timeline in segments of at most maxSegmentSize bytes.
+	 */
+	public TestableTimelineReader(String fileName, int maxSegmentSize) throws Exception {
+		super();
+		this.maxSegmentSize = maxSegmentSize;
+		load(fileName, true);
+	}
+
+	@Override
+	public int getNumMappedSegments() {
+		return super.getNumMappedSegments();
+	}
+
 	@Override
 	public Pair<ByteBuffer, Long> getByteBufferAtTime(long targetTimeInSamples) throws IOException, BufferUnderflowException {
 		return super.getByteBufferAtTime(targetTimeInSamples);
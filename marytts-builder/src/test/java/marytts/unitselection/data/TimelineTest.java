@@ -460,6 +460,78 @@ public class TimelineTest {
 		Assert.assertEquals(origDatagrams[1].getLength(), ds[0].getLength());
 	}
 
+	@Test
+	public void seekTableFindsSameDatagrams() throws Exception {
+		// setup custom fixture for this method
+		TestableTimelineReader timeline = new TestableTimelineReader(tlFileName, true);
+		timeline.buildSeekTable();
+		// exercise and verify
+		for (int i = 0; i < NUMDATAGRAMS; i++) {
+			long onTime = getTimeOfIndex(i);
+			assertEquals(origDatagrams[i], timeline.getDatagram(onTime));
+			assertEquals(origDatagrams[i], timeline.getDatagram(onTime + origDatagrams[i].getDuration() - 1));
+			Assert.assertEquals(onTime, timeline.getByteBufferAtTime(onTime + 1).getSecond().longValue());
+		}
+		Datagram[] all = timeline.getDatagrams(0, getTimeOfIndex(NUMDATAGRAMS));
+		Assert.assertEquals(NUMDATAGRAMS, all.length);
+		Assert.assertEquals(tlr.getTotalDuration(), timeline.getTotalDuration());
+		try {
+			timeline.getDatagram(timeline.getTotalDuration());
+			Assert.fail("Should have thrown a BufferUnderflowException");
+		} catch (BufferUnderflowException e) {
+			// OK, expected
+		}
+	}
+
+	@Test
+	public void canReadAcrossMappedSegments() throws Exception {
+		// setup custom fixture for this method: regular datagrams, mapped in segments of about three index intervals
+		String segmentedFileName = "timelineSegmentTest.bin";
+		Datagram[] datagrams = new Datagram[200];
+		for (int i = 0; i < datagrams.length; i++) {
+			byte[] buff = new byte[100];
+			for (int l = 0; l < buff.length; l++) {
+				buff[l] = (byte) (i + l);
+			}
+			datagrams[i] = new Datagram(10, buff);
+		}
+		TimelineWriter tlw = new TimelineWriter(segmentedFileName, hdrContents, sampleRate, 0.05d);
+		tlw.feed(datagrams, sampleRate);
+		tlw.close();
+		try {
+			TestableTimelineReader timeline = new TestableTimelineReader(segmentedFileName, 2000);
+			Assert.assertTrue(timeline.getNumMappedSegments() > 1);
+			// exercise
+			Datagram[] all = timeline.getDatagrams(0, 10 * datagrams.length);
+			// verify
+			Assert.assertEquals(datagrams.length, all.length);
+			for (int i = 0; i < datagrams.length; i++) {
+				assertEquals("Datagram [" + i + "] is out of sync.", datagrams[i], all[i]);
+				assertEquals(datagrams[i], timeline.getDatagram(10 * i + 5));
+			}
+			Assert.assertEquals(10 * datagrams.length, timeline.getTotalDuration());
+			// prefetching with the index only:
+			long[] prefetchTimes = new long[] { 1500, 0, 10 * datagrams.length - 1, 10 * datagrams.length + 500 };
+			long[] prefetchSpans = new long[] { 200, 10 * datagrams.length, 100, 10 };
+			timeline.setPrefetch(true);
+			timeline.prefetch(prefetchTimes, prefetchSpans);
+			for (int i = 0; i < datagrams.length; i++) {
+				assertEquals(datagrams[i], timeline.getDatagram(10 * i + 5));
+			}
+			// the same through the seek table, after prefetching:
+			timeline.buildSeekTable();
+			timeline.prefetch(prefetchTimes, prefetchSpans);
+			all = timeline.getDatagrams(0, 10 * datagrams.length);
+			Assert.assertEquals(datagrams.length, all.length);
+			for (int i = 0; i < datagrams.length; i++) {
+				assertEquals("Datagram [" + i + "] is out of sync.", datagrams[i], all[i]);
+				assertEquals(datagrams[i], timeline.getDatagram(10 * i + 5));
+			}
+		} finally {
+			new File(segmentedFileName).delete();
+		}
+	}
+
 	@AfterClass
 	public static void tearDown() throws IOException {
 		/* Delete the test file */
@@ -117,6 +117,47 @@ public class Preprocess extends InternalModule {
 	private static final Pattern currencySymbPattern;
 	private static final Pattern numberSPattern;
 
+	// literal patterns used during expansion
+	private static final Pattern commaNumberPattern;
+	private static final Pattern fourDigitsPattern;
+	private static final Pattern digitsPattern;
+	private static final Pattern ordinalSuffixPattern;
+	private static final Pattern amPmPattern;
+	private static final Pattern dashUnderscorePattern;
+	private static final Pattern punctuationBoundaryPattern;
+	private static final Pattern whitespacePattern;
+	private static final Pattern arrayPunctPattern;
+	private static final Pattern commaPattern;
+	private static final Pattern dotPattern;
+	private static final Pattern apostrophePattern;
+	private static final Pattern spacePattern;
+	private static final Pattern urlSeparatorPattern;
+	private static final Pattern wordNumberBoundaryPattern;
+	private static final Pattern lowerCasePattern;
+	private static final Pattern upperCasePattern;
+	private static final Pattern digitsOrEmptyPattern;
+	private static final Pattern endsWithDigitPattern;
+	private static final Pattern zeroDigitPattern;
+
+	/**
+	 * The kinds of token that {@link #expand(Document)} handles, in order of precedence: a token is expanded according to the
+	 * first class whose pattern matches the whole token text and whose condition holds.
+	 */
+	private enum TokenClass {
+		ORDINAL, SINGLE_A, DATE, NUMBER_S, YEAR_BCAD, YEAR, WORD_NUMBER, REAL_NUMBER, CONTRACTION, ACRONYM, ABBREVIATION, TIME,
+		DURATION, HASHTAG, URL, URL_DOT, SYMBOL, RANGE, DASHES, CONSONANTS, PUNCTUATION_SPLIT, QUOTE, PUNCTUATION,
+		/** none of the above */
+		OTHER
+	}
+
+	private static final TokenClass[] tokenClasses;
+	// for each class, the pattern matching the whole token text
+	private static final Pattern[] tokenClassPatterns;
+	// tokenClassifiers[k] combines the patterns of classes k, k+1, ... into one alternation
+	private static final Pattern[] tokenClassifiers;
+	// tokenClassGroups[k][c] is the group of tokenClassifiers[k] that wraps the pattern of class c
+	private static final int[][] tokenClassGroups;
+
 	// Regex initialization
 	static {
 		moneyPattern = Pattern.compile("(\\d+)(\\.\\d+)?");
@@ -142,6 +183,79 @@ public class Preprocess extends InternalModule {
 		hashtagPattern = Pattern.compile("(#)(\\w+)");
 		URLPattern = Pattern
 				.compile("(https?:\\/\\/)?((www\\.)?([-a-zA-Z0-9@:%._\\\\+~#=]{2,256}\\.[a-z]{2,6}\\b([-a-zA-Z0-9@:%_\\\\+.~#?&\\/=]*)))");
+
+		commaNumberPattern = Pattern.compile("[\\$|£|€]?\\d+,[\\d,]+");
+		fourDigitsPattern = Pattern.compile("\\d{4}");
+		digitsPattern = Pattern.compile("\\d+");
+		ordinalSuffixPattern = Pattern.compile("st|nd|rd|th", Pattern.CASE_INSENSITIVE);
+		amPmPattern = Pattern.compile("a\\.m\\.|AM|PM|am|pm|p\\.m\\.");
+		dashUnderscorePattern = Pattern.compile("[-_]");
+		punctuationBoundaryPattern = Pattern.compile("((?<=\\p{Punct})|(?=\\p{Punct}))");
+		whitespacePattern = Pattern.compile("\\s+");
+		arrayPunctPattern = Pattern.compile("[,\\]\\[]");
+		commaPattern = Pattern.compile(",");
+		dotPattern = Pattern.compile("\\.");
+		apostrophePattern = Pattern.compile("'");
+		spacePattern = Pattern.compile("\\s");
+		urlSeparatorPattern = Pattern.compile("((?<=[\\.@\\/])|(?=[\\.@\\/]))");
+		wordNumberBoundaryPattern = Pattern.compile("(?<=\\D)(?=\\d)|(?<=\\d)(?=\\D)");
+		lowerCasePattern = Pattern.compile("[a-z]+");
+		upperCasePattern = Pattern.compile("[A-Z]+");
+		digitsOrEmptyPattern = Pattern.compile("^$|[0-9]+");
+		endsWithDigitPattern = Pattern.compile(".+[0-9]");
+		zeroDigitPattern = Pattern.compile("0\\d");
+
+		tokenClasses = TokenClass.values();
+		tokenClassPatterns = new Pattern[tokenClasses.length];
+		tokenClassPatterns[TokenClass.ORDINAL.ordinal()] = ordinalPattern;
+		tokenClassPatterns[TokenClass.SINGLE_A.ordinal()] = Pattern.compile("[aA]");
+		tokenClassPatterns[TokenClass.DATE.ordinal()] = datePattern;
+		tokenClassPatterns[TokenClass.NUMBER_S.ordinal()] = numberSPattern;
+		tokenClassPatterns[TokenClass.YEAR_BCAD.ordinal()] = yearPattern;
+		tokenClassPatterns[TokenClass.YEAR.ordinal()] = fourDigitsPattern;
+		tokenClassPatterns[TokenClass.WORD_NUMBER.ordinal()] = numberWordPattern;
+		tokenClassPatterns[TokenClass.REAL_NUMBER.ordinal()] = realNumPattern;
+		tokenClassPatterns[TokenClass.CONTRACTION.ordinal()] = contractPattern;
+		tokenClassPatterns[TokenClass.ACRONYM.ordinal()] = acronymPattern;
+		tokenClassPatterns[TokenClass.ABBREVIATION.ordinal()] = abbrevPattern;
+		tokenClassPatterns[TokenClass.TIME.ordinal()] = timePattern;
+		tokenClassPatterns[TokenClass.DURATION.ordinal()] = durationPattern;
+		tokenClassPatterns[TokenClass.HASHTAG.ordinal()] = hashtagPattern;
+		tokenClassPatterns[TokenClass.URL.ordinal()] = URLPattern;
+		tokenClassPatterns[TokenClass.URL_DOT.ordinal()] = dotPattern;
+		tokenClassPatterns[TokenClass.SYMBOL.ordinal()] = symbolsPattern;
+		tokenClassPatterns[TokenClass.RANGE.ordinal()] = rangePattern;
+		tokenClassPatterns[TokenClass.DASHES.ordinal()] = Pattern.compile(".*[-_].*", Pattern.DOTALL);
+		tokenClassPatterns[TokenClass.CONSONANTS.ordinal()] = consonantPattern;
+		// contains punctuation and is longer than one character
+		tokenClassPatterns[TokenClass.PUNCTUATION_SPLIT.ordinal()] = Pattern.compile("(?=.*\\p{Punct}).{2,}", Pattern.DOTALL);
+		tokenClassPatterns[TokenClass.QUOTE.ordinal()] = Pattern.compile("\"");
+		tokenClassPatterns[TokenClass.PUNCTUATION.ordinal()] = punctuationPattern;
+		tokenClassPatterns[TokenClass.OTHER.ordinal()] = Pattern.compile(".*", Pattern.DOTALL);
+
+		tokenClassifiers = new Pattern[tokenClasses.length];
+		tokenClassGroups = new int[tokenClasses.length][tokenClasses.length];
+		for (int from = 0; from < tokenClasses.length; from++) {
+			StringBuilder regex = new StringBuilder();
+			int group = 1;
+			for (int c = from; c < tokenClasses.length; c++) {
+				Pattern pattern = tokenClassPatterns[c];
+				if (c > from) {
+					regex.append('|');
+				}
+				regex.append("((?");
+				if ((pattern.flags() & Pattern.CASE_INSENSITIVE) != 0) {
+					regex.append('i');
+				}
+				if ((pattern.flags() & Pattern.DOTALL) != 0) {
+					regex.append('s');
+				}
+				regex.append(':').append(pattern.pattern()).append("))");
+				tokenClassGroups[from][c] = group;
+				group += pattern.matcher("").groupCount() + 1;
+			}
+			tokenClassifiers[from] = Pattern.compile(regex.toString());
+		}
 	}
 
 	// HashMap initialization
@@ -236,72 +350,80 @@ public class Preprocess extends InternalModule {
 
 			// save the original token text
 			String origText = MaryDomUtils.tokenText(t);
+			String text = origText;
 
 			// remove commas
-			if (MaryDomUtils.tokenText(t).matches("[\\$|£|€]?\\d+,[\\d,]+")) {
-				MaryDomUtils.setTokenText(t, MaryDomUtils.tokenText(t).replaceAll(",", ""));
+			if (commaNumberPattern.matcher(text).matches()) {
+				text = commaPattern.matcher(text).replaceAll("");
+				MaryDomUtils.setTokenText(t, text);
 				// presume that a 4 digit number which had commas is not a year
-				if (MaryDomUtils.tokenText(t).matches("\\d{4}")) {
+				if (fourDigitsPattern.matcher(text).matches()) {
 					isYear = false;
 				}
 			}
 			// isYear extra check
-			if (MaryDomUtils.tokenText(t).matches("\\d{4}") && !whichCurrency.equals("")) {
+			if (fourDigitsPattern.matcher(text).matches() && !whichCurrency.equals("")) {
 				isYear = false;
 			}
 
 			// check if currency
-			if (MaryDomUtils.tokenText(t).matches(currencySymbPattern.pattern())) {
-				whichCurrency = MaryDomUtils.tokenText(t);
+			if (currencySymbPattern.matcher(text).matches()) {
+				whichCurrency = text;
 			}
 
 			/*
 			 * ACTUAL PROCESSING
 			 */
 
-			// ordinal
-			if (MaryDomUtils.tokenText(t).matches("(?i)" + ordinalPattern.pattern())) {
-				String matched = MaryDomUtils.tokenText(t).split("(?i)st|nd|rd|th")[0];
+			switch (classify(text, isYear, isURL)) {
+			case ORDINAL:
+				String matched = ordinalSuffixPattern.split(text)[0];
 				MaryDomUtils.setTokenText(t, expandOrdinal(Double.parseDouble(matched)));
-				// single a or A character
-			} else if (MaryDomUtils.tokenText(t).matches("[aA]")) {
+				break;
+			// single a or A character
+			case SINGLE_A:
 				Element checkNextNode = MaryDomUtils.getNextSiblingElement((Element) t);
-				if (checkNextNode == null || MaryDomUtils.tokenText(checkNextNode).matches(myPunctPattern.pattern())
+				if (checkNextNode == null || myPunctPattern.matcher(MaryDomUtils.tokenText(checkNextNode)).matches()
 						|| MaryDomUtils.tokenText(checkNextNode).length() == 1) {
 					MaryDomUtils.setTokenText(t, "_a");
 				}
-				// date
-			} else if (MaryDomUtils.tokenText(t).matches(datePattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandDate(MaryDomUtils.tokenText(t)));
-				// number followed by s
-			} else if (MaryDomUtils.tokenText(t).matches(numberSPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandNumberS(MaryDomUtils.tokenText(t)));
-				// year with bc or ad
-			} else if (MaryDomUtils.tokenText(t).matches("(?i)" + yearPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandYearBCAD(MaryDomUtils.tokenText(t)));
-				// year as just 4 digits &rarr; this should always be checked BEFORE real number
-			} else if (MaryDomUtils.tokenText(t).matches("\\d{4}") && isYear == true) {
-				MaryDomUtils.setTokenText(t, expandYear(Double.parseDouble(MaryDomUtils.tokenText(t))));
-				// wordAndNumber &rarr; must come AFTER year
-			} else if (MaryDomUtils.tokenText(t).matches(numberWordPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandWordNumber(MaryDomUtils.tokenText(t)));
-				// real number & currency
-			} else if (MaryDomUtils.tokenText(t).matches(realNumPattern.pattern())) {
+				break;
+			case DATE:
+				MaryDomUtils.setTokenText(t, expandDate(text));
+				break;
+			// number followed by s
+			case NUMBER_S:
+				MaryDomUtils.setTokenText(t, expandNumberS(text));
+				break;
+			// year with bc or ad
+			case YEAR_BCAD:
+				MaryDomUtils.setTokenText(t, expandYearBCAD(text));
+				break;
+			// year as just 4 digits &rarr; this is always checked BEFORE real number
+			case YEAR:
+				MaryDomUtils.setTokenText(t, expandYear(Double.parseDouble(text)));
+				break;
+			// wordAndNumber &rarr; comes AFTER year
+			case WORD_NUMBER:
+				MaryDomUtils.setTokenText(t, expandWordNumber(text));
+				break;
+			// real number & currency
+			case REAL_NUMBER:
 				if (!whichCurrency.equals("")) {
-					MaryDomUtils.setTokenText(t, expandMoney(MaryDomUtils.tokenText(t), whichCurrency));
+					MaryDomUtils.setTokenText(t, expandMoney(text, whichCurrency));
 					whichCurrency = "";
 				} else {
-					MaryDomUtils.setTokenText(t, expandRealNumber(MaryDomUtils.tokenText(t)));
+					MaryDomUtils.setTokenText(t, expandRealNumber(text));
 				}
-				// contractions
-			} else if (MaryDomUtils.tokenText(t).matches(contractPattern.pattern())) {
+				break;
+			case CONTRACTION:
 				// first check lexicon
-				if (MaryRuntimeUtils.checkLexicon("en_US", MaryDomUtils.tokenText(t)).length == 0) {
-					Matcher contractionMatch = contractPattern.matcher(MaryDomUtils.tokenText(t));
+				if (MaryRuntimeUtils.checkLexicon("en_US", text).length == 0) {
+					Matcher contractionMatch = contractPattern.matcher(text);
 					contractionMatch.find();
 					// if no contraction we allow g2p rules to handle
 					if (!contractions.containsKey(contractionMatch.group(1))) {
-						MaryDomUtils.setTokenText(t, MaryDomUtils.tokenText(t).replaceAll("'", ""));
+						MaryDomUtils.setTokenText(t, apostrophePattern.matcher(text).replaceAll(""));
 					}
 
 					// FIXME: we do not want to have to phonological word => for now we do not split !
@@ -312,60 +434,62 @@ public class Preprocess extends InternalModule {
 					// MaryDomUtils.setTokenText(t, splitContraction(MaryDomUtils.tokenText(t)));
 					// }
 				}
-				// acronym
-			} else if (MaryDomUtils.tokenText(t).matches(acronymPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandAcronym(MaryDomUtils.tokenText(t)));
-				// abbreviation
-			} else if ((MaryDomUtils.tokenText(t).matches(abbrevPattern.pattern()) || this.abbrevMap.containsKey(MaryDomUtils
-					.tokenText(t).toLowerCase())) && !isURL) {
+				break;
+			case ACRONYM:
+				MaryDomUtils.setTokenText(t, expandAcronym(text));
+				break;
+			case ABBREVIATION:
 				Element testAbbNode = MaryDomUtils.getNextSiblingElement((Element) t);
 				boolean nextTokenIsCapital = false;
 				if (testAbbNode != null && Character.isUpperCase(MaryDomUtils.tokenText(testAbbNode).charAt(0))) {
 					nextTokenIsCapital = true;
 				}
-				MaryDomUtils.setTokenText(t, expandAbbreviation(MaryDomUtils.tokenText(t), nextTokenIsCapital));
-				// time
-			} else if (MaryDomUtils.tokenText(t).matches("(?i)" + timePattern.pattern())) {
+				MaryDomUtils.setTokenText(t, expandAbbreviation(text, nextTokenIsCapital));
+				break;
+			case TIME:
 				Element testTimeNode = MaryDomUtils.getNextSiblingElement((Element) t);
 				boolean nextTokenIsTime = false;
-				if (testTimeNode != null && MaryDomUtils.tokenText(testTimeNode).matches("a\\.m\\.|AM|PM|am|pm|p\\.m\\.")) {
+				if (testTimeNode != null && amPmPattern.matcher(MaryDomUtils.tokenText(testTimeNode)).matches()) {
 					nextTokenIsTime = true;
 				}
-				MaryDomUtils.setTokenText(t, expandTime(MaryDomUtils.tokenText(t), nextTokenIsTime));
-				// duration
-			} else if (MaryDomUtils.tokenText(t).matches(durationPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandDuration(MaryDomUtils.tokenText(t)));
-				// hashtags
-			} else if (MaryDomUtils.tokenText(t).matches(hashtagPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandHashtag(MaryDomUtils.tokenText(t)));
-				// URLs
-			} else if (MaryDomUtils.tokenText(t).matches(URLPattern.pattern())) {
+				MaryDomUtils.setTokenText(t, expandTime(text, nextTokenIsTime));
+				break;
+			case DURATION:
+				MaryDomUtils.setTokenText(t, expandDuration(text));
+				break;
+			case HASHTAG:
+				MaryDomUtils.setTokenText(t, expandHashtag(text));
+				break;
+			case URL:
 				// matching group 2 contains the chunk we want
-				Matcher urlMatcher = URLPattern.matcher(MaryDomUtils.tokenText(t));
+				Matcher urlMatcher = URLPattern.matcher(text);
 				urlMatcher.find();
-				webEmailTemp = MaryDomUtils.tokenText(t);
+				webEmailTemp = text;
 				isURL = true;
 				MaryDomUtils.setTokenText(t, expandURL(urlMatcher.group(2)));
-				// dot . for web and email addresses
-			} else if (MaryDomUtils.tokenText(t).equals(".") && isURL) {
+				break;
+			// dot . for web and email addresses
+			case URL_DOT:
 				MaryDomUtils.setTokenText(t, "dot");
-				webEmailTemp = webEmailTemp.replaceFirst("\\.", "dot");
+				webEmailTemp = dotPattern.matcher(webEmailTemp).replaceFirst("dot");
 				if (!webEmailTemp.contains(".")) {
 					isURL = false;
 				}
-				// symbols
-			} else if (MaryDomUtils.tokenText(t).matches(symbolsPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, symbols.get(MaryDomUtils.tokenText(t)));
-				// number ranges &rarr; before checking for dashes
-			} else if (MaryDomUtils.tokenText(t).matches(rangePattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandRange(MaryDomUtils.tokenText(t)));
-				// dashes and underscores
-			} else if (MaryDomUtils.tokenText(t).contains("-") || MaryDomUtils.tokenText(t).contains("_")) {
+				break;
+			case SYMBOL:
+				MaryDomUtils.setTokenText(t, symbols.get(text));
+				break;
+			// number ranges &rarr; before checking for dashes
+			case RANGE:
+				MaryDomUtils.setTokenText(t, expandRange(text));
+				break;
+			// dashes and underscores
+			case DASHES:
 				dashSplit = true;
-				String[] tokens = MaryDomUtils.tokenText(t).split("[-_]");
+				String[] tokens = dashUnderscorePattern.split(text);
 				int i = 0;
 				for (String tok : tokens) {
-					if (tok.matches("\\d+")) {
+					if (digitsPattern.matcher(tok).matches()) {
 						String newTok = "";
 						for (char c : tok.toCharArray()) {
 							newTok += expandNumber(Double.parseDouble(String.valueOf(c))) + " ";
@@ -374,35 +498,42 @@ public class Preprocess extends InternalModule {
 					}
 					i++;
 				}
-				MaryDomUtils.setTokenText(t, Arrays.toString(tokens).replaceAll("[,\\]\\[]", ""));
-				// words containing only consonants
-			} else if (MaryDomUtils.tokenText(t).matches("(?i)" + consonantPattern.pattern())) {
+				MaryDomUtils.setTokenText(t, joinTokens(tokens));
+				break;
+			// words containing only consonants
+			case CONSONANTS:
 				// first check lexicon
-				if (MaryRuntimeUtils.checkLexicon("en_US", MaryDomUtils.tokenText(t)).length == 0) {
-					MaryDomUtils.setTokenText(t, expandConsonants(MaryDomUtils.tokenText(t)));
+				if (MaryRuntimeUtils.checkLexicon("en_US", text).length == 0) {
+					MaryDomUtils.setTokenText(t, expandConsonants(text));
 				}
-				// a final attempt to split by punctuation
-			} else if (punctuationPattern.matcher(MaryDomUtils.tokenText(t)).find() && MaryDomUtils.tokenText(t).length() > 1) {
+				break;
+			// a final attempt to split by punctuation
+			case PUNCTUATION_SPLIT:
 				puncSplit = true;
-				String[] puncTokens = MaryDomUtils.tokenText(t).split("((?<=\\p{Punct})|(?=\\p{Punct}))");
-				MaryDomUtils.setTokenText(t, Arrays.toString(puncTokens).replaceAll("[,\\]\\[]", ""));
-				// FIXME: skip quotes for now as we don't have any clever management of the POS for the prosodic feature
-			} else if (MaryDomUtils.tokenText(t).equals("\"")) {
-			} else if (MaryDomUtils.tokenText(t).matches(punctuationPattern.pattern())) {
+				String[] puncTokens = punctuationBoundaryPattern.split(text);
+				MaryDomUtils.setTokenText(t, joinTokens(puncTokens));
+				break;
+			// FIXME: skip quotes for now as we don't have any clever management of the POS for the prosodic feature
+			case QUOTE:
+				break;
+			case PUNCTUATION:
 				t.setAttribute("pos", ".");
+				break;
+			default:
+				break;
 			}
 			// if token isn't ignored but there is no handling rule don't add MTU
 			if (!origText.equals(MaryDomUtils.tokenText(t))) {
 				MaryDomUtils.encloseWithMTU(t, origText, null);
 				// finally, split new expanded token separated by spaces into separate tokens (also catch any leftover dashes)
-				String[] newTokens = MaryDomUtils.tokenText(t).replaceAll("-", " ").split("\\s+");
+				String[] newTokens = whitespacePattern.split(MaryDomUtils.tokenText(t).replace('-', ' '));
 				MaryDomUtils.setTokenText(t, newTokens[0]);
 				for (int i = 1; i < newTokens.length; i++) {
 					MaryDomUtils.appendToken(t, newTokens[i]);
 					t = MaryDomUtils.getNextSiblingElement((Element) t);
 					// if tokens are an expanded contraction
 					if (splitContraction && newTokens.length == 2) {
-						if (newTokens[0].substring(newTokens[0].length() - 1).matches("[cfkpt]")
+						if ("cfkpt".indexOf(newTokens[0].charAt(newTokens[0].length() - 1)) >= 0
 								&& contractions.get(newTokens[i]).length > 1) {
 							t.setAttribute("ph", contractions.get(newTokens[i])[1]);
 						} else {
@@ -426,6 +557,64 @@ public class Preprocess extends InternalModule {
 		}
 	}
 
+	/**
+	 * Find the class of the given token text in a single pass of the combined token class pattern. If the class found does not
+	 * apply in the current state, matching resumes with the classes that follow it.
+	 *
+	 * @param text
+	 *            the token text
+	 * @param isYear
+	 *            whether a four digit number is to be read as a year
+	 * @param isURL
+	 *            whether the token is part of a web or email address
+	 * @return the first class in order of precedence that applies to the token
+	 */
+	private TokenClass classify(String text, boolean isYear, boolean isURL) {
+		int from = 0;
+		while (true) {
+			Matcher m = tokenClassifiers[from].matcher(text);
+			// the last class matches any text
+			m.matches();
+			int c = from;
+			while (m.start(tokenClassGroups[from][c]) < 0) {
+				c++;
+			}
+			TokenClass tokenClass = tokenClasses[c];
+			// known abbreviations need not end with a dot
+			if (from <= TokenClass.ABBREVIATION.ordinal() && c > TokenClass.ABBREVIATION.ordinal() && !isURL
+					&& this.abbrevMap.containsKey(text.toLowerCase())) {
+				return TokenClass.ABBREVIATION;
+			}
+			switch (tokenClass) {
+			case YEAR:
+				if (isYear) {
+					return tokenClass;
+				}
+				break;
+			case ABBREVIATION:
+				if (!isURL) {
+					return tokenClass;
+				}
+				break;
+			case URL_DOT:
+				if (isURL) {
+					return tokenClass;
+				}
+				break;
+			default:
+				return tokenClass;
+			}
+			from = c + 1;
+		}
+	}
+
+	/**
+	 * The tokens separated by spaces; commas and brackets inside the tokens are dropped.
+	 */
+	private static String joinTokens(String[] tokens) {
+		return arrayPunctPattern.matcher(Arrays.toString(tokens)).replaceAll("");
+	}
+
 	protected String expandNumber(double number) {
 		this.rbnf.setDefaultRuleSet(cardinalRule);
 		return this.rbnf.format(number);
@@ -457,7 +646,7 @@ public class Preprocess extends InternalModule {
 	}
 
 	protected String expandAcronym(String acronym) {
-		return acronym.replaceAll("\\.", " ");
+		return dotPattern.matcher(acronym).replaceAll(" ");
 	}
 
 	/***
@@ -468,8 +657,8 @@ public class Preprocess extends InternalModule {
 	 * @return Arrays.toString(tokens).replaceAll("[,\\]\\[]", "")
 	 */
 	protected String expandURL(String email) {
-		String[] tokens = email.split("((?<=[\\.@\\/])|(?=[\\.@\\/]))");
-		return Arrays.toString(tokens).replaceAll("[,\\]\\[]", "");
+		String[] tokens = urlSeparatorPattern.split(email);
+		return joinTokens(tokens);
 	}
 
 	protected String expandYearBCAD(String year) {
@@ -477,8 +666,8 @@ public class Preprocess extends InternalModule {
 		Matcher yearMatcher = yearPattern.matcher(year);
 		yearMatcher.find();
 		if (yearMatcher.group(2).contains(".")) {
-			String[] abbrevAr = yearMatcher.group(2).split("\\.");
-			abbrev = Arrays.toString(abbrevAr).replaceAll("[,\\]\\[]", "");
+			String[] abbrevAr = dotPattern.split(yearMatcher.group(2));
+			abbrev = joinTokens(abbrevAr);
 		} else {
 			abbrev = expandConsonants(yearMatcher.group(2));
 
@@ -503,12 +692,12 @@ public class Preprocess extends InternalModule {
 		Matcher hashTagMatcher = hashtagPattern.matcher(hashtag);
 		hashTagMatcher.find();
 		tag = hashTagMatcher.group(2);
-		if (!tag.matches("[a-z]+") || !tag.matches("[A-Z]+")) {
+		if (!lowerCasePattern.matcher(tag).matches() || !upperCasePattern.matcher(tag).matches()) {
 			String temp = "";
 			for (char c : tag.toCharArray()) {
-				if (Character.isDigit(c) && temp.matches("^$|[0-9]+")) {
+				if (Character.isDigit(c) && digitsOrEmptyPattern.matcher(temp).matches()) {
 					temp += c;
-				} else if (Character.isDigit(c) && temp.matches(".+[0-9]")) {
+				} else if (Character.isDigit(c) && endsWithDigitPattern.matcher(temp).matches()) {
 					temp += c;
 				} else if (Character.isDigit(c)) {
 					temp += " " + c;
@@ -579,7 +768,7 @@ public class Preprocess extends InternalModule {
 	 * @return abbrev
 	 */
 	protected String expandAbbreviation(String abbrev, boolean isCapital) {
-		String expAbb = abbrev.replaceAll("\\.", "").toLowerCase();
+		String expAbb = dotPattern.matcher(abbrev).replaceAll("").toLowerCase();
 		if (!abbrevMap.containsKey(expAbb)) {
 			logger.warn(String.format("Could not expand unknown abbreviation \"%s\", ignoring", abbrev));
 			return abbrev;
@@ -599,10 +788,10 @@ public class Preprocess extends InternalModule {
 	protected String expandDate(String date) throws ParseException {
 		// date format is "month/day/year"
 		Date humanDate = df.getPatternInstance("MM.dd.yyyy", ULocale.ENGLISH).parse(date);
-		String[] dateParts = df.format(humanDate).replaceAll(",", "").split("\\s");
+		String[] dateParts = spacePattern.split(commaPattern.matcher(df.format(humanDate)).replaceAll(""));
 		dateParts[1] = expandOrdinal(Double.parseDouble(dateParts[1]));
 		dateParts[2] = expandYear(Double.parseDouble(dateParts[2]));
-		return Arrays.toString(dateParts).replaceAll("[,\\]\\[]", "");
+		return joinTokens(dateParts);
 	}
 
 	/***
@@ -641,18 +830,18 @@ public class Preprocess extends InternalModule {
 		// minutes
 		if (timeMatch.group(7) != null && !isNextTokenTime) {
 			if (!timeMatch.group(6).equals("00")) {
-				if (timeMatch.group(6).matches("0\\d")) {
+				if (zeroDigitPattern.matcher(timeMatch.group(6)).matches()) {
 					theTime += " oh " + expandNumber(Double.parseDouble(timeMatch.group(6)));
 				} else {
 					theTime += " " + expandNumber(Double.parseDouble(timeMatch.group(6)));
 				}
 			}
-			for (char c : timeMatch.group(7).replaceAll("\\.", "").toCharArray()) {
+			for (char c : dotPattern.matcher(timeMatch.group(7)).replaceAll("").toCharArray()) {
 				theTime += " " + c;
 			}
 		} else if (!isNextTokenTime) {
 			if (!timeMatch.group(6).equals("00")) {
-				if (timeMatch.group(6).matches("0\\d")) {
+				if (zeroDigitPattern.matcher(timeMatch.group(6)).matches()) {
 					theTime += " oh " + expandNumber(Double.parseDouble(timeMatch.group(6)));
 				} else {
 					theTime += " " + expandNumber(Double.parseDouble(timeMatch.group(6)));
@@ -661,7 +850,7 @@ public class Preprocess extends InternalModule {
 			theTime += !pastNoon ? " a m" : " p m";
 		} else {
 			if (!timeMatch.group(6).equals("00")) {
-				if (timeMatch.group(6).matches("0\\d")) {
+				if (zeroDigitPattern.matcher(timeMatch.group(6)).matches()) {
 					theTime += " oh " + expandNumber(Double.parseDouble(timeMatch.group(6)));
 				} else {
 					theTime += " " + expandNumber(Double.parseDouble(timeMatch.group(6)));
@@ -694,10 +883,10 @@ public class Preprocess extends InternalModule {
 	}
 
 	protected String expandWordNumber(String wordnumseq) {
-		String[] groups = wordnumseq.split("(?<=\\D)(?=\\d)|(?<=\\d)(?=\\D)");
+		String[] groups = wordNumberBoundaryPattern.split(wordnumseq);
 		int i = 0;
 		for (String g : groups) {
-			if (g.matches("\\d+")) {
+			if (digitsPattern.matcher(g).matches()) {
 				String newTok = "";
 				for (char c : g.toCharArray()) {
 					newTok += expandNumber(Double.parseDouble(String.valueOf(c))) + " ";
@@ -706,7 +895,7 @@ public class Preprocess extends InternalModule {
 			}
 			i++;
 		}
-		return Arrays.toString(groups).replaceAll("[,\\]\\[]", "");
+		return joinTokens(groups);
 	}
 
 	protected String expandMoney(String money, String currency) {
@@ -6,15 +6,19 @@ package marytts.language.en;
 import marytts.LocalMaryInterface;
 import marytts.MaryInterface;
 import marytts.datatypes.MaryDataType;
+import marytts.datatypes.MaryXML;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.exceptions.SynthesisException;
 import marytts.language.en.Preprocess;
 import marytts.util.dom.DomUtils;
+import marytts.util.dom.MaryDomUtils;
 
 import org.custommonkey.xmlunit.*;
 import org.testng.Assert;
 import org.testng.annotations.*;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
@@ -114,6 +118,16 @@ public class PreprocessTest {
 		// @formatter:on
 	}
 
+	@DataProvider(name = "documentExpandData")
+	private Object[][] expansionDocDataDocument() {
+		// @formatter:off
+		return new Object[][] { { "<t>1,999</t><t>in</t><t>1999</t>", "one thousand nine hundred ninety nine in nineteen ninety nine" },
+								{ "<t>$</t><t>1,234</t>", "$ one thousand two hundred thirty four dollars" },
+								{ "<t>hello@gmail.com</t>", "hello at gmail dot com" },
+								{ "<t>mrs</t><t>Smith</t><t>.</t>", "missus Smith ." } };
+		// @formatter:on
+	}
+
 	@Test
 	public void testOneWord() throws SynthesisException, ParserConfigurationException, SAXException, IOException, ParseException,
 			MaryConfigurationException {
@@ -129,6 +143,22 @@ public class PreprocessTest {
 		Assert.assertFalse(diff.identical());
 	}
 
+	@Test(dataProvider = "documentExpandData")
+	public void testExpandDocument(String tokens, String words) throws Exception {
+		Document doc = DomUtils.parseDocument("<maryxml xmlns=\"http://mary.dfki.de/2002/MaryXML\" version=\"0.5\"><p><s>"
+				+ tokens + "</s></p></maryxml>");
+		module.expand(doc);
+		NodeList tokenElements = doc.getElementsByTagNameNS(MaryXML.getNamespace(), MaryXML.TOKEN);
+		StringBuilder actual = new StringBuilder();
+		for (int i = 0; i < tokenElements.getLength(); i++) {
+			if (i > 0) {
+				actual.append(" ");
+			}
+			actual.append(MaryDomUtils.tokenText((Element) tokenElements.item(i)));
+		}
+		Assert.assertEquals(actual.toString(), words);
+	}
+
 	@Test(dataProvider = "NumExpandData")
 	public void testExpandNum(String token, String word) {
 		double x = Double.parseDouble(token);
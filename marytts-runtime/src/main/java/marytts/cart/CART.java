@@ -46,6 +46,9 @@ import marytts.unitselection.select.Target;
  */
 public class CART extends DirectedGraph {
 
+	// the tree as a flat program, if compiled
+	private CompiledCART compiledCART;
+
 	/**
 	 * Build a new empty cart
 	 * 
@@ -115,6 +118,10 @@ public class CART extends DirectedGraph {
 	 * @return the Node
 	 */
 	public Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+		CompiledCART program = compiledCART;
+		if (program != null) {
+			return checkResult(program.interpretToNode(featureVector, minNumberOfData), minNumberOfData);
+		}
 		Node currentNode = rootNode;
 		Node prevNode = null;
 
@@ -131,7 +138,10 @@ public class CART extends DirectedGraph {
 		if (currentNode == null || currentNode.getNumberOfData() < minNumberOfData && prevNode != null) {
 			currentNode = prevNode;
 		}
+		return checkResult(currentNode, minNumberOfData);
+	}
 
+	private Node checkResult(Node currentNode, int minNumberOfData) {
 		assert currentNode.getNumberOfData() >= minNumberOfData || currentNode == rootNode;
 		try {
 			assert minNumberOfData > 0 || (currentNode instanceof LeafNode);
@@ -139,7 +149,45 @@ public class CART extends DirectedGraph {
 			logger.debug(e.getMessage());
 		}
 		return currentNode;
+	}
+
+	/**
+	 * Walk down the tree according to the features in fv, and return the data in the leaf node found there.
+	 * 
+	 * @param fv
+	 *            a feature vector which must be consistent with the tree's feature definition.
+	 * @return the leaf node data, or null if the path ends in a missing daughter
+	 */
+	@Override
+	public Object interpret(FeatureVector fv) {
+		CompiledCART program = compiledCART;
+		if (program != null) {
+			return program.interpret(fv);
+		}
+		return super.interpret(fv);
+	}
+
+	/**
+	 * Compile this tree into a flat program which {@link #interpretToNode(FeatureVector, int)} and
+	 * {@link #interpret(FeatureVector)} then use instead of walking the nodes. Only call this once the tree is complete: later
+	 * changes to its nodes are not seen by the compiled program, except for {@link #setRootNode(Node)}, which discards it. Trees
+	 * containing node types other than the standard decision and leaf nodes are left uncompiled.
+	 * 
+	 * @return true if the tree was compiled, false if it is interpreted node by node
+	 */
+	public boolean compile() {
+		compiledCART = CompiledCART.compile(rootNode);
+		return compiledCART != null;
+	}
+
+	public boolean isCompiled() {
+		return compiledCART != null;
+	}
 
+	@Override
+	public void setRootNode(Node rNode) {
+		super.setRootNode(rNode);
+		compiledCART = null;
 	}
 
 	/**
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import marytts.cart.DecisionNode.BinaryByteDecisionNode;
+import marytts.cart.DecisionNode.BinaryFloatDecisionNode;
+import marytts.cart.DecisionNode.BinaryShortDecisionNode;
+import marytts.cart.DecisionNode.ByteDecisionNode;
+import marytts.cart.DecisionNode.ShortDecisionNode;
+import marytts.features.FeatureVector;
+
+/**
+ * A CART lowered into a flat int array, so that walking the tree is a loop over array offsets instead of virtual
+ * {@link DecisionNode#getNextNode(FeatureVector)} calls on scattered node objects.
+ * <p>
+ * Each decision node is encoded as a record of ints:
+ *
+ * <pre>
+ * kind, feature index, number of data, node number, criterion, child 0, child 1, ...
+ * </pre>
+ *
+ * where the criterion is the byte or short value to compare with, the raw bits of the float threshold, or the number of
+ * daughters for multi-way byte and short nodes. A child is the offset of another decision node record, the bitwise complement of
+ * an index into the leaf table, or {@link #NONE} for a missing daughter. The original node objects are kept in tables, so that
+ * the nodes returned are those of the tree.
+ *
+ * @see CART#compile()
+ */
+final class CompiledCART {
+	private static final int BINARY_BYTE = 0;
+	private static final int BINARY_SHORT = 1;
+	private static final int BINARY_FLOAT_ON_BYTE = 2;
+	private static final int BINARY_FLOAT = 3;
+	private static final int BYTE_SWITCH = 4;
+	private static final int SHORT_SWITCH = 5;
+
+	private static final int KIND = 0;
+	private static final int FEATURE = 1;
+	private static final int NUMBER_OF_DATA = 2;
+	private static final int NODE = 3;
+	private static final int CRITERION = 4;
+	private static final int CHILDREN = 5;
+
+	/** a missing daughter */
+	static final int NONE = Integer.MIN_VALUE;
+
+	private final int[] code;
+	private final int root;
+	private final DecisionNode[] decisionNodes;
+	private final LeafNode[] leaves;
+	private final int[] leafNumberOfData;
+
+	private CompiledCART(int[] code, int root, DecisionNode[] decisionNodes, LeafNode[] leaves) {
+		this.code = code;
+		this.root = root;
+		this.decisionNodes = decisionNodes;
+		this.leaves = leaves;
+		this.leafNumberOfData = new int[leaves.length];
+		for (int i = 0; i < leaves.length; i++) {
+			leafNumberOfData[i] = leaves[i].getNumberOfData();
+		}
+	}
+
+	/**
+	 * Compile the tree below the given root node.
+	 *
+	 * @param rootNode
+	 *            the root of a tree made of the decision node types defined in {@link DecisionNode} and leaf nodes
+	 * @return the compiled tree, or null if the tree contains other kinds of nodes and must be interpreted node by node
+	 */
+	static CompiledCART compile(Node rootNode) {
+		if (rootNode == null) {
+			return null;
+		}
+		Compiler compiler = new Compiler();
+		int root = compiler.add(rootNode);
+		if (compiler.unsupported) {
+			return null;
+		}
+		int[] code = new int[compiler.code.size()];
+		for (int i = 0; i < code.length; i++) {
+			code[i] = compiler.code.get(i);
+		}
+		return new CompiledCART(code, root, compiler.decisionNodes.toArray(new DecisionNode[0]),
+				compiler.leaves.toArray(new LeafNode[0]));
+	}
+
+	/**
+	 * Same as {@link CART#interpretToNode(FeatureVector, int)} on the original tree.
+	 *
+	 * @param featureVector
+	 *            featureVector
+	 * @param minNumberOfData
+	 *            minNumberOfData
+	 * @return the node
+	 */
+	Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+		int current = root;
+		int previous = NONE;
+		while (current >= 0 && code[current + NUMBER_OF_DATA] > minNumberOfData) {
+			previous = current;
+			current = next(current, featureVector);
+		}
+		// Now usually we will have gone down one level too far
+		if (current == NONE || numberOfData(current) < minNumberOfData && previous != NONE) {
+			current = previous;
+		}
+		return node(current);
+	}
+
+	/**
+	 * Same as {@link DirectedGraph#interpret(FeatureVector)} on the original tree: walk down to a leaf and return its data.
+	 *
+	 * @param featureVector
+	 *            featureVector
+	 * @return the data of the leaf reached, or null if a missing daughter is reached
+	 */
+	Object interpret(FeatureVector featureVector) {
+		int current = root;
+		while (current >= 0) {
+			current = next(current, featureVector);
+		}
+		if (current == NONE) {
+			return null;
+		}
+		return leaves[~current].getAllData();
+	}
+
+	private int next(int node, FeatureVector featureVector) {
+		int feature = code[node + FEATURE];
+		switch (code[node + KIND]) {
+		case BINARY_BYTE:
+			return code[node + (featureVector.getByteFeature(feature) == (byte) code[node + CRITERION] ? CHILDREN : CHILDREN + 1)];
+		case BINARY_SHORT:
+			return code[node + (featureVector.getShortFeature(feature) == (short) code[node + CRITERION] ? CHILDREN : CHILDREN + 1)];
+		case BINARY_FLOAT_ON_BYTE:
+			return code[node
+					+ ((float) featureVector.getByteFeature(feature) < Float.intBitsToFloat(code[node + CRITERION]) ? CHILDREN
+							: CHILDREN + 1)];
+		case BINARY_FLOAT:
+			return code[node
+					+ (featureVector.getContinuousFeature(feature) < Float.intBitsToFloat(code[node + CRITERION]) ? CHILDREN
+							: CHILDREN + 1)];
+		case BYTE_SWITCH:
+			return child(node, featureVector.getByteFeature(feature));
+		case SHORT_SWITCH:
+			return child(node, featureVector.getShortFeature(feature));
+		default:
+			throw new IllegalStateException("Unknown node kind " + code[node + KIND]);
+		}
+	}
+
+	private int child(int node, int value) {
+		if (value < 0 || value >= code[node + CRITERION]) {
+			throw new ArrayIndexOutOfBoundsException(value);
+		}
+		return code[node + CHILDREN + value];
+	}
+
+	private int numberOfData(int node) {
+		return node >= 0 ? code[node + NUMBER_OF_DATA] : leafNumberOfData[~node];
+	}
+
+	private Node node(int node) {
+		if (node == NONE) {
+			return null;
+		}
+		return node >= 0 ? decisionNodes[code[node + NODE]] : leaves[~node];
+	}
+
+	/**
+	 * Number of ints in the compiled code, for information.
+	 *
+	 * @return the code length
+	 */
+	int getCodeLength() {
+		return code.length;
+	}
+
+	private static class Compiler {
+		final List<Integer> code = new ArrayList<Integer>();
+		final List<DecisionNode> decisionNodes = new ArrayList<DecisionNode>();
+		final List<LeafNode> leaves = new ArrayList<LeafNode>();
+		// nodes may be shared between several mothers:
+		final Map<Node, Integer> compiled = new IdentityHashMap<Node, Integer>();
+		boolean unsupported = false;
+
+		int add(Node node) {
+			if (node == null) {
+				return NONE;
+			}
+			Integer done = compiled.get(node);
+			if (done != null) {
+				return done;
+			}
+			int ref;
+			if (node instanceof LeafNode) {
+				ref = ~leaves.size();
+				leaves.add((LeafNode) node);
+			} else if (node instanceof DecisionNode && !((DecisionNode) node).TRACE) {
+				ref = addDecisionNode((DecisionNode) node);
+			} else {
+				unsupported = true;
+				ref = NONE;
+			}
+			compiled.put(node, ref);
+			return ref;
+		}
+
+		private int addDecisionNode(DecisionNode node) {
+			int kind;
+			int criterion;
+			if (node instanceof BinaryByteDecisionNode) {
+				kind = BINARY_BYTE;
+				criterion = ((BinaryByteDecisionNode) node).getCriterionValueAsByte();
+			} else if (node instanceof BinaryShortDecisionNode) {
+				kind = BINARY_SHORT;
+				criterion = ((BinaryShortDecisionNode) node).getCriterionValueAsShort();
+			} else if (node instanceof BinaryFloatDecisionNode) {
+				BinaryFloatDecisionNode floatNode = (BinaryFloatDecisionNode) node;
+				kind = floatNode.isByteFeature() ? BINARY_FLOAT_ON_BYTE : BINARY_FLOAT;
+				criterion = Float.floatToRawIntBits(floatNode.getCriterionValueAsFloat());
+			} else if (node instanceof ByteDecisionNode) {
+				kind = BYTE_SWITCH;
+				criterion = node.getNumberOfDaugthers();
+			} else if (node instanceof ShortDecisionNode) {
+				kind = SHORT_SWITCH;
+				criterion = node.getNumberOfDaugthers();
+			} else {
+				unsupported = true;
+				return NONE;
+			}
+			int numDaughters = node.getNumberOfDaugthers();
+			int offset = code.size();
+			code.add(kind);
+			code.add(node.getFeatureIndex());
+			code.add(node.getNumberOfData());
+			code.add(decisionNodes.size());
+			code.add(criterion);
+			for (int i = 0; i < numDaughters; i++) {
+				code.add(NONE);
+			}
+			decisionNodes.add(node);
+			compiled.put(node, offset);
+			for (int i = 0; i < numDaughters; i++) {
+				code.set(offset + CHILDREN + i, add(node.getDaughter(i)));
+			}
+			return offset;
+		}
+	}
+}
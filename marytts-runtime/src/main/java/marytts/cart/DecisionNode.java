@@ -561,6 +561,10 @@ public abstract class DecisionNode extends Node {
 			return value;
 		}
 
+		boolean isByteFeature() {
+			return isByteFeature;
+		}
+
 		public String getCriterionValueAsString() {
 			return String.valueOf(value);
 		}
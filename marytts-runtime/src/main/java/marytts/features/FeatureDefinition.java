@@ -939,6 +939,32 @@ public class FeatureDefinition {
 		return this.similarityMatrices[featureIndex][i][j];
 	}
 
+	/**
+	 * To get the similarities of all values of a feature to one given value
+	 *
+	 * @param featureIndex
+	 *            featureIndex
+	 * @param j
+	 *            j
+	 * @return an array s with s[i] == getSimilarity(featureIndex, i, j) for every value i in the similarity matrix
+	 */
+	public float[] getSimilarities(int featureIndex, byte j) {
+		if (!hasSimilarityMatrix(featureIndex)) {
+			if (featureIndex < 0 || featureIndex >= getNumberOfByteFeatures()) {
+				throw new IllegalArgumentException("Feature no. " + featureIndex
+						+ " is not a byte-valued feature, so it cannot have a similarity matrix");
+			}
+			throw new IllegalArgumentException("Byte-valued feature no. " + featureIndex + " (" + getFeatureName(featureIndex)
+					+ ") has no similarity matrix");
+		}
+		float[][] matrix = this.similarityMatrices[featureIndex];
+		float[] similarities = new float[matrix.length];
+		for (int i = 0; i < matrix.length; i++) {
+			similarities[i] = matrix[i][j];
+		}
+		return similarities;
+	}
+
 	/**
 	 * Translate between a feature name and a feature index.
 	 * 
@@ -0,0 +1,349 @@
+/**
+ * Copyright 2008 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The target features of a list of targets, as computed by {@link TargetFeatureComputer#computeFeatureMatrix}. The values are
+ * kept in one flat array per feature type, one row of features per target, so that computing the features of an utterance does
+ * not allocate a feature vector per target. A matrix can be passed back to the feature computer to be reused for the next
+ * utterance; its arrays are only reallocated when they are too small.
+ *
+ * @see FeatureVector
+ */
+public class FeatureMatrix {
+	private static final byte[] NO_BYTES = new byte[0];
+	private static final short[] NO_SHORTS = new short[0];
+	private static final float[] NO_FLOATS = new float[0];
+
+	private int numberOfTargets;
+	private int numberOfByteFeatures;
+	private int numberOfShortFeatures;
+	private int numberOfContinuousFeatures;
+
+	byte[] byteFeatures = NO_BYTES;
+	short[] shortFeatures = NO_SHORTS;
+	float[] continuousFeatures = NO_FLOATS;
+
+	/**
+	 * Create an empty matrix, to be sized by {@link #resize(int, int, int, int)}.
+	 */
+	public FeatureMatrix() {
+	}
+
+	/**
+	 * Make room for the given numbers of targets and features. Existing arrays are reused if they are large enough; their
+	 * contents are undefined after this call.
+	 *
+	 * @param targets
+	 *            number of targets (rows)
+	 * @param bytes
+	 *            number of byte-valued features per target
+	 * @param shorts
+	 *            number of short-valued features per target
+	 * @param continuous
+	 *            number of continuous features per target
+	 */
+	public void resize(int targets, int bytes, int shorts, int continuous) {
+		numberOfTargets = targets;
+		numberOfByteFeatures = bytes;
+		numberOfShortFeatures = shorts;
+		numberOfContinuousFeatures = continuous;
+		if (byteFeatures.length < targets * bytes) {
+			byteFeatures = new byte[targets * bytes];
+		}
+		if (shortFeatures.length < targets * shorts) {
+			shortFeatures = new short[targets * shorts];
+		}
+		if (continuousFeatures.length < targets * continuous) {
+			continuousFeatures = new float[targets * continuous];
+		}
+	}
+
+	public int getNumberOfTargets() {
+		return numberOfTargets;
+	}
+
+	public int getNumberOfByteFeatures() {
+		return numberOfByteFeatures;
+	}
+
+	public int getNumberOfShortFeatures() {
+		return numberOfShortFeatures;
+	}
+
+	public int getNumberOfContinuousFeatures() {
+		return numberOfContinuousFeatures;
+	}
+
+	public byte getByteFeature(int target, int featureIndex) {
+		return byteFeatures[target * numberOfByteFeatures + featureIndex];
+	}
+
+	public short getShortFeature(int target, int featureIndex) {
+		return shortFeatures[target * numberOfShortFeatures + featureIndex];
+	}
+
+	public float getContinuousFeature(int target, int featureIndex) {
+		return continuousFeatures[target * numberOfContinuousFeatures + featureIndex];
+	}
+
+	/**
+	 * The byte-valued features of all targets, row after row. The array may be longer than the number of targets times the number
+	 * of byte-valued features if the matrix has been reused.
+	 *
+	 * @return the backing array, not a copy
+	 */
+	public byte[] getByteFeatures() {
+		return byteFeatures;
+	}
+
+	/**
+	 * Copy the features of one target into a new feature vector.
+	 *
+	 * @param target
+	 *            the row
+	 * @return a feature vector independent of this matrix
+	 */
+	public FeatureVector getFeatureVector(int target) {
+		byte[] bytes = NO_BYTES;
+		if (numberOfByteFeatures > 0) {
+			int from = target * numberOfByteFeatures;
+			bytes = Arrays.copyOfRange(byteFeatures, from, from + numberOfByteFeatures);
+		}
+		short[] shorts = NO_SHORTS;
+		if (numberOfShortFeatures > 0) {
+			int from = target * numberOfShortFeatures;
+			shorts = Arrays.copyOfRange(shortFeatures, from, from + numberOfShortFeatures);
+		}
+		float[] floats = NO_FLOATS;
+		if (numberOfContinuousFeatures > 0) {
+			int from = target * numberOfContinuousFeatures;
+			floats = Arrays.copyOfRange(continuousFeatures, from, from + numberOfContinuousFeatures);
+		}
+		return new FeatureVector(bytes, shorts, floats, 0);
+	}
+
+	/**
+	 * Give access to the features of one target as a feature vector that reads them from this matrix, without copying. The view
+	 * is only valid as long as this matrix is not resized or reused for other targets. Its public feature arrays are null; all
+	 * accessor methods work as for any other feature vector, and the array getters return copies.
+	 *
+	 * @param target
+	 *            the row
+	 * @return a feature vector backed by this matrix
+	 */
+	public FeatureVector getRow(int target) {
+		if (target < 0 || target >= numberOfTargets) {
+			throw new IndexOutOfBoundsException(target + " is not between 0 and " + numberOfTargets);
+		}
+		return new Row(this, target);
+	}
+
+	/**
+	 * Return a string representation of the features of one target, in the format of {@link FeatureVector#toString()}.
+	 *
+	 * @param target
+	 *            the row
+	 * @return the feature values separated by spaces
+	 */
+	public String toString(int target) {
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < numberOfByteFeatures; i++) {
+			if (out.length() > 0)
+				out.append(" ");
+			out.append((int) getByteFeature(target, i));
+		}
+		for (int i = 0; i < numberOfShortFeatures; i++) {
+			if (out.length() > 0)
+				out.append(" ");
+			out.append((int) getShortFeature(target, i));
+		}
+		for (int i = 0; i < numberOfContinuousFeatures; i++) {
+			if (out.length() > 0)
+				out.append(" ");
+			out.append(getContinuousFeature(target, i));
+		}
+		return out.toString();
+	}
+
+	/**
+	 * A feature vector view of one row of a matrix. Indexes are global feature indexes, as for any feature vector.
+	 */
+	private static class Row extends FeatureVector {
+		private final int nBytes;
+		private final int nShorts;
+		private final int nFloats;
+		private final byte[] bytes;
+		private final short[] shorts;
+		private final float[] floats;
+		private final int byteOffset;
+		private final int shortOffset;
+		private final int floatOffset;
+
+		Row(FeatureMatrix matrix, int target) {
+			super(null, null, null, 0);
+			nBytes = matrix.numberOfByteFeatures;
+			nShorts = matrix.numberOfShortFeatures;
+			nFloats = matrix.numberOfContinuousFeatures;
+			bytes = matrix.byteFeatures;
+			shorts = matrix.shortFeatures;
+			floats = matrix.continuousFeatures;
+			byteOffset = target * nBytes;
+			// the short and continuous arrays are indexed with the global feature index:
+			shortOffset = target * nShorts - nBytes;
+			floatOffset = target * nFloats - nBytes - nShorts;
+		}
+
+		@Override
+		public FeatureType getFeatureType(int featureIndex) {
+			if (featureIndex < 0 || featureIndex >= getLength()) {
+				throw new IllegalArgumentException("Index " + featureIndex + " is out of range [0, " + getLength() + "[");
+			}
+			if (featureIndex < nBytes) {
+				return FeatureType.byteValued;
+			} else if (featureIndex < nBytes + nShorts) {
+				return FeatureType.shortValued;
+			}
+			return FeatureType.floatValued;
+		}
+
+		@Override
+		public int getLength() {
+			return nBytes + nShorts + nFloats;
+		}
+
+		@Override
+		public int getNumberOfByteFeatures() {
+			return nBytes;
+		}
+
+		@Override
+		public int getNumberOfShortFeatures() {
+			return nShorts;
+		}
+
+		@Override
+		public int getNumberOfContinuousFeatures() {
+			return nFloats;
+		}
+
+		@Override
+		public Number getFeature(int index) {
+			if (isByteFeature(index))
+				return new Byte(getByteFeature(index));
+			if (isShortFeature(index))
+				return new Short(getShortFeature(index));
+			if (isContinuousFeature(index))
+				return new Float(getContinuousFeature(index));
+			throw new IndexOutOfBoundsException();
+		}
+
+		@Override
+		public String getFeatureAsString(int index, FeatureDefinition feaDef) {
+			return feaDef.getFeatureValueAsString(index, getByteFeature(index));
+		}
+
+		@Override
+		public byte getByteFeature(int index) {
+			if (index < 0 || index >= nBytes) {
+				throw new IndexOutOfBoundsException(index + " is not between 0 and " + nBytes);
+			}
+			return bytes[byteOffset + index];
+		}
+
+		@Override
+		public short getShortFeature(int index) {
+			if (!isShortFeature(index)) {
+				throw new IndexOutOfBoundsException();
+			}
+			return shorts[shortOffset + index];
+		}
+
+		@Override
+		public float getContinuousFeature(int index) {
+			if (!isContinuousFeature(index)) {
+				throw new IndexOutOfBoundsException();
+			}
+			return floats[floatOffset + index];
+		}
+
+		@Override
+		public boolean isByteFeature(int index) {
+			return 0 <= index && index < nBytes;
+		}
+
+		@Override
+		public boolean isShortFeature(int index) {
+			return nBytes <= index && index < nBytes + nShorts;
+		}
+
+		@Override
+		public boolean isContinuousFeature(int index) {
+			return nBytes + nShorts <= index && index < nBytes + nShorts + nFloats;
+		}
+
+		@Override
+		public byte[] getByteValuedDiscreteFeatures() {
+			return Arrays.copyOfRange(bytes, byteOffset, byteOffset + nBytes);
+		}
+
+		@Override
+		public short[] getShortValuedDiscreteFeatures() {
+			return Arrays.copyOfRange(shorts, shortOffset + nBytes, shortOffset + nBytes + nShorts);
+		}
+
+		@Override
+		public float[] getContinuousFeatures() {
+			int from = floatOffset + nBytes + nShorts;
+			return Arrays.copyOfRange(floats, from, from + nFloats);
+		}
+
+		@Override
+		public void writeTo(DataOutput out) throws IOException {
+			out.write(bytes, byteOffset, nBytes);
+			for (int i = nBytes, n = nBytes + nShorts; i < n; i++) {
+				out.writeShort(shorts[shortOffset + i]);
+			}
+			for (int i = nBytes + nShorts, n = getLength(); i < n; i++) {
+				out.writeFloat(floats[floatOffset + i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder();
+			for (int i = 0, n = getLength(); i < n; i++) {
+				if (out.length() > 0)
+					out.append(" ");
+				if (i < nBytes)
+					out.append((int) getByteFeature(i));
+				else if (i < nBytes + nShorts)
+					out.append((int) getShortFeature(i));
+				else
+					out.append(getContinuousFeature(i));
+			}
+			return out.toString();
+		}
+	}
+}
@@ -30,7 +30,10 @@ import java.io.IOException;
  * example, calling getShortFeature(6) would be OK, but getShortFeature(2) or getShortFeature(8) would throw an
  * IndexOutOfBoundsException. Use isShortFeature(i) to test whether a given feature is a short feature. Alternatively, you can use
  * an Object interface to access all features in a uniform way: getFeature(i) will return a Number object for all valid indexes.
- * 
+ * <p>
+ * The target features computed at run time are views of the rows of a {@link FeatureMatrix}, whose public arrays are null. Code
+ * that reads target features must therefore use the accessor methods rather than the arrays.
+ *
  * @author Marc Schr&ouml;der
  *
  */
@@ -190,7 +193,7 @@ public class FeatureVector {
 	 *             if index&lt;0 or index &ge; getNumberOfByteFeatures(). check {@link #getNumberOfByteFeatures()} . check
 	 *             {@link #isByteFeature(int index)} .
 	 */
-	public final byte getByteFeature(int index) {
+	public byte getByteFeature(int index) {
 		if (index < 0 || index >= byteValuedDiscreteFeatures.length) {
 			throw new IndexOutOfBoundsException(index + " is not between 0 and " + byteValuedDiscreteFeatures.length);
 		}
@@ -209,7 +212,7 @@ public class FeatureVector {
 	 * @see #getNumberOfShortFeatures()
 	 * @see #isShortFeature(int index)
 	 */
-	public final short getShortFeature(int index) {
+	public short getShortFeature(int index) {
 		return shortValuedDiscreteFeatures[index - byteValuedDiscreteFeatures.length];
 	}
 
@@ -227,7 +230,7 @@ public class FeatureVector {
 	 * @see #getLength()
 	 * @see #isContinuousFeature(int index)
 	 */
-	public final float getContinuousFeature(int index) {
+	public float getContinuousFeature(int index) {
 		return continuousFeatures[index - byteValuedDiscreteFeatures.length - shortValuedDiscreteFeatures.length];
 	}
 
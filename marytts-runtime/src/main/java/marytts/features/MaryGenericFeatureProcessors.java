@@ -39,6 +39,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 
 import marytts.datatypes.MaryXML;
+import marytts.features.UtteranceIndex.Tier;
 import marytts.unitselection.select.DiphoneTarget;
 import marytts.unitselection.select.HalfPhoneTarget;
 import marytts.unitselection.select.Target;
@@ -95,13 +96,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHONE, MaryXML.BOUNDARY);
-			tw.setCurrentNode(segment);
-			Element previous = (Element) tw.previousNode();
-			return previous;
+			return index.getPrevious(Tier.SEGMENT, segment, 1);
 		}
 	}
 
@@ -116,14 +114,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHONE, MaryXML.BOUNDARY);
-			tw.setCurrentNode(segment);
-			Element previous = (Element) tw.previousNode();
-			Element pp = (Element) tw.previousNode();
-			return pp;
+			return index.getPrevious(Tier.SEGMENT, segment, 2);
 		}
 	}
 
@@ -138,13 +132,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHONE, MaryXML.BOUNDARY);
-			tw.setCurrentNode(segment);
-			Element next = (Element) tw.nextNode();
-			return next;
+			return index.getNext(Tier.SEGMENT, segment, 1);
 		}
 	}
 
@@ -159,14 +150,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHONE, MaryXML.BOUNDARY);
-			tw.setCurrentNode(segment);
-			Element next = (Element) tw.nextNode();
-			Element nn = (Element) tw.nextNode();
-			return nn;
+			return index.getNext(Tier.SEGMENT, segment, 2);
 		}
 	}
 
@@ -182,13 +169,10 @@ public class MaryGenericFeatureProcessors {
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(word, MaryXML.PHONE);
-			Element first = (Element) tw.firstChild();
-			if (first != null) {
-				assert first.getTagName().equals(MaryXML.PHONE) : "Unexpected tag name: expected " + MaryXML.PHONE + ", got "
-						+ first.getTagName();
-			}
-			return first;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return null;
+			return index.getFirst(Tier.PHONE, word);
 		}
 	}
 
@@ -204,13 +188,10 @@ public class MaryGenericFeatureProcessors {
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(word, MaryXML.PHONE);
-			Element last = (Element) tw.lastChild();
-			if (last != null) {
-				assert last.getTagName().equals(MaryXML.PHONE) : "Unexpected tag name: expected " + MaryXML.PHONE + ", got "
-						+ last.getTagName();
-			}
-			return last;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return null;
+			return index.getLast(Tier.PHONE, word);
 		}
 	}
 
@@ -226,13 +207,10 @@ public class MaryGenericFeatureProcessors {
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(word, MaryXML.SYLLABLE);
-			Element first = (Element) tw.firstChild();
-			if (first != null) {
-				assert first.getTagName().equals(MaryXML.SYLLABLE) : "Unexpected tag name: expected " + MaryXML.SYLLABLE
-						+ ", got " + first.getTagName();
-			}
-			return first;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return null;
+			return index.getFirst(Tier.SYLLABLE, word);
 		}
 	}
 
@@ -248,13 +226,10 @@ public class MaryGenericFeatureProcessors {
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(word, MaryXML.SYLLABLE);
-			Element last = (Element) tw.lastChild();
-			if (last != null) {
-				assert last.getTagName().equals(MaryXML.SYLLABLE) : "Unexpected tag name: expected " + MaryXML.SYLLABLE
-						+ ", got " + last.getTagName();
-			}
-			return last;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return null;
+			return index.getLast(Tier.SYLLABLE, word);
 		}
 	}
 
@@ -300,17 +275,10 @@ public class MaryGenericFeatureProcessors {
 			} else { // boundary
 				current = segment;
 			}
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE);
-			tw.setCurrentNode(current);
-			Element previous = (Element) tw.previousNode();
-			if (previous != null) {
-				assert previous.getTagName().equals(MaryXML.SYLLABLE) : "Unexpected tag name: expected " + MaryXML.SYLLABLE
-						+ ", got " + previous.getTagName();
-			}
-			return previous;
+			return index.getPrevious(Tier.SYLLABLE, current, 1);
 		}
 	}
 
@@ -334,18 +302,10 @@ public class MaryGenericFeatureProcessors {
 			} else { // boundary
 				current = segment;
 			}
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE);
-			tw.setCurrentNode(current);
-			Element previous = (Element) tw.previousNode();
-			Element pp = (Element) tw.previousNode();
-			if (pp != null) {
-				assert pp.getTagName().equals(MaryXML.SYLLABLE) : "Unexpected tag name: expected " + MaryXML.SYLLABLE + ", got "
-						+ pp.getTagName();
-			}
-			return pp;
+			return index.getPrevious(Tier.SYLLABLE, current, 2);
 		}
 	}
 
@@ -369,17 +329,10 @@ public class MaryGenericFeatureProcessors {
 			} else { // boundary
 				current = segment;
 			}
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE);
-			tw.setCurrentNode(current);
-			Element next = (Element) tw.nextNode();
-			if (next != null) {
-				assert next.getTagName().equals(MaryXML.SYLLABLE) : "Unexpected tag name: expected " + MaryXML.SYLLABLE
-						+ ", got " + next.getTagName();
-			}
-			return next;
+			return index.getNext(Tier.SYLLABLE, current, 1);
 		}
 	}
 
@@ -403,18 +356,10 @@ public class MaryGenericFeatureProcessors {
 			} else { // boundary
 				current = segment;
 			}
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE);
-			tw.setCurrentNode(current);
-			Element next = (Element) tw.nextNode();
-			Element nn = (Element) tw.nextNode();
-			if (nn != null) {
-				assert nn.getTagName().equals(MaryXML.SYLLABLE) : "Unexpected tag name: expected " + MaryXML.SYLLABLE + ", got "
-						+ nn.getTagName();
-			}
-			return nn;
+			return index.getNext(Tier.SYLLABLE, current, 2);
 		}
 	}
 
@@ -447,13 +392,10 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-			Element last = (Element) tw.lastChild();
-			if (last != null) {
-				assert last.getTagName().equals(MaryXML.SYLLABLE) : "Unexpected tag name: expected " + MaryXML.SYLLABLE
-						+ ", got " + last.getTagName();
-			}
-			return last;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return null;
+			return index.getLast(Tier.SYLLABLE, phrase);
 		}
 	}
 
@@ -471,25 +413,11 @@ public class MaryGenericFeatureProcessors {
 			} else { // boundary
 				current = segment;
 			}
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
-			tw.setCurrentNode(current);
 			// The next word is the next token with a "ph" attribute:
-			Element nextWord = null;
-			Element nextToken;
-			while ((nextToken = (Element) tw.nextNode()) != null) {
-				if (nextToken.hasAttribute("ph")) {
-					nextWord = nextToken;
-					break;
-				}
-			}
-			if (nextWord != null) {
-				assert nextWord.getTagName().equals(MaryXML.TOKEN) : "Unexpected tag name: expected " + MaryXML.TOKEN + ", got "
-						+ nextWord.getTagName();
-			}
-			return nextWord;
+			return index.getNext(Tier.WORD, current, 1);
 		}
 	}
 
@@ -507,25 +435,11 @@ public class MaryGenericFeatureProcessors {
 			} else { // boundary
 				current = segment;
 			}
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
-			tw.setCurrentNode(current);
-			// The next word is the next token with a "ph" attribute:
-			Element prevWord = null;
-			Element prevToken;
-			while ((prevToken = (Element) tw.previousNode()) != null) {
-				if (prevToken.hasAttribute("ph")) {
-					prevWord = prevToken;
-					break;
-				}
-			}
-			if (prevWord != null) {
-				assert prevWord.getTagName().equals(MaryXML.TOKEN) : "Unexpected tag name: expected " + MaryXML.TOKEN + ", got "
-						+ prevWord.getTagName();
-			}
-			return prevWord;
+			// The previous word is the previous token with a "ph" attribute:
+			return index.getPrevious(Tier.WORD, current, 1);
 		}
 	}
 
@@ -543,32 +457,15 @@ public class MaryGenericFeatureProcessors {
 			} else { // boundary
 				current = segment;
 			}
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
-			tw.setCurrentNode(current);
 			// The next word is the next token with a "ph" attribute:
-			Element nextWord = null;
-			Element nextToken;
-			while ((nextToken = (Element) tw.nextNode()) != null) {
-				if (nextToken.hasAttribute("ph")) {
-					nextWord = nextToken;
-					break;
-				}
-			}
+			Element nextWord = index.getNext(Tier.WORD, current, 1);
 			if (nextWord == null) {
 				return null;
 			}
-			assert nextWord.getTagName().equals(MaryXML.TOKEN) : "Unexpected tag name: expected " + MaryXML.TOKEN + ", got "
-					+ nextWord.getTagName();
-			TreeWalker sw = MaryDomUtils.createTreeWalker(nextWord, MaryXML.PHONE);
-			Element first = (Element) sw.firstChild();
-			if (first != null) {
-				assert first.getTagName().equals(MaryXML.PHONE) : "Unexpected tag name: expected " + MaryXML.PHONE + ", got "
-						+ first.getTagName();
-			}
-			return first;
+			return index.getFirst(Tier.PHONE, nextWord);
 		}
 	}
 
@@ -577,26 +474,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return null;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
-			Element lastWord = null;
-			Element lastToken = (Element) tw.lastChild();
-			// The last word is the lastToken which has a "ph" attribute:
-			while (lastToken != null) {
-				if (lastToken.hasAttribute("ph")) {
-					lastWord = lastToken;
-					break;
-				}
-				lastToken = (Element) tw.previousNode();
-			}
-
-			if (lastWord != null) {
-				assert lastWord.getTagName().equals(MaryXML.TOKEN) : "Unexpected tag name: expected " + MaryXML.TOKEN + ", got "
-						+ lastWord.getTagName();
-			}
-			return lastWord;
+			// The last word is the last token which has a "ph" attribute:
+			return index.getLast(Tier.WORD, index.getSentence());
 		}
 	}
 
@@ -863,16 +745,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return (byte) 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHRASE);
-			int count = 0;
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null && count < RAIL_LIMIT) {
-				count++;
-			}
-			return (byte) count;
+			return (byte) Math.min(index.count(Tier.PHRASE, index.getSentence()), RAIL_LIMIT);
 		}
 	}
 
@@ -899,18 +775,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
-			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return (byte) 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
-			int count = 0;
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null && count < RAIL_LIMIT) {
-				// only tokens with a "ph" attribute count as words:
-				if (e.hasAttribute("ph"))
-					count++;
-			}
-			return (byte) count;
+			return (byte) Math.min(index.count(Tier.WORD, index.getSentence()), RAIL_LIMIT);
 		}
 	}
 
@@ -939,13 +807,10 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return (byte) 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-			int count = 0;
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null && count < RAIL_LIMIT) {
-				count++;
-			}
-			return (byte) count;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return (byte) 0;
+			return (byte) Math.min(index.count(Tier.SYLLABLE, phrase), RAIL_LIMIT);
 		}
 	}
 
@@ -979,13 +844,10 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return (byte) 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.TOKEN);
-			int count = 0;
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null && count < RAIL_LIMIT) {
-				count++;
-			}
-			return (byte) count;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return (byte) 0;
+			return (byte) Math.min(index.count(Tier.TOKEN, phrase), RAIL_LIMIT);
 		}
 	}
 
@@ -1381,17 +1243,10 @@ public class MaryGenericFeatureProcessors {
 				return 0;
 			assert word.getTagName().equals(MaryXML.TOKEN) : "Unexpected tag name: expected " + MaryXML.TOKEN + ", got "
 					+ word.getTagName();
-			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN, MaryXML.BOUNDARY);
-			tw.setCurrentNode(word);
-			// The next word is the next token with a "ph" attribute:
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null) {
-				if (e.getTagName().equals(MaryXML.BOUNDARY) || e.getTagName().equals(MaryXML.TOKEN) && e.hasAttribute("ph"))
-					break;
-			}
+			Element e = getNextWordOrBoundary(index, word);
 			if (e == null) {
 				// we are the last token in the sentence, but there is no boundary...
 				// OK, let's say it is sentence-final anyway:
@@ -1421,6 +1276,24 @@ public class MaryGenericFeatureProcessors {
 		}
 	}
 
+	/**
+	 * The first word (token with a "ph" attribute) or boundary following the given token in the sentence.
+	 * 
+	 * @param index
+	 *            the index of the sentence
+	 * @param token
+	 *            the token
+	 * @return the following word or boundary, or null if there is none
+	 */
+	private static Element getNextWordOrBoundary(UtteranceIndex index, Element token) {
+		Element word = index.getNext(Tier.WORD, token, 1);
+		Element boundary = index.getNext(Tier.BOUNDARY, token, 1);
+		if (word == null || boundary == null) {
+			return word != null ? word : boundary;
+		}
+		return index.precedes(word, boundary) ? word : boundary;
+	}
+
 	/**
 	 * Classifies the the syllable as single, initial, mid or final.
 	 */
@@ -1525,23 +1398,15 @@ public class MaryGenericFeatureProcessors {
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return 0;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
 			// is there another segment following in the token?
-			TreeWalker tww = MaryDomUtils.createTreeWalker(word, MaryXML.PHONE);
-			tww.setCurrentNode(segment);
-			if (tww.nextNode() != null)
+			Element nextPhone = index.getNext(Tier.PHONE, segment, 1);
+			if (nextPhone != null && index.isWithin(nextPhone, word))
 				return 0;
 			// else, it is at least word-final.
-			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
-			if (sentence == null)
-				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN, MaryXML.BOUNDARY);
-			tw.setCurrentNode(word);
-			// The next word is the next token with a "ph" attribute:
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null) {
-				if (e.getTagName().equals(MaryXML.BOUNDARY) || e.getTagName().equals(MaryXML.TOKEN) && e.hasAttribute("ph"))
-					break;
-			}
+			Element e = getNextWordOrBoundary(index, word);
 			if (e == null) {
 				// we are the last token in the sentence, but there is no boundary...
 				// OK, let's say it is sentence-final anyway:
@@ -1640,18 +1505,16 @@ public class MaryGenericFeatureProcessors {
 			Element syllable = navigator.getElement(target);
 			if (syllable == null)
 				return 0;
-			Element sentence = (Element) MaryDomUtils.getAncestor(syllable, MaryXML.SENTENCE);
-			if (sentence == null)
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null || !index.contains(syllable))
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE, MaryXML.BOUNDARY);
-			tw.setCurrentNode(syllable);
-			Element e = (Element) tw.nextNode();
+			// the syllable carries an end tone if a boundary follows it before the next syllable
+			Element e = index.getNext(Tier.BOUNDARY, syllable, 1);
 			if (e == null)
 				return 0;
-			if (e.getTagName().equals(MaryXML.SYLLABLE))
+			Element nextSyllable = index.getNext(Tier.SYLLABLE, syllable, 1);
+			if (nextSyllable != null && index.precedes(nextSyllable, e))
 				return 0;
-			assert e.getTagName().equals(MaryXML.BOUNDARY) : "Unexpected tag name: expected " + MaryXML.BOUNDARY + ", got "
-					+ e.getTagName();
 			String endtone = e.getAttribute("tone");
 			if (endtone.equals("")) {
 				return 0;
@@ -1687,10 +1550,11 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(current, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-			tw.setCurrentNode(current);
-			Element s;
-			while ((s = (Element) tw.nextNode()) != null) {
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
+			for (Element s = index.getNext(Tier.SYLLABLE, current, 1); s != null && index.isWithin(s, phrase); s = index.getNext(
+					Tier.SYLLABLE, s, 1)) {
 				if (s.hasAttribute("accent")) {
 					String accent = s.getAttribute("accent");
 					return values.get(accent);
@@ -1727,10 +1591,11 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(current, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-			tw.setCurrentNode(current);
-			Element s;
-			while ((s = (Element) tw.previousNode()) != null) {
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
+			for (Element s = index.getPrevious(Tier.SYLLABLE, current, 1); s != null && index.isWithin(s, phrase); s = index.getPrevious(
+					Tier.SYLLABLE, s, 1)) {
 				if (s.hasAttribute("accent")) {
 					String accent = s.getAttribute("accent");
 					return values.get(accent);
@@ -1805,19 +1670,12 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
-			int count = 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
 			Element syllable = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SYLLABLE);
-			if (syllable != null) {
-				tw.setCurrentNode(syllable);
-			} else {
-				tw.setCurrentNode(segment);
-			}
-			Element e;
-			while ((e = (Element) tw.previousNode()) != null && count < RAIL_LIMIT) {
-				count++;
-			}
-			return (byte) count;
+			Element current = syllable != null ? syllable : segment;
+			return (byte) Math.min(index.countBefore(Tier.SYLLABLE, current, phrase), RAIL_LIMIT);
 		}
 	}
 
@@ -1848,14 +1706,10 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
-			int count = 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-			tw.setCurrentNode(segment);
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null && count < RAIL_LIMIT) {
-				count++;
-			}
-			return (byte) count;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
+			return (byte) Math.min(index.countAfter(Tier.SYLLABLE, segment, phrase), RAIL_LIMIT);
 		}
 	}
 
@@ -2056,21 +1910,13 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
-			int count = 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.TOKEN);
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
-			if (word != null) {
-				tw.setCurrentNode(word);
-			} else {
-				tw.setCurrentNode(segment);
-			}
-			Element e;
-			while ((e = (Element) tw.previousNode()) != null && count < RAIL_LIMIT) {
-				// only count tokens that have a "ph" attribute:
-				if (e.hasAttribute("ph"))
-					count++;
-			}
-			return (byte) count;
+			Element current = word != null ? word : segment;
+			// only count tokens that have a "ph" attribute:
+			return (byte) Math.min(index.countBefore(Tier.WORD, current, phrase), RAIL_LIMIT);
 		}
 	}
 
@@ -2101,16 +1947,11 @@ public class MaryGenericFeatureProcessors {
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
-			int count = 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.TOKEN);
-			tw.setCurrentNode(segment);
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null && count < RAIL_LIMIT) {
-				// only count tokens that have a "ph" attribute
-				if (e.hasAttribute("ph"))
-					count++;
-			}
-			return (byte) count;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
+			// only count tokens that have a "ph" attribute:
+			return (byte) Math.min(index.countAfter(Tier.WORD, segment, phrase), RAIL_LIMIT);
 		}
 	}
 
@@ -2141,21 +1982,13 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			int count = 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
-			if (word != null) {
-				tw.setCurrentNode(word);
-			} else {
-				tw.setCurrentNode(segment);
-			}
-			Element e;
-			while ((e = (Element) tw.previousNode()) != null && count < RAIL_LIMIT) {
-				// only count tokens that have a "ph" attribute:
-				if (e.hasAttribute("ph"))
-					count++;
-			}
-			return (byte) count;
+			Element current = word != null ? word : segment;
+			// only count tokens that have a "ph" attribute:
+			return (byte) Math.min(index.countBefore(Tier.WORD, current, sentence), RAIL_LIMIT);
 		}
 	}
 
@@ -2186,16 +2019,11 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			int count = 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
-			tw.setCurrentNode(segment);
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null && count < RAIL_LIMIT) {
-				// only count tokens that have a "ph" attribute:
-				if (e.hasAttribute("ph"))
-					count++;
-			}
-			return (byte) count;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
+			// only count tokens that have a "ph" attribute:
+			return (byte) Math.min(index.countAfter(Tier.WORD, segment, sentence), RAIL_LIMIT);
 		}
 	}
 
@@ -2226,19 +2054,12 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			int count = 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHRASE);
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
-			if (phrase != null) {
-				tw.setCurrentNode(phrase);
-			} else {
-				tw.setCurrentNode(segment);
-			}
-			Element e;
-			while ((e = (Element) tw.previousNode()) != null && count < RAIL_LIMIT) {
-				count++;
-			}
-			return (byte) count;
+			Element current = phrase != null ? phrase : segment;
+			return (byte) Math.min(index.countBefore(Tier.PHRASE, current, sentence), RAIL_LIMIT);
 		}
 	}
 
@@ -2269,14 +2090,10 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			int count = 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHRASE);
-			tw.setCurrentNode(segment);
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null && count < RAIL_LIMIT) {
-				count++;
-			}
-			return (byte) count;
+			UtteranceIndex index = target.getUtteranceIndex();
+			if (index == null)
+				return 0;
+			return (byte) Math.min(index.countAfter(Tier.PHRASE, segment, sentence), RAIL_LIMIT);
 		}
 	}
 
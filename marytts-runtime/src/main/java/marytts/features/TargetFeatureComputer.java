@@ -148,6 +148,65 @@ public class TargetFeatureComputer {
 		return new FeatureVector(byteFeatures, shortFeatures, floatFeatures, 0);
 	}
 
+	/**
+	 * Compute the features of all the given targets into a feature matrix. Each feature processor is applied to all targets in
+	 * turn before the next one is used, and no feature vector is allocated per target.
+	 * 
+	 * @param targets
+	 *            the targets of an utterance
+	 * @param matrix
+	 *            a matrix to reuse, e.g. from the previous utterance, or null to create a new one
+	 * @return the matrix holding one row of features per target, in the order of targets
+	 */
+	public FeatureMatrix computeFeatureMatrix(List<? extends Target> targets, FeatureMatrix matrix) {
+		if (matrix == null) {
+			matrix = new FeatureMatrix();
+		}
+		int numTargets = targets.size();
+		int numBytes = byteValuedDiscreteFeatureProcessors.length;
+		int numShorts = shortValuedDiscreteFeatureProcessors.length;
+		int numFloats = continuousFeatureProcessors.length;
+		matrix.resize(numTargets, numBytes, numShorts, numFloats);
+		for (int i = 0; i < numBytes; i++) {
+			ByteValuedFeatureProcessor fp = byteValuedDiscreteFeatureProcessors[i];
+			byte[] column = matrix.byteFeatures;
+			for (int t = 0, k = i; t < numTargets; t++, k += numBytes) {
+				column[k] = fp.process(targets.get(t));
+			}
+		}
+		for (int i = 0; i < numShorts; i++) {
+			ShortValuedFeatureProcessor fp = shortValuedDiscreteFeatureProcessors[i];
+			short[] column = matrix.shortFeatures;
+			for (int t = 0, k = i; t < numTargets; t++, k += numShorts) {
+				column[k] = fp.process(targets.get(t));
+			}
+		}
+		for (int i = 0; i < numFloats; i++) {
+			ContinuousFeatureProcessor fp = continuousFeatureProcessors[i];
+			float[] column = matrix.continuousFeatures;
+			for (int t = 0, k = i; t < numTargets; t++, k += numFloats) {
+				column[k] = fp.process(targets.get(t));
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Compute the feature vectors of all the given targets through {@link #computeFeatureMatrix(List, FeatureMatrix)}, and
+	 * store each in its target. The vectors are views of the rows of one new matrix, so that no features are copied.
+	 * 
+	 * @param targets
+	 *            the targets of an utterance
+	 * @see Target#getFeatureVector()
+	 * @see FeatureMatrix#getRow(int)
+	 */
+	public void computeFeatureVectors(List<? extends Target> targets) {
+		FeatureMatrix matrix = computeFeatureMatrix(targets, null);
+		for (int t = 0, max = targets.size(); t < max; t++) {
+			targets.get(t).setFeatureVector(matrix.getRow(t));
+		}
+	}
+
 	/**
 	 * For the given feature vector, convert each encoded value into its string representation.
 	 * 
@@ -186,6 +245,55 @@ public class TargetFeatureComputer {
 		return buf.toString();
 	}
 
+	/**
+	 * For each row of the given feature matrix, convert each encoded value into its string representation.
+	 * 
+	 * @param matrix
+	 *            a feature matrix computed by this feature computer.
+	 * @return one string per target, in which the string values of all features are separated by spaces.
+	 * @throws IllegalArgumentException
+	 *             if the number of byte-valued, short-valued or continuous features in the matrix do not match the set of feature
+	 *             processors in this feature computer.
+	 */
+	public String[] toStringValues(FeatureMatrix matrix) {
+		if (matrix.getNumberOfByteFeatures() != byteValuedDiscreteFeatureProcessors.length
+				|| matrix.getNumberOfShortFeatures() != shortValuedDiscreteFeatureProcessors.length
+				|| matrix.getNumberOfContinuousFeatures() != continuousFeatureProcessors.length) {
+			throw new IllegalArgumentException("Number of features in argument does not match number of feature processors");
+		}
+		// look up the value names once for all targets:
+		String[][] byteValues = new String[byteValuedDiscreteFeatureProcessors.length][];
+		for (int i = 0; i < byteValues.length; i++) {
+			byteValues[i] = byteValuedDiscreteFeatureProcessors[i].getValues();
+		}
+		String[][] shortValues = new String[shortValuedDiscreteFeatureProcessors.length][];
+		for (int i = 0; i < shortValues.length; i++) {
+			shortValues[i] = shortValuedDiscreteFeatureProcessors[i].getValues();
+		}
+		String[] lines = new String[matrix.getNumberOfTargets()];
+		StringBuilder buf = new StringBuilder();
+		for (int t = 0; t < lines.length; t++) {
+			buf.setLength(0);
+			for (int i = 0; i < byteValues.length; i++) {
+				if (buf.length() > 0)
+					buf.append(" ");
+				buf.append(byteValues[i][(int) matrix.getByteFeature(t, i) & 0xff]);
+			}
+			for (int i = 0; i < shortValues.length; i++) {
+				if (buf.length() > 0)
+					buf.append(" ");
+				buf.append(shortValues[i][(int) matrix.getShortFeature(t, i)]);
+			}
+			for (int i = 0, max = matrix.getNumberOfContinuousFeatures(); i < max; i++) {
+				if (buf.length() > 0)
+					buf.append(" ");
+				buf.append(matrix.getContinuousFeature(t, i));
+			}
+			lines[t] = buf.toString();
+		}
+		return lines;
+	}
+
 	public ByteValuedFeatureProcessor[] getByteValuedFeatureProcessors() {
 		return byteValuedDiscreteFeatureProcessors;
 	}
@@ -0,0 +1,381 @@
+/**
+ * Copyright 2008 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import marytts.datatypes.MaryXML;
+import marytts.unitselection.select.DiphoneTarget;
+import marytts.unitselection.select.Target;
+import marytts.util.dom.MaryDomUtils;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An array-based index of the elements in one MaryXML sentence, built in a single pass over the DOM. Each element gets its
+ * position in document order; for each {@link Tier}, the index keeps the member elements in document order together with, for
+ * every position, the number of members preceding it. Previous/next lookups and counts within a phrase, word or the sentence
+ * then take constant time, where a TreeWalker over the sentence would take time linear in the sentence length.
+ * <p>
+ * The navigation semantics are those of a {@link MaryDomUtils#createTreeWalker(Node, String...)} TreeWalker rooted at the
+ * sentence: "previous" means preceding in document order, "next" means following in document order, including descendants.
+ * <p>
+ * The index is a snapshot: it must be rebuilt if the sentence is modified. It is therefore attached to the targets created
+ * for one processing step (see {@link #attach(List)}) rather than to the document.
+ */
+public class UtteranceIndex {
+	/**
+	 * The kinds of elements indexed.
+	 */
+	public enum Tier {
+		/** phone and boundary elements */
+		SEGMENT,
+		/** phone elements */
+		PHONE,
+		/** boundary elements */
+		BOUNDARY,
+		/** syllable elements */
+		SYLLABLE,
+		/** all token elements */
+		TOKEN,
+		/** token elements with a "ph" attribute */
+		WORD,
+		/** phrase elements */
+		PHRASE
+	}
+
+	private final Element sentence;
+	private final Map<Element, Integer> positions;
+	/** for each position, the position after the last descendant of the element at that position */
+	private final int[] subtreeEnds;
+	/** for each tier, the members in document order */
+	private final Element[][] members;
+	/** for each tier and position p, the number of members at positions below p; length is number of elements + 1 */
+	private final int[][] ranks;
+
+	/**
+	 * Index the given sentence.
+	 *
+	 * @param sentence
+	 *            a MaryXML sentence element
+	 */
+	public UtteranceIndex(Element sentence) {
+		this.sentence = sentence;
+		List<Element> elements = new ArrayList<Element>();
+		List<Integer> ends = new ArrayList<Integer>();
+		collect(sentence, elements, ends);
+		int n = elements.size();
+		positions = new IdentityHashMap<Element, Integer>(n);
+		subtreeEnds = new int[n];
+		for (int p = 0; p < n; p++) {
+			positions.put(elements.get(p), p);
+			subtreeEnds[p] = ends.get(p);
+		}
+		Tier[] tiers = Tier.values();
+		members = new Element[tiers.length][];
+		ranks = new int[tiers.length][];
+		for (Tier tier : tiers) {
+			int[] rank = new int[n + 1];
+			List<Element> tierMembers = new ArrayList<Element>();
+			for (int p = 0; p < n; p++) {
+				rank[p] = tierMembers.size();
+				Element e = elements.get(p);
+				if (isMember(tier, e)) {
+					tierMembers.add(e);
+				}
+			}
+			rank[n] = tierMembers.size();
+			members[tier.ordinal()] = tierMembers.toArray(new Element[tierMembers.size()]);
+			ranks[tier.ordinal()] = rank;
+		}
+	}
+
+	/**
+	 * Add e and its element descendants to elements in document order, recording in ends the position after each subtree.
+	 */
+	private static void collect(Element e, List<Element> elements, List<Integer> ends) {
+		int p = elements.size();
+		elements.add(e);
+		ends.add(-1);
+		for (Node child = e.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				collect((Element) child, elements, ends);
+			}
+		}
+		ends.set(p, elements.size());
+	}
+
+	private static boolean isMember(Tier tier, Element e) {
+		String tag = e.getTagName();
+		switch (tier) {
+		case SEGMENT:
+			return tag.equals(MaryXML.PHONE) || tag.equals(MaryXML.BOUNDARY);
+		case PHONE:
+			return tag.equals(MaryXML.PHONE);
+		case BOUNDARY:
+			return tag.equals(MaryXML.BOUNDARY);
+		case SYLLABLE:
+			return tag.equals(MaryXML.SYLLABLE);
+		case TOKEN:
+			return tag.equals(MaryXML.TOKEN);
+		case WORD:
+			return tag.equals(MaryXML.TOKEN) && e.hasAttribute("ph");
+		case PHRASE:
+			return tag.equals(MaryXML.PHRASE);
+		default:
+			throw new IllegalArgumentException("Unknown tier " + tier);
+		}
+	}
+
+	/**
+	 * The sentence covered by this index.
+	 *
+	 * @return the sentence element
+	 */
+	public Element getSentence() {
+		return sentence;
+	}
+
+	/**
+	 * Whether the given element was part of the sentence when the index was built.
+	 *
+	 * @param e
+	 *            e
+	 * @return true if e is indexed, false otherwise
+	 */
+	public boolean contains(Element e) {
+		return positions.containsKey(e);
+	}
+
+	/**
+	 * Whether e lies inside the subtree of root (or is root itself).
+	 *
+	 * @param e
+	 *            e
+	 * @param root
+	 *            root
+	 * @return true if both are indexed and e is root or one of its descendants
+	 */
+	public boolean isWithin(Element e, Element root) {
+		int p = position(e);
+		int r = position(root);
+		return p >= 0 && r >= 0 && p >= r && p < subtreeEnds[r];
+	}
+
+	/**
+	 * Whether a comes before b in document order.
+	 *
+	 * @param a
+	 *            an indexed element
+	 * @param b
+	 *            an indexed element
+	 * @return true if both are indexed and a precedes b
+	 */
+	public boolean precedes(Element a, Element b) {
+		int pa = position(a);
+		int pb = position(b);
+		return pa >= 0 && pb >= 0 && pa < pb;
+	}
+
+	/**
+	 * The member of the tier that precedes e by the given distance in document order.
+	 *
+	 * @param tier
+	 *            tier
+	 * @param e
+	 *            an indexed element
+	 * @param distance
+	 *            1 for the immediately preceding member, 2 for the one before that, etc.
+	 * @return the member, or null if there is none or e is not indexed
+	 */
+	public Element getPrevious(Tier tier, Element e, int distance) {
+		int p = position(e);
+		if (p < 0) {
+			return null;
+		}
+		int i = ranks[tier.ordinal()][p] - distance;
+		return i >= 0 ? members[tier.ordinal()][i] : null;
+	}
+
+	/**
+	 * The member of the tier that follows e by the given distance in document order; members inside e count as following e.
+	 *
+	 * @param tier
+	 *            tier
+	 * @param e
+	 *            an indexed element
+	 * @param distance
+	 *            1 for the immediately following member, 2 for the one after that, etc.
+	 * @return the member, or null if there is none or e is not indexed
+	 */
+	public Element getNext(Tier tier, Element e, int distance) {
+		int p = position(e);
+		if (p < 0) {
+			return null;
+		}
+		Element[] tierMembers = members[tier.ordinal()];
+		int i = ranks[tier.ordinal()][p + 1] + distance - 1;
+		return i < tierMembers.length ? tierMembers[i] : null;
+	}
+
+	/**
+	 * The first member of the tier below root.
+	 *
+	 * @param tier
+	 *            tier
+	 * @param root
+	 *            an indexed element
+	 * @return the first member that is a descendant of root, or null if there is none
+	 */
+	public Element getFirst(Tier tier, Element root) {
+		int r = position(root);
+		if (r < 0) {
+			return null;
+		}
+		int[] rank = ranks[tier.ordinal()];
+		int from = rank[r + 1];
+		return from < rank[subtreeEnds[r]] ? members[tier.ordinal()][from] : null;
+	}
+
+	/**
+	 * The last member of the tier below root.
+	 *
+	 * @param tier
+	 *            tier
+	 * @param root
+	 *            an indexed element
+	 * @return the last member that is a descendant of root, or null if there is none
+	 */
+	public Element getLast(Tier tier, Element root) {
+		int r = position(root);
+		if (r < 0) {
+			return null;
+		}
+		int[] rank = ranks[tier.ordinal()];
+		int to = rank[subtreeEnds[r]];
+		return to > rank[r + 1] ? members[tier.ordinal()][to - 1] : null;
+	}
+
+	/**
+	 * The number of members of the tier below root.
+	 *
+	 * @param tier
+	 *            tier
+	 * @param root
+	 *            an indexed element
+	 * @return the number of members that are descendants of root, or 0 if root is not indexed
+	 */
+	public int count(Tier tier, Element root) {
+		int r = position(root);
+		if (r < 0) {
+			return 0;
+		}
+		int[] rank = ranks[tier.ordinal()];
+		return rank[subtreeEnds[r]] - rank[r + 1];
+	}
+
+	/**
+	 * The number of members of the tier below root that precede e in document order.
+	 *
+	 * @param tier
+	 *            tier
+	 * @param e
+	 *            an indexed element inside root
+	 * @param root
+	 *            an indexed element
+	 * @return the number of such members, or 0 if e or root is not indexed
+	 */
+	public int countBefore(Tier tier, Element e, Element root) {
+		int p = position(e);
+		int r = position(root);
+		if (p < 0 || r < 0) {
+			return 0;
+		}
+		int[] rank = ranks[tier.ordinal()];
+		return Math.max(0, rank[p] - rank[r + 1]);
+	}
+
+	/**
+	 * The number of members of the tier below root that follow e in document order; members inside e count as following e.
+	 *
+	 * @param tier
+	 *            tier
+	 * @param e
+	 *            an indexed element inside root
+	 * @param root
+	 *            an indexed element
+	 * @return the number of such members, or 0 if e or root is not indexed
+	 */
+	public int countAfter(Tier tier, Element e, Element root) {
+		int p = position(e);
+		int r = position(root);
+		if (p < 0 || r < 0) {
+			return 0;
+		}
+		int[] rank = ranks[tier.ordinal()];
+		return Math.max(0, rank[subtreeEnds[r]] - rank[p + 1]);
+	}
+
+	private int position(Element e) {
+		if (e == null) {
+			return -1;
+		}
+		Integer p = positions.get(e);
+		return p != null ? p : -1;
+	}
+
+	/**
+	 * Build one index per sentence for the given targets and attach it to each of them, so that feature computation for all
+	 * targets of a sentence shares the same index. Diphone targets are attached through their two halves. Targets that do not
+	 * belong to a sentence get no index.
+	 *
+	 * @param targets
+	 *            the targets created for one processing step
+	 */
+	public static void attach(List<? extends Target> targets) {
+		Map<Element, UtteranceIndex> indexes = new IdentityHashMap<Element, UtteranceIndex>();
+		for (Target t : targets) {
+			if (t instanceof DiphoneTarget) {
+				attach(((DiphoneTarget) t).left, indexes);
+				attach(((DiphoneTarget) t).right, indexes);
+			} else {
+				attach(t, indexes);
+			}
+		}
+	}
+
+	private static void attach(Target t, Map<Element, UtteranceIndex> indexes) {
+		Element segment = t.getMaryxmlElement();
+		Element sentence = segment == null ? null : (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
+		UtteranceIndex index = null;
+		if (sentence != null) {
+			index = indexes.get(sentence);
+			if (index == null) {
+				index = new UtteranceIndex(sentence);
+				indexes.put(sentence, index);
+			}
+		}
+		t.setUtteranceIndex(index);
+	}
+}
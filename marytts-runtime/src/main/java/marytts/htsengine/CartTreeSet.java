@@ -64,6 +64,7 @@
 package marytts.htsengine;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import marytts.cart.CART;
 import marytts.cart.LeafNode.PdfLeafNode;
@@ -91,6 +92,8 @@ public class CartTreeSet {
 	private CART[] strTree; // CART trees for strengths
 	private CART[] magTree; // CART trees for Fourier magnitudes
 
+	private PdfLookupCache pdfs; // leaf pdfs of all the trees above per context feature vector
+
 	private int numStates; /* # of HMM states for individual HMM */
 	private int lf0Stream; /* # of stream for log f0 modeling */
 	private int mcepVsize; /* vector size for mcep modeling */
@@ -130,6 +133,15 @@ public class CartTreeSet {
 		}
 	}
 
+	/**
+	 * The cache of leaf pdfs found in the trees, for hit-rate statistics.
+	 * 
+	 * @return the cache, or null if no trees have been loaded
+	 */
+	public PdfLookupCache getPdfLookupCache() {
+		return pdfs;
+	}
+
 	/**
 	 * Loads all the CART trees
 	 * 
@@ -188,6 +200,18 @@ public class CartTreeSet {
 					featureDef, phTranslator);
 			magVsize = htsReader.getVectorSize();
 		}
+
+		CART[][] trees = new CART[HMMData.FeatureType.values().length][];
+		int[] minNumberOfData = new int[trees.length];
+		trees[HMMData.FeatureType.DUR.ordinal()] = durTree;
+		trees[HMMData.FeatureType.LF0.ordinal()] = lf0Tree;
+		trees[HMMData.FeatureType.MGC.ordinal()] = mgcTree;
+		trees[HMMData.FeatureType.STR.ordinal()] = strTree;
+		trees[HMMData.FeatureType.MAG.ordinal()] = magTree;
+		// durations are looked up down to the leaves, the other streams stop at nodes with at least one data item
+		Arrays.fill(minNumberOfData, 1);
+		minNumberOfData[HMMData.FeatureType.DUR.ordinal()] = 0;
+		pdfs = new PdfLookupCache(trees, minNumberOfData, htsData.getModelCacheSize());
 	}
 
 	/***
@@ -214,7 +238,7 @@ public class CartTreeSet {
 		double durscale = htsData.getDurationScale();
 		double meanVector[], varVector[];
 		// the duration tree has only one state
-		PdfLeafNode node = (PdfLeafNode) durTree[0].interpretToNode(fv, 0);
+		PdfLeafNode node = pdfs.getLeaves(fv, HMMData.FeatureType.DUR)[0];
 
 		meanVector = node.getMean();
 		varVector = node.getVariance();
@@ -257,8 +281,9 @@ public class CartTreeSet {
 	 *            uvthresh
 	 */
 	public void searchLf0InCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef, double uvthresh) {
+		PdfLeafNode[] leaves = pdfs.getLeaves(fv, HMMData.FeatureType.LF0);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) lf0Tree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves[s];
 			m.setLf0Mean(s, node.getMean());
 			m.setLf0Variance(s, node.getVariance());
 			// set voiced or unvoiced
@@ -281,8 +306,9 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchMgcInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = pdfs.getLeaves(fv, HMMData.FeatureType.MGC);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) mgcTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves[s];
 			m.setMcepMean(s, node.getMean());
 			m.setMcepVariance(s, node.getVariance());
 		}
@@ -299,8 +325,9 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchStrInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = pdfs.getLeaves(fv, HMMData.FeatureType.STR);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) strTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves[s];
 			m.setStrMean(s, node.getMean());
 			m.setStrVariance(s, node.getVariance());
 		}
@@ -317,8 +344,9 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchMagInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = pdfs.getLeaves(fv, HMMData.FeatureType.MAG);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) magTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves[s];
 			m.setMagMean(s, node.getMean());
 			m.setMagVariance(s, node.getVariance());
 		}
@@ -183,6 +183,8 @@ public class HMMData {
 	 * voice. the Cart tree also contains the corresponding pdfs.
 	 */
 	private CartTreeSet cart = new CartTreeSet();
+	/* max number of contexts whose leaf pdfs are remembered, in total for all streams of this voice; 0 disables */
+	private int modelCacheSize = 20000;
 
 	/** HMM pdf model files and ModelSet object */
 	private InputStream pdfDurStream; /* durations Pdf file */
@@ -332,6 +334,10 @@ public class HMMData {
 		return useFourierMag;
 	}
 
+	public int getModelCacheSize() {
+		return modelCacheSize;
+	}
+
 	public boolean getUseGV() {
 		return useGV;
 	}
@@ -527,6 +533,10 @@ public class HMMData {
 		gvWeightStr = dval;
 	}
 
+	public void setModelCacheSize(int ival) {
+		modelCacheSize = ival;
+	}
+
 	public void setNumFilters(int val) {
 		numFilters = val;
 	}
@@ -558,6 +568,7 @@ public class HMMData {
 		treeMgcStream = p.getStream(prefix + ".Ftm"); /* Tree MCP */
 		treeStrStream = p.getStream(prefix + ".Fts"); /* Tree STR */
 		treeMagStream = p.getStream(prefix + ".Fta"); /* Tree MAG */
+		modelCacheSize = p.getInteger(prefix + ".modelCacheSize", modelCacheSize); /* cache of leaf pdfs per context */
 
 		pdfDurStream = p.getStream(prefix + ".Fmd"); /* Model DUR */
 		pdfLf0Stream = p.getStream(prefix + ".Fmf"); /* Model LF0 */
@@ -679,6 +690,7 @@ public class HMMData {
 
 		treeLf0Stream = p.getStream(prefix + ".Ftf");
 		pdfLf0Stream = p.getStream(prefix + ".Fmf");
+		modelCacheSize = p.getInteger(prefix + ".modelCacheSize", modelCacheSize);
 		useGV = p.getBoolean(prefix + ".useGV");
 		if (useGV) {
 			useContextDependentGV = p.getBoolean(prefix + ".useContextDependentGV", useContextDependentGV);
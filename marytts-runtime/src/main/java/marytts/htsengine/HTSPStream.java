@@ -63,8 +63,13 @@
 
 package marytts.htsengine;
 
-import marytts.util.MaryUtils;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import marytts.server.MaryProperties;
+import marytts.util.MaryUtils;
 
 import org.apache.log4j.Logger;
 
@@ -103,12 +108,6 @@ public class HTSPStream {
 	private double mseq[][];
 	/** sequence of inversed variance vector */
 	private double ivseq[][];
-	/** for forward substitution */
-	private double g[];
-	/** W' U^-1 W */
-	private double wuw[][];
-	/** W' U^-1 mu */
-	private double wum[];
 
 	/* ____________________Dynamic window ____________________ */
 	// private final HTSDWin dw; /* Windows used to calculate dynamic features, delta and delta-delta */
@@ -127,8 +126,6 @@ public class HTSPStream {
 
 	/* ____________________ GV related variables ____________________ */
 	/* GV: Global mean and covariance (diagonal covariance only) */
-	/** mean and variance for current utt eqs: (16), (17) */
-	private double mean, var;
 	/** max iterations in the speech parameter generation considering GV */
 	private final int maxGVIter;
 	/** convergence factor for GV iteration */
@@ -147,9 +144,6 @@ public class HTSPStream {
 	private final static double w2 = 1.0;
 	/** ~log(0) */
 	private final static double lzero = (-1.0e+10);
-	private double norm = 0.0;
-	private double GVobj = 0.0;
-	private double HMMobj = 0.0;
 	private double gvmean[];
 	private double gvcovInv[];
 	/** GV flag sequence, to consider or not the frame in gv */
@@ -176,9 +170,6 @@ public class HTSPStream {
 		/* ___________________________Matrices initialisation___________________ */
 		mseq = new double[nT][vSize];
 		ivseq = new double[nT][vSize];
-		g = new double[nT];
-		wuw = new double[nT][WIDTH];
-		wum = new double[nT];
 
 		/* GV Switch sequence initialisation */
 		gvSwitch = new boolean[nT];
@@ -252,12 +243,143 @@ public class HTSPStream {
 		}
 	}
 
-	private void printWUW(int t) {
+	private void printWUW(Workspace ws, int t) {
 		for (int i = 0; i < WIDTH; i++)
-			System.out.print("WUW[" + t + "][" + i + "]=" + wuw[t][i] + "  ");
+			System.out.print("WUW[" + t + "][" + i + "]=" + ws.wuw[t * WIDTH + i] + "  ");
 		System.out.println("");
 	}
 
+	/**
+	 * The work arrays needed to generate the parameters of one dimension for a range of frames. They are allocated once per
+	 * thread working on this stream and reused for all the dimensions that thread generates, so that dimensions can be generated
+	 * in parallel.
+	 */
+	private final class Workspace {
+		/** W' U^-1 W, band of WIDTH values per frame */
+		final double[] wuw;
+		/** W' U^-1 mu */
+		final double[] wum;
+		/** LDL factorization of wuw, same layout as wuw */
+		final double[] ldl;
+		/** for forward substitution, and the gradient in GV optimisation */
+		final double[] g;
+		/** solution for the frames in the range */
+		final double[] c;
+		/** used in GV optimisation */
+		final double[] diag;
+		final double[] parOri;
+		/** mean and variance for current utt eqs: (16), (17) */
+		double mean, var;
+		double norm = 0.0;
+		double GVobj = 0.0;
+		double HMMobj = 0.0;
+
+		Workspace(int length) {
+			wuw = new double[length * WIDTH];
+			wum = new double[length];
+			ldl = new double[length * WIDTH];
+			g = new double[length];
+			c = new double[length];
+			diag = new double[length];
+			parOri = new double[length];
+		}
+	}
+
+	/**
+	 * Generates the parameters of dimensions [from, to) of this stream for the given frames, splitting the dimensions among the
+	 * threads of the fork-join pool.
+	 */
+	private final class DimensionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final HMMData htsData;
+		private final boolean useGV;
+		private final FrameRange frames;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		DimensionTask(HMMData htsData, boolean useGV, FrameRange frames, int from, int to, int grain) {
+			this.htsData = htsData;
+			this.useGV = useGV;
+			this.frames = frames;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				Workspace ws = new Workspace(frames.length);
+				for (int m = from; m < to; m++) {
+					mlpg(ws, m, htsData, useGV, frames);
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new DimensionTask(htsData, useGV, frames, from, mid, grain), new DimensionTask(htsData, useGV, frames,
+						mid, to, grain));
+			}
+		}
+	}
+
+	/**
+	 * The frames for which a system of equations is solved, starting at frame <code>start</code>, of which the solution is kept
+	 * for the frames [keepFrom, keepTo).
+	 */
+	private static final class FrameRange {
+		final int start;
+		final int length;
+		final int keepFrom;
+		final int keepTo;
+
+		FrameRange(int start, int length, int keepFrom, int keepTo) {
+			this.start = start;
+			this.length = length;
+			this.keepFrom = keepFrom;
+			this.keepTo = keepTo;
+		}
+	}
+
+	private static ForkJoinPool mlpgPool;
+
+	/**
+	 * Get the fork-join pool on which parameter streams and their dimensions are generated in parallel. Its size is given by
+	 * the property <code>htsengine.mlpg.threads</code>, where 0 means one thread per available processor.
+	 * 
+	 * @return the shared pool, or null if parameters are to be generated on the calling thread only.
+	 */
+	static synchronized ForkJoinPool getMlpgPool() {
+		if (mlpgPool == null) {
+			int threads = MaryProperties.getInteger("htsengine.mlpg.threads", 0);
+			if (threads <= 0) {
+				threads = Runtime.getRuntime().availableProcessors();
+			}
+			if (threads == 1) {
+				return null;
+			}
+			mlpgPool = new ForkJoinPool(threads);
+		}
+		return mlpgPool;
+	}
+
+	/**
+	 * Run a task on the parameter generation pool: directly if the calling thread is already one of the pool's workers,
+	 * otherwise by submitting it to the pool and waiting for it.
+	 * 
+	 * @param pool
+	 *            the pool
+	 * @param task
+	 *            the task
+	 */
+	static void invoke(ForkJoinPool pool, ForkJoinTask<?> task) {
+		if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+	}
+
 	public void mlpg(HMMData htsData) {
 		mlpg(htsData, htsData.getUseGV());
 	}
@@ -266,37 +388,83 @@ public class HTSPStream {
 	 * mlpg: generate sequence of speech parameter vector maximizing its output probability for given pdf sequence
 	 */
 	public void mlpg(HMMData htsData, boolean useGV) {
+		mlpg(htsData, useGV, getMlpgPool());
+	} /* method mlpg */
+
+	/*
+	 * as above, with the dimensions generated in parallel on the given pool, or one after the other on the calling thread if the
+	 * pool is null
+	 */
+	void mlpg(HMMData htsData, boolean useGV, ForkJoinPool pool) {
 
 		if (htsData.getUseContextDependentGV())
 			logger.info("Context-dependent global variance optimization: gvLength = " + gvLength);
 		else
 			logger.info("Global variance optimization");
 
-		for (int m = 0; m < order; m++) {
-			calcWUWandWUM(m);
-			double[][] mywuw = new double[nT][];
-			for (int x = 0; x < wuw.length; x++) {
-				mywuw[x] = Arrays.copyOf(wuw[x], wuw[x].length);
+		mlpg(htsData, useGV, new FrameRange(0, nT, 0, nT), pool);
+	}
+
+	/**
+	 * Generate the parameters for the frames [from, to) only, without global variance optimisation. The system of equations is
+	 * solved for these frames plus up to <code>context</code> frames on either side, and everything outside of that is ignored,
+	 * so the result is an approximation of what {@link #mlpg(HMMData, boolean)} generates for these frames, which gets better the
+	 * larger the context is. This allows to generate the parameters of an utterance window by window, e.g. for vocoding the
+	 * start of the utterance before its end is generated.
+	 * 
+	 * @param htsData
+	 *            htsData
+	 * @param from
+	 *            the first frame to generate
+	 * @param to
+	 *            the frame after the last one to generate
+	 * @param context
+	 *            the number of frames before and after the range to take into account
+	 */
+	public void mlpg(HMMData htsData, int from, int to, int context) {
+		int start = Math.max(0, from - context);
+		int end = Math.min(nT, to + context);
+		mlpg(htsData, false, new FrameRange(start, end - start, from, to), getMlpgPool());
+	}
+
+	private void mlpg(HMMData htsData, boolean useGV, FrameRange frames, ForkJoinPool pool) {
+		/* the dimensions are independent of each other, so they can be generated in parallel */
+		if (pool != null && order > 1) {
+			int grain = Math.max(1, (order + pool.getParallelism() - 1) / pool.getParallelism());
+			invoke(pool, new DimensionTask(htsData, useGV, frames, 0, order, grain));
+		} else {
+			Workspace ws = new Workspace(frames.length);
+			for (int m = 0; m < order; m++) {
+				mlpg(ws, m, htsData, useGV, frames);
 			}
-			double[] mywum = Arrays.copyOf(wum, wum.length);
-			ldlFactorization(mywuw); /* LDL factorization */
-			forwardSubstitution(mywum, mywuw); /* forward substitution in Cholesky decomposition */
-			backwardSubstitution(m, mywuw); /* backward substitution in Cholesky decomposition */
-
-			/* Global variance optimisation for MCP and LF0 */
-			if (useGV && gvLength > 0) {
-				if (htsData.getGvMethodGradient())
-					gvParmGenGradient(m, false); // this is the previous method we have in MARY, using the Gradient as in the
+		}
+	}
+
+	/* generate the parameters of dimension m for the given frames; GV optimisation needs the whole utterance */
+	private void mlpg(Workspace ws, int m, HMMData htsData, boolean useGV, FrameRange frames) {
+		int n = frames.length;
+		calcWUWandWUM(ws, m, frames.start, n);
+		System.arraycopy(ws.wuw, 0, ws.ldl, 0, n * WIDTH);
+		ldlFactorization(ws.ldl, n); /* LDL factorization */
+		forwardSubstitution(ws.wum, ws.ldl, ws.g, n); /* forward substitution in Cholesky decomposition */
+		backwardSubstitution(ws.ldl, ws.g, ws.c, n); /* backward substitution in Cholesky decomposition */
+		for (int t = frames.keepFrom; t < frames.keepTo; t++) {
+			par[t][m] = ws.c[t - frames.start];
+		}
+
+		/* Global variance optimisation for MCP and LF0 */
+		if (useGV && gvLength > 0 && n == nT) {
+			if (htsData.getGvMethodGradient())
+				gvParmGenGradient(ws, m, false); // this is the previous method we have in MARY, using the Gradient as in the
 													// Paper of Toda et. al. IEICE 2007
-													// if using this method the variances have to be inverse (see note in GVModel
-													// set: case NEWTON in gv optimization)
+													// if using this method the variances have to be inverse (see note in
+													// GVModel set: case NEWTON in gv optimization)
 													// this method seems to give a better result
-				else
-					gvParmGenDerivative(m, false); // this is the method in the hts_engine 1.04 the variances are not inverse
+			else
+				gvParmGenDerivative(ws, m, false); // this is the method in the hts_engine 1.04 the variances are not inverse
 
-			}
 		}
-	} /* method mlpg */
+	}
 
 	/*----------------- HTS parameter generation fuctions  -----------------------------*/
 
@@ -310,29 +478,33 @@ public class HTSPStream {
 	/* L'C = y , solve for C using backward substitution */
 	/* So having A and B we can find the parameters C. */
 	/* U^{-1} = inverse covariance : inseq[][] */
-	private void calcWUWandWUM(int m) {
+	/* WUW is stored as a band: WUW[t][k] is at wuw[t * WIDTH + k] */
+	/* The system covers the n frames from frame start on; t is counted from start, frames outside are ignored. */
+	private void calcWUWandWUM(Workspace ws, int m, int start, int n) {
+		double[] wuw = ws.wuw;
+		double[] wum = ws.wum;
 		/* initialise */
-		Arrays.fill(wum, 0, nT, 0.0);
+		Arrays.fill(wum, 0, n, 0.0);
+		Arrays.fill(wuw, 0, n * WIDTH, 0.0);
 		/* for all frames: */
-		for (int t = 0; t < nT; t++) {
-			/* initialise */
-			Arrays.fill(wuw[t], 0.0);
+		for (int t = 0; t < n; t++) {
+			int row = t * WIDTH;
 			/* calc WUW & WUM, U is already inverse */
 			for (int i = 0; i < NUM; i++) {
 				int dwWidth_iright = rightWidths[i];
 				int iorder = i * order + m;
 				for (int j = leftWidths[i]; j <= dwWidth_iright; j++) {
-					if ((t + j >= 0) && (t + j < nT)) {
+					if ((t + j >= 0) && (t + j < n)) {
 						double dwCoef_ij = xcoefs[1 + i * NUM - j];
 						if (dwCoef_ij != 0.0) {
-							double WU = dwCoef_ij * ivseq[t + j][iorder];
+							double WU = dwCoef_ij * ivseq[start + t + j][iorder];
 
-							wum[t] += WU * mseq[t + j][iorder];
-							for (int k = 0; (k < WIDTH) && (t + k < nT); k++) {
+							wum[t] += WU * mseq[start + t + j][iorder];
+							for (int k = 0; (k < WIDTH) && (t + k < n); k++) {
 								if (k - j <= dwWidth_iright) {
 									double dwCoef_ikj = xcoefs[1 + i * NUM + k - j];
 									if (dwCoef_ikj != 0.0) {
-										wuw[t][k] += WU * dwCoef_ikj;
+										wuw[row + k] += WU * dwCoef_ikj;
 									}
 								}
 							} /* for k */
@@ -341,93 +513,82 @@ public class HTSPStream {
 				} /* for j */
 			} /* for i */
 		} /* for t */
-		/*
-		 * if(debug){ for(int t=0; t<nT; t++) { System.out.format("t=%d wum=%f  wuw:", t, wum[t]); for(int k=0; k<wuw[t].length;
-		 * k++) System.out.format("%f ", wuw[t][k]); System.out.format("\n"); } System.out.format("\n"); }
-		 */
 	}
 
-	/** ldlFactorization: Factorize W'*U^{-1}*W to L*D*L' (L: lower triangular, D: diagonal) */
-	private static void ldlFactorization(double[][] mywuw) {
-		for (int t = 0; t < mywuw.length; t++) {
-
-			/*
-			 * if(debug){ System.out.println("WUW calculation:"); printWUW(t); }
-			 */
-
+	/** ldlFactorization: Factorize W'*U^{-1}*W to L*D*L' (L: lower triangular, D: diagonal), in place */
+	private static void ldlFactorization(double[] ldl, int nT) {
+		for (int t = 0; t < nT; t++) {
+			int row = t * WIDTH;
 			/*
 			 * I need i=1 for the delay in t, but the indexes i in WUW[t][i] go from 0 to 2 so wherever i is used as index i=i-1
 			 * (this is just to keep somehow the original c implementation).
 			 */
-			for (int i = 1; (i < WIDTH) && (t - i >= 0); i++)
-				mywuw[t][0] -= mywuw[t - i][i] * mywuw[t - i][i] * mywuw[t - i][0];
+			for (int i = 1; (i < WIDTH) && (t - i >= 0); i++) {
+				int prow = row - i * WIDTH;
+				ldl[row] -= ldl[prow + i] * ldl[prow + i] * ldl[prow];
+			}
 
 			for (int i = 2; i <= WIDTH; i++) {
-				for (int j = 1; (i + j <= WIDTH) && (t - j >= 0); j++)
-					mywuw[t][i - 1] -= mywuw[t - j][j] * mywuw[t - j][i + j - 1] * mywuw[t - j][0];
-				mywuw[t][i - 1] /= mywuw[t][0];
-
+				for (int j = 1; (i + j <= WIDTH) && (t - j >= 0); j++) {
+					int prow = row - j * WIDTH;
+					ldl[row + i - 1] -= ldl[prow + j] * ldl[prow + i + j - 1] * ldl[prow];
+				}
+				ldl[row + i - 1] /= ldl[row];
 			}
-			/*
-			 * if(debug) { System.out.println("LDL factorization:"); printWUW(t); System.out.println(); }
-			 */
 		}
 
 	}
 
 	/** forward_Substitution */
-	private void forwardSubstitution(double[] mywum, double[][] mywuw) {
-		System.arraycopy(mywum, 0, g, 0, mywum.length);
+	private static void forwardSubstitution(double[] wum, double[] ldl, double[] g, int nT) {
+		System.arraycopy(wum, 0, g, 0, nT);
 		for (int t = 0; t < nT; t++) {
 			for (int i = 1; (i < WIDTH) && (t - i >= 0); i++)
-				g[t] -= mywuw[t - i][i] * g[t - i]; /* i as index should be i-1 */
-			// System.out.println("  g[" + t + "]=" + g[t]);
+				g[t] -= ldl[(t - i) * WIDTH + i] * g[t - i]; /* i as index should be i-1 */
 		}
-		/*
-		 * for(t=0; t<nT; t++) System.out.format("%f ", g[t]); System.out.println();
-		 */
 	}
 
 	/** backward_Substitution */
-	private void backwardSubstitution(int m, double[][] mywuw) {
+	private static void backwardSubstitution(double[] ldl, double[] g, double[] c, int nT) {
 		for (int t = (nT - 1); t >= 0; t--) {
-			par[t][m] = g[t] / mywuw[t][0];
+			int row = t * WIDTH;
+			double p = g[t] / ldl[row];
 			for (int i = 1; (i < WIDTH) && (t + i < nT); i++) {
-				par[t][m] -= mywuw[t][i] * par[t + i][m]; /* i as index should be i-1 */
+				p -= ldl[row + i] * c[t + i]; /* i as index should be i-1 */
 			}
-			// System.out.println("  par[" + t + "]["+ m + "]=" + par[t][m]);
+			c[t] = p;
 		}
 
 	}
 
 	/*----------------- GV functions  -----------------------------*/
-	private void gvParmGenDerivative(int m, boolean debug) {
+	private void gvParmGenDerivative(Workspace ws, int m, boolean debug) {
 		int t, iter;
 		double step = stepInit;
 		double prev = -lzero;
 		double obj = 0.0;
-		double diag[] = new double[nT];
-		double par_ori[] = new double[nT];
-		mean = 0.0;
-		var = 0.0;
+		double diag[] = ws.diag;
+		double par_ori[] = ws.parOri;
+		ws.mean = 0.0;
+		ws.var = 0.0;
 		int numDown = 0;
 
 		/* make a copy in case there is problems during optimisation */
 		for (t = 0; t < nT; t++) {
-			g[t] = 0.0;
+			ws.g[t] = 0.0;
 			par_ori[t] = par[t][m];
 		}
 
 		/* first convert c (c=par) according to GV pdf and use it as the initial value */
-		convGV(m);
+		convGV(ws, m);
 
 		/* recalculate R=WUW and r=WUM */
-		calcWUWandWUM(m);
+		calcWUWandWUM(ws, m, 0, nT);
 
 		/* iteratively optimize c */
 		for (iter = 1; iter <= maxGVIter; iter++) {
 			/* calculate GV objective and its derivative with respect to c */
-			obj = calcDerivative(m);
+			obj = calcDerivative(ws, m);
 
 			/* objective function improved -> increase step size */
 			if (obj > prev)
@@ -439,7 +600,7 @@ public class HTSPStream {
 
 			/* steepest ascent and quasy Newton c(i+1) = c(i) + alpha * grad(c(i)) */
 			for (t = 0; t < nT; t++)
-				par[t][m] += step * g[t];
+				par[t][m] += step * ws.g[t];
 
 			// System.out.format("iter=%d  prev=%f  obj=%f \n", iter, prev, obj);
 			prev = obj;
@@ -448,34 +609,34 @@ public class HTSPStream {
 
 	}
 
-	private void gvParmGenGradient(int m, boolean debug) {
+	private void gvParmGenGradient(Workspace ws, int m, boolean debug) {
 		int t, iter;
 		double step = stepInit;
 		double obj = 0.0, prev = 0.0;
-		double diag[] = new double[nT];
-		double par_ori[] = new double[nT];
-		mean = 0.0;
-		var = 0.0;
+		double diag[] = ws.diag;
+		double par_ori[] = ws.parOri;
+		ws.mean = 0.0;
+		ws.var = 0.0;
 		int numDown = 0;
 		int totalNumIter = 0;
 		int firstIter = 0;
 
 		/* make a copy in case there is problems during optimisation */
 		for (t = 0; t < nT; t++) {
-			g[t] = 0.0;
+			ws.g[t] = 0.0;
 			par_ori[t] = par[t][m];
 		}
 
 		/* first convert c (c=par) according to GV pdf and use it as the initial value */
-		convGV(m);
+		convGV(ws, m);
 
 		/* recalculate R=WUW and r=WUM */
-		calcWUWandWUM(m);
+		calcWUWandWUM(ws, m, 0, nT);
 
 		/* iteratively optimize c */
 		for (iter = 1; iter <= maxGVIter; iter++) {
 			/* calculate GV objective and its derivative with respect to c */
-			obj = calcGradient(m);
+			obj = calcGradient(ws, m);
 			/* accelerate/decelerate step size */
 			if (iter > 1) {
 				/* objective function improved -> increase step size */
@@ -505,28 +666,28 @@ public class HTSPStream {
 				}
 			} else {
 				if (debug)
-					logger.info("  First iteration:  GVobj=" + obj + " (HMMobj=" + HMMobj + "  GVobj=" + GVobj + ")");
+					logger.info("  First iteration:  GVobj=" + obj + " (HMMobj=" + ws.HMMobj + "  GVobj=" + ws.GVobj + ")");
 			}
 			/* convergence check (Euclid norm, objective function) */
-			if (norm < minEucNorm || (iter > 1 && Math.abs(obj - prev) < GVepsilon)) {
+			if (ws.norm < minEucNorm || (iter > 1 && Math.abs(obj - prev) < GVepsilon)) {
 				if (debug)
-					logger.info("  Number of iterations: [   " + iter + "   ] GVobj=" + obj + " (HMMobj=" + HMMobj + "  GVobj="
-							+ GVobj + ")");
+					logger.info("  Number of iterations: [   " + iter + "   ] GVobj=" + obj + " (HMMobj=" + ws.HMMobj + "  GVobj="
+							+ ws.GVobj + ")");
 				totalNumIter++; // gv.incTotalNumIter(iter);
 				if (m == 0)
 					firstIter = iter;// gv.setFirstIter(iter);
 				if (debug) {
 					if (iter > 1)
-						logger.info("  Converged (norm=" + norm + ", change=" + Math.abs(obj - prev) + ")");
+						logger.info("  Converged (norm=" + ws.norm + ", change=" + Math.abs(obj - prev) + ")");
 					else
-						logger.info("  Converged (norm=" + norm + ")");
+						logger.info("  Converged (norm=" + ws.norm + ")");
 				}
 				break;
 			}
 			/* steepest ascent and quasy Newton c(i+1) = c(i) + alpha * grad(c(i)) */
 			for (t = 0; t < nT; t++) {
-				par[t][m] += step * g[t];
-				diag[t] = g[t];
+				par[t][m] += step * ws.g[t];
+				diag[t] = ws.g[t];
 			}
 			prev = obj;
 		}
@@ -543,149 +704,149 @@ public class HTSPStream {
 		logger.info("Gradient GV optimization for feature: (" + m + ")  number of iterations=" + totalNumIter);
 	}
 
-	private double calcGradient(int m) {
+	private double calcGradient(Workspace ws, int m) {
 		int t, i, k;
 		double vd;
 		double h, aux;
 		double w = 1.0 / (NUM * nT);
 
 		/* recalculate GV of the current c = par */
-		calcGV(m);
+		calcGV(ws, m);
 
 		/* GV objective function and its derivative with respect to c */
 		/* -1/2 * v(c)' U^-1 v(c) + v(c)' U^-1 mu + K --> second part of eq (20) in Toda and Tokuda IEICE-2007 paper. */
-		GVobj = -0.5 * w2 * (var - gvmean[m]) * gvcovInv[m] * (var - gvmean[m]);
-		vd = gvcovInv[m] * (var - gvmean[m]);
+		ws.GVobj = -0.5 * w2 * (ws.var - gvmean[m]) * gvcovInv[m] * (ws.var - gvmean[m]);
+		vd = gvcovInv[m] * (ws.var - gvmean[m]);
 
 		/* calculate g = R*c = WUW*c */
 		for (t = 0; t < nT; t++) {
-			g[t] = wuw[t][0] * par[t][m];
+			ws.g[t] = ws.wuw[t * WIDTH] * par[t][m];
 			for (i = 2; i <= WIDTH; i++) { /* WIDTH goes from 0 to 2 WIDTH=3 */
 				if (t + i - 1 < nT)
-					g[t] += wuw[t][i - 1] * par[t + i - 1][m]; /* i as index should be i-1 */
+					ws.g[t] += ws.wuw[t * WIDTH + i - 1] * par[t + i - 1][m]; /* i as index should be i-1 */
 				if (t - i + 1 >= 0)
-					g[t] += wuw[t - i + 1][i - 1] * par[t - i + 1][m]; /* i as index should be i-1 */
+					ws.g[t] += ws.wuw[(t - i + 1) * WIDTH + i - 1] * par[t - i + 1][m]; /* i as index should be i-1 */
 			}
 		}
 
-		for (t = 0, HMMobj = 0.0, norm = 0.0; t < nT; t++) {
+		for (t = 0, ws.HMMobj = 0.0, ws.norm = 0.0; t < nT; t++) {
 
-			HMMobj += -0.5 * w1 * w * par[t][m] * (g[t] - 2.0 * wum[t]);
+			ws.HMMobj += -0.5 * w1 * w * par[t][m] * (ws.g[t] - 2.0 * ws.wum[t]);
 
 			/* case STEEPEST: do not use hessian */
 			// h = 1.0;
 			/* case NEWTON */
 			/* only diagonal elements of Hessian matrix are used */
-			h = ((nT - 1) * vd + 2.0 * gvcovInv[m] * (par[t][m] - mean) * (par[t][m] - mean));
-			h = -w1 * w * wuw[t][1 - 1] - w2 * 2.0 / (nT * nT) * h;
+			h = ((nT - 1) * vd + 2.0 * gvcovInv[m] * (par[t][m] - ws.mean) * (par[t][m] - ws.mean));
+			h = -w1 * w * ws.wuw[t * WIDTH] - w2 * 2.0 / (nT * nT) * h;
 
 			h = -1.0 / h;
 
 			/* gradient vector */
 			if (gvSwitch[t]) {
-				aux = (par[t][m] - mean) * vd;
-				g[t] = h * (w1 * w * (-g[t] + wum[t]) + w2 * -2.0 / nT * aux);
+				aux = (par[t][m] - ws.mean) * vd;
+				ws.g[t] = h * (w1 * w * (-ws.g[t] + ws.wum[t]) + w2 * -2.0 / nT * aux);
 			} else
-				g[t] = h * (w1 * w * (-g[t] + wum[t]));
+				ws.g[t] = h * (w1 * w * (-ws.g[t] + ws.wum[t]));
 
 			/* Euclidian norm of gradient vector */
-			norm += g[t] * g[t];
+			ws.norm += ws.g[t] * ws.g[t];
 
 		}
 
-		norm = Math.sqrt(norm);
+		ws.norm = Math.sqrt(ws.norm);
 		// logger.info("HMMobj=" + HMMobj + "  GVobj=" + GVobj + "  norm=" + norm);
 
-		return (HMMobj + GVobj);
+		return (ws.HMMobj + ws.GVobj);
 
 	}
 
-	private double calcDerivative(int m) {
+	private double calcDerivative(Workspace ws, int m) {
 		int t, i, k;
 		double vd;
 		double h, aux;
 		double w = 1.0 / (NUM * nT);
 
 		/* recalculate GV of the current c = par */
-		calcGV(m);
+		calcGV(ws, m);
 
 		/* GV objective function and its derivative with respect to c */
 		/* -1/2 * v(c)' U^-1 v(c) + v(c)' U^-1 mu + K --> second part of eq (20) in Toda and Tokuda IEICE-2007 paper. */
-		GVobj = -0.5 * w2 * var * gvcovInv[m] * (var - 2.0 * gvmean[m]);
-		vd = -2.0 * gvcovInv[m] * (var - gvmean[m]) / nT;
+		ws.GVobj = -0.5 * w2 * ws.var * gvcovInv[m] * (ws.var - 2.0 * gvmean[m]);
+		vd = -2.0 * gvcovInv[m] * (ws.var - gvmean[m]) / nT;
 		// System.out.format("GVobj=%f  vd=%f \n", GVobj, vd);
 
 		/* calculate g = R*c = WUW*c */
 		for (t = 0; t < nT; t++) {
-			g[t] = wuw[t][0] * par[t][m];
+			ws.g[t] = ws.wuw[t * WIDTH] * par[t][m];
 			for (i = 2; i <= WIDTH; i++) { /* WIDTH goes from 0 to 2 WIDTH=3 */
 				if (t + i - 1 < nT)
-					g[t] += wuw[t][i - 1] * par[t + i - 1][m]; /* i as index should be i-1 */
+					ws.g[t] += ws.wuw[t * WIDTH + i - 1] * par[t + i - 1][m]; /* i as index should be i-1 */
 				if (t - i + 1 >= 0)
-					g[t] += wuw[t - i + 1][i - 1] * par[t - i + 1][m]; /* i as index should be i-1 */
+					ws.g[t] += ws.wuw[(t - i + 1) * WIDTH + i - 1] * par[t - i + 1][m]; /* i as index should be i-1 */
 			}
 		}
 
-		for (t = 0, HMMobj = 0.0; t < nT; t++) {
+		for (t = 0, ws.HMMobj = 0.0; t < nT; t++) {
 
-			HMMobj += w1 * w * par[t][m] * (wum[t] - 0.5 * g[t]);
+			ws.HMMobj += w1 * w * par[t][m] * (ws.wum[t] - 0.5 * ws.g[t]);
 
-			h = -w1 * w * wuw[t][1 - 1] - w2 * 2.0 / (nT * nT)
-					* ((nT - 1) * gvcovInv[m] * (var - gvmean[m]) + 2.0 * gvcovInv[m] * (par[t][m] - mean) * (par[t][m] - mean));
+			h = -w1 * w * ws.wuw[t * WIDTH] - w2 * 2.0 / (nT * nT)
+					* ((nT - 1) * gvcovInv[m] * (ws.var - gvmean[m]) + 2.0 * gvcovInv[m] * (par[t][m] - ws.mean) * (par[t][m] - ws.mean));
 
 			// System.out.format("HMMobj=%f  h=%f \n", HMMobj, h);
 			/* gradient vector */
 			if (gvSwitch[t]) {
-				g[t] = 1.0 / h * (w1 * w * (-g[t] + wum[t]) + w2 * vd * (par[t][m] - mean));
+				ws.g[t] = 1.0 / h * (w1 * w * (-ws.g[t] + ws.wum[t]) + w2 * vd * (par[t][m] - ws.mean));
 
 			} else
-				g[t] = 1.0 / h * (w1 * w * (-g[t] + wum[t]));
+				ws.g[t] = 1.0 / h * (w1 * w * (-ws.g[t] + ws.wum[t]));
 
 		}
 
-		return (-(HMMobj + GVobj));
+		return (-(ws.HMMobj + ws.GVobj));
 
 	}
 
-	private void convGV(int m) {
+	private void convGV(Workspace ws, int m) {
 		int t, k;
 		double ratio, mixmean;
 		/* calculate GV of c */
-		calcGV(m);
+		calcGV(ws, m);
 
-		ratio = Math.sqrt(gvmean[m] / var);
+		ratio = Math.sqrt(gvmean[m] / ws.var);
 		// System.out.format("    mean=%f vari=%f ratio=%f \n", mean, var, ratio);
 
 		/* c'[t][d] = ratio * (c[t][d]-mean[d]) + mean[d] eq. (34) in Toda and Tokuda IEICE-2007 paper. */
 		for (t = 0; t < nT; t++) {
 			if (gvSwitch[t])
-				par[t][m] = ratio * (par[t][m] - mean) + mean;
+				par[t][m] = ratio * (par[t][m] - ws.mean) + ws.mean;
 		}
 
 	}
 
-	private void calcGV(int m) {
+	private void calcGV(Workspace ws, int m) {
 		int t, i;
-		mean = 0.0;
-		var = 0.0;
+		ws.mean = 0.0;
+		ws.var = 0.0;
 
 		/* mean */
 		for (t = 0; t < nT; t++)
 			if (gvSwitch[t]) {
-				mean += par[t][m];
+				ws.mean += par[t][m];
 				// System.out.format("(%d)%f ", t, par[t][m]);
 			}
-		mean = mean / gvLength;
+		ws.mean = ws.mean / gvLength;
 		// System.out.format("  --- gvlength=%d  mean=%f\n", gvLength, mean);
 
 		/* variance */
 		for (t = 0; t < nT; t++)
 			if (gvSwitch[t]) {
-				var += (par[t][m] - mean) * (par[t][m] - mean);
+				ws.var += (par[t][m] - ws.mean) * (par[t][m] - ws.mean);
 				// System.out.format("(%d)%f ", t, var);
 			}
 		// System.out.format("\n");
-		var = var / gvLength;
+		ws.var = ws.var / gvLength;
 
 	}
 
@@ -69,13 +69,18 @@ import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -109,6 +114,12 @@ public class HTSParameterGeneration {
 	private int totalUttFrame; // total number of frames in a mcep, str or mag Pst
 	private int totalLf0Frame; // total number of f0 voiced frames in a lf0 Pst
 
+	/* incremental generation of MGC, STR and MAG, see setIncremental() */
+	private int window = 0; // number of frames generated at a time, 0 if not incremental
+	private int lookahead = 0; // number of frames of context on either side of a window
+	private int generatedFrames = 0; // number of frames generated so far
+	private HMMData incrementalData = null;
+
 	private Logger logger = MaryUtils.getLogger("ParameterGeneration");
 
 	public HTSPStream getMcepPst() {
@@ -170,6 +181,62 @@ public class HTSParameterGeneration {
 
 	}
 
+	/**
+	 * Generate the MGC, STR and MAG parameters incrementally, <code>window</code> frames at a time, as the vocoder asks for them
+	 * through {@link #generateUpTo(int)}, rather than all at once in
+	 * {@link #htsMaximumLikelihoodParameterGeneration(HTSUttModel, HMMData)}. Then the vocoder can start producing audio as soon
+	 * as the first window is generated, whatever the length of the utterance.
+	 * <p>
+	 * Each window is generated taking into account <code>lookahead</code> frames before and after it, so the parameters
+	 * approximate those generated for the whole utterance at once. No global variance optimisation is done for these streams.
+	 * LF0 is always generated for the whole utterance.
+	 * 
+	 * @param window
+	 *            the number of frames to generate at a time; 0 means to generate the whole utterance at once
+	 * @param lookahead
+	 *            the number of frames of context on either side of a window
+	 */
+	public void setIncremental(int window, int lookahead) {
+		this.window = Math.max(0, window);
+		this.lookahead = Math.max(0, lookahead);
+	}
+
+	/**
+	 * @return true if the MGC, STR and MAG parameters are generated incrementally, false if they are all generated at once.
+	 */
+	public boolean isIncremental() {
+		return window > 0;
+	}
+
+	/**
+	 * In incremental mode, make sure that the MGC, STR and MAG parameters are generated at least up to and including the given
+	 * frame.
+	 * 
+	 * @param frame
+	 *            the frame needed next
+	 * @return the number of frames from the start of the utterance for which the parameters are available.
+	 */
+	public int generateUpTo(int frame) {
+		int totalFrames = voiced.length;
+		if (!isIncremental()) {
+			return totalFrames;
+		}
+		while (generatedFrames <= frame && generatedFrames < totalFrames) {
+			int from = generatedFrames;
+			int to = Math.min(totalFrames, from + window);
+			List<ForkJoinTask<?>> windowTasks = new ArrayList<ForkJoinTask<?>>();
+			if (mcepPst != null)
+				windowTasks.add(mlpgTask(mcepPst, incrementalData, from, to, lookahead));
+			if (strPst != null)
+				windowTasks.add(mlpgTask(strPst, incrementalData, from, to, lookahead));
+			if (magPst != null)
+				windowTasks.add(mlpgTask(magPst, incrementalData, from, to, lookahead));
+			runStreamTasks(windowTasks);
+			generatedFrames = to;
+		}
+		return generatedFrames;
+	}
+
 	/**
 	 * HTS maximum likelihood parameter generation
 	 *
@@ -303,51 +370,105 @@ public class HTSParameterGeneration {
 			magPst.fixDynFeatOnBoundaries();
 
 		// Step 3: optimize individual parameter streams
+		// The streams are independent of each other, so they are generated in parallel
+		List<ForkJoinTask<?>> streamTasks = new ArrayList<ForkJoinTask<?>>();
+
+		// In incremental mode, MGC, STR and MAG are generated later, in generateUpTo()
+		generatedFrames = 0;
+		incrementalData = htsData;
+		boolean generateAll = !isIncremental();
 
 		/* parameter generation for mcep */
-		if (mcepPst != null) {
+		if (mcepPst != null && generateAll) {
 			logger.info("Parameter generation for MGC: ");
 			if (htsData.getUseGV() && (htsData.getPdfMgcGVStream() != null))
 				mcepPst.setGvMeanVar(gvms.getGVmeanMgc(), gvms.getGVcovInvMgc());
-			mcepPst.mlpg(htsData, htsData.getUseGV());
+			streamTasks.add(mlpgTask(mcepPst, htsData, htsData.getUseGV()));
 		}
 
 		// parameter generation for lf0 */
+		boolean generateLf0 = false;
 		if (htsData.getUseAcousticModels())
 			loadMaryXmlF0(um, htsData);
 		else if (lf0Pst != null) {
 			logger.info("Parameter generation for LF0: ");
 			if (htsData.getUseGV() && (htsData.getPdfLf0GVStream() != null))
 				lf0Pst.setGvMeanVar(gvms.getGVmeanLf0(), gvms.getGVcovInvLf0());
-			lf0Pst.mlpg(htsData, htsData.getUseGV());
-			// here we need set realisedF0
-			setRealisedF0(lf0Pst, um, msNumStates);
+			streamTasks.add(mlpgTask(lf0Pst, htsData, htsData.getUseGV()));
+			generateLf0 = true;
 		}
 
 		/* parameter generation for str */
 		boolean useGV = false;
-		if (strPst != null) {
+		if (strPst != null && generateAll) {
 			logger.debug("Parameter generation for STR ");
 			if (htsData.getUseGV() && (htsData.getPdfStrGVStream() != null)) {
 				useGV = true;
 				strPst.setGvMeanVar(gvms.getGVmeanStr(), gvms.getGVcovInvStr());
 			}
-			strPst.mlpg(htsData, useGV);
+			streamTasks.add(mlpgTask(strPst, htsData, useGV));
 		}
 
 		/* parameter generation for mag */
 		useGV = false;
-		if (magPst != null) {
+		if (magPst != null && generateAll) {
 			logger.info("Parameter generation for MAG ");
 			if (htsData.getUseGV() && (htsData.getPdfMagGVStream() != null)) {
 				useGV = true;
 				magPst.setGvMeanVar(gvms.getGVmeanMag(), gvms.getGVcovInvMag());
 			}
-			magPst.mlpg(htsData, useGV);
+			streamTasks.add(mlpgTask(magPst, htsData, useGV));
+		}
+
+		runStreamTasks(streamTasks);
+
+		if (generateLf0) {
+			// here we need set realisedF0
+			setRealisedF0(lf0Pst, um, msNumStates);
 		}
 
 	} /* method htsMaximumLikelihoodParameterGeneration */
 
+	private static ForkJoinTask<?> mlpgTask(final HTSPStream pst, final HMMData htsData, final boolean useGV) {
+		return new RecursiveAction() {
+			@Override
+			protected void compute() {
+				pst.mlpg(htsData, useGV);
+			}
+		};
+	}
+
+	private static ForkJoinTask<?> mlpgTask(final HTSPStream pst, final HMMData htsData, final int from, final int to,
+			final int context) {
+		return new RecursiveAction() {
+			@Override
+			protected void compute() {
+				pst.mlpg(htsData, from, to, context);
+			}
+		};
+	}
+
+	/* run the parameter generation of the streams, in parallel if there is a pool for that */
+	private static void runStreamTasks(final List<ForkJoinTask<?>> streamTasks) {
+		ForkJoinPool pool = HTSPStream.getMlpgPool();
+		if (pool == null || streamTasks.size() < 2) {
+			for (ForkJoinTask<?> task : streamTasks) {
+				if (pool == null) {
+					task.invoke();
+				} else {
+					HTSPStream.invoke(pool, task);
+				}
+			}
+			return;
+		}
+		HTSPStream.invoke(pool, new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(streamTasks);
+			}
+		});
+	}
+
 	/* Save generated parameters in a binary file */
 	public void saveParamMaryFormat(String fileName, HTSPStream par, HMMData.FeatureType type) {
 		int t, m, i;
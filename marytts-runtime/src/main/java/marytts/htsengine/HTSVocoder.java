@@ -244,8 +244,40 @@ public class HTSVocoder {
 		return af;
 	}
 
+	/**
+	 * Synthesise speech from the generated parameter streams. The audio is produced one frame at a time; if an audio producer
+	 * is given, each frame is handed to it as one block as soon as it is ready.
+	 * 
+	 * @param lf0Pst
+	 *            lf0Pst
+	 * @param mcepPst
+	 *            mcepPst
+	 * @param strPst
+	 *            strPst
+	 * @param magPst
+	 *            magPst
+	 * @param voiced
+	 *            voiced
+	 * @param htsData
+	 *            htsData
+	 * @param audioProducer
+	 *            the producer to pass the audio on to, or null
+	 * @return the audio samples, or null if they were passed on to audioProducer
+	 * @throws Exception
+	 *             Exception
+	 */
 	public double[] htsMLSAVocoder(HTSPStream lf0Pst, HTSPStream mcepPst, HTSPStream strPst, HTSPStream magPst, boolean[] voiced,
 			HMMData htsData, HTSVocoderDataProducer audioProducer) throws Exception {
+		return htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, audioProducer, null);
+	}
+
+	/*
+	 * If pdf2par is not null, it generates the parameters incrementally, and each frame is generated just before it is
+	 * vocoded.
+	 */
+	private double[] htsMLSAVocoder(HTSPStream lf0Pst, HTSPStream mcepPst, HTSPStream strPst, HTSPStream magPst,
+			boolean[] voiced, HMMData htsData, HTSVocoderDataProducer audioProducer, HTSParameterGeneration pdf2par)
+			throws Exception {
 
 		double inc, x, MaxSample;
 		double xp = 0.0, xn = 0.0, fxp, fxn, mix; /* samples for pulse and for noise and the filtered ones */
@@ -327,14 +359,20 @@ public class HTSVocoder {
 		int s = 0; /* number of samples */
 		int s_double = 0;
 		int audio_size = computeAudioSize(mcepPst, htsData); /* audio size in samples, calculated as num frames * frame period */
-		double[] audio_double = new double[audio_size]; /* initialise buffer for audio */
+		/* initialise buffer for audio, unless it is passed on frame by frame */
+		double[] audio_double = (audioProducer == null) ? new double[audio_size] : null;
+		double[] frameAudio = new double[fprd]; /* audio of the current frame */
+		double mc[] = new double[m]; /* feature vector for a particular frame */
 
 		magSample = 1;
 		magPulseSize = 0;
+		int generatedFrames = 0;
 		for (mcepframe = 0, lf0frame = 0; mcepframe < mcepPst.getT(); mcepframe++) { /* for each mcep frame */
 
-			/** feature vector for a particular frame */
-			double mc[] = new double[m]; /* feature vector for a particular frame */
+			/* in incremental mode, generate the parameters of this frame if that has not been done yet */
+			if (pdf2par != null && mcepframe >= generatedFrames)
+				generatedFrames = pdf2par.generateUpTo(mcepframe);
+
 			/* get current feature vector mgc */
 			for (int i = 0; i < m; i++)
 				mc[i] = mcepPst.getPar(mcepframe, i);
@@ -507,11 +545,7 @@ public class HTSVocoder {
 				}
 
 				// System.out.format("%f ", x);
-				audio_double[s_double] = x;
-				if (audioProducer != null) {
-					audioProducer.putOneDataPoint(x);
-				}
-
+				frameAudio[fprd - 1 - j] = x;
 				s_double++;
 
 				if ((--i) == 0) {
@@ -524,6 +558,12 @@ public class HTSVocoder {
 
 			} /* for each sample in a period fprd */
 
+			if (audioProducer != null) {
+				audioProducer.putDataPoints(frameAudio, 0, fprd);
+			} else {
+				System.arraycopy(frameAudio, 0, audio_double, s_double - fprd, fprd);
+			}
+
 			/*********
 			 * For debuging if(voiced[mcepframe]) { double magf[] = SignalProcUtils.getFrameHalfMagnitudeSpectrum(source, 512, 1);
 			 * MaryUtils.plot(magf, "magf"); } System.out.format("str=%.2f\n", str);
@@ -581,20 +621,19 @@ public class HTSVocoder {
 	 */
 	private static double mlsafir(double x, double b[], int m, double a, double d[], int _pt3) {
 		d[_pt3 + 0] = x;
-		d[_pt3 + 1] = (1 - a * a) * d[_pt3 + 0] + (a * d[_pt3 + 1]);
-
-		for (int i = 2; i <= m; i++) {
-			d[_pt3 + i] += a * (d[_pt3 + i + 1] - d[_pt3 + i - 1]);
-		}
+		double prev = (1 - a * a) * d[_pt3 + 0] + (a * d[_pt3 + 1]);
+		d[_pt3 + 1] = prev;
 
+		// Update the delay line, accumulate the output and shift the delay line by one in a single pass:
+		// prev holds the updated value of the previous element, which the current one is shifted to.
 		double y = 0.0;
 		for (int i = 2; i <= m; i++) {
-			y += d[_pt3 + i] * b[i];
-		}
-
-		for (int i = m + 1; i > 1; i--) {
-			d[_pt3 + i] = d[_pt3 + i - 1];
+			double cur = d[_pt3 + i] + a * (d[_pt3 + i + 1] - prev);
+			y += cur * b[i];
+			d[_pt3 + i] = prev;
+			prev = cur;
 		}
+		d[_pt3 + m + 1] = prev;
 
 		return y;
 	}
@@ -1865,6 +1904,7 @@ public class HTSVocoder {
 		private HTSPStream magPst;
 		private boolean[] voiced;
 		private HMMData htsData;
+		private HTSParameterGeneration incremental;
 
 		public HTSVocoderDataProducer(int audioSize, HTSParameterGeneration pdf2par, HMMData htsData) {
 			super(audioSize, new AmplitudeNormalizer(INITIAL_MAX_AMPLITUDE));
@@ -1874,12 +1914,13 @@ public class HTSVocoder {
 			magPst = pdf2par.getMagPst();
 			voiced = pdf2par.getVoicedArray();
 			this.htsData = htsData;
+			incremental = pdf2par.isIncremental() ? pdf2par : null;
 
 		}
 
 		public void run() {
 			try {
-				htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this);
+				htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this, incremental);
 				putEndOfStream();
 			} catch (Exception e) {
 				logger.error("Cannot vocode", e);
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.LeafNode.PdfLeafNode;
+import marytts.cart.Node;
+import marytts.features.FeatureVector;
+import marytts.htsengine.HMMData.FeatureType;
+
+/**
+ * Memoizes the leaf pdfs that the per-state CART trees of all HMM parameter streams give for a context feature vector. Only the
+ * features that are actually queried by some decision node of the trees take part in the lookup key, so two feature vectors that
+ * differ only in features the trees never ask about share one entry, and a repeated context skips tree traversal entirely: on a
+ * miss, the leaves of all streams are looked up at once, and the following lookups of the other streams for the same context are
+ * answered from a per-thread reference to the last key and its entry, without going to the shared map again.
+ * <p>
+ * The cache is a size-bounded LRU map. In order not to have all synthesis threads contend for a single lock, it is split into a
+ * number of independently locked stripes, each of which gets an equal share of the maximum number of entries. A cache of size
+ * 0 only walks the trees.
+ */
+public class PdfLookupCache {
+	private static final int NUM_STRIPES = 16;
+
+	/** for each stream (indexed by FeatureType ordinal), one tree per HMM state, or null */
+	private final CART[][] trees;
+	private final int[] minNumberOfData;
+	/** the indices of the features queried by the trees, in increasing order */
+	private final int[] features;
+	private final Stripe[] stripes;
+	/** the key last looked up by this thread, and its leaves */
+	private final ThreadLocal<Object[]> last = new ThreadLocal<Object[]>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param trees
+	 *            for each stream, indexed by {@link FeatureType#ordinal()}, one tree per HMM state, or null if the stream has no
+	 *            trees
+	 * @param minNumberOfData
+	 *            for each stream, the minimum number of data, as in {@link CART#interpretToNode(FeatureVector, int)}
+	 * @param maxEntries
+	 *            the maximum number of contexts to remember; 0 disables caching
+	 */
+	public PdfLookupCache(CART[][] trees, int[] minNumberOfData, int maxEntries) {
+		this.trees = trees;
+		this.minNumberOfData = minNumberOfData;
+		BitSet queried = new BitSet();
+		for (CART[] streamTrees : trees) {
+			if (streamTrees != null) {
+				for (CART tree : streamTrees) {
+					collectFeatures(tree.getRootNode(), queried);
+				}
+			}
+		}
+		features = new int[queried.cardinality()];
+		for (int i = 0, f = queried.nextSetBit(0); f >= 0; i++, f = queried.nextSetBit(f + 1)) {
+			features[i] = f;
+		}
+		if (maxEntries > 0) {
+			stripes = new Stripe[NUM_STRIPES];
+			for (int i = 0; i < NUM_STRIPES; i++) {
+				stripes[i] = new Stripe(Math.max(1, maxEntries / NUM_STRIPES));
+			}
+		} else {
+			stripes = null;
+		}
+	}
+
+	private static void collectFeatures(Node node, BitSet queried) {
+		if (node instanceof DecisionNode) {
+			DecisionNode decisionNode = (DecisionNode) node;
+			queried.set(decisionNode.getFeatureIndex());
+			for (int i = 0; i < decisionNode.getNumberOfDaugthers(); i++) {
+				collectFeatures(decisionNode.getDaughter(i), queried);
+			}
+		}
+	}
+
+	/**
+	 * Find the leaf pdf of each state's tree of the given stream for the given context feature vector.
+	 *
+	 * @param fv
+	 *            context feature vector
+	 * @param type
+	 *            the stream
+	 * @return one leaf per state; the array is shared between callers and must not be modified
+	 */
+	public PdfLeafNode[] getLeaves(FeatureVector fv, FeatureType type) {
+		if (stripes == null) {
+			return interpret(fv, type.ordinal());
+		}
+		// compare the values of the queried features rather than the feature vector itself, which may have been changed or reused
+		Key key = new Key(project(fv));
+		Object[] previous = last.get();
+		PdfLeafNode[][] leaves;
+		if (previous != null && key.equals(previous[0])) {
+			leaves = (PdfLeafNode[][]) previous[1];
+		} else {
+			leaves = lookup(fv, key);
+			last.set(new Object[] { key, leaves });
+		}
+		return leaves[type.ordinal()];
+	}
+
+	private PdfLeafNode[][] lookup(FeatureVector fv, Key key) {
+		Stripe s = stripes[key.hash & (NUM_STRIPES - 1)];
+		PdfLeafNode[][] leaves;
+		synchronized (s) {
+			leaves = s.map.get(key);
+		}
+		if (leaves != null) {
+			hits.incrementAndGet();
+			return leaves;
+		}
+		misses.incrementAndGet();
+		leaves = new PdfLeafNode[trees.length][];
+		for (int t = 0; t < trees.length; t++) {
+			if (trees[t] != null) {
+				leaves[t] = interpret(fv, t);
+			}
+		}
+		synchronized (s) {
+			s.map.put(key, leaves);
+			Iterator<Map.Entry<Key, PdfLeafNode[][]>> it = s.map.entrySet().iterator();
+			while (s.map.size() > s.maxEntries && it.hasNext()) {
+				it.next();
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+		return leaves;
+	}
+
+	private PdfLeafNode[] interpret(FeatureVector fv, int stream) {
+		CART[] streamTrees = trees[stream];
+		PdfLeafNode[] leaves = new PdfLeafNode[streamTrees.length];
+		for (int s = 0; s < streamTrees.length; s++) {
+			leaves[s] = (PdfLeafNode) streamTrees[s].interpretToNode(fv, minNumberOfData[stream]);
+		}
+		return leaves;
+	}
+
+	private int[] project(FeatureVector fv) {
+		int numBytes = fv.getNumberOfByteFeatures();
+		int numDiscrete = numBytes + fv.getNumberOfShortFeatures();
+		int[] values = new int[features.length];
+		for (int i = 0; i < features.length; i++) {
+			int f = features[i];
+			if (f < numBytes) {
+				values[i] = fv.getByteFeature(f);
+			} else if (f < numDiscrete) {
+				values[i] = fv.getShortFeature(f);
+			} else {
+				values[i] = Float.floatToIntBits(fv.getContinuousFeature(f));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return the number of features that make up the lookup key
+	 */
+	public int getNumberOfKeyFeatures() {
+		return features.length;
+	}
+
+	/**
+	 * @return the number of contexts answered from the cache; consecutive lookups of one context by a thread count once
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of contexts that had to be looked up in the trees
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of entries dropped to stay within the size limit
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the fraction of contexts answered from the cache, or 0 if there were no lookups yet
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * Remove all entries; the statistics are kept.
+	 */
+	public void clear() {
+		if (stripes == null) {
+			return;
+		}
+		for (Stripe s : stripes) {
+			synchronized (s) {
+				s.map.clear();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "hits %d misses %d hitrate %.3f evictions %d", getHits(), getMisses(), getHitRate(),
+				getEvictions());
+	}
+
+	private static class Key {
+		final int[] values;
+		final int hash;
+
+		Key(int[] values) {
+			this.values = values;
+			int h = Arrays.hashCode(values);
+			// spread the bits, the stripe is chosen from the low ones
+			this.hash = h ^ (h >>> 16);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(values, ((Key) o).values);
+		}
+	}
+
+	private static class Stripe {
+		final LinkedHashMap<Key, PdfLeafNode[][]> map = new LinkedHashMap<Key, PdfLeafNode[][]>(64, 0.75f, true);
+		final int maxEntries;
+
+		Stripe(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+	}
+}
@@ -35,6 +35,7 @@ import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.modules.synthesis.Voice;
 import marytts.server.MaryProperties;
 import marytts.unitselection.select.Target;
@@ -182,15 +183,18 @@ public class CARTDurationModeller extends InternalModule {
 			float end = 0;
 
 			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHONE, MaryXML.BOUNDARY);
+			// one index for the features of all segments of the sentence
+			UtteranceIndex index = new UtteranceIndex(sentence);
 			Element segmentOrBoundary;
 			Element previous = null;
 			while ((segmentOrBoundary = (Element) tw.nextNode()) != null) {
 				String phone = UnitSelector.getPhoneSymbol(segmentOrBoundary);
 				Target t = new Target(phone, segmentOrBoundary);
+				t.setUtteranceIndex(index);
 				t.setFeatureVector(currentFeatureComputer.computeFeatureVector(t));
 				float durInSeconds;
 				if (segmentOrBoundary.getTagName().equals(MaryXML.BOUNDARY)) { // a pause
-					durInSeconds = enterPauseDuration(segmentOrBoundary, previous, pausetree, pauseFeatureComputer);
+					durInSeconds = enterPauseDuration(segmentOrBoundary, previous, pausetree, pauseFeatureComputer, index);
 				} else {
 					float[] dur = (float[]) currentCart.interpret(t);
 					assert dur != null : "Null duration";
@@ -223,7 +227,7 @@ public class CARTDurationModeller extends InternalModule {
 	 * @return pause duration, in seconds
 	 */
 	private float enterPauseDuration(Element boundary, Element previous, StringPredictionTree currentPauseTree,
-			TargetFeatureComputer currentPauseFeatureComputer) {
+			TargetFeatureComputer currentPauseFeatureComputer, UtteranceIndex index) {
 		if (!boundary.getTagName().equals(MaryXML.BOUNDARY))
 			throw new IllegalArgumentException("cannot call enterPauseDuration for non-pause element");
 
@@ -246,6 +250,7 @@ public class CARTDurationModeller extends InternalModule {
 		assert currentPauseFeatureComputer != null;
 		String phone = previous.getAttribute("p");
 		Target t = new Target(phone, previous);
+		t.setUtteranceIndex(index);
 		t.setFeatureVector(currentPauseFeatureComputer.computeFeatureVector(t));
 
 		String durationString = currentPauseTree.getMostProbableString(t);
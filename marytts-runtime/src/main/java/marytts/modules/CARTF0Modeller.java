@@ -34,6 +34,7 @@ import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.modules.phonemiser.Allophone;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.synthesis.Voice;
@@ -188,6 +189,8 @@ public class CARTF0Modeller extends InternalModule {
 			}
 
 			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE);
+			// shared by the targets of all vowels of the sentence
+			UtteranceIndex index = new UtteranceIndex(sentence);
 			Element syllable;
 			Element previous = null;
 			while ((syllable = (Element) tw.nextNode()) != null) {
@@ -229,6 +232,7 @@ public class CARTF0Modeller extends InternalModule {
 					// Now predict the f0 values using the CARTs:ssh
 					String phone = vowel.getAttribute("p");
 					Target t = new Target(phone, vowel);
+					t.setUtteranceIndex(index);
 					t.setFeatureVector(currentFeatureComputer.computeFeatureVector(t));
 					float[] left = (float[]) currentLeftCart.interpret(t, 0);
 					assert left != null : "Null frequency";
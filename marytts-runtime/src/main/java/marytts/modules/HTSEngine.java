@@ -93,6 +93,7 @@ import marytts.htsengine.HTSUttModel;
 import marytts.htsengine.HTSVocoder;
 import marytts.htsengine.HTSEngineTest.PhonemeDuration;
 import marytts.modules.synthesis.Voice;
+import marytts.server.MaryProperties;
 import marytts.unitselection.select.Target;
 import marytts.util.MaryUtils;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
@@ -213,6 +214,11 @@ public class HTSEngine extends InternalModule {
 
 		/* Process UttModel */
 		HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+		/* optionally, generate the spectral parameters window by window while vocoding, for a shorter time to first audio */
+		int streamingWindow = MaryProperties.getInteger("htsengine.streaming.window", 0);
+		if (streamingWindow > 0) {
+			pdf2par.setIncremental(streamingWindow, MaryProperties.getInteger("htsengine.streaming.lookahead", 25));
+		}
 
 		/* Generate sequence of speech parameter vectors, generate parameters out of sequence of pdf's */
 		pdf2par.htsMaximumLikelihoodParameterGeneration(um, hmmv.getHMMData());
@@ -596,6 +602,9 @@ public class HTSEngine extends InternalModule {
 		loggerHts.info("Number of models in sentence numModel=" + um.getNumModel() + "  Total number of states numState="
                        + um.getNumState());
 		loggerHts.info("Total number of frames=" + um.getTotalFrame() + "  Number of voiced frames=" + um.getLf0Frame());
+		if (loggerHts.isDebugEnabled()) {
+			loggerHts.debug("Pdf lookup cache: " + cart.getPdfLookupCache());
+		}
 
 		// System.out.println("REALISED DURATIONS:" + realisedDurations);
 
@@ -24,6 +24,7 @@ import java.util.List;
 
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
+import marytts.features.UtteranceIndex;
 import marytts.unitselection.select.HalfPhoneTarget;
 import marytts.unitselection.select.Target;
 import marytts.unitselection.select.UnitSelector;
@@ -79,6 +80,7 @@ public class HalfPhoneTargetFeatureLister extends TargetFeatureLister {
 			targets.add(new HalfPhoneTarget(phone + "_L", sOrB, true));
 			targets.add(new HalfPhoneTarget(phone + "_R", sOrB, false));
 		}
+		UtteranceIndex.attach(targets);
 		return targets;
 	}
 
@@ -29,6 +29,7 @@ import marytts.datatypes.MaryXML;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.modules.phonemiser.Allophone;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.synthesis.Voice;
@@ -143,6 +144,8 @@ public class PolynomialF0Modeller extends InternalModule {
 
 			TreeWalker tw = ((DocumentTraversal) doc).createTreeWalker(sentence, NodeFilter.SHOW_ELEMENT, new NameNodeFilter(
 					MaryXML.SYLLABLE), false);
+			// shared by the targets of all vowels of the sentence
+			UtteranceIndex index = new UtteranceIndex(sentence);
 			Element syllable;
 			Element previous = null;
 			while ((syllable = (Element) tw.nextNode()) != null) {
@@ -170,6 +173,7 @@ public class PolynomialF0Modeller extends InternalModule {
 					// Now predict the f0 values using the CARTs:ssh
 					String phone = vowel.getAttribute("p");
 					Target t = new Target(phone, vowel);
+					t.setUtteranceIndex(index);
 					t.setFeatureVector(currentFeatureComputer.computeFeatureVector(t));
 					// double[] coeffs = ArrayUtils.toDoubleArray((float[]) currentGraph.interpret(t));
 					int[] leafContours = (int[]) currentGraph.interpret(t);
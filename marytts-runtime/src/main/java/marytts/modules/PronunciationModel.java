@@ -38,6 +38,7 @@ import marytts.datatypes.MaryXML;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.modules.phonemiser.Allophone;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.server.MaryProperties;
@@ -169,17 +170,23 @@ public class PronunciationModel extends InternalModule {
 		TreeWalker tw = MaryDomUtils.createTreeWalker(doc, doc, MaryXML.TOKEN);
 		Element t;
 		AllophoneSet allophoneSet = null;
+		// The index of the current sentence, shared by the targets for which features are computed. The elements are changed
+		// as we go, so it is dropped whenever they are, and built again when it is next needed.
+		UtteranceIndex index = null;
 		while ((t = (Element) tw.nextNode()) != null) {
 			// First, create the substructure of <t> elements: <syllable> and <ph>.
 			if (allophoneSet == null) { // need to determine it once, then assume it is the same for all
 				allophoneSet = MaryRuntimeUtils.determineAllophoneSet(t);
 			}
-			createSubStructure(t, allophoneSet);
+			if (createSubStructure(t, allophoneSet)) {
+				index = null;
+			}
 
 			// Modify by rule:
 			boolean changedSomething = postlexicalRules(t, allophoneSet);
 			if (changedSomething) {
 				updatePhAttributesFromPhElements(t);
+				index = null;
 			}
 
 			if (treeMap == null)
@@ -214,6 +221,11 @@ public class PronunciationModel extends InternalModule {
 					// in case we have a decision tree for phone, predict - otherwise leave unchanged
 					if (treeMap.containsKey(phoneString)) {
 						Target tgt = new Target(phoneString, s);
+						if (index == null || !index.contains(s)) {
+							Element sentence = (Element) MaryDomUtils.getAncestor(s, MaryXML.SENTENCE);
+							index = sentence != null ? new UtteranceIndex(sentence) : null;
+						}
+						tgt.setUtteranceIndex(index);
 						tgt.setFeatureVector(featureComputer.computeFeatureVector(tgt));
 						StringPredictionTree tree = (StringPredictionTree) treeMap.get(phoneString);
 						String predictStr = tree.getMostProbableString(tgt);
@@ -235,6 +247,7 @@ public class PronunciationModel extends InternalModule {
 					// deletions:
 					if (predicted == null || predicted.length == 0) {
 						syllable.removeChild(s);
+						index = null;
 						continue; // skip what follows
 					}
 					assert predicted != null && predicted.length > 0;
@@ -243,6 +256,7 @@ public class PronunciationModel extends InternalModule {
 						Element newPh = MaryXML.createElement(doc, MaryXML.PHONE);
 						newPh.setAttribute("p", predicted[lc]);
 						syllable.insertBefore(newPh, s);
+						index = null;
 					}
 					// for the last (or only) predicted segment, just update the phone label
 					if (!phoneString.equals(predicted[predicted.length - 1])) {
@@ -255,6 +269,9 @@ public class PronunciationModel extends InternalModule {
 					tPh.append(" -"); // syllable boundary
 				tPh.append(newSylPh);
 			} // for each syllable in token
+			if (!t.hasAttribute("ph")) {
+				index = null; // the token becomes a word
+			}
 			t.setAttribute("ph", tPh.toString());
 
 		} // for each token in document
@@ -267,13 +284,16 @@ public class PronunciationModel extends InternalModule {
 		return result;
 	}
 
-	private void createSubStructure(Element token, AllophoneSet allophoneSet) {
+	/*
+	 * returns true if elements were added
+	 */
+	private boolean createSubStructure(Element token, AllophoneSet allophoneSet) {
 		String phone = token.getAttribute("ph");
 		if (phone.equals(""))
-			return; // nothing to do
+			return false; // nothing to do
 
 		if (token.getElementsByTagName(MaryXML.SYLLABLE).getLength() > 0) {
-			return; // there is already a substructure under this token; nothing to do
+			return false; // there is already a substructure under this token; nothing to do
 		}
 
 		StringTokenizer tok = new StringTokenizer(phone, "-");
@@ -345,6 +365,7 @@ public class PronunciationModel extends InternalModule {
 				}
 			}
 		}
+		return true;
 	}
 
 	protected void updatePhAttributesFromPhElements(Element token) {
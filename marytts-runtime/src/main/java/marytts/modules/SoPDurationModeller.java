@@ -32,6 +32,7 @@ import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.machinelearning.SoP;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.synthesis.Voice;
@@ -192,12 +193,15 @@ public class SoPDurationModeller extends InternalModule {
 			float end = 0;
 			float durInSeconds;
 			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHONE, MaryXML.BOUNDARY);
+			// one index for the features of all segments of the sentence
+			UtteranceIndex index = new UtteranceIndex(sentence);
 			Element segmentOrBoundary;
 			Element previous = null;
 			while ((segmentOrBoundary = (Element) tw.nextNode()) != null) {
 				String phone = UnitSelector.getPhoneSymbol(segmentOrBoundary);
 
 				Target t = new Target(phone, segmentOrBoundary);
+				t.setUtteranceIndex(index);
 				t.setFeatureVector(currentFeatureComputer.computeFeatureVector(t));
 
 				if (segmentOrBoundary.getTagName().equals(MaryXML.BOUNDARY)) { // a pause
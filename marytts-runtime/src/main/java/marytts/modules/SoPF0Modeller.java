@@ -32,6 +32,7 @@ import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.machinelearning.SoP;
 import marytts.modules.phonemiser.Allophone;
 import marytts.modules.phonemiser.AllophoneSet;
@@ -199,6 +200,8 @@ public class SoPF0Modeller extends InternalModule {
 			}
 
 			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE);
+			// shared by the targets of all vowels of the sentence
+			UtteranceIndex index = new UtteranceIndex(sentence);
 			Element syllable;
 			Element previous = null;
 			while ((syllable = (Element) tw.nextNode()) != null) {
@@ -237,6 +240,7 @@ public class SoPF0Modeller extends InternalModule {
 					System.out.print("PHONE: " + phone + "  ");
 
 					Target t = new Target(phone, vowel);
+					t.setUtteranceIndex(index);
 					t.setFeatureVector(currentFeatureComputer.computeFeatureVector(t));
 
 					// float[] left = (float[])currentLeftSoP.interpret(t, 0);
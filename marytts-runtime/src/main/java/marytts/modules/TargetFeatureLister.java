@@ -26,9 +26,10 @@ import java.util.Locale;
 import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
+import marytts.features.FeatureMatrix;
 import marytts.features.FeatureRegistry;
-import marytts.features.FeatureVector;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.modules.synthesis.Voice;
 import marytts.unitselection.select.Target;
 import marytts.unitselection.select.UnitSelector;
@@ -94,14 +95,15 @@ public class TargetFeatureLister extends InternalModule {
 	public String listTargetFeatures(TargetFeatureComputer featureComputer, List<Element> segmentsAndBoundaries) {
 		String pauseSymbol = featureComputer.getPauseSymbol();
 		List<Target> targets = overridableCreateTargetsWithPauses(segmentsAndBoundaries, pauseSymbol);
-		// Third, compute the feature vectors and convert them to text
+		// Third, compute the features and convert them to text
 		String header = featureComputer.getAllFeatureProcessorNamesAndValues();
+		FeatureMatrix features = featureComputer.computeFeatureMatrix(targets, null);
+		String[] values = featureComputer.toStringValues(features);
 		StringBuilder text = new StringBuilder();
 		StringBuilder bin = new StringBuilder();
-		for (Target target : targets) {
-			FeatureVector features = featureComputer.computeFeatureVector(target);
-			text.append(featureComputer.toStringValues(features)).append("\n");
-			bin.append(features.toString()).append("\n");
+		for (int t = 0; t < values.length; t++) {
+			text.append(values[t]).append("\n");
+			bin.append(features.toString(t)).append("\n");
 		}
 
 		// Leave an empty line between sections:
@@ -121,12 +123,13 @@ public class TargetFeatureLister extends InternalModule {
 	public List<Target> getListTargetFeatures(TargetFeatureComputer featureComputer, List<Element> segmentsAndBoundaries) {
 		String pauseSymbol = featureComputer.getPauseSymbol();
 		List<Target> targets = overridableCreateTargetsWithPauses(segmentsAndBoundaries, pauseSymbol);
+		List<Target> withoutFeatures = new ArrayList<Target>(targets.size());
 		for (Target target : targets) {
 			if (!target.hasFeatureVector()) {
-				FeatureVector features = featureComputer.computeFeatureVector(target);
-				target.setFeatureVector(features);
+				withoutFeatures.add(target);
 			}
 		}
+		featureComputer.computeFeatureVectors(withoutFeatures);
 		return targets;
 	}
 
@@ -174,6 +177,7 @@ public class TargetFeatureLister extends InternalModule {
 			}
 			targets.add(t);
 		}
+		UtteranceIndex.attach(targets);
 		return targets;
 	}
 }
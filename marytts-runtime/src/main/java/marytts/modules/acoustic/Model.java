@@ -29,8 +29,8 @@ import marytts.datatypes.MaryXML;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
-import marytts.features.FeatureVector;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.unitselection.select.Target;
 import marytts.unitselection.select.UnitSelector;
 
@@ -253,12 +253,13 @@ public abstract class Model {
 		for (Element element : elements) {
 			assert element.getTagName() == MaryXML.PHONE;
 			String phone = UnitSelector.getPhoneSymbol(element);
-			Target target = new Target(phone, element);
-			targets.add(target);
-			// compute FeatureVectors for Targets:
-			FeatureVector targetFeatureVector = featureComputer.computeFeatureVector(target);
-			target.setFeatureVector(targetFeatureVector); // this is critical!
-			element.setUserData("target", target, Target.targetFeatureCloner);
+			targets.add(new Target(phone, element));
+		}
+		UtteranceIndex.attach(targets);
+		// compute FeatureVectors for Targets:
+		featureComputer.computeFeatureVectors(targets); // this is critical!
+		for (Target target : targets) {
+			target.getMaryxmlElement().setUserData("target", target, Target.targetFeatureCloner);
 		}
 		return targets;
 	}
@@ -31,7 +31,6 @@ import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -40,6 +39,8 @@ import java.util.Locale;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -61,6 +62,7 @@ import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.Pair;
+import marytts.util.data.ProducingDoubleDataSource;
 import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.io.FileUtils;
 
@@ -290,6 +292,8 @@ public class Mary {
 
 		setupFeatureProcessors();
 
+		setupVocoderExecutor();
+
 		// Instantiate module classes and startup modules:
 		startModules();
 
@@ -297,6 +301,34 @@ public class Mary {
 		currentState = STATE_RUNNING;
 	}
 
+	/**
+	 * Run the producers of vocoder audio, such as the HTS vocoder, on a shared pool of <code>vocoder.threads</code> threads, so
+	 * that the most CPU-intensive stage of synthesis does not use more threads than there are processors, however many requests
+	 * are processed at the same time. 0 means one thread per available processor; a negative value means a new thread for each
+	 * utterance.
+	 */
+	private static void setupVocoderExecutor() {
+		int threads = MaryProperties.getInteger("vocoder.threads", 0);
+		if (threads < 0) {
+			logger.debug("Vocoding each utterance on its own thread");
+			ProducingDoubleDataSource.setExecutor(null);
+			return;
+		}
+		if (threads == 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		logger.debug("Vocoding on " + threads + " threads");
+		ProducingDoubleDataSource.setExecutor(Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "VocoderWorker-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		}));
+	}
+
 	/**
 	 * Log4j initialisation, called from {@link #startup(boolean)}.
 	 * 
@@ -376,11 +408,8 @@ public class Mary {
 
 		if (MaryCache.haveCache()) {
 			MaryCache cache = MaryCache.getCache();
-			try {
-				cache.shutdown();
-			} catch (SQLException e) {
-				logger.warn("Cannot shutdown cache: ", e);
-			}
+			logger.info("Cache statistics:" + System.getProperty("line.separator") + cache.getStatistics());
+			cache.shutdown();
 		}
 		logger.info("Shutdown complete.");
 		currentState = STATE_OFF;
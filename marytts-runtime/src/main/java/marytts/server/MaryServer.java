@@ -28,15 +28,23 @@ import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -61,8 +69,12 @@ import marytts.util.data.audio.MaryAudioUtils;
 import org.apache.log4j.Logger;
 
 /**
- * Listen for clients on socket port <code>MaryProperties.socketPort()</code>. For each new client, create a new RequestHandler
- * thread.
+ * Listen for clients on socket port <code>MaryProperties.socketPort()</code>. Each new client connection is handled on a worker
+ * thread, and the RequestHandler for a data connection runs on that same worker.
+ * <p>
+ * The number of workers is limited by the property <code>socket.threads</code>; connections arriving while all workers are busy
+ * wait in a queue of at most <code>socket.queuesize</code> entries. Connections that do not fit into the queue are answered with
+ * a "server busy" error and closed. With <code>socket.threads = 0</code>, every connection gets its own thread, as before.
  * <p>
  * Clients are expected to follow the following <b>protocol</b>:
  * <p>
@@ -148,23 +160,113 @@ public class MaryServer implements Runnable {
 	private Logger logger;
 	private int runningNumber = 1;
 	private Map<Integer, Object[]> clientMap = Collections.synchronizedMap(new HashMap<Integer, Object[]>());
-	private Executor clients = Executors.newCachedThreadPool();
+	private ExecutorService clients;
+	/** time in milliseconds after which an info connection whose data connection never arrived is closed */
+	private long pairingTimeout;
 
 	public MaryServer() {
 		logger = MaryUtils.getLogger("server");
 	}
 
+	/**
+	 * Create the executor on which client connections are handled, as configured by <code>socket.threads</code> and
+	 * <code>socket.queuesize</code>.
+	 * 
+	 * @return an executor that rejects new connections when both its workers and its queue are full, or an unbounded one if
+	 *         <code>socket.threads</code> is not positive.
+	 */
+	private ExecutorService createClientExecutor() {
+		ThreadFactory factory = new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				return new Thread(r, "ClientHandler-" + (++count));
+			}
+		};
+		int threads = MaryProperties.getInteger("socket.threads", 32);
+		if (threads <= 0) {
+			logger.info("Handling each client connection on its own thread");
+			return Executors.newCachedThreadPool(factory);
+		}
+		int queueSize = MaryProperties.getInteger("socket.queuesize", 64);
+		logger.info("Handling client connections on " + threads + " threads, with up to " + queueSize + " waiting");
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new SynchronousQueue<Runnable>(), factory,
+				new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Tell a client that could not be admitted that the server is busy, and close the connection.
+	 * 
+	 * @param client
+	 *            the rejected client
+	 */
+	private void rejectClient(Socket client) {
+		logger.warn("Server busy -- rejecting connection from " + client.getInetAddress().getHostAddress());
+		closeWithMessage(client, "Server busy, please try again later.");
+	}
+
+	private void closeWithMessage(Socket client, String message) {
+		try {
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), "UTF-8"), true);
+			out.println(message);
+			out.println();
+		} catch (IOException e) {
+			logger.debug("Cannot write to client", e);
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+				logger.debug("Cannot close client", e);
+			}
+		}
+	}
+
+	/**
+	 * Remove the clientMap entries of info connections whose data connection has not arrived within
+	 * <code>socket.pairingtimeout</code> milliseconds, and close their info sockets. This happens in particular when the data
+	 * connection was rejected because the server was busy: it is rejected before its identification number is read, so the
+	 * paired entry cannot be found at that point.
+	 */
+	private void expireUnpairedClients() {
+		long now = System.currentTimeMillis();
+		List<Socket> expired = new ArrayList<Socket>();
+		synchronized (clientMap) {
+			for (Iterator<Object[]> it = clientMap.values().iterator(); it.hasNext();) {
+				Object[] value = it.next();
+				if (now - (Long) value[2] > pairingTimeout) {
+					it.remove();
+					expired.add((Socket) value[0]);
+				}
+			}
+		}
+		for (Socket infoSocket : expired) {
+			logger.warn("No data connection from " + infoSocket.getInetAddress().getHostAddress() + " within " + pairingTimeout
+					+ " ms -- closing info connection");
+			closeWithMessage(infoSocket, "Data connection not received, please try again later.");
+		}
+	}
+
 	public void run() {
 		logger.info("Starting server.");
 		try {
 			server = new ServerSocket(MaryProperties.needInteger("socket.port"));
+			clients = createClientExecutor();
+			pairingTimeout = MaryProperties.getInteger("socket.pairingtimeout", 300000);
 
 			while (true) {
 				logger.info("Waiting for client to connect on port " + server.getLocalPort());
 				Socket client = server.accept();
+				expireUnpairedClients();
 				logger.info("Connection from " + client.getInetAddress().getHostName() + " ("
 						+ client.getInetAddress().getHostAddress() + ").");
-				clients.execute(new ClientHandler(client));
+				try {
+					clients.execute(new ClientHandler(client));
+				} catch (RejectedExecutionException e) {
+					rejectClient(client);
+				}
 			}
 		} catch (Exception e) {
 			throw new RuntimeException(e);
@@ -384,9 +486,10 @@ public class MaryServer implements Runnable {
 					streamingAudio, null);
 			clientOut.println(id);
 			// -- create new clientMap entry
-			Object[] value = new Object[2];
+			Object[] value = new Object[3];
 			value[0] = client;
 			value[1] = request;
+			value[2] = System.currentTimeMillis();
 			clientMap.put(id, value);
 			return true;
 		}
@@ -506,9 +609,10 @@ public class MaryServer implements Runnable {
 			} catch (UnsupportedOperationException e) {
 				logger.info("Cannot remove clientMap entry", e);
 			}
-			// -- send off to new request
+			// -- process the request on this worker thread, so that the number of requests
+			// processed at the same time is limited by the client executor
 			RequestHandler rh = new RequestHandler(request, infoSocket, client, reader);
-			rh.start();
+			rh.run();
 			return true;
 		}
 
@@ -25,15 +25,22 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -51,6 +58,7 @@ import marytts.modules.synthesis.Voice;
 import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
+import marytts.util.cache.CacheKey;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
 import marytts.util.dom.DomUtils;
 import marytts.util.dom.MaryDomUtils;
@@ -94,12 +102,17 @@ public class Request {
 	protected MaryData outputData;
 	protected boolean streamAudio = false;;
 	protected boolean abortRequested = false;
+	// when the first chunk of output data was available, for reporting time to first audio
+	protected long firstOutputTime;
 
 	// Keep track of timing info for each module
 	// (map MaryModule onto Long)
 	protected Set<MaryModule> usedModules;
 	protected Map<MaryModule, Long> timingInfo;
 
+	// Shared by all requests; null unless request.paragraphthreads is greater than 1
+	private static ExecutorService paragraphExecutor;
+
 	public Request(MaryDataType inputType, MaryDataType outputType, Locale defaultLocale, Voice defaultVoice,
 			String defaultEffects, String defaultStyle, int id, AudioFileFormat audioFileFormat) {
 		this(inputType, outputType, defaultLocale, defaultVoice, defaultEffects, defaultStyle, id, audioFileFormat, false, null);
@@ -153,6 +166,30 @@ public class Request {
 		timingInfo = new HashMap<MaryModule, Long>();
 	}
 
+	/**
+	 * Get the executor on which the paragraphs of requests are to be processed in parallel.
+	 * 
+	 * @return the shared executor, or null if paragraphs are to be processed one after the other.
+	 */
+	private static synchronized ExecutorService getParagraphExecutor() {
+		int threads = MaryProperties.getInteger("request.paragraphthreads", 1);
+		if (threads <= 1) {
+			return null;
+		}
+		if (paragraphExecutor == null) {
+			paragraphExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private int count = 0;
+
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ParagraphWorker-" + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return paragraphExecutor;
+	}
+
 	public MaryDataType getInputType() {
 		return inputType;
 	}
@@ -271,6 +308,7 @@ public class Request {
 	public void process() throws Exception {
 		assert Mary.currentState() == Mary.STATE_RUNNING;
 		long startTime = System.currentTimeMillis();
+		firstOutputTime = 0;
 		if (inputData == null)
 			throw new NullPointerException("Input data is not set.");
 		if (inputType.isXMLType() && inputData.getDocument() == null)
@@ -323,38 +361,25 @@ public class Request {
 			outputData.setAudio(appendableAudioStream);
 			outputData.setAudioFileFormat(audioFileFormat);
 		}
-		int len = inputDataList.getLength();
-		for (int i = 0; i < len && !abortRequested; i++) {
-			Element currentInputParagraph = (Element) inputDataList.item(i);
-			assert currentInputParagraph.getTagName().equals(MaryXML.PARAGRAPH);
-			NodeList outputNodeList = null;
-			// Only process paragraph if there is any text below it:
-			if (MaryDomUtils.getPlainTextBelow(currentInputParagraph).trim().equals("")) {
-				outputNodeList = currentInputParagraph.getChildNodes();
-			} else { // process "real" data:
-				MaryData oneInputData = extractParagraphAsMaryData(rawmaryxml, currentInputParagraph);
-				// assert oneInputData.getDefaultVoice() != null;
-				MaryData oneOutputData = processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
-				// assert oneOutputData.getDefaultVoice() != null;
-				if (outputType.isMaryXML()) {
-					NodeList outParagraphList = oneOutputData.getDocument().getDocumentElement()
-							.getElementsByTagName(MaryXML.PARAGRAPH);
-					// This does not hold for Tibetan:
-					// assert outParagraphList.getLength() == 1;
-					outputNodeList = outParagraphList;
-				} else { // output is not MaryXML, e.g. text or audio
-					assert outputData != null;
-					outputData.append(oneOutputData);
+		ChunkSource chunks = new ChunkSource(rawmaryxml, inputDataList, useSentenceChunks(rawmaryxml));
+		ExecutorService executor = getParagraphExecutor();
+		if (executor != null) {
+			processChunksInParallel(chunks, executor);
+		} else {
+			Chunk chunk;
+			while (!abortRequested && (chunk = chunks.next()) != null) {
+				MaryData oneOutputData = null;
+				if (chunk.input != null) {
+					// assert chunk.input.getDefaultVoice() != null;
+					oneOutputData = processOrLookupOneChunk(chunk.input, outputType, outputTypeParams);
+					// assert oneOutputData.getDefaultVoice() != null;
 				}
-			}
-			if (outputType.isMaryXML()) {
-				assert outputNodeList != null;
-				// And now replace the paragraph in-place:
-				MaryDomUtils.replaceElement(currentInputParagraph, outputNodeList);
+				outputChunk(chunk, oneOutputData);
 			}
 		}
 		long stopTime = System.currentTimeMillis();
-		logger.info("Request processed in " + (stopTime - startTime) + " ms.");
+		logger.info("Request processed in " + (stopTime - startTime) + " ms"
+				+ (firstOutputTime > 0 ? ", first output after " + (firstOutputTime - startTime) + " ms." : "."));
 		for (MaryModule m : usedModules) {
 			logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
 		}
@@ -362,6 +387,117 @@ public class Request {
 			appendableAudioStream.doneAppending();
 	}
 
+	/**
+	 * Determine whether the paragraphs of the given document are to be split into sentences, so that the first sentence can be
+	 * output while later ones are still being processed. This is the case only if it was requested through the
+	 * request.sentencechunks property, if the output is not MaryXML (whose paragraphs are replaced in-place), and if the input
+	 * can be tokenised.
+	 * 
+	 * @param rawmaryxml
+	 *            the document to be processed
+	 * @return true if sentence chunks are to be used, false if paragraph chunks are to be used.
+	 */
+	private boolean useSentenceChunks(MaryData rawmaryxml) {
+		if (!MaryProperties.getBoolean("request.sentencechunks", false) || outputType.isMaryXML()) {
+			return false;
+		}
+		return ModuleRegistry.modulesRequiredForProcessing(rawmaryxml.getType(), MaryDataType.TOKENS,
+				determineLocale(rawmaryxml), rawmaryxml.getDefaultVoice()) != null;
+	}
+
+	/**
+	 * Process the chunks on the given executor, allowing up to one chunk per worker thread to be processed ahead of the one
+	 * currently being output. Chunks are extracted from the document and their results are output on the calling thread, in
+	 * document order, so that the first chunk can be streamed as soon as it is ready while later ones are still being processed.
+	 * 
+	 * @param chunks
+	 *            the chunks to process
+	 * @param executor
+	 *            the executor on which to process them
+	 * @throws Exception
+	 *             the exception thrown while processing a chunk, if any
+	 */
+	private void processChunksInParallel(ChunkSource chunks, ExecutorService executor) throws Exception {
+		int window = MaryProperties.getInteger("request.paragraphthreads", 1);
+		List<Chunk> pending = new ArrayList<Chunk>();
+		List<Future<MaryData>> results = new ArrayList<Future<MaryData>>();
+		int i = 0;
+		try {
+			for (;; i++) {
+				while (!abortRequested && results.size() <= i + window) {
+					// The DOM is not thread-safe, so the chunk must be extracted here rather than in the worker:
+					final Chunk chunk = chunks.next();
+					if (chunk == null) {
+						break;
+					}
+					pending.add(chunk);
+					if (chunk.input == null) {
+						results.add(null);
+					} else {
+						results.add(executor.submit(new Callable<MaryData>() {
+							public MaryData call() throws Exception {
+								return processOrLookupOneChunk(chunk.input, outputType, outputTypeParams);
+							}
+						}));
+					}
+				}
+				if (abortRequested || i >= results.size()) {
+					break;
+				}
+				MaryData oneOutputData = null;
+				if (results.get(i) != null) {
+					try {
+						oneOutputData = results.get(i).get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof Exception) {
+							throw (Exception) e.getCause();
+						}
+						throw e;
+					}
+				}
+				outputChunk(pending.get(i), oneOutputData);
+			}
+		} finally {
+			// after an error or abort, don't bother finishing the chunks still in progress
+			for (; i < results.size(); i++) {
+				if (results.get(i) != null) {
+					results.get(i).cancel(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the processing result for one chunk to the output data.
+	 * 
+	 * @param chunk
+	 *            the chunk
+	 * @param oneOutputData
+	 *            the result of processing the chunk, or null if the chunk contained no text and was not processed.
+	 */
+	private void outputChunk(Chunk chunk, MaryData oneOutputData) {
+		NodeList outputNodeList = null;
+		if (oneOutputData == null) {
+			outputNodeList = chunk.paragraph.getChildNodes();
+		} else if (outputType.isMaryXML()) {
+			NodeList outParagraphList = oneOutputData.getDocument().getDocumentElement().getElementsByTagName(MaryXML.PARAGRAPH);
+			// This does not hold for Tibetan:
+			// assert outParagraphList.getLength() == 1;
+			outputNodeList = outParagraphList;
+		} else { // output is not MaryXML, e.g. text or audio
+			assert outputData != null;
+			outputData.append(oneOutputData);
+			if (firstOutputTime == 0) {
+				firstOutputTime = System.currentTimeMillis();
+			}
+		}
+		if (outputType.isMaryXML()) {
+			assert outputNodeList != null;
+			// And now replace the paragraph in-place:
+			MaryDomUtils.replaceElement(chunk.paragraph, outputNodeList);
+		}
+	}
+
 	/**
 	 * Convert the given data into the requested output type, either by looking it up in the cache or by actually processing it.
 	 * 
@@ -403,25 +539,20 @@ public class Request {
 			return processOneChunk(oneInputData, oneOutputType, outputParams, locale);
 		}
 
-		String inputtype = null;
-		String outputtype = null;
-		String localeString = null;
-		String voice = null;
-		String inputtext = null;
-
-		// try to look up the requested result in the cache:
-		inputtype = oneInputData.getType().name();
-		outputtype = oneOutputType.name();
-		ByteArrayOutputStream sw = new ByteArrayOutputStream();
-		oneInputData.writeTo(sw);
-		inputtext = new String(sw.toByteArray(), "UTF-8");
-		voice = defaultVoice != null ? defaultVoice.getName() : null;
-		localeString = locale.toString();
+		// try to look up the requested result in the cache, using a digest of the input rather than its serialised form:
+		CacheKey content = MaryCache.digestContent(oneInputData);
+		if (content == null) {
+			return processOneChunk(oneInputData, oneOutputType, outputParams, locale);
+		}
+		String inputtype = oneInputData.getType().name();
+		String outputtype = oneOutputType.name();
+		String voice = defaultVoice != null ? defaultVoice.getName() : null;
+		String localeString = locale.toString();
 
 		if (oneOutputType.isTextType()) {
 			try {
-				String outputtext = cache.lookupText(inputtype, outputtype, localeString, voice, outputParams, defaultStyle,
-						defaultEffects, inputtext);
+				String outputtext = cache.lookupText(MaryCache.key(inputtype, outputtype, localeString, voice, outputParams,
+						defaultStyle, defaultEffects, content));
 				if (outputtext != null) {
 					MaryData outData = new MaryData(oneOutputType, locale);
 					ByteArrayInputStream sr = new ByteArrayInputStream(outputtext.getBytes());
@@ -437,8 +568,8 @@ public class Request {
 			}
 		} else if (outputtype.equals("AUDIO")) {
 			try {
-				byte[] wavFileData = cache.lookupAudio(inputtype, localeString, voice, outputParams, defaultStyle,
-						defaultEffects, inputtext);
+				byte[] wavFileData = cache.lookup(MaryCache.key(inputtype, outputtype, localeString, voice, outputParams,
+						defaultStyle, defaultEffects, content));
 				if (wavFileData != null) {
 					AudioInputStream ais = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wavFileData));
 					MaryData outData = new MaryData(oneOutputType, locale);
@@ -453,7 +584,11 @@ public class Request {
 			// logger.debug("Don't know how to cache data of type '"+outputtype+"'");
 		}
 
-		// Couldn't get it from cache, need to process
+		// Couldn't get it from cache, need to process.
+		// The full input text is needed only now, to let the cache detect key collisions on insert.
+		ByteArrayOutputStream sw = new ByteArrayOutputStream();
+		oneInputData.writeTo(sw);
+		String inputtext = new String(sw.toByteArray(), "UTF-8");
 		if (oneOutputType.equals(MaryDataType.AUDIO) || oneOutputType.equals(MaryDataType.REALISED_ACOUSTPARAMS)
 				|| oneOutputType.equals(MaryDataType.REALISED_DURATIONS)) {
 			// Special case: when we generate AUDIO, we also remember REALISED_ACOUSTPARAMS and REALISED_DURATIONS formats and
@@ -461,11 +596,11 @@ public class Request {
 			MaryData audioData = processOneChunk(oneInputData, MaryDataType.AUDIO, outputParams, locale);
 			MaryData realisedAcoustparams = processOneChunk(audioData, MaryDataType.REALISED_ACOUSTPARAMS, outputParams, locale);
 			MaryData realisedDurations = processOneChunk(audioData, MaryDataType.REALISED_DURATIONS, outputParams, locale);
-			insertAudioIntoCache(cache, inputtype, localeString, voice, outputParams, inputtext, audioData);
+			insertAudioIntoCache(cache, inputtype, localeString, voice, outputParams, content, inputtext, audioData);
 			insertTextIntoCache(cache, inputtype, MaryDataType.REALISED_ACOUSTPARAMS.name(), localeString, voice, outputParams,
-					inputtext, realisedAcoustparams);
+					content, inputtext, realisedAcoustparams);
 			insertTextIntoCache(cache, inputtype, MaryDataType.REALISED_DURATIONS.name(), localeString, voice, outputParams,
-					inputtext, realisedDurations);
+					content, inputtext, realisedDurations);
 			if (oneOutputType.equals(MaryDataType.AUDIO))
 				return audioData;
 			else if (oneOutputType.equals(MaryDataType.REALISED_ACOUSTPARAMS))
@@ -475,7 +610,8 @@ public class Request {
 			MaryData oneOutputData = processOneChunk(oneInputData, oneOutputType, outputParams, locale);
 			// Remember the processing result in the cache
 			if (oneOutputType.isTextType()) {
-				insertTextIntoCache(cache, inputtype, outputtype, localeString, voice, outputParams, inputtext, oneOutputData);
+				insertTextIntoCache(cache, inputtype, outputtype, localeString, voice, outputParams, content, inputtext,
+						oneOutputData);
 			} else {
 				logger.debug("Don't know how to cache data of type '" + outputtype + "'");
 			}
@@ -484,26 +620,30 @@ public class Request {
 	}
 
 	private void insertAudioIntoCache(MaryCache cache, String inputtype, String localeString, String voice, String outputParams,
-			String inputtext, MaryData currentData) throws IOException, SQLException, UnsupportedAudioFileException {
+			CacheKey content, String inputtext, MaryData currentData) throws IOException, UnsupportedAudioFileException {
 		AppendableSequenceAudioInputStream as = (AppendableSequenceAudioInputStream) currentData.getAudio();
 		assert as != appendableAudioStream;
 		as.doneAppending();
 		ByteArrayOutputStream baos = new ByteArrayOutputStream(2 * (int) as.getFrameLength() + 100);
 		AudioSystem.write(as, AudioFileFormat.Type.WAVE, baos);
 		byte[] wavFileData = baos.toByteArray();
-		cache.insertAudio(inputtype, localeString, voice, outputParams, defaultStyle, defaultEffects, inputtext, wavFileData);
+		String outputtype = MaryDataType.AUDIO.name();
+		cache.insertAudio(MaryCache.key(inputtype, outputtype, localeString, voice, outputParams, defaultStyle, defaultEffects,
+				content), MaryCache.keyText(inputtype, outputtype, localeString, voice, outputParams, defaultStyle,
+				defaultEffects, inputtext), wavFileData);
 		AudioInputStream ais = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wavFileData));
 		currentData.setAudio(ais);
 	}
 
 	private void insertTextIntoCache(MaryCache cache, String inputtype, String outputtype, String localeString, String voice,
-			String outputParams, String inputtext, MaryData currentData) {
+			String outputParams, CacheKey content, String inputtext, MaryData currentData) {
 		try {
 			ByteArrayOutputStream sw = new ByteArrayOutputStream();
 			currentData.writeTo(sw);
 			String outputtext = new String(sw.toByteArray(), "UTF-8");
-			cache.insertText(inputtype, outputtype, localeString, voice, outputParams, defaultStyle, defaultEffects, inputtext,
-					outputtext);
+			cache.insertText(MaryCache.key(inputtype, outputtype, localeString, voice, outputParams, defaultStyle, defaultEffects,
+					content), MaryCache.keyText(inputtype, outputtype, localeString, voice, outputParams, defaultStyle,
+					defaultEffects, inputtext), outputtext);
 		} catch (Exception e) {
 			logger.warn("Problem inserting text into cache", e);
 		}
@@ -523,7 +663,9 @@ public class Request {
 					+ oneInputData.getType().name() + "), no processing path through modules.";
 			throw new UnsupportedOperationException(message);
 		}
-		usedModules.addAll(neededModules);
+		synchronized (timingInfo) {
+			usedModules.addAll(neededModules);
+		}
 		logger.info("Handling request using the following modules:");
 		for (MaryModule m : neededModules) {
 			logger.info("- " + m.name() + " (" + m.getClass().getName() + ")");
@@ -578,11 +720,14 @@ public class Request {
 			currentData = outData;
 			long moduleStopTime = System.currentTimeMillis();
 			long delta = moduleStopTime - moduleStartTime;
-			Long soFar = timingInfo.get(m);
-			if (soFar != null)
-				timingInfo.put(m, new Long(soFar.longValue() + delta));
-			else
-				timingInfo.put(m, new Long(delta));
+			// chunks may be processed in parallel, see processChunksInParallel()
+			synchronized (timingInfo) {
+				Long soFar = timingInfo.get(m);
+				if (soFar != null)
+					timingInfo.put(m, new Long(soFar.longValue() + delta));
+				else
+					timingInfo.put(m, new Long(delta));
+			}
 			if (MaryRuntimeUtils.veryLowMemoryCondition()) {
 				logger.info("Very low memory condition detected (only " + MaryUtils.availableMemory()
 						+ " bytes left). Triggering garbage collection.");
@@ -744,15 +889,15 @@ public class Request {
 	}
 
 	/**
-	 * For a given maryxml document, extract one paragraph element as a separate document, including any parent nodes around the
-	 * paragraph element.
+	 * For a given maryxml document, extract one paragraph or sentence element as a separate document, including any parent nodes
+	 * around the element.
 	 * 
 	 * @param maryxml
 	 *            maryxml
 	 * @param paragraph
-	 *            paragraph
+	 *            the paragraph or sentence element
 	 */
-	private static MaryData extractParagraphAsMaryData(MaryData maryxml, Element paragraph) {
+	private static MaryData extractAsMaryData(MaryData maryxml, Element paragraph) {
 		if (!maryxml.getType().isMaryXML()) {
 			throw new IllegalArgumentException("Expected MaryXML data");
 		}
@@ -875,4 +1020,93 @@ public class Request {
 		timer.cancel();
 	}
 
+
+	/**
+	 * One unit of processing: a paragraph, or a sentence in a paragraph.
+	 */
+	private static class Chunk {
+		// the paragraph in the input document, to be replaced for MaryXML output; null for sentence chunks
+		final Element paragraph;
+		// the data to process, or null if there is no text in the paragraph
+		final MaryData input;
+
+		Chunk(Element paragraph, MaryData input) {
+			this.paragraph = paragraph;
+			this.input = input;
+		}
+	}
+
+	/**
+	 * Produces the chunks of a document, one at a time. In sentence mode, each paragraph is tokenised when it is reached, and its
+	 * sentences are returned as separate chunks.
+	 */
+	private class ChunkSource {
+		private final MaryData rawmaryxml;
+		private final NodeList paragraphs;
+		private final boolean sentences;
+		private final LinkedList<Chunk> queue = new LinkedList<Chunk>();
+		private int next = 0;
+
+		ChunkSource(MaryData rawmaryxml, NodeList paragraphs, boolean sentences) {
+			this.rawmaryxml = rawmaryxml;
+			this.paragraphs = paragraphs;
+			this.sentences = sentences;
+		}
+
+		/**
+		 * @return the next chunk, or null if there are no more chunks.
+		 * @throws Exception
+		 *             if a paragraph cannot be tokenised
+		 */
+		Chunk next() throws Exception {
+			while (queue.isEmpty()) {
+				if (next >= paragraphs.getLength()) {
+					return null;
+				}
+				Element paragraph = (Element) paragraphs.item(next++);
+				assert paragraph.getTagName().equals(MaryXML.PARAGRAPH);
+				// Only process paragraph if there is any text below it:
+				if (MaryDomUtils.getPlainTextBelow(paragraph).trim().equals("")) {
+					queue.add(new Chunk(paragraph, null));
+				} else if (!sentences) {
+					queue.add(new Chunk(paragraph, extractAsMaryData(rawmaryxml, paragraph)));
+				} else {
+					MaryData tokens = processOrLookupOneChunk(extractAsMaryData(rawmaryxml, paragraph), MaryDataType.TOKENS,
+							null);
+					List<Element> sentenceList = getSentences(tokens);
+					if (sentenceList == null) {
+						queue.add(new Chunk(null, tokens));
+					} else {
+						for (Element s : sentenceList) {
+							queue.add(new Chunk(null, extractAsMaryData(tokens, s)));
+						}
+					}
+				}
+			}
+			return queue.removeFirst();
+		}
+
+		/**
+		 * Get the sentences of the paragraph in the given tokenised document.
+		 * 
+		 * @return the sentences, or null if the paragraph contains anything other than sentences (such as a boundary between
+		 *         sentences) and must therefore be processed as a whole.
+		 */
+		private List<Element> getSentences(MaryData tokens) {
+			NodeList paragraphList = tokens.getDocument().getElementsByTagName(MaryXML.PARAGRAPH);
+			if (paragraphList.getLength() != 1) {
+				return null;
+			}
+			List<Element> sentenceList = new ArrayList<Element>();
+			for (Node n = paragraphList.item(0).getFirstChild(); n != null; n = n.getNextSibling()) {
+				if (n.getNodeType() == Node.ELEMENT_NODE && ((Element) n).getTagName().equals(MaryXML.SENTENCE)) {
+					sentenceList.add((Element) n);
+				} else if (n.getNodeType() != Node.TEXT_NODE || !n.getNodeValue().trim().equals("")) {
+					return null;
+				}
+			}
+			return sentenceList.isEmpty() ? null : sentenceList;
+		}
+	}
+
 }
@@ -19,10 +19,7 @@
  */
 package marytts.server.http;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -57,14 +54,11 @@ import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.MethodNotSupportedException;
-import org.apache.http.nio.ContentDecoder;
-import org.apache.http.nio.ContentDecoderChannel;
-import org.apache.http.nio.FileContentDecoder;
-import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.BufferingNHttpEntity;
 import org.apache.http.nio.entity.ConsumingNHttpEntity;
-import org.apache.http.nio.entity.ConsumingNHttpEntityTemplate;
-import org.apache.http.nio.entity.ContentListener;
-import org.apache.http.nio.protocol.SimpleNHttpRequestHandler;
+import org.apache.http.nio.protocol.NHttpRequestHandler;
+import org.apache.http.nio.protocol.NHttpResponseTrigger;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import org.apache.http.util.EntityUtils;
@@ -75,9 +69,7 @@ import org.apache.log4j.Logger;
  * 
  * @author Oytun T&uuml;rk, Marc Schröder
  */
-public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler implements HttpRequestHandler {
-	private final boolean useFileChannels = true;
-
+public abstract class BaseHttpRequestHandler implements NHttpRequestHandler, HttpRequestHandler {
 	protected static Logger logger;
 	private int runningNumber = 1;
 	private Map<String, Object[]> requestMap;
@@ -94,6 +86,20 @@ public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler i
 	 */
 	public void handle(final HttpRequest request, final HttpResponse response, final HttpContext context) throws HttpException,
 			IOException {
+		handle(request, response, (NHttpResponseTrigger) null);
+	}
+
+	/**
+	 * The entry point of the non-blocking http server. The response is sent to the client when it is submitted to the trigger,
+	 * which may happen after this method has returned.
+	 */
+	public void handle(final HttpRequest request, final HttpResponse response, final NHttpResponseTrigger trigger,
+			final HttpContext context) throws HttpException, IOException {
+		handle(request, response, trigger);
+	}
+
+	private void handle(final HttpRequest request, final HttpResponse response, final NHttpResponseTrigger trigger)
+			throws HttpException, IOException {
 		try {
 			Header[] tmp = request.getHeaders("Host");
 			Address serverAddressAtClient = getServerAddressAtClient(tmp[0].getValue());
@@ -135,16 +141,37 @@ public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler i
 			}
 
 			// Parse request and create appropriate response
-			handleClientRequest(absPath, queryItems, response, serverAddressAtClient);
+			if (trigger == null) {
+				handleClientRequest(absPath, queryItems, response, serverAddressAtClient);
+			} else {
+				handleClientRequest(absPath, queryItems, response, serverAddressAtClient, trigger);
+			}
 
 		} catch (RuntimeException re) {
 			logger.warn("runtime exception in handle():", re);
+			if (trigger != null) {
+				trigger.submitResponse(response);
+			}
 		}
 	}
 
 	protected abstract void handleClientRequest(String absPath, Map<String, String> queryItems, HttpResponse response,
 			Address serverAddressAtClient) throws IOException;
 
+	/**
+	 * Handle a request of the non-blocking http server. This implementation fills in the response by calling
+	 * {@link #handleClientRequest(String, Map, HttpResponse, Address)} and then submits it. Subclasses whose requests take a long
+	 * time can fill in and submit the response later on another thread, so that the server's I/O threads are not blocked.
+	 * 
+	 * @param trigger
+	 *            the trigger to submit the response to, exactly once
+	 */
+	protected void handleClientRequest(String absPath, Map<String, String> queryItems, HttpResponse response,
+			Address serverAddressAtClient, NHttpResponseTrigger trigger) throws IOException {
+		handleClientRequest(absPath, queryItems, response, serverAddressAtClient);
+		trigger.submitResponse(response);
+	}
+
 	protected Address getServerAddressAtClient(String fullHeader) {
 		String fullAddress = fullHeader.trim();
 		int index = fullAddress.indexOf('?');
@@ -157,45 +184,8 @@ public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler i
 
 	public ConsumingNHttpEntity entityRequest(final HttpEntityEnclosingRequest request, final HttpContext context)
 			throws HttpException, IOException {
-		return new ConsumingNHttpEntityTemplate(request.getEntity(), new FileWriteListener(useFileChannels));
-	}
-
-	static class FileWriteListener implements ContentListener {
-		private final File file;
-		private final FileInputStream inputFile;
-		private final FileChannel fileChannel;
-		private final boolean useFileChannels;
-		private long idx = 0;
-
-		public FileWriteListener(boolean useFileChannels) throws IOException {
-			this.file = File.createTempFile("tmp", ".tmp", null);
-			this.inputFile = new FileInputStream(file);
-			this.fileChannel = inputFile.getChannel();
-			this.useFileChannels = useFileChannels;
-		}
-
-		public void contentAvailable(ContentDecoder decoder, IOControl ioctrl) throws IOException {
-			long transferred;
-			if (useFileChannels && decoder instanceof FileContentDecoder) {
-				transferred = ((FileContentDecoder) decoder).transfer(fileChannel, idx, Long.MAX_VALUE);
-			} else {
-				transferred = fileChannel.transferFrom(new ContentDecoderChannel(decoder), idx, Long.MAX_VALUE);
-			}
-
-			if (transferred > 0)
-				idx += transferred;
-		}
-
-		public void finished() {
-			try {
-				inputFile.close();
-			} catch (IOException ignored) {
-			}
-			try {
-				fileChannel.close();
-			} catch (IOException ignored) {
-			}
-		}
+		// the request body is read in handle(), so keep it in memory:
+		return new BufferingNHttpEntity(request.getEntity(), new HeapByteBufferAllocator());
 	}
 
 }
@@ -85,6 +85,10 @@ public class InfoRequestHandler extends BaseHttpRequestHandler {
 			return MaryRuntimeUtils.getVoices();
 		else if (request.equals("audioformats"))
 			return MaryRuntimeUtils.getAudioFileFormatTypes();
+		else if (request.equals("cachestats"))
+			return MaryRuntimeUtils.getCacheStatistics();
+		else if (request.equals("synthesisstats"))
+			return SynthesisScheduler.getScheduler().getStatistics();
 		else if (request.equals("exampletext")) {
 			if (queryItems != null) {
 				// Voice example text
@@ -188,6 +188,20 @@ public class MaryHttpServerUtils {
 		}
 	}
 
+	public static void errorServiceUnavailable(HttpResponse response, String message, int retryAfterSeconds) {
+		int status = HttpStatus.SC_SERVICE_UNAVAILABLE;
+		response.setStatusCode(status);
+		response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+		logger.debug("Returning HTTP status " + status + ": " + message);
+		try {
+			NStringEntity entity = new NStringEntity("<html><body><h1>Service unavailable</h1><p>" + message
+					+ "</p></body></html>", "UTF-8");
+			entity.setContentType("text/html; charset=UTF-8");
+			response.setEntity(entity);
+		} catch (UnsupportedEncodingException e) {
+		}
+	}
+
 	public static void errorMissingQueryParameter(HttpResponse response, String param) {
 		int status = HttpStatus.SC_BAD_REQUEST;
 		response.setStatusCode(status);
@@ -28,6 +28,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -44,8 +47,10 @@ import marytts.util.MaryUtils;
 import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.http.Address;
 
+import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.nio.protocol.NHttpResponseTrigger;
 import org.apache.log4j.Logger;
 
 /**
@@ -82,23 +87,66 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		 * response.setStatusCode(HttpStatus.SC_OK); TestProducingNHttpEntity entity = new TestProducingNHttpEntity();
 		 * entity.setContentType("audio/x-mp3"); response.setEntity(entity); if (true) return;
 		 */
+		logRequest(absPath, queryItems);
+		process(serverAddressAtClient, queryItems, response);
+
+	}
+
+	@Override
+	protected void handleClientRequest(String absPath, Map<String, String> queryItems, HttpResponse response,
+			Address serverAddressAtClient, NHttpResponseTrigger trigger) throws IOException {
+		logRequest(absPath, queryItems);
+		process(serverAddressAtClient, queryItems, response, trigger);
+	}
+
+	private void logRequest(String absPath, Map<String, String> queryItems) {
 		logger.debug("New synthesis request: " + absPath);
 		if (queryItems != null) {
 			for (String key : queryItems.keySet()) {
 				logger.debug("    " + key + "=" + queryItems.get(key));
 			}
 		}
-		process(serverAddressAtClient, queryItems, response);
-
 	}
 
+	/**
+	 * Process a synthesis request, and wait until the response is complete.
+	 */
 	public void process(Address serverAddressAtClient, Map<String, String> queryItems, HttpResponse response) {
+		ResponseLatch latch = new ResponseLatch();
+		process(serverAddressAtClient, queryItems, response, latch);
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Process a synthesis request without blocking the calling thread. The request is processed on a worker of the
+	 * {@link SynthesisScheduler}; the response is submitted to the trigger once it is complete, or once the worker starts
+	 * streaming audio.
+	 */
+	public void process(Address serverAddressAtClient, Map<String, String> queryItems, HttpResponse response,
+			NHttpResponseTrigger trigger) {
+		if (startProcessing(serverAddressAtClient, queryItems, response, trigger)) {
+			trigger.submitResponse(response);
+		}
+	}
+
+	/**
+	 * Check the request parameters and schedule the request.
+	 * 
+	 * @return true if the response is complete already, e.g. because of an error; false if the response will be submitted to
+	 *         the trigger by the scheduled task
+	 */
+	private boolean startProcessing(Address serverAddressAtClient, Map<String, String> queryItems, final HttpResponse response,
+			final NHttpResponseTrigger trigger) {
 		if (queryItems == null
 				|| !(queryItems.containsKey("INPUT_TYPE") && queryItems.containsKey("OUTPUT_TYPE")
 						&& queryItems.containsKey("LOCALE") && queryItems.containsKey("INPUT_TEXT"))) {
 			MaryHttpServerUtils.errorMissingQueryParameter(response,
 					"'INPUT_TEXT' and 'INPUT_TYPE' and 'OUTPUT_TYPE' and 'LOCALE'");
-			return;
+			return true;
 		}
 
 		String inputText = queryItems.get("INPUT_TEXT");
@@ -106,13 +154,13 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		MaryDataType inputType = MaryDataType.get(queryItems.get("INPUT_TYPE"));
 		if (inputType == null) {
 			MaryHttpServerUtils.errorWrongQueryParameterValue(response, "INPUT_TYPE", queryItems.get("INPUT_TYPE"), null);
-			return;
+			return true;
 		}
 
 		MaryDataType outputType = MaryDataType.get(queryItems.get("OUTPUT_TYPE"));
 		if (outputType == null) {
 			MaryHttpServerUtils.errorWrongQueryParameterValue(response, "OUTPUT_TYPE", queryItems.get("OUTPUT_TYPE"), null);
-			return;
+			return true;
 		}
 		boolean isOutputText = true;
 		boolean streamingAudio = false;
@@ -122,7 +170,7 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			String audioTypeName = queryItems.get("AUDIO");
 			if (audioTypeName == null) {
 				MaryHttpServerUtils.errorMissingQueryParameter(response, "'AUDIO' when OUTPUT_TYPE=AUDIO");
-				return;
+				return true;
 			}
 			if (audioTypeName.endsWith("_STREAM")) {
 				streamingAudio = true;
@@ -137,15 +185,15 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			}
 			if (audioFileFormatType == null) {
 				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "AUDIO", queryItems.get("AUDIO"), null);
-				return;
+				return true;
 			} else if (audioFileFormatType.toString().equals("MP3") && !MaryRuntimeUtils.canCreateMP3()) {
 				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "AUDIO", queryItems.get("AUDIO"),
 						"Conversion to MP3 not supported.");
-				return;
+				return true;
 			} else if (audioFileFormatType.toString().equals("Vorbis") && !MaryRuntimeUtils.canCreateOgg()) {
 				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "AUDIO", queryItems.get("AUDIO"),
 						"Conversion to OGG Vorbis format not supported.");
-				return;
+				return true;
 			}
 		}
 		// optionally, there may be output type parameters
@@ -155,7 +203,7 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		Locale locale = MaryUtils.string2locale(queryItems.get("LOCALE"));
 		if (locale == null) {
 			MaryHttpServerUtils.errorWrongQueryParameterValue(response, "LOCALE", queryItems.get("LOCALE"), null);
-			return;
+			return true;
 		}
 
 		Voice voice = null;
@@ -169,7 +217,7 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			if (voice == null) {
 				// a voice name was given but there is no such voice
 				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "VOICE", queryItems.get("VOICE"), null);
-				return;
+				return true;
 			}
 		}
 		if (voice == null) { // no voice tag -- use locale default if it exists.
@@ -225,68 +273,95 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			MaryHttpServerUtils.errorInternalServerError(response, message, e);
 			ok = false;
 		}
-		if (ok) {
-			if (streamingAudio) {
-				// Start two separate threads:
-				// 1. one thread to process the request;
-				new Thread("RH " + maryRequest.getId()) {
-					public void run() {
-						Logger myLogger = MaryUtils.getLogger(this.getName());
-						try {
-							maryRequest.process();
-							myLogger.info("Streaming request processed successfully.");
-						} catch (Throwable t) {
-							myLogger.error("Processing failed.", t);
-						}
+		if (!ok) {
+			finish(false);
+			return true;
+		}
+		final SynthesisScheduler scheduler = SynthesisScheduler.getScheduler();
+		Runnable ifDropped = new Runnable() {
+			public void run() {
+				errorServerBusy(response, scheduler);
+				finish(false);
+				trigger.submitResponse(response);
+			}
+		};
+		Callable<Void> task;
+		if (streamingAudio) {
+			// The synthesis worker answers with the streaming entity and then processes the request;
+			// a separate thread takes the audio data as it becomes available
+			// and writes it into the ProducingNHttpEntity.
+			// That thread does not depend on the worker practically,
+			// because the AppendableSequenceAudioInputStream returned by
+			// maryRequest.getAudio() was already created in the constructor of Request.
+			task = new Callable<Void>() {
+				public Void call() {
+					AudioInputStream audio = maryRequest.getAudio();
+					assert audio != null : "Streaming audio but no audio stream -- very strange indeed! :-(";
+					AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(maryRequest);
+					new Thread(entity, "HTTPWriter " + maryRequest.getId()).start();
+					// entity knows its contentType, no need to set explicitly here.
+					response.setEntity(entity);
+					response.setStatusCode(HttpStatus.SC_OK);
+					trigger.submitResponse(response);
+					Logger myLogger = MaryUtils.getLogger("RH " + maryRequest.getId());
+					try {
+						maryRequest.process();
+						myLogger.info("Streaming request processed successfully.");
+					} catch (Throwable t) {
+						myLogger.error("Processing failed.", t);
 					}
-				}.start();
-
-				// 2. one thread to take the audio data as it becomes available
-				// and write it into the ProducingNHttpEntity.
-				// The second one does not depend on the first one practically,
-				// because the AppendableSequenceAudioInputStream returned by
-				// maryRequest.getAudio() was already created in the constructor of Request.
-				AudioInputStream audio = maryRequest.getAudio();
-				assert audio != null : "Streaming audio but no audio stream -- very strange indeed! :-(";
-				AudioFileFormat.Type audioType = maryRequest.getAudioFileFormat().getType();
-				AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(maryRequest);
-				new Thread(entity, "HTTPWriter " + maryRequest.getId()).start();
-				// entity knows its contentType, no need to set explicitly here.
-				response.setEntity(entity);
-				response.setStatusCode(HttpStatus.SC_OK);
-				return;
-			} else { // not streaming audio
-				// Process input data to output data
-				try {
-					maryRequest.process(); // this may take some time
-				} catch (Throwable e) {
-					String message = "Processing failed.";
-					logger.error(message, e);
-					MaryHttpServerUtils.errorInternalServerError(response, message, e);
-					ok = false;
+					return null;
 				}
-				if (ok) {
-					// Write output data to client
+			};
+		} else { // not streaming audio
+			task = new Callable<Void>() {
+				public Void call() {
+					boolean processed = true;
+					// Process input data to output data
 					try {
-						ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-						maryRequest.writeOutputData(outputStream);
-						String contentType;
-						if (maryRequest.getOutputType().isXMLType() || maryRequest.getOutputType().isTextType()) // text output
-							contentType = "text/plain; charset=UTF-8";
-						else
-							// audio output
-							contentType = MaryHttpServerUtils.getMimeType(maryRequest.getAudioFileFormat().getType());
-						MaryHttpServerUtils.toHttpResponse(outputStream.toByteArray(), response, contentType);
-					} catch (Exception e) {
-						String message = "Cannot write output";
-						logger.warn(message, e);
+						maryRequest.process(); // this may take some time
+					} catch (Throwable e) {
+						String message = "Processing failed.";
+						logger.error(message, e);
 						MaryHttpServerUtils.errorInternalServerError(response, message, e);
-						ok = false;
+						processed = false;
+					}
+					if (processed) {
+						// Write output data to client
+						try {
+							ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+							maryRequest.writeOutputData(outputStream);
+							String contentType;
+							if (maryRequest.getOutputType().isXMLType() || maryRequest.getOutputType().isTextType()) // text output
+								contentType = "text/plain; charset=UTF-8";
+							else
+								// audio output
+								contentType = MaryHttpServerUtils.getMimeType(maryRequest.getAudioFileFormat().getType());
+							MaryHttpServerUtils.toHttpResponse(outputStream.toByteArray(), response, contentType);
+						} catch (Exception e) {
+							String message = "Cannot write output";
+							logger.warn(message, e);
+							MaryHttpServerUtils.errorInternalServerError(response, message, e);
+							processed = false;
+						}
 					}
+					finish(processed);
+					trigger.submitResponse(response);
+					return null;
 				}
-			}
+			};
 		}
+		try {
+			scheduler.submit(task, ifDropped);
+		} catch (RejectedExecutionException e) {
+			errorServerBusy(response, scheduler);
+			finish(false);
+			return true;
+		}
+		return false;
+	}
 
+	private void finish(boolean ok) {
 		if (ok)
 			logger.info("Request handled successfully.");
 		else
@@ -299,6 +374,35 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		}
 	}
 
+	private void errorServerBusy(HttpResponse response, SynthesisScheduler scheduler) {
+		logger.info("Server busy -- request not processed.");
+		MaryHttpServerUtils.errorServiceUnavailable(response, "Server busy, please try again later.",
+				scheduler.getRetryAfterSeconds());
+	}
+
+	/**
+	 * Lets a thread wait for a response that is submitted on another thread.
+	 */
+	private static class ResponseLatch implements NHttpResponseTrigger {
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		public void submitResponse(HttpResponse response) {
+			done.countDown();
+		}
+
+		public void handleException(HttpException ex) {
+			done.countDown();
+		}
+
+		public void handleException(IOException ex) {
+			done.countDown();
+		}
+
+		void await() throws InterruptedException {
+			done.await();
+		}
+	}
+
 	protected String toRequestedAudioEffectsString(Map<String, String> keyValuePairs) {
 		StringBuilder effects = new StringBuilder();
 		StringTokenizer tt;
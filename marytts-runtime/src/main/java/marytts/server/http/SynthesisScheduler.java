@@ -0,0 +1,306 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.server.MaryProperties;
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs synthesis requests of the http server on a fixed number of workers. Requests that cannot start immediately wait in a
+ * first-in first-out queue; a request that is still waiting when the queue timeout has passed is dropped at that moment, and
+ * its drop handler is called so that the client can be answered. When the workers and the queue are full, new requests are
+ * rejected right away, so that overload leads to quick "service unavailable" answers rather than to an ever growing number of
+ * threads.
+ * <p>
+ * Submitting never blocks: the caller hands over the whole remaining work, including writing the response, and returns.
+ * <p>
+ * The scheduler is configured by the properties <code>server.http.synthesisthreads</code>, <code>server.http.queuesize</code>
+ * and <code>server.http.queuetimeout</code> (in milliseconds).
+ */
+public class SynthesisScheduler {
+	private static SynthesisScheduler scheduler;
+
+	/**
+	 * Get the scheduler shared by all synthesis requests, creating it from the configuration on first use.
+	 * 
+	 * @return the shared scheduler
+	 */
+	public static synchronized SynthesisScheduler getScheduler() {
+		if (scheduler == null) {
+			int threads = MaryProperties.getInteger("server.http.synthesisthreads", 4);
+			int queueSize = MaryProperties.getInteger("server.http.queuesize", 32);
+			int queueTimeout = MaryProperties.getInteger("server.http.queuetimeout", 30000);
+			scheduler = new SynthesisScheduler(threads, queueSize, queueTimeout);
+		}
+		return scheduler;
+	}
+
+	/** weight of the newest wait time in the moving average of wait times */
+	private static final double WAIT_SMOOTHING = 0.2;
+
+	private final Logger logger;
+	private final ThreadPoolExecutor executor;
+	private final ScheduledExecutorService timeouts;
+	private final int threads;
+	private final int capacity;
+	private final long queueTimeout;
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong waited = new AtomicLong();
+	private final AtomicLong totalWaitTime = new AtomicLong();
+	private final AtomicLong maxWaitTime = new AtomicLong();
+	private final AtomicLong totalProcessingTime = new AtomicLong();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	/** moving average of the time recently started requests have waited in the queue, in milliseconds */
+	private volatile double recentWaitTime = 0;
+
+	/**
+	 * Create a scheduler.
+	 * 
+	 * @param threads
+	 *            the number of requests to process at the same time; at least 1
+	 * @param queueSize
+	 *            the number of requests that may wait for a free worker
+	 * @param queueTimeout
+	 *            the time in milliseconds a request may wait before it is dropped
+	 */
+	public SynthesisScheduler(int threads, int queueSize, long queueTimeout) {
+		this.logger = MaryUtils.getLogger("http");
+		this.threads = Math.max(1, threads);
+		this.capacity = this.threads + Math.max(0, queueSize);
+		this.queueTimeout = queueTimeout;
+		ThreadFactory factory = new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SynthesisWorker-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), factory);
+		timeouts = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SynthesisQueueTimeout");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		logger.info("Processing synthesis requests on " + this.threads + " threads, with up to " + queueSize
+				+ " waiting for at most " + queueTimeout + " ms");
+	}
+
+	/**
+	 * Schedule a synthesis task. This method returns immediately; the task, or the drop handler if the task waits too long,
+	 * runs later on another thread.
+	 * 
+	 * @param task
+	 *            the work to do
+	 * @param ifDropped
+	 *            what to do instead of the task if the task is dropped from the queue because it waited longer than the queue
+	 *            timeout; may be null
+	 * @return a handle on the scheduled task
+	 * @throws RejectedExecutionException
+	 *             if all workers are busy and the queue is full
+	 */
+	public Job submit(Callable<Void> task, Runnable ifDropped) throws RejectedExecutionException {
+		submitted.incrementAndGet();
+		if (pending.incrementAndGet() > capacity) {
+			pending.decrementAndGet();
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException("Synthesis queue is full");
+		}
+		final Job job = new Job(task, ifDropped, System.currentTimeMillis());
+		try {
+			executor.execute(job);
+		} catch (RejectedExecutionException e) {
+			pending.decrementAndGet();
+			rejected.incrementAndGet();
+			throw e;
+		}
+		int depth = executor.getQueue().size();
+		int max;
+		while (depth > (max = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(max, depth)) {
+		}
+		timeouts.schedule(new Runnable() {
+			public void run() {
+				if (executor.remove(job)) {
+					job.drop();
+				}
+			}
+		}, queueTimeout, TimeUnit.MILLISECONDS);
+		return job;
+	}
+
+	/**
+	 * Estimate after how many seconds a rejected client should try again. The estimate is the time that the requests which
+	 * started most recently had spent waiting in the queue.
+	 * 
+	 * @return a delay in seconds, at least 1
+	 */
+	public int getRetryAfterSeconds() {
+		return (int) Math.max(1, Math.ceil(recentWaitTime / 1000));
+	}
+
+	/**
+	 * @return the number of requests currently waiting for a worker
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the number of requests that were turned away because the queue was full
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return the number of requests that were dropped because they waited longer than the queue timeout
+	 */
+	public long getExpired() {
+		return expired.get();
+	}
+
+	/**
+	 * Describe the state of the scheduler.
+	 * 
+	 * @return one "name value" pair per line; times are in milliseconds
+	 */
+	public String getStatistics() {
+		String nl = System.getProperty("line.separator");
+		long numWaits = waited.get();
+		StringBuilder sb = new StringBuilder();
+		sb.append("threads ").append(threads).append(nl);
+		sb.append("active ").append(executor.getActiveCount()).append(nl);
+		sb.append("queuedepth ").append(getQueueDepth()).append(nl);
+		sb.append("maxqueuedepth ").append(maxQueueDepth.get()).append(nl);
+		sb.append("submitted ").append(submitted.get()).append(nl);
+		sb.append("rejected ").append(getRejected()).append(nl);
+		sb.append("expired ").append(getExpired()).append(nl);
+		sb.append("completed ").append(completed.get()).append(nl);
+		sb.append("averagewait ")
+				.append(String.format(Locale.US, "%.1f", numWaits == 0 ? 0. : (double) totalWaitTime.get() / numWaits)).append(nl);
+		sb.append("recentwait ").append(String.format(Locale.US, "%.1f", recentWaitTime)).append(nl);
+		sb.append("maxwait ").append(maxWaitTime.get()).append(nl);
+		sb.append("averageprocessing ")
+				.append(String.format(Locale.US, "%.1f", completed.get() == 0 ? 0. : (double) totalProcessingTime.get()
+						/ completed.get())).append(nl);
+		return sb.toString();
+	}
+
+	private synchronized void recordWaitTime(long wait) {
+		waited.incrementAndGet();
+		totalWaitTime.addAndGet(wait);
+		if (wait > maxWaitTime.get()) {
+			maxWaitTime.set(wait);
+		}
+		recentWaitTime += WAIT_SMOOTHING * (wait - recentWaitTime);
+	}
+
+	/**
+	 * A scheduled synthesis task. A task either starts on a worker or is dropped from the queue at its deadline, whichever
+	 * happens first.
+	 */
+	public class Job extends FutureTask<Void> {
+		private final Runnable ifDropped;
+		private final long submitTime;
+		private final CountDownLatch started = new CountDownLatch(1);
+		/** set by whichever of starting and dropping happens first */
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		private static final int WAITING = 0;
+		private static final int STARTED = 1;
+		private static final int DROPPED = 2;
+
+		Job(Callable<Void> task, Runnable ifDropped, long submitTime) {
+			super(task);
+			this.ifDropped = ifDropped;
+			this.submitTime = submitTime;
+		}
+
+		@Override
+		public void run() {
+			if (!state.compareAndSet(WAITING, STARTED)) {
+				return;
+			}
+			try {
+				long now = System.currentTimeMillis();
+				recordWaitTime(now - submitTime);
+				started.countDown();
+				super.run();
+				totalProcessingTime.addAndGet(System.currentTimeMillis() - now);
+				completed.incrementAndGet();
+			} finally {
+				pending.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Drop this job from the queue, unless it has started already.
+		 */
+		void drop() {
+			if (!state.compareAndSet(WAITING, DROPPED)) {
+				return;
+			}
+			pending.decrementAndGet();
+			recordWaitTime(System.currentTimeMillis() - submitTime);
+			expired.incrementAndGet();
+			cancel(false);
+			started.countDown();
+			if (ifDropped != null) {
+				ifDropped.run();
+			}
+		}
+
+		/**
+		 * Wait until this job either starts processing or is dropped from the queue.
+		 * 
+		 * @return true if the job is being processed, false if it was dropped because it waited too long
+		 * @throws InterruptedException
+		 *             if the calling thread is interrupted while waiting
+		 */
+		public boolean awaitStart() throws InterruptedException {
+			started.await();
+			return state.get() == STARTED;
+		}
+	}
+}
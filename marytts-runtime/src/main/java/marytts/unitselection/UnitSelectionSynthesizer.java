@@ -25,11 +25,18 @@ import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -46,6 +53,7 @@ import marytts.unitselection.concat.UnitConcatenator;
 import marytts.unitselection.concat.BaseUnitConcatenator.UnitData;
 import marytts.unitselection.data.Unit;
 import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.DiphoneTarget;
 import marytts.unitselection.select.HalfPhoneTarget;
 import marytts.unitselection.select.SelectedUnit;
 import marytts.unitselection.select.Target;
@@ -56,7 +64,10 @@ import marytts.util.dom.NameNodeFilter;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import org.jsresources.SequenceAudioInputStream;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.traversal.DocumentTraversal;
 import org.w3c.dom.traversal.NodeFilter;
 import org.w3c.dom.traversal.TreeWalker;
@@ -75,6 +86,9 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer {
 	 */
 	private Logger logger;
 
+	// Shared by all unit selection voices for selecting the sentences of a chunk in parallel; see getSentenceExecutor()
+	private static ExecutorService sentenceExecutor = null;
+
 	public UnitSelectionSynthesizer() {
 	}
 
@@ -174,26 +188,34 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer {
 		// TODO: check if we actually need to access v.getDatabase() here
 		UnitDatabase database = v.getDatabase();
 		logger.debug("Selecting units with a " + unitSel.getClass().getName() + " from a " + database.getClass().getName());
-		List<SelectedUnit> selectedUnits = unitSel.selectUnits(tokensAndBoundaries, voice);
-		// if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
-		// StringWriter sw = new StringWriter();
-		// PrintWriter pw = new PrintWriter(sw);
-		// for (Iterator selIt=selectedUnits.iterator(); selIt.hasNext(); )
-		// pw.println(selIt.next());
-		// logger.debug("Units selected:\n"+sw.toString());
-		// }
-
-		// Concatenate:
-		logger.debug("Now creating audio with a " + unitConcatenator.getClass().getName());
+		List<SelectedUnit> selectedUnits;
 		AudioInputStream audio = null;
-		try {
-			audio = unitConcatenator.getAudio(selectedUnits);
-		} catch (IOException ioe) {
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			for (Iterator selIt = selectedUnits.iterator(); selIt.hasNext();)
-				pw.println(selIt.next());
-			throw new SynthesisException("Problems generating audio for unit chain: " + sw.toString(), ioe);
+		// The modification concatenator keeps per-call state in the instance, so it cannot run on several sentences at once
+		ExecutorService executor = unitConcatenator == v.getConcatenator() ? getSentenceExecutor() : null;
+		if (executor != null) {
+			List<Target> targets = unitSel.prepareTargets(tokensAndBoundaries);
+			List<List<Target>> sentences = splitAtMajorBoundaries(targets);
+			if (sentences.size() > 1) {
+				expandDocument(tokensAndBoundaries.get(0).getOwnerDocument());
+				selectedUnits = new ArrayList<SelectedUnit>();
+				audio = synthesizeInParallel(sentences, unitSel, unitConcatenator, executor, selectedUnits);
+			} else {
+				selectedUnits = unitSel.selectUnits(targets);
+				audio = getAudio(unitConcatenator, selectedUnits);
+			}
+		} else {
+			selectedUnits = unitSel.selectUnits(tokensAndBoundaries, voice);
+			// if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
+			// StringWriter sw = new StringWriter();
+			// PrintWriter pw = new PrintWriter(sw);
+			// for (Iterator selIt=selectedUnits.iterator(); selIt.hasNext(); )
+			// pw.println(selIt.next());
+			// logger.debug("Units selected:\n"+sw.toString());
+			// }
+
+			// Concatenate:
+			logger.debug("Now creating audio with a " + unitConcatenator.getClass().getName());
+			audio = getAudio(unitConcatenator, selectedUnits);
 		}
 
 		// Propagate unit durations to XML tree:
@@ -280,4 +302,192 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer {
 		return audio;
 	}
 
+	private static AudioInputStream getAudio(UnitConcatenator unitConcatenator, List<SelectedUnit> selectedUnits)
+			throws SynthesisException {
+		try {
+			return unitConcatenator.getAudio(selectedUnits);
+		} catch (IOException ioe) {
+			StringWriter sw = new StringWriter();
+			PrintWriter pw = new PrintWriter(sw);
+			for (Iterator selIt = selectedUnits.iterator(); selIt.hasNext();)
+				pw.println(selIt.next());
+			throw new SynthesisException("Problems generating audio for unit chain: " + sw.toString(), ioe);
+		}
+	}
+
+	/**
+	 * Select and concatenate the units for each of the given sentences on the sentence executor, and join the audio in order.
+	 * Everything that reads the MaryXML document is done in the calling thread before the sentences are handed over, because the
+	 * DOM is not safe for concurrent access.
+	 * 
+	 * @param sentences
+	 *            the targets of each sentence, with their target features computed
+	 * @param unitSel
+	 *            unitSel
+	 * @param unitConcatenator
+	 *            unitConcatenator
+	 * @param executor
+	 *            executor
+	 * @param selectedUnits
+	 *            receives the selected units of all sentences, in order
+	 * @return the audio of all sentences
+	 * @throws SynthesisException
+	 *             if selection or concatenation fails for any of the sentences
+	 */
+	private AudioInputStream synthesizeInParallel(List<List<Target>> sentences, final UnitSelector unitSel,
+			final UnitConcatenator unitConcatenator, ExecutorService executor, List<SelectedUnit> selectedUnits)
+			throws SynthesisException {
+		long time = System.currentTimeMillis();
+		List<Future<SentenceResult>> futures = new ArrayList<Future<SentenceResult>>(sentences.size());
+		try {
+			for (final List<Target> targets : sentences) {
+				cacheTargetData(targets);
+				futures.add(executor.submit(new Callable<SentenceResult>() {
+					public SentenceResult call() throws SynthesisException {
+						List<SelectedUnit> units = unitSel.selectUnits(targets);
+						return new SentenceResult(units, getAudio(unitConcatenator, units));
+					}
+				}));
+			}
+			List<AudioInputStream> audios = new ArrayList<AudioInputStream>(sentences.size());
+			for (Future<SentenceResult> future : futures) {
+				SentenceResult result = future.get();
+				selectedUnits.addAll(result.units);
+				audios.add(result.audio);
+			}
+			logger.debug("Selection and concatenation of " + sentences.size() + " sentences took "
+					+ (System.currentTimeMillis() - time) + " milliseconds");
+			return new SequenceAudioInputStream(audios.get(0).getFormat(), audios);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new SynthesisException("Interrupted while selecting units", ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof SynthesisException) {
+				throw (SynthesisException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new SynthesisException("Problem selecting units", cause);
+		} finally {
+			for (Future<SentenceResult> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Split the targets of a chunk after each sentence or paragraph boundary, i.e. each boundary with a break index of at least
+	 * 5. The targets are created for the whole chunk at once and only then split, so that the sentences together have exactly the
+	 * targets of the unsplit chunk: in particular, diphone voices get the silences they add at the edges of an utterance only at
+	 * the edges of the chunk, not at every sentence boundary. A sentence ends with the last target that covers the boundary; for
+	 * diphones, the one whose right half is the boundary. What still differs from synthesizing the whole chunk at once is that the
+	 * join between the last unit of one sentence and the first unit of the next is not optimised, and that the audio of each
+	 * sentence is concatenated on its own.
+	 * 
+	 * @param targets
+	 *            the targets of a chunk
+	 * @return the list of sentences, each a non-empty list of targets
+	 */
+	static List<List<Target>> splitAtMajorBoundaries(List<Target> targets) {
+		List<List<Target>> sentences = new ArrayList<List<Target>>();
+		int start = 0;
+		for (int i = 0; i + 1 < targets.size(); i++) {
+			Element element = getElement(targets.get(i));
+			Element next = getElement(targets.get(i + 1));
+			// trailing targets without an element stay with the last sentence
+			if (next != null && next != element && isMajorBoundary(element)) {
+				sentences.add(new ArrayList<Target>(targets.subList(start, i + 1)));
+				start = i + 1;
+			}
+		}
+		if (start < targets.size()) {
+			sentences.add(new ArrayList<Target>(targets.subList(start, targets.size())));
+		}
+		return sentences;
+	}
+
+	/**
+	 * The MaryXML element of a target, or for a diphone, that of its right half.
+	 */
+	private static Element getElement(Target target) {
+		if (target instanceof DiphoneTarget) {
+			return ((DiphoneTarget) target).right.getMaryxmlElement();
+		}
+		return target.getMaryxmlElement();
+	}
+
+	private static boolean isMajorBoundary(Element element) {
+		if (element == null || !element.getTagName().equals(MaryXML.BOUNDARY)) {
+			return false;
+		}
+		try {
+			return Integer.parseInt(element.getAttribute("breakindex")) >= 5;
+		} catch (NumberFormatException nfe) {
+			// no or unusual break index: not a sentence boundary
+			return false;
+		}
+	}
+
+	/**
+	 * Visit every node and attribute of the document once. Parsers may build DOM nodes lazily on first access; after this, reading
+	 * the document no longer modifies it.
+	 */
+	private static void expandDocument(Document doc) {
+		TreeWalker tw = ((DocumentTraversal) doc).createTreeWalker(doc, NodeFilter.SHOW_ALL, null, false);
+		Node n;
+		while ((n = tw.nextNode()) != null) {
+			n.hasAttributes();
+		}
+	}
+
+	/**
+	 * Look up the blacklist that candidate selection asks for, and compute the target durations and F0 values that the
+	 * concatenator asks for, while still in the calling thread; targets remember these values once computed.
+	 */
+	private static void cacheTargetData(List<Target> targets) {
+		for (Target target : targets) {
+			if (target instanceof DiphoneTarget) {
+				cacheTargetData(Arrays.<Target> asList(((DiphoneTarget) target).left, ((DiphoneTarget) target).right));
+				target.getBlacklist();
+			} else if (target.getMaryxmlElement() != null) {
+				target.getBlacklist();
+				target.getTargetDurationInSeconds();
+				target.getTargetF0InHz();
+				target.isSilence();
+			}
+		}
+	}
+
+	private static synchronized ExecutorService getSentenceExecutor() {
+		int threads = MaryProperties.getInteger("unitselection.sentencethreads", 1);
+		if (threads <= 1) {
+			return null;
+		}
+		if (sentenceExecutor == null) {
+			sentenceExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private int count = 0;
+
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SentenceWorker-" + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sentenceExecutor;
+	}
+
+	private static class SentenceResult {
+		final List<SelectedUnit> units;
+		final AudioInputStream audio;
+
+		SentenceResult(List<SelectedUnit> units, AudioInputStream audio) {
+			this.units = units;
+			this.audio = audio;
+		}
+	}
+
 }
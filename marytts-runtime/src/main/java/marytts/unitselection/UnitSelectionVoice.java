@@ -53,6 +53,7 @@ import marytts.modules.synthesis.WaveformSynthesizer;
 import marytts.server.MaryProperties;
 import marytts.unitselection.concat.FdpsolaUnitConcatenator;
 import marytts.unitselection.concat.UnitConcatenator;
+import marytts.unitselection.data.FeatureFileReader;
 import marytts.unitselection.data.TimelineReader;
 import marytts.unitselection.data.UnitDatabase;
 import marytts.unitselection.data.UnitFileReader;
@@ -102,13 +103,21 @@ public class UnitSelectionVoice extends Voice {
 				throw new MaryConfigurationException("No feature processor manager for voice '" + name + "' (locale "
 						+ getLocale() + ")");
 
+			// Read unit features, join cost features and units from the memory-mapped files instead of copying them to the heap?
+			boolean memoryMapped = MaryProperties.getBoolean(header + ".memoryMapped", false);
+
 			// build and load targetCostFunction
 			logger.debug("...loading target cost function...");
 			String featureFileName = MaryProperties.needFilename(header + ".featureFile");
 			InputStream targetWeightStream = MaryProperties.getStream(header + ".targetCostWeights");
 			String targetCostClass = MaryProperties.needProperty(header + ".targetCostClass");
 			TargetCostFunction targetFunction = (TargetCostFunction) Class.forName(targetCostClass).newInstance();
-			targetFunction.load(featureFileName, targetWeightStream, featProcManager);
+			if (memoryMapped) {
+				targetFunction.load(FeatureFileReader.getFeatureFileReader(featureFileName, true), targetWeightStream,
+						featProcManager);
+			} else {
+				targetFunction.load(featureFileName, targetWeightStream, featProcManager);
+			}
 
 			// build joinCostFunction
 			logger.debug("...loading join cost function...");
@@ -134,7 +143,7 @@ public class UnitSelectionVoice extends Voice {
 			String unitReaderClass = MaryProperties.needProperty(header + ".unitReaderClass");
 			String unitsFile = MaryProperties.needFilename(header + ".unitsFile");
 			UnitFileReader unitReader = (UnitFileReader) Class.forName(unitReaderClass).newInstance();
-			unitReader.load(unitsFile);
+			unitReader.load(unitsFile, memoryMapped);
 
 			logger.debug("...loading cart file...");
 			// String cartReaderClass = MaryProperties.needProperty(header+".cartReaderClass");
@@ -154,6 +163,10 @@ public class UnitSelectionVoice extends Voice {
 			Constructor<? extends TimelineReader> constructor = (Constructor<? extends TimelineReader>) theClass
 					.getConstructor(constructorArgTypes);
 			TimelineReader timelineReader = constructor.newInstance(args);
+			if (MaryProperties.getBoolean(header + ".audioTimeline.seekTable", false)) {
+				timelineReader.buildSeekTable();
+			}
+			timelineReader.setPrefetch(MaryProperties.getBoolean(header + ".audioTimeline.prefetch", false));
 
 			// optionally, get basename timeline
 			String basenameTimelineFile = MaryProperties.getFilename(header + ".basenameTimeline");
@@ -186,6 +199,10 @@ public class UnitSelectionVoice extends Voice {
 				float sCostWeights = Float.parseFloat(MaryProperties.getProperty(header + ".viterbi.wSCosts", "0.33"));
 				unitSelector.load(database, targetCostWeights, sCostWeights, beamSize);
 			}
+			String beamThreshold = MaryProperties.getProperty(header + ".viterbi.beamthreshold");
+			if (beamThreshold != null) {
+				unitSelector.setBeamThreshold(Double.parseDouble(beamThreshold));
+			}
 
 			// samplingRate -> bin, audioformat -> concatenator
 			// build Concatenator
@@ -41,6 +41,7 @@ import javax.sound.sampled.AudioInputStream;
 
 import marytts.unitselection.analysis.ProsodyAnalyzer;
 import marytts.unitselection.data.TimelineReader;
+import marytts.unitselection.data.Unit;
 import marytts.unitselection.data.UnitDatabase;
 import marytts.unitselection.select.SelectedUnit;
 import marytts.util.MaryUtils;
@@ -109,6 +110,9 @@ public class BaseUnitConcatenator implements UnitConcatenator {
 	public AudioInputStream getAudio(List<SelectedUnit> units) throws IOException {
 		logger.debug("Getting audio for " + units.size() + " units");
 
+		// 0. Let the timeline page in the audio of all units at once, if it is set up to do so
+		prefetchUnits(units);
+
 		// 1. Get the raw audio material for each unit from the timeline
 		getDatagramsFromTimeline(units);
 
@@ -126,6 +130,23 @@ public class BaseUnitConcatenator implements UnitConcatenator {
 		return generateAudioStream(units);
 	}
 
+	/**
+	 * Ask the timeline to prefetch the audio of all units, see {@link TimelineReader#prefetch(long[], long[])}.
+	 * 
+	 * @param units
+	 *            units
+	 */
+	protected void prefetchUnits(List<SelectedUnit> units) {
+		long[] unitStarts = new long[units.size()];
+		long[] unitSizes = new long[units.size()];
+		for (int i = 0; i < unitStarts.length; i++) {
+			Unit unit = units.get(i).getUnit();
+			unitStarts[i] = unitToTimeline(unit.startTime);
+			unitSizes[i] = unitToTimeline(unit.duration);
+		}
+		timeline.prefetch(unitStarts, unitSizes);
+	}
+
 	/**
 	 * Get the raw audio material for each unit from the timeline.
 	 * 
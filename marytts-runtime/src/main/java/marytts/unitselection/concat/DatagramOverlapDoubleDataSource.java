@@ -22,6 +22,7 @@ package marytts.unitselection.concat;
 import marytts.signalproc.window.DynamicTwoHalvesWindow;
 import marytts.signalproc.window.Window;
 import marytts.util.data.BufferedDoubleDataSource;
+import marytts.util.data.ByteBufferDatagram;
 import marytts.util.data.Datagram;
 import marytts.util.data.DoubleDataSource;
 
@@ -134,6 +135,10 @@ public class DatagramOverlapDoubleDataSource extends BufferedDoubleDataSource {
 
 	protected int readDatagram(Datagram d, double[] target, int pos) {
 		int dur = (int) d.getDuration();
+		if (d instanceof ByteBufferDatagram) { // decode straight from the timeline's buffer, without copying
+			assert d.getLength() / 2 == dur : "expected datagram data length to be " + (dur * 2) + ", found " + d.getLength();
+			return ((ByteBufferDatagram) d).getSamples(target, pos);
+		}
 		byte[] frameAudio = d.getData();
 		assert frameAudio.length / 2 == dur : "expected datagram data length to be " + (dur * 2) + ", found " + frameAudio.length;
 		for (int i = 0; i < frameAudio.length; i += 2, pos++) {
@@ -22,20 +22,23 @@ package marytts.unitselection.data;
 import gnu.trove.TIntHashSet;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import marytts.features.FeatureVector;
+import marytts.unitselection.select.DiphoneFFRTargetCostFunction;
 import marytts.unitselection.select.DiphoneTarget;
+import marytts.unitselection.select.FFRTargetCostFunction;
 import marytts.unitselection.select.HalfPhoneTarget;
 import marytts.unitselection.select.Target;
 import marytts.unitselection.select.viterbi.ViterbiCandidate;
 import marytts.util.MaryUtils;
-import marytts.util.dom.DomUtils;
-
-import org.w3c.dom.Element;
 
 public class DiphoneUnitDatabase extends UnitDatabase {
 
+	// The value of the "phone" feature of each halfphone unit, looked up once in getUnitPhones().
+	private volatile byte[] unitPhones;
+
 	public DiphoneUnitDatabase() {
 		super();
 		logger = MaryUtils.getLogger("DiphoneUnitDatabase");
@@ -59,18 +62,7 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		HalfPhoneTarget left = diphoneTarget.left;
 		HalfPhoneTarget right = diphoneTarget.right;
 
-		// BEGIN blacklisting
-		// The point of this is to get the value of the "blacklist" attribute in the first child element of the MaryXML
-		// and store it in the blacklist String variable.
-		// This code seems rather inelegant; perhaps there is a better way to access the MaryXML from this method?
-		String blacklist = "";
-		String unitBasename = "This must never be null or the empty string!"; // otherwise candidate selection fails!
-		Element targetElement = left.getMaryxmlElement();
-		if (targetElement == null) {
-			targetElement = right.getMaryxmlElement();
-		}
-		blacklist = DomUtils.getAttributeFromClosestAncestorOfAnyKind(targetElement, "blacklist");
-		// END blacklisting
+		BitSet blacklisted = getBlacklistedUnits(diphoneTarget.getBlacklist());
 
 		// TODO shouldn't leftName and rightName just call appropriate methods of DiphoneTarget?
 		String leftName = left.getName().substring(0, left.getName().lastIndexOf("_"));
@@ -78,29 +70,26 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		int iPhoneme = targetCostFunction.getFeatureDefinition().getFeatureIndex("phone");
 		byte bleftName = targetCostFunction.getFeatureDefinition().getFeatureValueAsByte(iPhoneme, leftName);
 		byte brightName = targetCostFunction.getFeatureDefinition().getFeatureValueAsByte(iPhoneme, rightName);
-		FeatureVector[] fvs = targetCostFunction.getFeatureVectors();
+		byte[] phones = getUnitPhones(iPhoneme);
 
 		// HashSet<DiphoneUnit> candidateUnitSet = new HashSet<DiphoneUnit>();
 		TIntHashSet candidateUnitSet = new TIntHashSet();
 
 		// Pre-select candidates for the left half, but retain only
 		// those that belong to appropriate diphones:
-		int[] clist = (int[]) preselectionCART.interpret(left, backtrace);
+		int[] clist = preselectUnits(left);
 		logger.debug("For target " + target + ", selected " + clist.length + " units");
 
 		// Now, clist is an array of halfphone unit indexes.
 		for (int i = 0; i < clist.length; i++) {
-			Unit unit = unitReader.units[clist[i]];
-			FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
-			byte bunitName = fv.byteValuedDiscreteFeatures[iPhoneme];
+			Unit unit = unitReader.getUnit(clist[i]);
+			byte bunitName = phones[unit.index];
 			// force correct phone symbol:
 			if (bunitName != bleftName)
 				continue;
 			int iRightNeighbour = clist[i] + 1;
 			if (iRightNeighbour < numUnits) {
-				Unit rightNeighbour = unitReader.units[iRightNeighbour];
-				FeatureVector rfv = fvs != null ? fvs[iRightNeighbour] : targetCostFunction.getFeatureVector(rightNeighbour);
-				byte brightUnitName = rfv.byteValuedDiscreteFeatures[iPhoneme];
+				byte brightUnitName = phones[iRightNeighbour];
 				if (brightUnitName == brightName) {
 					// Found a diphone -- add it to candidates
 					// DiphoneUnit diphoneUnit = new DiphoneUnit(unit, rightNeighbour);
@@ -111,22 +100,20 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		}
 		// Pre-select candidates for the right half, but retain only
 		// those that belong to appropriate diphones:
-		clist = (int[]) preselectionCART.interpret(right, backtrace);
+		clist = preselectUnits(right);
 		logger.debug("For target " + target + ", selected " + clist.length + " units");
 
 		// Now, clist is an array of halfphone unit indexes.
 		for (int i = 0; i < clist.length; i++) {
-			Unit unit = unitReader.units[clist[i]];
-			FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
-			byte bunitName = fv.byteValuedDiscreteFeatures[iPhoneme];
+			Unit unit = unitReader.getUnit(clist[i]);
+			byte bunitName = phones[unit.index];
 			// force correct phone symbol:
 			if (bunitName != brightName)
 				continue;
 			int iLeftNeighbour = clist[i] - 1;
 			if (iLeftNeighbour >= 0) {
-				Unit leftNeighbour = unitReader.units[iLeftNeighbour];
-				FeatureVector lfv = fvs != null ? fvs[iLeftNeighbour] : targetCostFunction.getFeatureVector(leftNeighbour);
-				byte bleftUnitName = lfv.byteValuedDiscreteFeatures[iPhoneme];
+				Unit leftNeighbour = unitReader.getUnit(iLeftNeighbour);
+				byte bleftUnitName = phones[iLeftNeighbour];
 				if (bleftUnitName == bleftName) {
 					// Found a diphone -- add it to candidates
 					// DiphoneUnit diphoneUnit = new DiphoneUnit(leftNeighbour, unit);
@@ -139,21 +126,46 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		// now create ArrayList of ViterbiCandidates from the candidateUnitSet, blacklisting along the way:
 		ArrayList<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(candidateUnitSet.size());
 		for (int leftIndex : candidateUnitSet.toArray()) {
-			DiphoneUnit diphoneUnit = new DiphoneUnit(unitReader.units[leftIndex], unitReader.units[leftIndex + 1]);
-			ViterbiCandidate candidate = new ViterbiCandidate(diphoneTarget, diphoneUnit, targetCostFunction);
-			// Blacklisting:
-			if (blacklist.equals("")) { // no blacklist
-				candidates.add(candidate);
-			} else { // maybe exclude candidate
-				unitBasename = getFilename(diphoneUnit);
-				if (!blacklist.contains(unitBasename)) {
-					candidates.add(candidate);
-				}
+			// Blacklisting: a diphone comes from the same file as its left half
+			if (blacklisted != null && blacklisted.get(leftIndex)) {
+				continue;
 			}
+			DiphoneUnit diphoneUnit = new DiphoneUnit(unitReader.getUnit(leftIndex), unitReader.getUnit(leftIndex + 1));
+			candidates.add(new ViterbiCandidate(diphoneTarget, diphoneUnit, targetCostFunction));
 		}
 
 		logger.debug("Preselected " + candidateUnitSet.size() + " diphone candidates for target " + target);
 		return candidates;
 	}
 
+	/**
+	 * The value of the phone feature for every halfphone unit, so that candidate diphones can be checked without creating a
+	 * FeatureVector for each candidate.
+	 * 
+	 * @param iPhoneme
+	 *            the index of the "phone" feature in the target cost function's feature definition
+	 * @return an array with the phone feature value of each unit, indexed by unit index
+	 */
+	private byte[] getUnitPhones(int iPhoneme) {
+		byte[] phones = unitPhones;
+		if (phones == null) {
+			// the feature file reader's own column, read but never modified here
+			if (targetCostFunction instanceof DiphoneFFRTargetCostFunction) {
+				phones = ((DiphoneFFRTargetCostFunction) targetCostFunction).getByteFeatureColumn(iPhoneme);
+			} else if (targetCostFunction instanceof FFRTargetCostFunction) {
+				phones = ((FFRTargetCostFunction) targetCostFunction).getByteFeatureColumn(iPhoneme);
+			}
+			if (phones == null) {
+				FeatureVector[] fvs = targetCostFunction.getFeatureVectors();
+				phones = new byte[numUnits];
+				for (int i = 0; i < numUnits; i++) {
+					FeatureVector fv = fvs != null ? fvs[i] : targetCostFunction.getFeatureVector(unitReader.getUnit(i));
+					phones[i] = fv.byteValuedDiscreteFeatures[iPhoneme];
+				}
+			}
+			unitPhones = phones;
+		}
+		return phones;
+	}
+
 }
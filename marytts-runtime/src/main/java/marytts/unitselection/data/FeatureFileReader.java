@@ -20,6 +20,7 @@
 package marytts.unitselection.data;
 
 import java.io.BufferedInputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -31,11 +32,47 @@ import marytts.features.FeatureDefinition;
 import marytts.features.FeatureVector;
 import marytts.util.data.MaryHeader;
 
+/**
+ * Reader for unit feature files. The feature values of all units are kept in columns, i.e. one primitive array per feature,
+ * rather than as one FeatureVector object per unit; {@link #getFeatureVector(int)} assembles a FeatureVector on request.
+ * Alternatively, the feature values can be left in the read-only memory mapping of the file, so that they take no heap space
+ * and the pages are shared by all processes using the same file.
+ */
 public class FeatureFileReader {
 	protected MaryHeader hdr;
 	protected FeatureDefinition featureDefinition;
+	/**
+	 * The feature vectors of all units, only created if {@link #getFeatureVectors()} is called.
+	 */
 	protected FeatureVector[] featureVectors;
 
+	protected int numberOfUnits;
+	/**
+	 * byteColumns[i][u] is the value of byte feature i for unit u.
+	 */
+	protected byte[][] byteColumns;
+	/**
+	 * shortColumns[i][u] is the value of short feature numberOfByteFeatures+i for unit u.
+	 */
+	protected short[][] shortColumns;
+	/**
+	 * continuousColumns[i][u] is the value of continuous feature numberOfByteFeatures+numberOfShortFeatures+i for unit u.
+	 */
+	protected float[][] continuousColumns;
+
+	/**
+	 * If true, {@link #readFeatures(ByteBuffer)} keeps the feature values in the mapped buffer instead of copying them to the
+	 * columns.
+	 */
+	protected boolean memoryMapped = false;
+	/**
+	 * The memory-mapped feature values, starting with the first unit, or null if the features are held in the columns.
+	 */
+	protected ByteBuffer mappedFeatures;
+	private int recordSize;
+	private int numberOfByteFeatures;
+	private int numberOfShortFeatures;
+
 	/**
 	 * Get a feature file reader representing the given feature file.
 	 * 
@@ -48,12 +85,36 @@ public class FeatureFileReader {
 	 *             if the file is not a valid feature file.
 	 */
 	public static FeatureFileReader getFeatureFileReader(String fileName) throws IOException, MaryConfigurationException {
+		return getFeatureFileReader(fileName, false);
+	}
+
+	/**
+	 * Get a feature file reader representing the given feature file.
+	 * 
+	 * @param fileName
+	 *            the filename of a valid feature file.
+	 * @param memoryMapped
+	 *            if true, the feature values are read from the memory-mapped file whenever they are needed; if false, they are
+	 *            copied to the heap.
+	 * @return a feature file object representing the given file.
+	 * @throws IOException
+	 *             if there was a problem reading the file
+	 * @throws MaryConfigurationException
+	 *             if the file is not a valid feature file.
+	 */
+	public static FeatureFileReader getFeatureFileReader(String fileName, boolean memoryMapped) throws IOException,
+			MaryConfigurationException {
 		int fileType = MaryHeader.peekFileType(fileName);
+		FeatureFileReader ffr;
 		if (fileType == MaryHeader.UNITFEATS)
-			return new FeatureFileReader(fileName);
+			ffr = new FeatureFileReader();
 		else if (fileType == MaryHeader.HALFPHONE_UNITFEATS)
-			return new HalfPhoneFeatureFileReader(fileName);
-		throw new MaryConfigurationException("File " + fileName + ": Type " + fileType + " is not a known unit feature file type");
+			ffr = new HalfPhoneFeatureFileReader();
+		else
+			throw new MaryConfigurationException("File " + fileName + ": Type " + fileType
+					+ " is not a known unit feature file type");
+		ffr.load(fileName, memoryMapped);
+		return ffr;
 	}
 
 	/**
@@ -69,6 +130,24 @@ public class FeatureFileReader {
 	}
 
 	public void load(String fileName) throws IOException, MaryConfigurationException {
+		load(fileName, false);
+	}
+
+	/**
+	 * Load the given feature file.
+	 * 
+	 * @param fileName
+	 *            the filename of a valid feature file.
+	 * @param memoryMapped
+	 *            if true, the feature values are read from the memory-mapped file whenever they are needed; if false, they are
+	 *            copied to the heap.
+	 * @throws IOException
+	 *             if there was a problem reading the file
+	 * @throws MaryConfigurationException
+	 *             if the file is not a valid feature file.
+	 */
+	public void load(String fileName, boolean memoryMapped) throws IOException, MaryConfigurationException {
+		this.memoryMapped = memoryMapped;
 		loadFromByteBuffer(fileName);
 	}
 
@@ -83,12 +162,7 @@ public class FeatureFileReader {
 			throw new IOException("File [" + fileName + "] is not a valid Mary feature file.");
 		}
 		featureDefinition = new FeatureDefinition(dis);
-		int numberOfUnits = dis.readInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
-		}
-
+		readFeatures(dis);
 	}
 
 	protected void loadFromByteBuffer(String fileName) throws IOException, MaryConfigurationException {
@@ -104,23 +178,146 @@ public class FeatureFileReader {
 			throw new MaryConfigurationException("File [" + fileName + "] is not a valid Mary feature file.");
 		}
 		featureDefinition = new FeatureDefinition(bb);
-		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
+		readFeatures(bb);
+	}
+
+	/**
+	 * Allocate the feature columns for the given number of units, according to the feature definition.
+	 * 
+	 * @param nUnits
+	 *            the number of units
+	 * @throws MaryConfigurationException
+	 *             if nUnits is negative
+	 */
+	private void allocateColumns(int nUnits) throws MaryConfigurationException {
+		if (nUnits < 0) {
+			throw new MaryConfigurationException("Negative number of units: " + nUnits);
+		}
+		numberOfUnits = nUnits;
+		numberOfByteFeatures = featureDefinition.getNumberOfByteFeatures();
+		numberOfShortFeatures = featureDefinition.getNumberOfShortFeatures();
+		featureVectors = null;
+		mappedFeatures = null;
+		byteColumns = new byte[featureDefinition.getNumberOfByteFeatures()][nUnits];
+		shortColumns = new short[featureDefinition.getNumberOfShortFeatures()][nUnits];
+		continuousColumns = new float[featureDefinition.getNumberOfContinuousFeatures()][nUnits];
+	}
+
+	/**
+	 * Read the number of units and the feature values of all units into the feature columns. The feature definition must
+	 * already be loaded. If this reader is to be memory-mapped, the feature values are not copied; the reader only remembers
+	 * where they are in the buffer.
+	 * 
+	 * @param bb
+	 *            the byte buffer to read from, positioned at the number of units
+	 * @throws MaryConfigurationException
+	 *             if the number of units is negative, or the buffer is too short for that many units
+	 */
+	protected void readFeatures(ByteBuffer bb) throws MaryConfigurationException {
+		if (memoryMapped) {
+			mapFeatures(bb);
+			return;
+		}
+		allocateColumns(bb.getInt());
+		byte[][] bytes = byteColumns;
+		short[][] shorts = shortColumns;
+		float[][] floats = continuousColumns;
+		for (int u = 0; u < numberOfUnits; u++) {
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i][u] = bb.get();
+			}
+			for (int i = 0; i < shorts.length; i++) {
+				shorts[i][u] = bb.getShort();
+			}
+			for (int i = 0; i < floats.length; i++) {
+				floats[i][u] = bb.getFloat();
+			}
+		}
+	}
+
+	private void mapFeatures(ByteBuffer bb) throws MaryConfigurationException {
+		int nUnits = bb.getInt();
+		if (nUnits < 0) {
+			throw new MaryConfigurationException("Negative number of units: " + nUnits);
+		}
+		int nBytes = featureDefinition.getNumberOfByteFeatures();
+		int nShorts = featureDefinition.getNumberOfShortFeatures();
+		int size = nBytes + 2 * nShorts + 4 * featureDefinition.getNumberOfContinuousFeatures();
+		if ((long) size * nUnits > bb.remaining()) {
+			throw new MaryConfigurationException("Feature file is too short for " + nUnits + " units");
 		}
+		numberOfUnits = nUnits;
+		numberOfByteFeatures = nBytes;
+		numberOfShortFeatures = nShorts;
+		recordSize = size;
+		featureVectors = null;
+		byteColumns = null;
+		shortColumns = null;
+		continuousColumns = null;
+		mappedFeatures = bb.slice();
+	}
 
+	/**
+	 * Read the number of units and the feature values of all units into the feature columns. The feature definition must
+	 * already be loaded.
+	 * 
+	 * @param in
+	 *            the data input to read from, positioned at the number of units
+	 * @throws IOException
+	 *             if there is a problem reading
+	 * @throws MaryConfigurationException
+	 *             if the number of units is negative
+	 */
+	protected void readFeatures(DataInput in) throws IOException, MaryConfigurationException {
+		allocateColumns(in.readInt());
+		byte[][] bytes = byteColumns;
+		short[][] shorts = shortColumns;
+		float[][] floats = continuousColumns;
+		for (int u = 0; u < numberOfUnits; u++) {
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i][u] = in.readByte();
+			}
+			for (int i = 0; i < shorts.length; i++) {
+				shorts[i][u] = in.readShort();
+			}
+			for (int i = 0; i < floats.length; i++) {
+				floats[i][u] = in.readFloat();
+			}
+		}
 	}
 
 	/**
-	 * Get the unit feature vector for the given unit index number.
+	 * Get the unit feature vector for the given unit index number. Unless {@link #getFeatureVectors()} has been called, this
+	 * creates a new FeatureVector from the feature columns on every call; code that only needs a few feature values should use
+	 * {@link #getByteFeature(int, int)} and its siblings instead.
 	 * 
 	 * @param unitIndex
 	 *            the absolute index number of a unit in the database
 	 * @return the corresponding feature vector
 	 */
 	public FeatureVector getFeatureVector(int unitIndex) {
-		return featureVectors[unitIndex];
+		FeatureVector[] fvs = featureVectors;
+		if (fvs != null) {
+			return fvs[unitIndex];
+		}
+		if (unitIndex < 0 || unitIndex >= numberOfUnits) {
+			throw new IndexOutOfBoundsException("Unit index " + unitIndex + " is not between 0 and " + numberOfUnits);
+		}
+		int nBytes = numberOfByteFeatures;
+		int nDiscrete = nBytes + numberOfShortFeatures;
+		byte[] bytes = new byte[nBytes];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = getByteFeature(unitIndex, i);
+		}
+		short[] shorts = new short[numberOfShortFeatures];
+		for (int i = 0; i < shorts.length; i++) {
+			shorts[i] = getShortFeature(unitIndex, nBytes + i);
+		}
+		float[] floats = new float[featureDefinition.getNumberOfContinuousFeatures()];
+		for (int i = 0; i < floats.length; i++) {
+			floats[i] = getContinuousFeature(unitIndex, nDiscrete + i);
+		}
+		return new FeatureVector(bytes, shorts, floats, unitIndex);
 	}
 
 	/**
@@ -129,18 +326,133 @@ public class FeatureFileReader {
 	 * @return a new array containing the internal feature vectors
 	 */
 	public FeatureVector[] getCopyOfFeatureVectors() {
-		return (FeatureVector[]) featureVectors.clone();
+		return (FeatureVector[]) getFeatureVectors().clone();
 	}
 
 	/**
-	 * Return the internal array of feature vectors.
+	 * Return the internal array of feature vectors. On the first call, one FeatureVector is created for every unit and kept for
+	 * subsequent calls; this is meant for tools that need all of them, and takes much more memory than the feature columns.
 	 * 
 	 * @return the internal array of feature vectors.
 	 */
-	public FeatureVector[] getFeatureVectors() {
+	public synchronized FeatureVector[] getFeatureVectors() {
+		if (featureVectors == null) {
+			FeatureVector[] fvs = new FeatureVector[numberOfUnits];
+			for (int u = 0; u < numberOfUnits; u++) {
+				fvs[u] = getFeatureVector(u);
+			}
+			featureVectors = fvs;
+		}
 		return featureVectors;
 	}
 
+	/**
+	 * The value of a byte feature for one unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a byte feature in the feature definition
+	 * @return the feature value
+	 */
+	public byte getByteFeature(int unitIndex, int featureIndex) {
+		if (mappedFeatures != null) {
+			return mappedFeatures.get(unitIndex * recordSize + featureIndex);
+		}
+		return byteColumns[featureIndex][unitIndex];
+	}
+
+	/**
+	 * The value of a short feature for one unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a short feature in the feature definition
+	 * @return the feature value
+	 */
+	public short getShortFeature(int unitIndex, int featureIndex) {
+		int i = featureIndex - numberOfByteFeatures;
+		if (mappedFeatures != null) {
+			return mappedFeatures.getShort(unitIndex * recordSize + numberOfByteFeatures + 2 * i);
+		}
+		return shortColumns[i][unitIndex];
+	}
+
+	/**
+	 * The value of a continuous feature for one unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a continuous feature in the feature definition
+	 * @return the feature value
+	 */
+	public float getContinuousFeature(int unitIndex, int featureIndex) {
+		int i = featureIndex - numberOfByteFeatures - numberOfShortFeatures;
+		if (mappedFeatures != null) {
+			return mappedFeatures.getFloat(unitIndex * recordSize + numberOfByteFeatures + 2 * numberOfShortFeatures + 4 * i);
+		}
+		return continuousColumns[i][unitIndex];
+	}
+
+	/**
+	 * The values of a byte feature for all units. The array returned is the reader's own column and must not be modified; if
+	 * the reader is memory-mapped, it is a new array read from the mapping.
+	 * 
+	 * @param featureIndex
+	 *            the index of a byte feature in the feature definition
+	 * @return an array with the feature value of each unit, indexed by unit index
+	 */
+	public byte[] getByteFeatureColumn(int featureIndex) {
+		if (mappedFeatures != null) {
+			byte[] column = new byte[numberOfUnits];
+			for (int u = 0; u < numberOfUnits; u++) {
+				column[u] = getByteFeature(u, featureIndex);
+			}
+			return column;
+		}
+		return byteColumns[featureIndex];
+	}
+
+	/**
+	 * The values of a short feature for all units. The array returned is the reader's own column and must not be modified; if
+	 * the reader is memory-mapped, it is a new array read from the mapping.
+	 * 
+	 * @param featureIndex
+	 *            the index of a short feature in the feature definition
+	 * @return an array with the feature value of each unit, indexed by unit index
+	 */
+	public short[] getShortFeatureColumn(int featureIndex) {
+		if (mappedFeatures != null) {
+			short[] column = new short[numberOfUnits];
+			for (int u = 0; u < numberOfUnits; u++) {
+				column[u] = getShortFeature(u, featureIndex);
+			}
+			return column;
+		}
+		return shortColumns[featureIndex - numberOfByteFeatures];
+	}
+
+	/**
+	 * The values of a continuous feature for all units. The array returned is the reader's own column and must not be modified; if
+	 * the reader is memory-mapped, it is a new array read from the mapping.
+	 * 
+	 * @param featureIndex
+	 *            the index of a continuous feature in the feature definition
+	 * @return an array with the feature value of each unit, indexed by unit index
+	 */
+	public float[] getContinuousFeatureColumn(int featureIndex) {
+		if (mappedFeatures != null) {
+			float[] column = new float[numberOfUnits];
+			for (int u = 0; u < numberOfUnits; u++) {
+				column[u] = getContinuousFeature(u, featureIndex);
+			}
+			return column;
+		}
+		return continuousColumns[featureIndex - numberOfByteFeatures - numberOfShortFeatures];
+	}
+
 	/**
 	 * feature vector mapping according to new feature definition Note: The new feature definition should be a subset of original
 	 * feature definition
@@ -184,11 +496,11 @@ public class FeatureFileReader {
 
 			for (int j = 0; j < featureIndexes.length; j++) {
 				if (newFeatureDefinition.isByteFeature(j)) {
-					byteFeatures[countByteFeatures++] = featureVectors[i].getByteFeature(featureIndexes[j]);
+					byteFeatures[countByteFeatures++] = getByteFeature(i, featureIndexes[j]);
 				} else if (newFeatureDefinition.isShortFeature(j)) {
-					shortFeatures[countShortFeatures++] = featureVectors[i].getShortFeature(featureIndexes[j]);
+					shortFeatures[countShortFeatures++] = getShortFeature(i, featureIndexes[j]);
 				} else if (newFeatureDefinition.isContinuousFeature(j)) {
-					continiousFeatures[countFloatFeatures++] = featureVectors[i].getContinuousFeature(featureIndexes[j]);
+					continiousFeatures[countFloatFeatures++] = getContinuousFeature(i, featureIndexes[j]);
 				}
 			}
 
@@ -204,9 +516,10 @@ public class FeatureFileReader {
 	 * @param unit
 	 *            a unit in the database
 	 * @return the corresponding feature vector
+	 * @see #getFeatureVector(int)
 	 */
 	public FeatureVector getFeatureVector(Unit unit) {
-		return featureVectors[unit.index];
+		return getFeatureVector(unit.index);
 	}
 
 	public FeatureDefinition getFeatureDefinition() {
@@ -214,6 +527,15 @@ public class FeatureFileReader {
 	}
 
 	public int getNumberOfUnits() {
-		return (featureVectors.length);
+		return numberOfUnits;
+	}
+
+	/**
+	 * Whether the feature values are read from the memory-mapped file rather than held on the heap.
+	 * 
+	 * @return true if the features are memory-mapped
+	 */
+	public boolean isMemoryMapped() {
+		return mappedFeatures != null;
 	}
 }
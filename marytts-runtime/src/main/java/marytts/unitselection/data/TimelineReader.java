@@ -42,11 +42,14 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Vector;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.util.MaryUtils;
 import marytts.util.Pair;
+import marytts.util.data.ByteBufferDatagram;
 import marytts.util.data.Datagram;
 import marytts.util.data.MaryHeader;
 import marytts.util.io.StreamUtils;
@@ -72,13 +75,40 @@ public class TimelineReader {
 	 */
 	protected long totalDuration = -1;
 
-	protected int datagramsBytePos = 0;
-	protected int timeIdxBytePos = 0;
+	protected long datagramsBytePos = 0;
+	protected long timeIdxBytePos = 0;
 
-	// exactly one of the two following variables will be non-null after load():
-	private MappedByteBuffer mappedBB = null;
+	/**
+	 * The maximum size, in bytes, of one memory-mapped segment of the datagram zone. A single MappedByteBuffer cannot be larger
+	 * than 2 GB, so larger timelines are mapped as several segments. Subclasses may lower this before calling
+	 * {@link #load(String, boolean)}.
+	 */
+	protected int maxSegmentSize = Integer.MAX_VALUE;
+
+	// exactly one of mappedSegments and fileChannel will be non-null after load():
+	/**
+	 * The memory-mapped datagram zone, in consecutive segments. Segment boundaries are placed at byte positions from the index, so
+	 * that no datagram is split across two segments.
+	 */
+	private MappedByteBuffer[] mappedSegments = null;
+	/**
+	 * For each segment, the position of its first byte relative to the start of the datagram zone.
+	 */
+	private long[] segmentStarts = null;
 	private FileChannel fileChannel = null;
 
+	/**
+	 * Optional seek table with one entry per datagram, see {@link #buildSeekTable()}. For datagram i, datagramTimes[i] is its
+	 * start time in samples and datagramBytePtrs[i] its byte position relative to the start of the datagram zone; entry
+	 * numDatagrams holds the total duration and the size of the datagram zone.
+	 */
+	private long[] datagramTimes = null;
+	private long[] datagramBytePtrs = null;
+
+	private boolean prefetch = false;
+	private static final int PAGE_SIZE = 4096;
+	private int prefetchChecksum; // keeps the page-touching reads in prefetch() from being optimised away
+
 	/****************/
 	/* CONSTRUCTORS */
 	/****************/
@@ -193,8 +223,8 @@ public class TimelineReader {
 		}
 
 		/* Load the positions of the various subsequent components */
-		datagramsBytePos = (int) headerBB.getLong();
-		timeIdxBytePos = (int) headerBB.getLong();
+		datagramsBytePos = headerBB.getLong();
+		timeIdxBytePos = headerBB.getLong();
 		if (timeIdxBytePos < datagramsBytePos) {
 			throw new MaryConfigurationException("File seems corrupt: index is expected after data, not before");
 		}
@@ -210,14 +240,16 @@ public class TimelineReader {
 		if (tryMemoryMapping) {
 			// Try if we can use a mapped byte buffer:
 			try {
-				mappedBB = fc.map(FileChannel.MapMode.READ_ONLY, datagramsBytePos, timeIdxBytePos - datagramsBytePos);
+				mapSegments(fc);
 				file.close(); // if map() succeeded, we don't need the file anymore.
 			} catch (IOException ome) {
 				MaryUtils.getLogger("Timeline").warn(
-						"Cannot use memory mapping for timeline file '" + fileName + "' -- falling back to piecewise reading");
+						"Cannot use memory mapping for timeline file '" + fileName + "' -- falling back to piecewise reading", ome);
+				mappedSegments = null;
+				segmentStarts = null;
 			}
 		}
-		if (!tryMemoryMapping || mappedBB == null) { // use piecewise reading
+		if (!tryMemoryMapping || mappedSegments == null) { // use piecewise reading
 			fileChannel = fc;
 			assert fileChannel != null;
 			// and leave file open
@@ -226,7 +258,56 @@ public class TimelineReader {
 		// postconditions:
 		assert idx != null;
 		assert procHdr != null;
-		assert fileChannel == null && mappedBB != null || fileChannel != null && mappedBB == null;
+		assert fileChannel == null && mappedSegments != null || fileChannel != null && mappedSegments == null;
+	}
+
+	/**
+	 * Map the datagram zone into memory, using as few segments of at most {@link #maxSegmentSize} bytes as possible. Each segment
+	 * ends at a datagram position taken from the index (or at the end of the datagram zone), so that datagrams never cross a
+	 * segment boundary.
+	 * 
+	 * @param fc
+	 *            the timeline file's channel
+	 * @throws IOException
+	 *             if mapping fails, or if the datagrams between two consecutive index fields do not fit into one segment
+	 */
+	private void mapSegments(FileChannel fc) throws IOException {
+		long zoneSize = timeIdxBytePos - datagramsBytePos;
+		ArrayList<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+		ArrayList<Long> starts = new ArrayList<Long>();
+		long start = 0;
+		int nextIdx = 0;
+		int numIdx = idx.getNumIdx();
+		do {
+			long end = zoneSize;
+			if (end - start > maxSegmentSize) {
+				// end the segment at the last indexed datagram that still fits:
+				end = start;
+				while (nextIdx < numIdx) {
+					long bytePtr = idx.getIdxField(nextIdx).bytePtr - datagramsBytePos;
+					if (bytePtr - start > maxSegmentSize) {
+						break;
+					}
+					if (bytePtr > end) {
+						end = bytePtr;
+					}
+					nextIdx++;
+				}
+				if (end == start) {
+					throw new IOException("Datagrams following byte position " + (datagramsBytePos + start)
+							+ " do not fit into a mapped segment of " + maxSegmentSize + " bytes");
+				}
+			}
+			segments.add(fc.map(FileChannel.MapMode.READ_ONLY, datagramsBytePos + start, end - start));
+			starts.add(start);
+			start = end;
+		} while (start < zoneSize);
+
+		mappedSegments = segments.toArray(new MappedByteBuffer[segments.size()]);
+		segmentStarts = new long[starts.size()];
+		for (int i = 0; i < segmentStarts.length; i++) {
+			segmentStarts[i] = starts.get(i);
+		}
 	}
 
 	/**
@@ -257,6 +338,15 @@ public class TimelineReader {
 		return datagramsBytePos;
 	}
 
+	/**
+	 * Returns the number of segments in which the datagram zone is memory-mapped.
+	 * 
+	 * @return the number of mapped segments, or 0 if the timeline is read piecewise from the file.
+	 */
+	protected int getNumMappedSegments() {
+		return mappedSegments != null ? mappedSegments.length : 0;
+	}
+
 	/**
 	 * Returns the timeline's sample rate.
 	 * 
@@ -395,6 +485,9 @@ public class TimelineReader {
 	 * Read and return the upcoming datagram from the given byte buffer. Subclasses should override this method to create
 	 * subclasses of Datagram.
 	 * 
+	 * If the timeline is memory-mapped, the datagram returned is a {@link ByteBufferDatagram}, i.e. a view on the mapped data
+	 * rather than a copy of it.
+	 * 
 	 * @param bb
 	 *            the timeline byte buffer to read from
 	 * 
@@ -408,12 +501,47 @@ public class TimelineReader {
 		}
 		// Else, read the datagram from the file
 		try {
+			if (mappedSegments != null) {
+				return getNextDatagramView(bb);
+			}
 			return new Datagram(bb);
 		} catch (IOException ioe) {
 			return null;
 		}
 	}
 
+	/**
+	 * Read the header of the upcoming datagram from the given byte buffer, and return a view on its data without copying it. The
+	 * position of bb is moved to the end of the datagram.
+	 * 
+	 * @param bb
+	 *            the timeline byte buffer to read from. Its contents must not change, which is the case for a duplicate of the
+	 *            memory-mapped datagram zone.
+	 * @return a datagram referencing the data in bb
+	 * @throws IOException
+	 *             if the datagram has wrong format or if the datagram is not fully contained in bb
+	 */
+	protected ByteBufferDatagram getNextDatagramView(ByteBuffer bb) throws IOException {
+		if (!canReadDatagramHeader(bb)) {
+			throw new IOException("Not enough data in byte buffer to read a datagram header");
+		}
+		long duration = bb.getLong();
+		if (duration < 0) {
+			throw new IOException("Can't create a datagram with a negative duration [" + duration + "].");
+		}
+		int len = bb.getInt();
+		if (len < 0) {
+			throw new IOException("Can't create a datagram with a negative data size [" + len + "].");
+		}
+		if (!canReadAmount(bb, len)) {
+			throw new IOException("Not enough data in byte buffer to read the full datagram: datagram length is " + len
+					+ ", but can read only " + (bb.limit() - bb.position()));
+		}
+		int offset = bb.position();
+		bb.position(offset + len);
+		return new ByteBufferDatagram(duration, bb, offset, len);
+	}
+
 	/**
 	 * Hop the datagrams in the given byte buffer until the one which begins at or contains the desired time (time is in samples;
 	 * the sample rate is assumed to be that of the timeline).
@@ -479,7 +607,7 @@ public class TimelineReader {
 	 *             , BufferUnderflowException if no byte buffer can be obtained for the requested time.
 	 */
 	protected Pair<ByteBuffer, Long> getByteBufferAtTime(long targetTimeInSamples) throws IOException, BufferUnderflowException {
-		if (mappedBB != null) {
+		if (mappedSegments != null) {
 			return getMappedByteBufferAtTime(targetTimeInSamples);
 		} else {
 			return loadByteBufferAtTime(targetTimeInSamples);
@@ -488,17 +616,137 @@ public class TimelineReader {
 
 	protected Pair<ByteBuffer, Long> getMappedByteBufferAtTime(long targetTimeInSamples) throws IllegalArgumentException,
 			IOException {
-		assert mappedBB != null;
+		assert mappedSegments != null;
+		long[] times = datagramTimes;
+		if (times != null) {
+			/* Look up the datagram directly in the seek table */
+			if (targetTimeInSamples < 0) {
+				throw new IllegalArgumentException("Negative time given");
+			}
+			if (targetTimeInSamples >= times[times.length - 1]) {
+				throw new BufferUnderflowException(); // as when hopping beyond the last datagram
+			}
+			int i = getDatagramNumberAtTime(times, targetTimeInSamples);
+			long bytePos = datagramBytePtrs[i];
+			int segment = getSegment(bytePos);
+			ByteBuffer bb = mappedSegments[segment].duplicate();
+			bb.position((int) (bytePos - segmentStarts[segment]));
+			return new Pair<ByteBuffer, Long>(bb, times[i]);
+		}
 		/* Seek for the time index which comes just before the requested time */
 		IdxField idxFieldBefore = idx.getIdxFieldBefore(targetTimeInSamples);
 		long time = idxFieldBefore.timePtr;
-		int bytePos = (int) (idxFieldBefore.bytePtr - datagramsBytePos);
-		ByteBuffer bb = mappedBB.duplicate();
-		bb.position(bytePos);
-		time = hopToTime(bb, time, targetTimeInSamples);
+		long bytePos = idxFieldBefore.bytePtr - datagramsBytePos;
+		int segment = getSegment(bytePos);
+		ByteBuffer bb = mappedSegments[segment].duplicate();
+		bb.position((int) (bytePos - segmentStarts[segment]));
+		if (mappedSegments.length == 1) {
+			time = hopToTime(bb, time, targetTimeInSamples);
+			return new Pair<ByteBuffer, Long>(bb, time);
+		}
+		/* Same as hopToTime(), but moving on to the next segment whenever the end of one is reached */
+		if (time == targetTimeInSamples) {
+			return new Pair<ByteBuffer, Long>(bb, time);
+		}
+		while (true) {
+			if (bb.position() == bb.limit() && segment + 1 < mappedSegments.length) {
+				segment++;
+				bb = mappedSegments[segment].duplicate();
+			}
+			int byteBefore = bb.position();
+			long duration = skipNextDatagram(bb);
+			if (time + duration > targetTimeInSamples) {
+				bb.position(byteBefore);
+				break;
+			}
+			time += duration;
+		}
 		return new Pair<ByteBuffer, Long>(bb, time);
 	}
 
+	/**
+	 * Build a table of the start time and byte position of every datagram, so that seeks go straight to the right datagram by
+	 * binary search instead of hopping forward from the nearest index field. This reads the header of every datagram once, and
+	 * costs 16 bytes of memory per datagram. It only has an effect for memory-mapped timelines.
+	 */
+	public synchronized void buildSeekTable() {
+		if (mappedSegments == null || datagramTimes != null) {
+			return;
+		}
+		if (numDatagrams >= Integer.MAX_VALUE) {
+			MaryUtils.getLogger("Timeline").warn("Too many datagrams for a seek table: " + numDatagrams);
+			return;
+		}
+		int n = (int) numDatagrams;
+		long[] times = new long[n + 1];
+		long[] bytePtrs = new long[n + 1];
+		long time = 0;
+		int i = 0;
+		try {
+			for (int s = 0; s < mappedSegments.length; s++) {
+				ByteBuffer bb = mappedSegments[s].duplicate();
+				while (bb.position() < bb.limit()) {
+					if (i == n) {
+						throw new IOException("More datagrams in timeline than the " + n + " announced in the header");
+					}
+					times[i] = time;
+					bytePtrs[i] = segmentStarts[s] + bb.position();
+					time += skipNextDatagram(bb);
+					i++;
+				}
+			}
+			if (i != n) {
+				throw new IOException("Found " + i + " datagrams in timeline, but " + n + " are announced in the header");
+			}
+		} catch (Exception e) {
+			MaryUtils.getLogger("Timeline").warn("Cannot build seek table -- will seek via the index only", e);
+			return;
+		}
+		times[n] = time;
+		bytePtrs[n] = timeIdxBytePos - datagramsBytePos;
+		datagramBytePtrs = bytePtrs;
+		datagramTimes = times; // set last, unsynchronized readers test this one
+		totalDuration = time;
+	}
+
+	/**
+	 * Find the datagram containing a given time, using the seek table.
+	 * 
+	 * @param times
+	 *            the seek table's datagram start times
+	 * @param timeInSamples
+	 *            a non-negative time
+	 * @return the number of the last datagram starting at or before timeInSamples
+	 */
+	private static int getDatagramNumberAtTime(long[] times, long timeInSamples) {
+		int lo = 0;
+		int hi = times.length - 1; // times[hi] is the end of the last datagram
+		while (lo + 1 < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] <= timeInSamples) {
+				lo = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Find the mapped segment holding a given byte position.
+	 * 
+	 * @param bytePos
+	 *            a byte position relative to the start of the datagram zone
+	 * @return the index of the last segment starting at or before bytePos
+	 */
+	private int getSegment(long bytePos) {
+		int i = Arrays.binarySearch(segmentStarts, bytePos);
+		if (i < 0) {
+			i = -i - 2; // the segment before the insertion point
+		}
+		return Math.max(i, 0);
+	}
+
 	protected Pair<ByteBuffer, Long> loadByteBufferAtTime(long targetTimeInSamples) throws IOException {
 		assert fileChannel != null;
 		// we must load a chunk of data from the FileChannel
@@ -851,6 +1099,85 @@ public class TimelineReader {
 		return getDatagrams(unit, reqSampleRate, null);
 	}
 
+	/**
+	 * Enable or disable {@link #prefetch(long[], long[])}.
+	 * 
+	 * @param prefetch
+	 *            whether prefetching should be done
+	 */
+	public void setPrefetch(boolean prefetch) {
+		this.prefetch = prefetch;
+	}
+
+	/**
+	 * Page in the datagrams of several time ranges in one go, before they are read one by one. The memory pages covering the
+	 * ranges are touched in file order, so that a cold memory map is read sequentially rather than in the random order of the
+	 * requests. This only does something if prefetching is enabled and the timeline is memory-mapped. With a seek table, exactly
+	 * the datagrams of the ranges are paged in; without one, the ranges are widened to the index fields around them.
+	 * 
+	 * @param targetTimesInSamples
+	 *            the start time of each range, in samples with respect to the timeline's sample rate
+	 * @param timeSpansInSamples
+	 *            the duration of each range, in samples with respect to the timeline's sample rate
+	 */
+	public void prefetch(long[] targetTimesInSamples, long[] timeSpansInSamples) {
+		if (!prefetch || mappedSegments == null) {
+			return;
+		}
+		long[] times = datagramTimes;
+		long[][] byteRanges = new long[targetTimesInSamples.length][];
+		for (int r = 0; r < byteRanges.length; r++) {
+			long start = Math.max(0, targetTimesInSamples[r]);
+			long end = Math.max(start, start + timeSpansInSamples[r]);
+			if (times != null) {
+				int first = getDatagramNumberAtTime(times, start);
+				// include one datagram beyond the range, which concatenators may use as right context:
+				int last = Math.min(getDatagramNumberAtTime(times, end) + 2, times.length - 1);
+				byteRanges[r] = new long[] { datagramBytePtrs[first], datagramBytePtrs[last] };
+			} else {
+				// the index field before the range, to the second one after it, which also covers the right context:
+				long first = Math.min(start / idx.getIdxInterval(), idx.getNumIdx() - 1);
+				long last = end / idx.getIdxInterval() + 2;
+				byteRanges[r] = new long[] { getIdxBytePos(first), getIdxBytePos(last) };
+			}
+		}
+		Arrays.sort(byteRanges, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				return a[0] < b[0] ? -1 : a[0] > b[0] ? 1 : 0;
+			}
+		});
+		int checksum = 0;
+		long touchedUpTo = 0;
+		for (long[] range : byteRanges) {
+			long start = Math.max(range[0], touchedUpTo);
+			if (start >= range[1]) {
+				continue; // already touched
+			}
+			for (long page = start / PAGE_SIZE, lastPage = (range[1] - 1) / PAGE_SIZE; page <= lastPage; page++) {
+				long pos = Math.max(page * PAGE_SIZE, start);
+				int segment = getSegment(pos);
+				checksum += mappedSegments[segment].get((int) (pos - segmentStarts[segment]));
+			}
+			touchedUpTo = Math.max(touchedUpTo, range[1]);
+		}
+		prefetchChecksum = checksum;
+	}
+
+	/**
+	 * Find where the datagram of an index field starts.
+	 * 
+	 * @param i
+	 *            the number of an index field
+	 * @return the byte position, relative to the start of the datagram zone, of the datagram which index field i points to; or
+	 *         the end of the datagram zone if there is no index field i
+	 */
+	private long getIdxBytePos(long i) {
+		if (i >= idx.getNumIdx()) {
+			return timeIdxBytePos - datagramsBytePos;
+		}
+		return idx.getIdxField((int) i).bytePtr - datagramsBytePos;
+	}
+
 	/*****************************************/
 	/* HELPER CLASSES */
 	/*****************************************/
@@ -20,9 +20,17 @@
 package marytts.unitselection.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import marytts.cart.CART;
+import marytts.cart.Node;
+import marytts.unitselection.select.FFRTargetCostFunction;
 import marytts.unitselection.select.JoinCostFunction;
 import marytts.unitselection.select.StatisticalCostFunction;
 import marytts.unitselection.select.Target;
@@ -30,10 +38,8 @@ import marytts.unitselection.select.TargetCostFunction;
 import marytts.unitselection.select.viterbi.ViterbiCandidate;
 import marytts.util.MaryUtils;
 import marytts.util.data.Datagram;
-import marytts.util.dom.DomUtils;
 
 import org.apache.log4j.Logger;
-import org.w3c.dom.Element;
 
 /**
  * The unit database of a voice
@@ -53,6 +59,20 @@ public class UnitDatabase {
 	protected int backtrace;
 	protected Logger logger = MaryUtils.getLogger("UnitDatabase");
 
+	// The unit indexes preselected by each CART node that targets have reached
+	final Map<Node, int[]> preselectionCache = new ConcurrentHashMap<Node, int[]>();
+	// The basename of each unit, filled in when it is first needed for blacklisting
+	private volatile String[] unitBasenames = null;
+	private static final int MAX_BLACKLISTS = 16;
+	// The units excluded by each of the most recently used blacklists, so that concurrent requests with different blacklists
+	// do not keep computing them again
+	final Map<String, BitSet> blacklistCache = new LinkedHashMap<String, BitSet>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+			return size() > MAX_BLACKLISTS;
+		}
+	};
+
 	public UnitDatabase() {
 	}
 
@@ -66,6 +86,11 @@ public class UnitDatabase {
 		this.audioTimeline = anAudioTimeline;
 		this.basenameTimeline = aBasenameTimeline;
 		this.backtrace = backtraceLeafSize;
+		preselectionCache.clear();
+		unitBasenames = null;
+		synchronized (blacklistCache) {
+			blacklistCache.clear();
+		}
 	}
 
 	public void load(TargetCostFunction aTargetCostFunction, JoinCostFunction aJoinCostFunction,
@@ -80,6 +105,11 @@ public class UnitDatabase {
 		this.audioTimeline = anAudioTimeline;
 		this.basenameTimeline = aBasenameTimeline;
 		this.backtrace = backtraceLeafSize;
+		preselectionCache.clear();
+		unitBasenames = null;
+		synchronized (blacklistCache) {
+			blacklistCache.clear();
+		}
 	}
 
 	public TargetCostFunction getTargetCostFunction() {
@@ -111,44 +141,122 @@ public class UnitDatabase {
 	 *         (different) Unit object
 	 */
 	public List<ViterbiCandidate> getCandidates(Target target) {
-		// BEGIN blacklisting
-		// The point of this is to get the value of the "blacklist" attribute in the first child element of the MaryXML
-		// and store it in the blacklist String variable.
-		// This code seems rather inelegant; perhaps there is a better way to access the MaryXML from this method?
-		String blacklist = "";
-		String unitBasename = "This must never be null or the empty string!"; // otherwise candidate selection fails!
-		Element targetElement = target.getMaryxmlElement();
-		blacklist = DomUtils.getAttributeFromClosestAncestorOfAnyKind(targetElement, "blacklist");
-		// END blacklisting
+		// The value of the "blacklist" attribute in the MaryXML, remembered by the target, so that candidates can be looked up
+		// without reading the document
+		BitSet blacklisted = getBlacklistedUnits(target.getBlacklist());
 
 		// logger.debug("Looking for candidates in cart "+target.getName());
 		// get the cart tree and extract the candidates
-		int[] clist = (int[]) preselectionCART.interpret(target, backtrace);
+		int[] clist = preselectUnits(target);
 		logger.debug("For target " + target + ", selected " + clist.length + " units");
 
 		// Now, clist is an array of unit indexes.
-		List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>();
+		// Blacklisting without crazy performance drop:
+		// just skip the units whose basenames are blacklisted
+		Unit[] units = new Unit[clist.length];
+		int nUnits = 0;
 		for (int i = 0; i < clist.length; i++) {
-			// The target is the same for all these candidates in the queue
-			// remember the actual unit:
-			Unit unit = unitReader.getUnit(clist[i]);
-			candidates.add(new ViterbiCandidate(target, unit, targetCostFunction));
+			if (blacklisted == null || !blacklisted.get(clist[i])) {
+				units[nUnits++] = unitReader.getUnit(clist[i]);
+			}
+		}
+		if (nUnits < units.length) {
+			units = Arrays.copyOf(units, nUnits);
 		}
 
-		// Blacklisting without crazy performance drop:
-		// just remove candidates again if their basenames are blacklisted
-		java.util.Iterator<ViterbiCandidate> candIt = candidates.iterator();
-		while (candIt.hasNext()) {
-			ViterbiCandidate candidate = candIt.next();
-			unitBasename = getFilename(candidate.getUnit());
-			if (blacklist.contains(unitBasename)) {
-				candIt.remove();
+		List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(units.length);
+		if (targetCostFunction instanceof FFRTargetCostFunction) {
+			// score all candidates for this target in one go
+			double[] costs = new double[units.length];
+			((FFRTargetCostFunction) targetCostFunction).cost(target, units, costs);
+			for (int i = 0; i < units.length; i++) {
+				candidates.add(new ViterbiCandidate(target, units[i], costs[i]));
+			}
+		} else {
+			for (int i = 0; i < units.length; i++) {
+				// The target is the same for all these candidates in the queue
+				// remember the actual unit:
+				candidates.add(new ViterbiCandidate(target, units[i], targetCostFunction));
 			}
 		}
-
 		return candidates;
 	}
 
+	/**
+	 * Get the indexes of the units which the preselection CART proposes for the given target. The unit indexes are cached per
+	 * CART node, so that repeated targets do not need to collect them again.
+	 * 
+	 * @param target
+	 *            the target, with its features computed
+	 * @return the unit indexes, which must not be modified.
+	 */
+	protected int[] preselectUnits(Target target) {
+		Node node = preselectionCART.interpretToNode(target, backtrace);
+		int[] clist = preselectionCache.get(node);
+		if (clist == null) {
+			clist = (int[]) node.getAllData();
+			preselectionCache.put(node, clist);
+		}
+		return clist;
+	}
+
+	/**
+	 * Determine which units are excluded by the given blacklist, i.e. those whose basename is contained in the blacklist string.
+	 * The results for the most recently used blacklists are remembered, so each is computed only once per request.
+	 * 
+	 * @param blacklist
+	 *            the value of a "blacklist" attribute in the MaryXML, or the empty string
+	 * @return a set of the unit indexes to exclude, which must not be modified, or null if no units are excluded
+	 */
+	protected BitSet getBlacklistedUnits(String blacklist) {
+		if (blacklist == null || blacklist.equals("")) {
+			return null;
+		}
+		BitSet units;
+		synchronized (blacklistCache) {
+			units = blacklistCache.get(blacklist);
+		}
+		if (units != null) {
+			return units;
+		}
+		String[] basenames = getUnitBasenames();
+		units = new BitSet(numUnits);
+		for (int i = 0; i < basenames.length; i++) {
+			if (blacklist.contains(basenames[i])) {
+				units.set(i);
+			}
+		}
+		synchronized (blacklistCache) {
+			blacklistCache.put(blacklist, units);
+		}
+		return units;
+	}
+
+	/**
+	 * The basename of each unit. They are looked up without holding a lock: if several threads need them at the same time, each
+	 * looks them up rather than waiting for the others, and the last result is kept.
+	 * 
+	 * @return the basenames, indexed by unit index
+	 */
+	private String[] getUnitBasenames() {
+		String[] basenames = unitBasenames;
+		if (basenames == null) {
+			basenames = new String[numUnits];
+			Map<String, String> unique = new HashMap<String, String>();
+			for (int i = 0; i < numUnits; i++) {
+				String basename = basenameTimeline != null ? getFilename(unitReader.getUnit(i)) : "unknown origin";
+				String known = unique.get(basename);
+				if (known == null) {
+					unique.put(basename, basename);
+					known = basename;
+				}
+				basenames[i] = known;
+			}
+			unitBasenames = basenames;
+		}
+		return basenames;
+	}
+
 	/**
 	 * For debugging, return the basename of the original audio file from which the unit is coming, as well as the start time in
 	 * that file.
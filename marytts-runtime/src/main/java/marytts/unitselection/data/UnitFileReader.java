@@ -35,12 +35,15 @@ import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.util.data.MaryHeader;
 
 /**
- * Loads a unit file in memory and provides accessors to the start times and durations.
+ * Loads a unit file in memory and provides accessors to the start times and durations. Alternatively, the unit file can be
+ * memory-mapped, in which case Unit objects are created from the mapping when they are requested.
  * 
  * @author sacha
  * 
@@ -51,7 +54,10 @@ public class UnitFileReader {
 	private int numberOfUnits = 0;
 	private int sampleRate = 0;
 	Unit[] units; // this has visibility "default" rather than private so that other classes in the same package can access it
-					// directly, for efficiency reasons
+					// directly, for efficiency reasons; it is null if the unit file is memory-mapped
+	private ByteBuffer mappedUnits; // start time and duration of each unit, if memory-mapped
+
+	private static final int UNIT_SIZE = 12; // long start time, int duration
 
 	/****************/
 	/* CONSTRUCTORS */
@@ -90,6 +96,27 @@ public class UnitFileReader {
 	 *             MaryConfigurationException
 	 */
 	public void load(String fileName) throws IOException, MaryConfigurationException {
+		load(fileName, false);
+	}
+
+	/**
+	 * Load the given unit file
+	 * 
+	 * @param fileName
+	 *            the unit file to read
+	 * @param memoryMapped
+	 *            if true, the units are read from the memory-mapped file whenever they are requested; if false, they are all
+	 *            loaded to the heap.
+	 * @throws IOException
+	 *             if a problem occurs while reading
+	 * @throws MaryConfigurationException
+	 *             MaryConfigurationException
+	 */
+	public void load(String fileName, boolean memoryMapped) throws IOException, MaryConfigurationException {
+		if (memoryMapped) {
+			loadFromByteBuffer(fileName);
+			return;
+		}
 		/* Open the file */
 		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
 		/* Load the Mary header */
@@ -114,6 +141,39 @@ public class UnitFileReader {
 			int duration = dis.readInt();
 			units[i] = new Unit(startTime, duration, i);
 		}
+		mappedUnits = null;
+	}
+
+	private void loadFromByteBuffer(String fileName) throws IOException, MaryConfigurationException {
+		/* Open the file */
+		FileInputStream fis = new FileInputStream(fileName);
+		ByteBuffer bb;
+		try {
+			FileChannel fc = fis.getChannel();
+			bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+		} finally {
+			fis.close();
+		}
+		/* Load the Mary header */
+		hdr = new MaryHeader(bb);
+		if (hdr.getType() != MaryHeader.UNITS) {
+			throw new MaryConfigurationException("File [" + fileName + "] is not a valid Mary Units file.");
+		}
+		/* Read the number of units */
+		numberOfUnits = bb.getInt();
+		if (numberOfUnits < 0) {
+			throw new MaryConfigurationException("File [" + fileName + "] has a negative number of units. Aborting.");
+		}
+		/* Read the sample rate */
+		sampleRate = bb.getInt();
+		if (sampleRate < 0) {
+			throw new MaryConfigurationException("File [" + fileName + "] has a negative number sample rate. Aborting.");
+		}
+		if ((long) numberOfUnits * UNIT_SIZE > bb.remaining()) {
+			throw new MaryConfigurationException("File [" + fileName + "] is too short for " + numberOfUnits + " units.");
+		}
+		units = null;
+		mappedUnits = bb.slice();
 	}
 
 	/*****************/
@@ -146,6 +206,12 @@ public class UnitFileReader {
 	 * @return The considered unit.
 	 */
 	public Unit getUnit(int i) {
+		if (mappedUnits != null) {
+			if (i < 0 || i >= numberOfUnits) {
+				throw new ArrayIndexOutOfBoundsException(i);
+			}
+			return new Unit(mappedUnits.getLong(i * UNIT_SIZE), mappedUnits.getInt(i * UNIT_SIZE + 8), i);
+		}
 		return units[i];
 	}
 
@@ -172,9 +238,9 @@ public class UnitFileReader {
 	 * @return the next unit in the database, or null if there is no such unit.
 	 */
 	public Unit getNextUnit(Unit u) {
-		if (u == null || u.index >= units.length - 1 || u.index < 0)
+		if (u == null || u.index >= numberOfUnits - 1 || u.index < 0)
 			return null;
-		return units[u.index + 1];
+		return getUnit(u.index + 1);
 	}
 
 	/**
@@ -185,9 +251,9 @@ public class UnitFileReader {
 	 * @return the previous unit in the database, or null if there is no such unit.
 	 */
 	public Unit getPreviousUnit(Unit u) {
-		if (u == null || u.index >= units.length || u.index <= 0)
+		if (u == null || u.index >= numberOfUnits || u.index <= 0)
 			return null;
-		return units[u.index - 1];
+		return getUnit(u.index - 1);
 	}
 
 	/**
@@ -198,7 +264,7 @@ public class UnitFileReader {
 	 * @return true if the unit is an edge unit in the unit file, false otherwise
 	 */
 	public boolean isEdgeUnit(int i) {
-		return units[i].isEdgeUnit();
+		return getUnit(i).isEdgeUnit();
 	}
 
 }
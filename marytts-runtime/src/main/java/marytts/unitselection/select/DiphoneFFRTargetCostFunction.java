@@ -21,6 +21,8 @@ package marytts.unitselection.select;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -93,7 +95,7 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 	}
 
 	public FeatureVector getFeatureVector(Unit unit) {
-		return tcfForHalfphones.featureVectors[unit.index];
+		return tcfForHalfphones.getFeatureVector(unit);
 	}
 
 	/**
@@ -135,6 +137,26 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 		}
 	}
 
+	/**
+	 * Compute the features for all the given targets in one batch; diphone targets are computed through their two halves.
+	 * 
+	 * @param targets
+	 *            the targets of an utterance
+	 */
+	public void computeTargetFeatures(List<? extends Target> targets) {
+		List<Target> halfphones = new ArrayList<Target>(2 * targets.size());
+		for (Target target : targets) {
+			if (!(target instanceof DiphoneTarget)) {
+				halfphones.add(target);
+			} else {
+				DiphoneTarget dt = (DiphoneTarget) target;
+				halfphones.add(dt.left);
+				halfphones.add(dt.right);
+			}
+		}
+		tcfForHalfphones.computeTargetFeatures(halfphones);
+	}
+
 	public FeatureVector[] getFeatureVectors() {
 		if (tcfForHalfphones != null) {
 			return tcfForHalfphones.getFeatureVectors();
@@ -142,4 +164,20 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 		return null;
 	}
 
+	/**
+	 * Get the values of a byte feature for all halfphone units directly from the feature file reader's columns.
+	 * 
+	 * @param featureIndex
+	 *            the index of a byte feature in the feature definition
+	 * @return an array with the feature value of each halfphone unit, indexed by unit index, which must not be modified; or null
+	 *         if not available.
+	 * @see FFRTargetCostFunction#getByteFeatureColumn(int)
+	 */
+	public byte[] getByteFeatureColumn(int featureIndex) {
+		if (tcfForHalfphones != null) {
+			return tcfForHalfphones.getByteFeatureColumn(featureIndex);
+		}
+		return null;
+	}
+
 }
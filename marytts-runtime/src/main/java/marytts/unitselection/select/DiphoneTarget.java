@@ -43,6 +43,14 @@ public class DiphoneTarget extends Target {
 		throw new IllegalStateException("This method should not be called for DiphoneTargets.");
 	}
 
+	/**
+	 * The blacklist of the left half, or of the right half if the left half has no element.
+	 */
+	@Override
+	public String getBlacklist() {
+		return left.getMaryxmlElement() != null ? left.getBlacklist() : right.getBlacklist();
+	}
+
 	public FeatureVector getFeatureVector() {
 		throw new IllegalStateException("This method should not be called for DiphoneTargets.");
 	}
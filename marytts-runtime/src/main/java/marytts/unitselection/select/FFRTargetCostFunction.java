@@ -23,6 +23,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -40,6 +42,8 @@ import marytts.util.MaryUtils;
 public class FFRTargetCostFunction implements TargetCostFunction {
 	protected WeightFunc[] weightFunction;
 	protected TargetFeatureComputer targetFeatureComputer;
+	// The unit features; if featureVectors is null, they are read from the columns of featureFileReader.
+	protected FeatureFileReader featureFileReader;
 	protected FeatureVector[] featureVectors;
 	protected FeatureDefinition featureDefinition;
 	protected boolean[] weightsNonZero;
@@ -48,6 +52,14 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	protected double[] cumulWeightedCosts = null;
 	protected int nCostComputations = 0;
 
+	// The unit features with a non-zero weight, packed unit by unit into flat arrays; see packUnitFeatures().
+	protected int[] packedByteFeatures;
+	protected int[] packedShortFeatures;
+	protected int[] packedContinuousFeatures;
+	protected byte[] packedByteValues;
+	protected short[] packedShortValues;
+	protected float[] packedContinuousValues;
+
 	public FFRTargetCostFunction() {
 	}
 
@@ -68,10 +80,16 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		nCostComputations++; // for debug
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
-		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
-		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
-		int nFloats = targetFeatures.continuousFeatures.length;
+		if (packedByteValues != null) {
+			return packedCost(targetFeatures, unit.index, weights, weightFunctions);
+		}
+		if (featureVectors == null) {
+			return readerCost(targetFeatures, unit.index, weights, weightFunctions);
+		}
+		FeatureVector unitFeatures = getFeatureVector(unit);
+		int nBytes = targetFeatures.getNumberOfByteFeatures();
+		int nShorts = targetFeatures.getNumberOfShortFeatures();
+		int nFloats = targetFeatures.getNumberOfContinuousFeatures();
 		assert nBytes == unitFeatures.byteValuedDiscreteFeatures.length;
 		assert nShorts == unitFeatures.shortValuedDiscreteFeatures.length;
 		assert nFloats == unitFeatures.continuousFeatures.length;
@@ -85,13 +103,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				if (weightsNonZero[i]) {
 					float weight = weightVector[i];
 					if (featureDefinition.hasSimilarityMatrix(i)) {
-						byte targetFeatValueIndex = targetFeatures.byteValuedDiscreteFeatures[i];
+						byte targetFeatValueIndex = targetFeatures.getByteFeature(i);
 						byte unitFeatValueIndex = unitFeatures.byteValuedDiscreteFeatures[i];
 						float similarity = featureDefinition.getSimilarity(i, unitFeatValueIndex, targetFeatValueIndex);
 						cost += similarity * weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += similarity * weight;
-					} else if (targetFeatures.byteValuedDiscreteFeatures[i] != unitFeatures.byteValuedDiscreteFeatures[i]) {
+					} else if (targetFeatures.getByteFeature(i) != unitFeatures.byteValuedDiscreteFeatures[i]) {
 						cost += weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += weight;
@@ -105,8 +123,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				if (weightsNonZero[i]) {
 					float weight = weightVector[i];
 					// if (targetFeatures.getShortFeature(i) != unitFeatures.getShortFeature(i)) {
-					if (targetFeatures.shortValuedDiscreteFeatures[i - nBytes] != unitFeatures.shortValuedDiscreteFeatures[i
-							- nBytes]) {
+					if (targetFeatures.getShortFeature(i) != unitFeatures.shortValuedDiscreteFeatures[i - nBytes]) {
 						cost += weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += weight;
@@ -120,8 +137,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 			for (int i = nDiscrete, n = nDiscrete + nFloats; i < n; i++) {
 				if (weightsNonZero[i]) {
 					float weight = weightVector[i];
-					// float a = targetFeatures.getContinuousFeature(i);
-					float a = targetFeatures.continuousFeatures[i - nDiscrete];
+					float a = targetFeatures.getContinuousFeature(i);
 					// float b = unitFeatures.getContinuousFeature(i);
 					float b = unitFeatures.continuousFeatures[i - nDiscrete];
 					// if (!Float.isNaN(a) && !Float.isNaN(b)) {
@@ -139,6 +155,190 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		return cost;
 	}
 
+	/**
+	 * Compute the same cost as {@link #cost(Target, Unit, FeatureDefinition, WeightFunc[])}, reading the unit's feature values
+	 * from the packed arrays. The features with zero weight, which are not packed, contribute no cost anyway.
+	 */
+	private double packedCost(FeatureVector targetFeatures, int unitIndex, FeatureDefinition weights,
+			WeightFunc[] weightFunctions) {
+		int nBytes = targetFeatures.getNumberOfByteFeatures();
+		int nDiscrete = nBytes + targetFeatures.getNumberOfShortFeatures();
+		float[] weightVector = weights.getFeatureWeights();
+		double cost = 0;
+		for (int j = 0, n = packedByteFeatures.length, b = unitIndex * n; j < n; j++, b++) {
+			int i = packedByteFeatures[j];
+			float weight = weightVector[i];
+			byte targetFeatValueIndex = targetFeatures.getByteFeature(i);
+			byte unitFeatValueIndex = packedByteValues[b];
+			if (featureDefinition.hasSimilarityMatrix(i)) {
+				float similarity = featureDefinition.getSimilarity(i, unitFeatValueIndex, targetFeatValueIndex);
+				cost += similarity * weight;
+				if (debugShowCostGraph)
+					cumulWeightedCosts[i] += similarity * weight;
+			} else if (targetFeatValueIndex != unitFeatValueIndex) {
+				cost += weight;
+				if (debugShowCostGraph)
+					cumulWeightedCosts[i] += weight;
+			}
+		}
+		for (int j = 0, n = packedShortFeatures.length, s = unitIndex * n; j < n; j++, s++) {
+			int i = packedShortFeatures[j];
+			if (targetFeatures.getShortFeature(i) != packedShortValues[s]) {
+				float weight = weightVector[i];
+				cost += weight;
+				if (debugShowCostGraph)
+					cumulWeightedCosts[i] += weight;
+			}
+		}
+		for (int j = 0, n = packedContinuousFeatures.length, f = unitIndex * n; j < n; j++, f++) {
+			int i = packedContinuousFeatures[j];
+			float a = targetFeatures.getContinuousFeature(i);
+			float b = packedContinuousValues[f];
+			if (!(a != a) && !(b != b)) {
+				float weight = weightVector[i];
+				double myCost = weightFunctions[i - nDiscrete].cost(a, b);
+				cost += weight * myCost;
+				if (debugShowCostGraph) {
+					cumulWeightedCosts[i] += weight * myCost;
+				}
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Compute the same cost as {@link #cost(Target, Unit, FeatureDefinition, WeightFunc[])}, reading the unit's feature values
+	 * one by one from the feature file reader, which may be memory-mapped.
+	 */
+	private double readerCost(FeatureVector targetFeatures, int unitIndex, FeatureDefinition weights,
+			WeightFunc[] weightFunctions) {
+		int nBytes = targetFeatures.getNumberOfByteFeatures();
+		int nDiscrete = nBytes + targetFeatures.getNumberOfShortFeatures();
+		int nFeatures = nDiscrete + targetFeatures.getNumberOfContinuousFeatures();
+		float[] weightVector = weights.getFeatureWeights();
+		FeatureFileReader ffr = featureFileReader;
+		double cost = 0;
+		for (int i = 0; i < nFeatures; i++) {
+			if (!weightsNonZero[i]) {
+				continue;
+			}
+			float weight = weightVector[i];
+			double featureCost = 0;
+			if (i < nBytes) {
+				byte targetFeatValueIndex = targetFeatures.getByteFeature(i);
+				byte unitFeatValueIndex = ffr.getByteFeature(unitIndex, i);
+				if (featureDefinition.hasSimilarityMatrix(i)) {
+					featureCost = featureDefinition.getSimilarity(i, unitFeatValueIndex, targetFeatValueIndex) * weight;
+				} else if (targetFeatValueIndex != unitFeatValueIndex) {
+					featureCost = weight;
+				}
+			} else if (i < nDiscrete) {
+				if (targetFeatures.getShortFeature(i) != ffr.getShortFeature(unitIndex, i)) {
+					featureCost = weight;
+				}
+			} else {
+				float a = targetFeatures.getContinuousFeature(i);
+				float b = ffr.getContinuousFeature(unitIndex, i);
+				if (!(a != a) && !(b != b)) {
+					featureCost = weight * weightFunctions[i - nDiscrete].cost(a, b);
+				}
+			}
+			cost += featureCost;
+			if (debugShowCostGraph) {
+				cumulWeightedCosts[i] += featureCost;
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Compute the goodness-of-fit of a list of candidate units for one target. This gives the same costs as calling
+	 * {@link #cost(Target, Unit)} for each unit, but looks up the packed unit features in one pass.
+	 * 
+	 * @param target
+	 *            target
+	 * @param units
+	 *            the candidate units
+	 * @param costs
+	 *            an array of at least units.length entries, receiving the cost of each unit
+	 */
+	public void cost(Target target, Unit[] units, double[] costs) {
+		cost(target, units, costs, featureDefinition, weightFunction);
+	}
+
+	protected void cost(Target target, Unit[] units, double[] costs, FeatureDefinition weights, WeightFunc[] weightFunctions) {
+		if (packedByteValues == null || debugShowCostGraph) {
+			for (int k = 0; k < units.length; k++) {
+				costs[k] = cost(target, units[k], weights, weightFunctions);
+			}
+			return;
+		}
+		nCostComputations += units.length; // for debug
+		FeatureVector targetFeatures = target.getFeatureVector();
+		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
+		int nBytes = packedByteFeatures.length;
+		int nShorts = packedShortFeatures.length;
+		int nFloats = packedContinuousFeatures.length;
+		int nDiscrete = targetFeatures.getNumberOfByteFeatures() + targetFeatures.getNumberOfShortFeatures();
+		float[] weightVector = weights.getFeatureWeights();
+
+		// For each byte feature, the weighted cost of every possible unit value given this target's value:
+		float[] byteCosts = new float[nBytes * 256];
+		for (int j = 0; j < nBytes; j++) {
+			int i = packedByteFeatures[j];
+			float weight = weightVector[i];
+			byte targetFeatValueIndex = targetFeatures.getByteFeature(i);
+			int offset = j * 256;
+			if (featureDefinition.hasSimilarityMatrix(i)) {
+				float[] similarities = featureDefinition.getSimilarities(i, targetFeatValueIndex);
+				for (int v = 0; v < similarities.length; v++) {
+					byteCosts[offset + v] = similarities[v] * weight;
+				}
+			} else {
+				Arrays.fill(byteCosts, offset, offset + 256, weight);
+				byteCosts[offset + (targetFeatValueIndex & 0xff)] = 0;
+			}
+		}
+		short[] targetShorts = new short[nShorts];
+		float[] shortWeights = new float[nShorts];
+		for (int j = 0; j < nShorts; j++) {
+			int i = packedShortFeatures[j];
+			targetShorts[j] = targetFeatures.getShortFeature(i);
+			shortWeights[j] = weightVector[i];
+		}
+		float[] targetFloats = new float[nFloats];
+		float[] floatWeights = new float[nFloats];
+		WeightFunc[] floatFunctions = new WeightFunc[nFloats];
+		for (int j = 0; j < nFloats; j++) {
+			int i = packedContinuousFeatures[j];
+			targetFloats[j] = targetFeatures.getContinuousFeature(i);
+			floatWeights[j] = weightVector[i];
+			floatFunctions[j] = weightFunctions[i - nDiscrete];
+		}
+
+		// Now the actual computation, in the same feature order as cost(Target, Unit):
+		for (int k = 0; k < units.length; k++) {
+			int unitIndex = units[k].index;
+			double cost = 0;
+			for (int j = 0, b = unitIndex * nBytes; j < nBytes; j++, b++) {
+				cost += byteCosts[(j << 8) + (packedByteValues[b] & 0xff)];
+			}
+			for (int j = 0, s = unitIndex * nShorts; j < nShorts; j++, s++) {
+				if (targetShorts[j] != packedShortValues[s]) {
+					cost += shortWeights[j];
+				}
+			}
+			for (int j = 0, f = unitIndex * nFloats; j < nFloats; j++, f++) {
+				float a = targetFloats[j];
+				float b = packedContinuousValues[f];
+				if (!(a != a) && !(b != b)) {
+					cost += floatWeights[j] * floatFunctions[j].cost(a, b);
+				}
+			}
+			costs[k] = cost;
+		}
+	}
+
 	/**
 	 * Compute the goodness-of-fit between given unit and given target for a given feature
 	 * 
@@ -164,10 +364,10 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
-		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
-		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
-		int nFloats = targetFeatures.continuousFeatures.length;
+		FeatureVector unitFeatures = getFeatureVector(unit);
+		int nBytes = targetFeatures.getNumberOfByteFeatures();
+		int nShorts = targetFeatures.getNumberOfShortFeatures();
+		int nFloats = targetFeatures.getNumberOfContinuousFeatures();
 		assert nBytes == unitFeatures.byteValuedDiscreteFeatures.length;
 		assert nShorts == unitFeatures.shortValuedDiscreteFeatures.length;
 		assert nFloats == unitFeatures.continuousFeatures.length;
@@ -180,13 +380,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 			if (weightsNonZero[featureIndex]) {
 				float weight = weightVector[featureIndex];
 				if (featureDefinition.hasSimilarityMatrix(featureIndex)) {
-					byte targetFeatValueIndex = targetFeatures.byteValuedDiscreteFeatures[featureIndex];
+					byte targetFeatValueIndex = targetFeatures.getByteFeature(featureIndex);
 					byte unitFeatValueIndex = unitFeatures.byteValuedDiscreteFeatures[featureIndex];
 					float similarity = featureDefinition.getSimilarity(featureIndex, unitFeatValueIndex, targetFeatValueIndex);
 					cost = similarity * weight;
 					if (debugShowCostGraph)
 						cumulWeightedCosts[featureIndex] += similarity * weight;
-				} else if (targetFeatures.byteValuedDiscreteFeatures[featureIndex] != unitFeatures.byteValuedDiscreteFeatures[featureIndex]) {
+				} else if (targetFeatures.getByteFeature(featureIndex) != unitFeatures.byteValuedDiscreteFeatures[featureIndex]) {
 					cost = weight;
 					if (debugShowCostGraph)
 						cumulWeightedCosts[featureIndex] += weight;
@@ -196,7 +396,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 			if (weightsNonZero[featureIndex]) {
 				float weight = weightVector[featureIndex];
 				// if (targetFeatures.getShortFeature(i) != unitFeatures.getShortFeature(i)) {
-				if (targetFeatures.shortValuedDiscreteFeatures[featureIndex - nBytes] != unitFeatures.shortValuedDiscreteFeatures[featureIndex
+				if (targetFeatures.getShortFeature(featureIndex) != unitFeatures.shortValuedDiscreteFeatures[featureIndex
 						- nBytes]) {
 					cost = weight;
 					if (debugShowCostGraph)
@@ -207,8 +407,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 			int nDiscrete = nBytes + nShorts;
 			if (weightsNonZero[featureIndex]) {
 				float weight = weightVector[featureIndex];
-				// float a = targetFeatures.getContinuousFeature(i);
-				float a = targetFeatures.continuousFeatures[featureIndex - nDiscrete];
+				float a = targetFeatures.getContinuousFeature(featureIndex);
 				// float b = unitFeatures.getContinuousFeature(i);
 				float b = unitFeatures.continuousFeatures[featureIndex - nDiscrete];
 				// if (!Float.isNaN(a) && !Float.isNaN(b)) {
@@ -251,7 +450,8 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	@Override
 	public void load(FeatureFileReader ffr, InputStream weightsStream, FeatureProcessorManager featProc) throws IOException {
 		this.featureDefinition = ffr.getFeatureDefinition();
-		this.featureVectors = ffr.getFeatureVectors();
+		this.featureFileReader = ffr;
+		this.featureVectors = null;
 		if (weightsStream != null) {
 			MaryUtils.getLogger("TargetCostFeatures").debug("Overwriting target cost weights from file");
 			// overwrite weights from file
@@ -277,6 +477,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		this.targetFeatureComputer = new TargetFeatureComputer(featProc, featureDefinition.getFeatureNames());
 
 		rememberWhichWeightsAreNonZero();
+		packUnitFeatures();
 
 		if (MaryProperties.getBoolean("debug.show.cost.graph")) {
 			debugShowCostGraph = true;
@@ -295,6 +496,93 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		}
 	}
 
+	/**
+	 * Copy the values of all features with a non-zero weight into flat arrays, with the features of one unit stored next to each
+	 * other, so that the cost computation does not need to visit the unit's FeatureVector object or the feature columns. Must be
+	 * called after {@link #rememberWhichWeightsAreNonZero()}; if the packed arrays would be too large, they are not created and
+	 * costs are computed from the feature vectors. Nor are they created for a memory-mapped feature file reader, whose point is
+	 * to keep the features off the heap.
+	 */
+	protected void packUnitFeatures() {
+		packedByteValues = null;
+		packedShortValues = null;
+		packedContinuousValues = null;
+		if (featureVectors == null && (featureFileReader == null || featureFileReader.isMemoryMapped())) {
+			return;
+		}
+		int nBytes = featureDefinition.getNumberOfByteFeatures();
+		int nDiscrete = nBytes + featureDefinition.getNumberOfShortFeatures();
+		int nFeatures = featureDefinition.getNumberOfFeatures();
+		int[] active = new int[3];
+		for (int i = 0; i < nFeatures; i++) {
+			if (weightsNonZero[i]) {
+				active[i < nBytes ? 0 : i < nDiscrete ? 1 : 2]++;
+			}
+		}
+		int nUnits = featureVectors != null ? featureVectors.length : featureFileReader.getNumberOfUnits();
+		for (int n : active) {
+			if ((long) n * nUnits > Integer.MAX_VALUE) {
+				MaryUtils.getLogger("TargetCostFeatures").debug("Too many units to pack target cost features");
+				return;
+			}
+		}
+		packedByteFeatures = new int[active[0]];
+		packedShortFeatures = new int[active[1]];
+		packedContinuousFeatures = new int[active[2]];
+		for (int i = 0, b = 0, s = 0, f = 0; i < nFeatures; i++) {
+			if (!weightsNonZero[i]) {
+				continue;
+			}
+			if (i < nBytes) {
+				packedByteFeatures[b++] = i;
+			} else if (i < nDiscrete) {
+				packedShortFeatures[s++] = i;
+			} else {
+				packedContinuousFeatures[f++] = i;
+			}
+		}
+		byte[] byteValues = new byte[nUnits * active[0]];
+		short[] shortValues = new short[nUnits * active[1]];
+		float[] continuousValues = new float[nUnits * active[2]];
+		if (featureVectors != null) {
+			for (int u = 0, b = 0, s = 0, f = 0; u < nUnits; u++) {
+				FeatureVector fv = featureVectors[u];
+				for (int i : packedByteFeatures) {
+					byteValues[b++] = fv.byteValuedDiscreteFeatures[i];
+				}
+				for (int i : packedShortFeatures) {
+					shortValues[s++] = fv.shortValuedDiscreteFeatures[i - nBytes];
+				}
+				for (int i : packedContinuousFeatures) {
+					continuousValues[f++] = fv.continuousFeatures[i - nDiscrete];
+				}
+			}
+		} else {
+			// copy column by column, so that each column is read sequentially:
+			for (int j = 0; j < packedByteFeatures.length; j++) {
+				byte[] column = featureFileReader.getByteFeatureColumn(packedByteFeatures[j]);
+				for (int u = 0, b = j; u < nUnits; u++, b += packedByteFeatures.length) {
+					byteValues[b] = column[u];
+				}
+			}
+			for (int j = 0; j < packedShortFeatures.length; j++) {
+				short[] column = featureFileReader.getShortFeatureColumn(packedShortFeatures[j]);
+				for (int u = 0, s = j; u < nUnits; u++, s += packedShortFeatures.length) {
+					shortValues[s] = column[u];
+				}
+			}
+			for (int j = 0; j < packedContinuousFeatures.length; j++) {
+				float[] column = featureFileReader.getContinuousFeatureColumn(packedContinuousFeatures[j]);
+				for (int u = 0, f = j; u < nUnits; u++, f += packedContinuousFeatures.length) {
+					continuousValues[f] = column[u];
+				}
+			}
+		}
+		packedByteValues = byteValues;
+		packedShortValues = shortValues;
+		packedContinuousValues = continuousValues;
+	}
+
 	/**
 	 * Compute the features for a given target, and store them in the target.
 	 * 
@@ -307,6 +595,17 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		target.setFeatureVector(fv);
 	}
 
+	/**
+	 * Compute the features for all the given targets in one batch, and store them in the targets.
+	 * 
+	 * @param targets
+	 *            the targets of an utterance
+	 * @see TargetFeatureComputer#computeFeatureVectors(List)
+	 */
+	public void computeTargetFeatures(List<? extends Target> targets) {
+		targetFeatureComputer.computeFeatureVectors(targets);
+	}
+
 	/**
 	 * Look up the features for a given unit.
 	 * 
@@ -315,7 +614,10 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	 * @return the FeatureVector for target cost computation associated to this unit
 	 */
 	public FeatureVector getFeatureVector(Unit unit) {
-		return featureVectors[unit.index];
+		if (featureVectors != null) {
+			return featureVectors[unit.index];
+		}
+		return featureFileReader.getFeatureVector(unit.index);
 	}
 
 	/**
@@ -331,14 +633,15 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	 */
 	public String getFeature(Unit unit, String featureName) {
 		int featureIndex = featureDefinition.getFeatureIndex(featureName);
+		FeatureVector unitFeatures = getFeatureVector(unit);
 		if (featureDefinition.isByteFeature(featureIndex)) {
-			byte value = featureVectors[unit.index].getByteFeature(featureIndex);
+			byte value = unitFeatures.getByteFeature(featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else if (featureDefinition.isShortFeature(featureIndex)) {
-			short value = featureVectors[unit.index].getShortFeature(featureIndex);
+			short value = unitFeatures.getShortFeature(featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else { // continuous -- return float as string
-			float value = featureVectors[unit.index].getContinuousFeature(featureIndex);
+			float value = unitFeatures.getContinuousFeature(featureIndex);
 			return String.valueOf(value);
 		}
 	}
@@ -383,8 +686,30 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		}
 	}
 
+	/**
+	 * Get all feature vectors, if they are held as such. A target cost function loaded from a feature file reader reads the unit
+	 * features from the reader's columns and returns null here; use {@link #getFeatureVector(Unit)} instead.
+	 * 
+	 * @return the full array of feature vectors, or null.
+	 */
 	public FeatureVector[] getFeatureVectors() {
 		return featureVectors;
 	}
 
+	/**
+	 * Get the values of a byte feature for all units directly from the feature file reader's columns, without building feature
+	 * vectors.
+	 * 
+	 * @param featureIndex
+	 *            the index of a byte feature in the feature definition
+	 * @return an array with the feature value of each unit, indexed by unit index, which must not be modified; or null if this
+	 *         target cost function was not loaded from a feature file reader.
+	 */
+	public byte[] getByteFeatureColumn(int featureIndex) {
+		if (featureFileReader == null) {
+			return null;
+		}
+		return featureFileReader.getByteFeatureColumn(featureIndex);
+	}
+
 }
@@ -34,6 +34,7 @@ import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Vector;
 
 import marytts.exceptions.MaryConfigurationException;
@@ -63,6 +64,11 @@ public class JoinCostFeatures implements JoinCostFunction {
 
 	protected JoinCostReporter jcr;
 
+	/**
+	 * Default number of entries in the cache of signal-based join costs, unless configured otherwise for a voice.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
 	/****************/
 	/* DATA FIELDS */
 	/****************/
@@ -72,8 +78,15 @@ public class JoinCostFeatures implements JoinCostFunction {
 	private WeightFunc[] weightFunction = null;
 	private boolean[] isLinear = null; // wether the i'th weight function is a linear function
 
-	private float[][] leftJCF = null;
-	private float[][] rightJCF = null;
+	// Join cost features of all units in one array: for unit u, the left features start at u * 2 * numberOfFeatures, followed
+	// by the right features.
+	private float[] jcf = null;
+	// The same features, if they are read from the memory-mapped join cost file rather than copied into jcf.
+	private FloatBuffer mappedJcf = null;
+	private int numberOfFeatures = 0;
+	private int numberOfUnits = 0;
+
+	private JoinCostCache cache = null;
 
 	/****************/
 	/* CONSTRUCTORS */
@@ -114,12 +127,14 @@ public class JoinCostFeatures implements JoinCostFunction {
 		String joinFileName = MaryProperties.needFilename(configPrefix + ".joinCostFile");
 		String precomputedJoinCostFileName = MaryProperties.getFilename(configPrefix + ".precomputedJoinCostFile");
 		float wSignal = Float.parseFloat(MaryProperties.getProperty(configPrefix + ".joincostfunction.wSignal", "1.0"));
+		boolean memoryMapped = MaryProperties.getBoolean(configPrefix + ".memoryMapped", false);
 		try {
 			InputStream joinWeightStream = MaryProperties.getStream(configPrefix + ".joinCostWeights");
-			load(joinFileName, joinWeightStream, precomputedJoinCostFileName, wSignal);
+			load(joinFileName, joinWeightStream, precomputedJoinCostFileName, wSignal, memoryMapped);
 		} catch (IOException ioe) {
 			throw new MaryConfigurationException("Problem loading join file " + joinFileName, ioe);
 		}
+		setCacheSize(MaryProperties.getInteger(configPrefix + ".joincostfunction.cacheSize", DEFAULT_CACHE_SIZE));
 	}
 
 	/**
@@ -140,7 +155,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 */
 	public void load(String joinFileName, InputStream weightStream, String precompiledCostFileName, float wSignal)
 			throws IOException, MaryConfigurationException {
-		loadFromByteBuffer(joinFileName, weightStream, precompiledCostFileName, wSignal);
+		load(joinFileName, weightStream, precompiledCostFileName, wSignal, false);
 	}
 
 	/**
@@ -154,13 +169,39 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 *            an optional file containing precompiled join costs
 	 * @param wSignal
 	 *            Relative weight of the signal-based join costs relative to the phonetic join costs computed from the target
+	 * @param memoryMapped
+	 *            if true, the join cost features are read from the memory-mapped file whenever they are needed; if false, they
+	 *            are copied to the heap.
 	 * @throws IOException
 	 *             IOException
 	 * @throws MaryConfigurationException
 	 *             MaryConfigurationException
 	 */
-	private void loadFromByteBuffer(String joinFileName, InputStream weightStream, String precompiledCostFileName, float wSignal)
-			throws IOException, MaryConfigurationException {
+	public void load(String joinFileName, InputStream weightStream, String precompiledCostFileName, float wSignal,
+			boolean memoryMapped) throws IOException, MaryConfigurationException {
+		loadFromByteBuffer(joinFileName, weightStream, precompiledCostFileName, wSignal, memoryMapped);
+	}
+
+	/**
+	 * Load weights and values from the given file
+	 * 
+	 * @param joinFileName
+	 *            the file from which to read default weights and join cost features
+	 * @param weightStream
+	 *            an optional file from which to read weights, taking precedence over
+	 * @param precompiledCostFileName
+	 *            an optional file containing precompiled join costs
+	 * @param wSignal
+	 *            Relative weight of the signal-based join costs relative to the phonetic join costs computed from the target
+	 * @param memoryMapped
+	 *            whether to keep the join cost features in the mapped buffer instead of copying them to the heap
+	 * @throws IOException
+	 *             IOException
+	 * @throws MaryConfigurationException
+	 *             MaryConfigurationException
+	 */
+	private void loadFromByteBuffer(String joinFileName, InputStream weightStream, String precompiledCostFileName, float wSignal,
+			boolean memoryMapped) throws IOException, MaryConfigurationException {
 		if (precompiledCostFileName != null) {
 			precompiledCosts = new PrecompiledJoinCostReader(precompiledCostFileName);
 		}
@@ -209,16 +250,20 @@ public class JoinCostFeatures implements JoinCostFunction {
 			}
 
 			/* Read the left and right Join Cost Features */
-			int numberOfUnits = bb.getInt();
+			this.numberOfFeatures = numberOfFeatures;
+			numberOfUnits = bb.getInt();
 			FloatBuffer fb = bb.asFloatBuffer();
-			leftJCF = new float[numberOfUnits][];
-			rightJCF = new float[numberOfUnits][];
-			for (int i = 0; i < numberOfUnits; i++) {
-				// System.out.println("Reading join features for unit "+i+" out of "+numberOfUnits);
-				leftJCF[i] = new float[numberOfFeatures];
-				fb.get(leftJCF[i]);
-				rightJCF[i] = new float[numberOfFeatures];
-				fb.get(rightJCF[i]);
+			int size = checkedArraySize(numberOfUnits, numberOfFeatures);
+			if (memoryMapped) {
+				if (fb.remaining() < size) {
+					throw new EOFException();
+				}
+				jcf = null;
+				mappedJcf = fb;
+			} else {
+				jcf = new float[size];
+				fb.get(jcf);
+				mappedJcf = null;
 			}
 		} catch (EOFException e) {
 			IOException ioe = new IOException("The currently read Join Cost File has prematurely reached EOF.");
@@ -301,20 +346,13 @@ public class JoinCostFeatures implements JoinCostFunction {
 			}
 
 			/* Read the left and right Join Cost Features */
-			int numberOfUnits = raf.readInt();
-			leftJCF = new float[numberOfUnits][];
-			rightJCF = new float[numberOfUnits][];
-			for (int i = 0; i < numberOfUnits; i++) {
-				// System.out.println("Reading join features for unit "+i+" out of "+numberOfUnits);
-				leftJCF[i] = new float[numberOfFeatures];
-				for (int j = 0; j < numberOfFeatures; j++) {
-					leftJCF[i][j] = raf.readFloat();
-				}
-				rightJCF[i] = new float[numberOfFeatures];
-				for (int j = 0; j < numberOfFeatures; j++) {
-					rightJCF[i][j] = raf.readFloat();
-				}
+			this.numberOfFeatures = numberOfFeatures;
+			numberOfUnits = raf.readInt();
+			jcf = new float[checkedArraySize(numberOfUnits, numberOfFeatures)];
+			for (int i = 0; i < jcf.length; i++) {
+				jcf[i] = raf.readFloat();
 			}
+			mappedJcf = null;
 		} catch (EOFException e) {
 			IOException ioe = new IOException("The currently read Join Cost File has prematurely reached EOF.");
 			ioe.initCause(e);
@@ -331,6 +369,15 @@ public class JoinCostFeatures implements JoinCostFunction {
 
 	}
 
+	private static int checkedArraySize(int numberOfUnits, int numberOfFeatures) throws IOException {
+		long size = 2L * numberOfUnits * numberOfFeatures;
+		if (numberOfUnits < 0 || size > Integer.MAX_VALUE) {
+			throw new IOException("Cannot hold join cost features of " + numberOfUnits + " units with " + numberOfFeatures
+					+ " features each in memory");
+		}
+		return (int) size;
+	}
+
 	/**
 	 * Read the join cost weight specifications from the given file. The weights will be normalized such that they sum to one.
 	 * 
@@ -413,10 +460,10 @@ public class JoinCostFeatures implements JoinCostFunction {
 	/**
 	 * Get the number of units.
 	 * 
-	 * @return (leftJCF.length)
+	 * @return the number of units
 	 */
 	public int getNumberOfUnits() {
-		return (leftJCF.length);
+		return numberOfUnits;
 	}
 
 	/**
@@ -435,7 +482,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 			throw new RuntimeException("The unit index [" + u + "] is out of range: this file contains [" + getNumberOfUnits()
 					+ "] units.");
 		}
-		return (leftJCF[u]);
+		return copyJCF(2 * u * numberOfFeatures);
 	}
 
 	/**
@@ -454,7 +501,18 @@ public class JoinCostFeatures implements JoinCostFunction {
 			throw new RuntimeException("The unit index [" + u + "] is out of range: this file contains [" + getNumberOfUnits()
 					+ "] units.");
 		}
-		return (rightJCF[u]);
+		return copyJCF((2 * u + 1) * numberOfFeatures);
+	}
+
+	private float[] copyJCF(int start) {
+		if (mappedJcf != null) {
+			float[] features = new float[numberOfFeatures];
+			FloatBuffer fb = mappedJcf.duplicate();
+			fb.position(start);
+			fb.get(features);
+			return features;
+		}
+		return Arrays.copyOfRange(jcf, start, start + numberOfFeatures);
 	}
 
 	/*****************/
@@ -474,39 +532,139 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 */
 	public double cost(int u1, int u2) {
 		/* Check the given indexes */
-		if (u1 < 0) {
-			throw new RuntimeException("The left unit index [" + u1 + "] is out of range: a unit index can't be negative.");
+		checkUnitIndex(u1, "left");
+		checkUnitIndex(u2, "right");
+		if (debugShowCostGraph) {
+			jcr.tick();
+			return computeCost(u1, u2);
 		}
-		// if ( u1 > getNumberOfUnits() ) {
-		if (u1 > leftJCF.length) {
-			throw new RuntimeException("The left unit index [" + u1 + "] is out of range: this file contains ["
-					+ getNumberOfUnits() + "] units.");
+		JoinCostCache theCache = cache;
+		if (theCache == null) {
+			return computeCost(u1, u2);
+		}
+		Entry e = theCache.find(u1, u2);
+		if (e != null) {
+			return e.cost;
 		}
-		if (u2 < 0) {
-			throw new RuntimeException("The right unit index [" + u2 + "] is out of range: a unit index can't be negative.");
+		double c = computeCost(u1, u2);
+		theCache.put(u1, u2, c);
+		return c;
+	}
+
+	private void checkUnitIndex(int u, String side) {
+		if (u < 0) {
+			throw new RuntimeException("The " + side + " unit index [" + u + "] is out of range: a unit index can't be negative.");
 		}
-		// if ( u2 > getNumberOfUnits() ) {
-		if (u2 > leftJCF.length) {
-			throw new RuntimeException("The right unit index [" + u2 + "] is out of range: this file contains ["
+		if (u >= numberOfUnits) {
+			throw new RuntimeException("The " + side + " unit index [" + u + "] is out of range: this file contains ["
 					+ getNumberOfUnits() + "] units.");
 		}
-		if (debugShowCostGraph) {
-			jcr.tick();
+	}
+
+	/**
+	 * Deliver the join costs between one left unit and a number of right units, as from one path to all the candidates of the
+	 * next Viterbi point. Gives the same values as calling {@link #cost(Target, Unit, Target, Unit)} for each right unit.
+	 * 
+	 * @param t1
+	 *            The left target.
+	 * @param u1
+	 *            The left unit.
+	 * @param t2
+	 *            The right target.
+	 * @param u2
+	 *            The right units.
+	 * @param costs
+	 *            an array of at least u2.length entries, receiving the cost of each join.
+	 */
+	public void cost(Target t1, Unit u1, Target t2, Unit[] u2, double[] costs) {
+		// Units of length 0 cannot be joined:
+		if (u1.duration == 0) {
+			Arrays.fill(costs, 0, u2.length, Double.POSITIVE_INFINITY);
+			return;
+		}
+		boolean leftIsDiphone = u1 instanceof DiphoneUnit;
+		Unit left = leftIsDiphone ? ((DiphoneUnit) u1).right : u1;
+		// the right join cost features of the left unit, fetched once when the first signal-based cost is needed
+		float[] leftFeatures = null;
+		JoinCostCache theCache = debugShowCostGraph ? null : cache;
+		for (int k = 0; k < u2.length; k++) {
+			Unit right = u2[k];
+			if (right.duration == 0) {
+				costs[k] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			boolean bothDiphones = leftIsDiphone;
+			if (right instanceof DiphoneUnit) {
+				right = ((DiphoneUnit) right).left;
+			} else {
+				bothDiphones = false;
+			}
+			if (left.index + 1 == right.index) {
+				costs[k] = 0;
+				continue;
+			}
+			// Either not half phone synthesis, or at a diphone boundary; 1 is the basic penalty for non-contiguous units
+			if (bothDiphones && precompiledCosts != null) {
+				costs[k] = 1 + precompiledCosts.cost(t1, left, t2, right);
+				continue;
+			}
+			if (leftFeatures == null) {
+				checkUnitIndex(left.index, "left");
+				leftFeatures = copyJCF((2 * left.index + 1) * numberOfFeatures);
+			}
+			checkUnitIndex(right.index, "right");
+			Entry e = theCache != null ? theCache.find(left.index, right.index) : null;
+			double c;
+			if (e != null) {
+				c = e.cost;
+			} else {
+				if (debugShowCostGraph) {
+					jcr.tick();
+				}
+				c = computeCost(leftFeatures, 0, right.index);
+				if (theCache != null) {
+					theCache.put(left.index, right.index, c);
+				}
+			}
+			costs[k] = 1 + c;
+		}
+	}
+
+	/**
+	 * Compute the signal-based join cost of the right features of u1 with the left features of u2, without range checks or
+	 * caching.
+	 */
+	private double computeCost(int u1, int u2) {
+		int o1 = (2 * u1 + 1) * numberOfFeatures; // right features of u1
+		if (jcf != null) {
+			return computeCost(jcf, o1, u2);
 		}
+		return computeCost(copyJCF(o1), 0, u2);
+	}
+
+	/**
+	 * Compute the signal-based join cost of the given right features of a left unit, starting at leftOffset, with the left
+	 * features of u2, without range checks or caching.
+	 */
+	private double computeCost(float[] leftFeatures, int leftOffset, int u2) {
 		/* Cumulate the join costs for each feature */
 		double res = 0.0;
-		float[] v1 = rightJCF[u1];
-		float[] v2 = leftJCF[u2];
-		for (int i = 0; i < v1.length; i++) {
-			float a = v1[i];
-			float b = v2[i];
+		int n = numberOfFeatures;
+		float[] f = jcf;
+		FloatBuffer fb = mappedJcf;
+		float[] weight = featureWeight;
+		boolean[] linear = isLinear;
+		int o2 = 2 * u2 * n; // left features of u2
+		for (int i = 0; i < n; i++) {
+			float a = leftFeatures[leftOffset + i];
+			float b = f != null ? f[o2 + i] : fb.get(o2 + i);
 			// if (!Float.isNaN(v1[i]) && !Float.isNaN(v2[i])) {
 			if (!(a != a) && !(b != b)) {
 				double c;
-				if (isLinear[i]) {
-					c = featureWeight[i] * (a > b ? (a - b) : (b - a));
+				if (linear[i]) {
+					c = weight[i] * (a > b ? (a - b) : (b - a));
 				} else {
-					c = featureWeight[i] * weightFunction[i].cost(a, b);
+					c = weight[i] * weightFunction[i].cost(a, b);
 				}
 				res += c;
 				if (debugShowCostGraph) {
@@ -517,6 +675,67 @@ public class JoinCostFeatures implements JoinCostFunction {
 		return (res);
 	}
 
+	/**
+	 * Set the number of signal-based join costs to remember across requests.
+	 * 
+	 * @param size
+	 *            the number of cache entries, rounded up to a power of two; 0 or less disables the cache.
+	 */
+	public void setCacheSize(int size) {
+		cache = size > 0 ? new JoinCostCache(size) : null;
+	}
+
+	/**
+	 * A fixed-size, direct-mapped cache of signal-based join costs, keyed on the pair of unit indexes. An entry whose slot is
+	 * needed for another pair is simply replaced, so the cache never grows. Entries are immutable, which makes the cache safe to
+	 * share between concurrent requests without locking.
+	 */
+	private class JoinCostCache {
+		private final Entry[] slots;
+		private final int mask;
+
+		JoinCostCache(int size) {
+			int capacity = Integer.highestOneBit(Math.min(size, 1 << 30));
+			if (capacity < size) {
+				capacity <<= 1;
+			}
+			slots = new Entry[capacity];
+			mask = capacity - 1;
+		}
+
+		private int slot(int u1, int u2) {
+			int slot = (u1 * 0x9E3779B9 + u2) * 0x85EBCA6B;
+			return (slot ^ (slot >>> 16)) & mask;
+		}
+
+		/**
+		 * @return the cached cost of joining u1 with u2, or null if it is not in the cache.
+		 */
+		Entry find(int u1, int u2) {
+			Entry e = slots[slot(u1, u2)];
+			if (e != null && e.u1 == u1 && e.u2 == u2) {
+				return e;
+			}
+			return null;
+		}
+
+		void put(int u1, int u2, double cost) {
+			slots[slot(u1, u2)] = new Entry(u1, u2, cost);
+		}
+	}
+
+	private static final class Entry {
+		final int u1;
+		final int u2;
+		final double cost;
+
+		Entry(int u1, int u2, double cost) {
+			this.u1 = u1;
+			this.u2 = u2;
+			this.cost = cost;
+		}
+	}
+
 	/**
 	 * A combined cost computation, as a weighted sum of the signal-based cost (computed from the units) and the phonetics-based
 	 * cost (computed from the targets).
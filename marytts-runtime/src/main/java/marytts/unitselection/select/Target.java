@@ -22,10 +22,12 @@ package marytts.unitselection.select;
 import marytts.datatypes.MaryXML;
 import marytts.features.FeatureVector;
 import marytts.features.MaryGenericFeatureProcessors;
+import marytts.features.UtteranceIndex;
 import marytts.modules.phonemiser.Allophone;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.synthesis.Voice;
 import marytts.util.MaryRuntimeUtils;
+import marytts.util.dom.DomUtils;
 import marytts.util.dom.MaryDomUtils;
 
 import org.w3c.dom.Element;
@@ -47,6 +49,9 @@ public class Target {
 	protected float duration = -1;
 	protected float f0 = -1;
 	protected int isSilence = -1;
+	protected String blacklist = null;
+
+	protected UtteranceIndex utteranceIndex = null;
 
 	/**
 	 * Create a target associated to the given element in the MaryXML tree.
@@ -77,6 +82,40 @@ public class Target {
 		this.featureVector = featureVector;
 	}
 
+	/**
+	 * The index of the sentence this target belongs to, as attached by {@link UtteranceIndex#attach(java.util.List)}. If none
+	 * was attached, or the attached one does not contain this target's element, an index is built for this target alone.
+	 * 
+	 * @return the utterance index, or null if the target does not belong to a sentence
+	 */
+	public UtteranceIndex getUtteranceIndex() {
+		if (maryxmlElement == null) {
+			return null;
+		}
+		if (utteranceIndex == null || !utteranceIndex.contains(maryxmlElement)) {
+			Element sentence = (Element) MaryDomUtils.getAncestor(maryxmlElement, MaryXML.SENTENCE);
+			utteranceIndex = sentence != null ? new UtteranceIndex(sentence) : null;
+		}
+		return utteranceIndex;
+	}
+
+	public void setUtteranceIndex(UtteranceIndex utteranceIndex) {
+		this.utteranceIndex = utteranceIndex;
+	}
+
+	/**
+	 * The value of the "blacklist" attribute of the closest ancestor of this target's element that has one. The value is
+	 * remembered, so once it has been asked for, the MaryXML document is no longer read.
+	 * 
+	 * @return the blacklist, or the empty string if there is none
+	 */
+	public String getBlacklist() {
+		if (blacklist == null) {
+			blacklist = DomUtils.getAttributeFromClosestAncestorOfAnyKind(maryxmlElement, "blacklist");
+		}
+		return blacklist;
+	}
+
 	public float getTargetDurationInSeconds() {
 		if (duration != -1) {
 			return duration;
@@ -21,6 +21,7 @@ package marytts.unitselection.select;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -92,6 +93,15 @@ public interface TargetCostFunction {
 	 */
 	public void computeTargetFeatures(Target target);
 
+	/**
+	 * Compute the features for all the given targets, and store them in the targets.
+	 * 
+	 * @param targets
+	 *            the targets of an utterance
+	 * @see #computeTargetFeatures(Target)
+	 */
+	public void computeTargetFeatures(List<? extends Target> targets);
+
 	/**
 	 * Provide access to the Feature Definition used.
 	 * 
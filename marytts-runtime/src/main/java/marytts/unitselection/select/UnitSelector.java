@@ -24,6 +24,7 @@ import java.util.List;
 
 import marytts.datatypes.MaryXML;
 import marytts.exceptions.SynthesisException;
+import marytts.features.UtteranceIndex;
 import marytts.unitselection.data.UnitDatabase;
 import marytts.unitselection.select.viterbi.Viterbi;
 import marytts.util.MaryUtils;
@@ -44,6 +45,7 @@ public class UnitSelector {
 	protected float targetCostWeight;
 	protected float sCostWeight = -1;
 	protected int beamSize;
+	protected double beamThreshold = Double.POSITIVE_INFINITY;
 
 	/**
 	 * Initialise the unit selector. Need to call load() separately.
@@ -69,6 +71,17 @@ public class UnitSelector {
 		this.beamSize = beamSize;
 	}
 
+	/**
+	 * Prune paths during unit selection whose cost exceeds that of the best path by more than the given threshold.
+	 * 
+	 * @param beamThreshold
+	 *            the cost threshold; Double.POSITIVE_INFINITY disables threshold pruning
+	 * @see Viterbi#setBeamThreshold(double)
+	 */
+	public void setBeamThreshold(double beamThreshold) {
+		this.beamThreshold = beamThreshold;
+	}
+
 	/**
 	 * Select the units for the targets in the given list of tokens and boundaries. Collect them in a list and return it.
 	 * 
@@ -83,7 +96,22 @@ public class UnitSelector {
 	public List<SelectedUnit> selectUnits(List<Element> tokensAndBoundaries, marytts.modules.synthesis.Voice voice)
 			throws SynthesisException {
 		long time = System.currentTimeMillis();
+		List<Target> targets = prepareTargets(tokensAndBoundaries);
+		List<SelectedUnit> selectedUnits = selectUnits(targets);
+		long newtime = System.currentTimeMillis() - time;
+		logger.debug("Selection took " + newtime + " milliseconds");
+		return selectedUnits;
+	}
 
+	/**
+	 * Create the targets for the given tokens and boundaries, and compute their target features. This is the part of unit
+	 * selection that reads the MaryXML document.
+	 * 
+	 * @param tokensAndBoundaries
+	 *            the token and boundary MaryXML elements representing an utterance.
+	 * @return the list of targets, ready for {@link #selectUnits(List)}
+	 */
+	public List<Target> prepareTargets(List<Element> tokensAndBoundaries) {
 		List<Element> segmentsAndBoundaries = new ArrayList<Element>();
 		for (Element tOrB : tokensAndBoundaries) {
 			if (tOrB.getTagName().equals(MaryXML.BOUNDARY)) {
@@ -98,12 +126,23 @@ public class UnitSelector {
 		}
 
 		List<Target> targets = createTargets(segmentsAndBoundaries);
-		// compute target features for each target in the chain
+		UtteranceIndex.attach(targets);
+		// compute target features for all targets in the chain
 		TargetCostFunction tcf = database.getTargetCostFunction();
-		for (Target target : targets) {
-			tcf.computeTargetFeatures(target);
-		}
+		tcf.computeTargetFeatures(targets);
+		return targets;
+	}
 
+	/**
+	 * Select the units for the given targets, as prepared by {@link #prepareTargets(List)}.
+	 * 
+	 * @param targets
+	 *            the targets of an utterance, with their target features computed
+	 * @return a list of SelectedUnit objects
+	 * @throws SynthesisException
+	 *             if no path for generating the target utterance could be found
+	 */
+	public List<SelectedUnit> selectUnits(List<Target> targets) throws SynthesisException {
 		Viterbi viterbi;
 		// Select the best candidates using Viterbi and the join cost function.
 		if (sCostWeight < 0) {
@@ -112,6 +151,7 @@ public class UnitSelector {
 			viterbi = new Viterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
 		}
 
+		viterbi.setBeamThreshold(beamThreshold);
 		viterbi.apply();
 		List<SelectedUnit> selectedUnits = viterbi.getSelectedUnits();
 		// If you can not associate the candidate units in the best path
@@ -119,8 +159,6 @@ public class UnitSelector {
 		if (selectedUnits == null) {
 			throw new IllegalStateException("Viterbi: can't find path");
 		}
-		long newtime = System.currentTimeMillis() - time;
-		logger.debug("Selection took " + newtime + " milliseconds");
 		return selectedUnits;
 	}
 
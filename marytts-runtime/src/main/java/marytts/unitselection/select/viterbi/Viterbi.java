@@ -34,6 +34,8 @@ package marytts.unitselection.select.viterbi;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -45,6 +47,7 @@ import marytts.unitselection.data.DiphoneUnit;
 import marytts.unitselection.data.Unit;
 import marytts.unitselection.data.UnitDatabase;
 import marytts.unitselection.select.DiphoneTarget;
+import marytts.unitselection.select.JoinCostFeatures;
 import marytts.unitselection.select.JoinCostFunction;
 import marytts.unitselection.select.SelectedUnit;
 import marytts.unitselection.select.StatisticalCostFunction;
@@ -77,15 +80,16 @@ import org.apache.log4j.Logger;
 public class Viterbi {
 	// a general flag indicating which type of viterbi search
 	// to use:
-	// -1: unlimited search
-	// n>0: beam search, retain only the n best paths at each step.
+	// -1 or 0: unlimited search
+	// n>0: beam search, consider only the n candidates with the best target cost at each step.
 	protected int beamSize;
+	// paths scoring worse than the best one by more than this are pruned
+	protected double beamThreshold = Double.POSITIVE_INFINITY;
 	protected final float wTargetCosts;
 	protected final float wJoinCosts;
 	protected final float wSCosts;
 
 	protected ViterbiPoint firstPoint = null;
-	protected ViterbiPoint lastPoint = null;
 	private UnitDatabase database;
 	protected TargetCostFunction targetCostFunction;
 	protected JoinCostFunction joinCostFunction;
@@ -97,9 +101,14 @@ public class Viterbi {
 	protected double cumulTargetCosts;
 	protected int nTargetCosts;
 
-	// Keep track of average costs for each voice: map UnitDatabase->DebugStats
-	private static Map<UnitDatabase, DebugStats> debugStats = new HashMap<UnitDatabase, DebugStats>();
+	// back pointer values: start of the search, and candidate not reached by any path
+	static final int NO_PATH = -1;
+	static final int UNREACHED = -2;
+	// sort keys for the candidates reached at a point, reused by prune() from point to point
+	private long[] found = new long[0];
 
+	// Keep track of average costs for each voice: map UnitDatabase->DebugStats, guarded by itself
+	private static final Map<UnitDatabase, DebugStats> debugStats = new HashMap<UnitDatabase, DebugStats>();
 	/**
 	 * Creates a Viterbi class to process the given utterance. A queue of ViterbiPoints corresponding to the Items in the Relation
 	 * segs is built up.
@@ -114,39 +123,7 @@ public class Viterbi {
 	 *            beamSize
 	 */
 	public Viterbi(List<Target> targets, UnitDatabase database, float wTargetCosts, int beamSize) {
-		this.database = database;
-		this.targetCostFunction = database.getTargetCostFunction();
-		this.joinCostFunction = database.getJoinCostFunction();
-		this.sCostFunction = database.getSCostFunction();
-		this.logger = MaryUtils.getLogger("Viterbi");
-		this.wTargetCosts = wTargetCosts;
-		wJoinCosts = 1 - wTargetCosts;
-		wSCosts = 0;
-		this.beamSize = beamSize;
-		this.cumulJoinCosts = 0;
-		this.nJoinCosts = 0;
-		this.cumulTargetCosts = 0;
-		this.nTargetCosts = 0;
-		ViterbiPoint last = null;
-		// for each segment, build a ViterbiPoint
-		for (Target target : targets) {
-			ViterbiPoint nextPoint = new ViterbiPoint(target);
-
-			if (last != null) { // continue to build up the queue
-				last.setNext(nextPoint);
-			} else { // firstPoint is the start of the queue
-				firstPoint = nextPoint;
-				// dummy start path:
-				firstPoint.getPaths().add(new ViterbiPath(null, null, 0));
-			}
-			last = nextPoint;
-		}
-		// And add one point where the paths from the last candidate can end:
-		lastPoint = new ViterbiPoint(null);
-		last.setNext(lastPoint);
-		if (beamSize == 0) {
-			throw new IllegalStateException("General beam search not implemented");
-		}
+		this(targets, database, wTargetCosts, 0, beamSize);
 	}
 
 	/**
@@ -187,17 +164,20 @@ public class Viterbi {
 				last.setNext(nextPoint);
 			} else { // firstPoint is the start of the queue
 				firstPoint = nextPoint;
-				// dummy start path:
-				firstPoint.getPaths().add(new ViterbiPath(null, null, 0));
 			}
 			last = nextPoint;
 		}
-		// And add one point where the paths from the last candidate can end:
-		lastPoint = new ViterbiPoint(null);
-		last.setNext(lastPoint);
-		if (beamSize == 0) {
-			throw new IllegalStateException("General beam search not implemented");
-		}
+	}
+
+	/**
+	 * Set a cost threshold for pruning: after each point, paths whose score exceeds the best score at that point by more than
+	 * the threshold are not extended any further. This is applied in addition to the beam size.
+	 * 
+	 * @param beamThreshold
+	 *            the threshold; Double.POSITIVE_INFINITY (the default) disables threshold pruning.
+	 */
+	public void setBeamThreshold(double beamThreshold) {
+		this.beamThreshold = beamThreshold;
 	}
 
 	/**
@@ -215,9 +195,8 @@ public class Viterbi {
 	 */
 	public void apply() throws SynthesisException {
 		logger.debug("Viterbi running with beam size " + beamSize);
-		// go through all but the last point
-		// (since last point has no item)
-		for (ViterbiPoint point = firstPoint; point.next != null; point = point.next) {
+		ViterbiPoint prev = null;
+		for (ViterbiPoint point = firstPoint; point != null; point = point.next) {
 			// The candidates for the current item:
 			// candidate selection is carried out by UnitSelector
 			Target target = point.target;
@@ -244,78 +223,136 @@ public class Viterbi {
 
 			// absolutely critical since candidates is no longer a SortedSet:
 			Collections.sort(candidates);
-
 			point.candidates = candidates;
-			assert beamSize != 0; // general beam search not implemented
 
-			// Now go through all existing paths and all candidates
-			// for the current item;
-			// tentatively extend each existing path to each of
-			// the candidates, but only retain the best one
-			List<ViterbiPath> paths = point.paths;
-			int nPaths = paths.size();
-			if (beamSize != -1 && beamSize < nPaths) {
-				// beam search, look only at the best n paths:
-				nPaths = beamSize;
+			// Only the best candidates according to target cost are considered:
+			int nCandidates = candidates.size();
+			if (beamSize > 0 && beamSize < nCandidates) {
+				nCandidates = beamSize;
+			}
+			Unit[] candidateUnits = new Unit[nCandidates];
+			for (int j = 0; j < nCandidates; j++) {
+				candidateUnits[j] = candidates.get(j).unit;
 			}
-			// for searchStrategy == -1, no beam -- look at all candidates.
-			int i = 0;
-			int iMax = nPaths;
-			for (ViterbiPath pp : paths) {
-				assert pp != null;
-				// We are at the very beginning of the search,
-				// or have a usable path to extend
-				candidates = point.candidates;
-				assert candidates != null;
-				int j = 0;
-				int jMax = beamSize;
-				// Go through the candidates as returned by the iterator of the sorted set,
-				// i.e. sorted according to increasing target cost.
-				for (ViterbiCandidate c : candidates) {
-					// For the candidate c, create a path extending the
-					// previous path pp to that candidate, taking into
-					// account the target and join costs:
-					ViterbiPath np = getPath(pp, c);
-					// Compare this path to the existing best path
-					// (if any) leading to candidate c; only retain
-					// the one with the better score.
-					addPath(point.next, np);
-					if (++j == jMax)
-						break;
+			double[] scores = new double[nCandidates];
+			int[] backPointers = new int[nCandidates];
+			// when the best path to each candidate was found; a path that replaces another counts as found last
+			int[] order = new int[nCandidates];
+			int found = 0;
+
+			if (prev == null) {
+				// We are at the very beginning of the search
+				for (int j = 0; j < nCandidates; j++) {
+					scores[j] = getCost(candidates.get(j), 0);
+					backPointers[j] = NO_PATH;
+					order[j] = ++found;
+				}
+			} else {
+				// Now go through the surviving paths of the previous point and all candidates
+				// for the current item;
+				// tentatively extend each existing path to each of
+				// the candidates, but only retain the best one
+				Arrays.fill(backPointers, UNREACHED);
+				Target candidateTarget = candidates.get(0).target;
+				double[] joinCosts = new double[nCandidates];
+				for (int i : prev.survivors) {
+					ViterbiCandidate prevCandidate = prev.candidates.get(i);
+					double prevScore = prev.scores[i];
+					computeJoinCosts(prevCandidate, candidateTarget, candidateUnits, joinCosts);
+					for (int j = 0; j < nCandidates; j++) {
+						ViterbiCandidate c = candidates.get(j);
+						double score = getCost(c, joinCosts[j]);
+						if (sCostFunction != null) {
+							score += wSCosts * sCostFunction.cost(prevCandidate.unit, c.unit);
+						}
+						score += prevScore;
+						// Compare this path to the existing best path
+						// (if any) leading to candidate c; only retain
+						// the one with the better score.
+						if (backPointers[j] == UNREACHED || score < scores[j]) {
+							scores[j] = score;
+							backPointers[j] = i;
+							order[j] = ++found;
+						}
+					}
 				}
-				if (++i == iMax)
-					break;
 			}
+			point.previous = prev;
+			point.scores = scores;
+			point.backPointers = backPointers;
+			point.order = order;
+			point.survivors = prune(scores, backPointers, order);
+			prev = point;
 		}
 	}
 
 	/**
-	 * Add the new path to the state path if it is better than the current path. In this, state means the position of the
-	 * candidate associated with this path in the candidate queue for the corresponding segment item. In other words, this method
-	 * uses newPath as the one path leading to the candidate newPath.candidate, if it has a better score than the previously best
-	 * path leading to that candidate.
-	 *
-	 * @param point
-	 *            where the path is added
-	 * @param newPath
-	 *            the path to add if its score is best
+	 * Determine which of the paths leading to a point's candidates are to be extended further: all of them, in the order in which
+	 * they were found, except those that score worse than the best one by more than beamThreshold. There is no need to rank the
+	 * paths by score for the beam size: only the beamSize candidates with the best target costs are considered at each point, so
+	 * no more than beamSize paths can reach a point anyway.
+	 * 
+	 * @param scores
+	 *            the score of the best path to each candidate
+	 * @param backPointers
+	 *            the back pointers of these paths, or UNREACHED for candidates without a path
+	 * @param order
+	 *            when the best path to each candidate was found
+	 * @return the indexes of the surviving candidates
 	 */
-	void addPath(ViterbiPoint point, ViterbiPath newPath) {
-		// get the position of newPath's candidate
-		// in path array statePath of point
-		ViterbiCandidate candidate = newPath.candidate;
-		assert candidate != null;
-		ViterbiPath bestPathSoFar = candidate.bestPath;
-		List<ViterbiPath> paths = point.getPaths();
-		if (bestPathSoFar == null) {
-			// we don't have a path for the candidate yet, so this is best
-			paths.add(newPath);
-			candidate.setBestPath(newPath);
-		} else if (newPath.score < bestPathSoFar.score) {
-			// newPath is a better path for the candidate
-			paths.remove(bestPathSoFar);
-			paths.add(newPath);
-			candidate.setBestPath(newPath);
+	private int[] prune(double[] scores, int[] backPointers, int[] order) {
+		if (found.length < scores.length) {
+			found = new long[scores.length];
+		}
+		long[] keys = found;
+		int n = 0;
+		int best = -1;
+		for (int j = 0; j < scores.length; j++) {
+			if (backPointers[j] != UNREACHED) {
+				if (best < 0 || scores[j] < scores[best]) {
+					best = j;
+				}
+				keys[n++] = (long) order[j] << 32 | j;
+			}
+		}
+		if (n > 0 && beamThreshold < Double.POSITIVE_INFINITY) {
+			double limit = scores[best] + beamThreshold;
+			int m = 0;
+			for (int k = 0; k < n; k++) {
+				int j = (int) keys[k];
+				if (j == best || scores[j] <= limit) {
+					keys[m++] = keys[k];
+				}
+			}
+			n = m;
+		}
+		Arrays.sort(keys, 0, n);
+		int[] survivors = new int[n];
+		for (int k = 0; k < n; k++) {
+			survivors[k] = (int) keys[k];
+		}
+		return survivors;
+	}
+
+	/**
+	 * Compute the join costs from the given candidate to all the given candidate units at once.
+	 * 
+	 * @param prevCandidate
+	 *            the candidate at the end of the previous path
+	 * @param target
+	 *            the target of the candidate units
+	 * @param units
+	 *            the candidate units
+	 * @param joinCosts
+	 *            receives the join cost for each unit
+	 */
+	private void computeJoinCosts(ViterbiCandidate prevCandidate, Target target, Unit[] units, double[] joinCosts) {
+		if (joinCostFunction instanceof JoinCostFeatures) {
+			((JoinCostFeatures) joinCostFunction).cost(prevCandidate.target, prevCandidate.unit, target, units, joinCosts);
+		} else {
+			for (int j = 0; j < units.length; j++) {
+				joinCosts[j] = joinCostFunction.cost(prevCandidate.target, prevCandidate.unit, target, units[j]);
+			}
 		}
 	}
 
@@ -326,27 +363,49 @@ public class Viterbi {
 	 */
 	public List<SelectedUnit> getSelectedUnits() {
 		LinkedList<SelectedUnit> selectedUnits = new LinkedList<SelectedUnit>();
-		if (firstPoint == null || firstPoint.getNext() == null) {
+		if (firstPoint == null) {
 			return selectedUnits; // null case
 		}
-		ViterbiPath best = findBestPath();
-		if (best == null) {
+		List<ViterbiPoint> points = new ArrayList<ViterbiPoint>();
+		for (ViterbiPoint point = firstPoint; point != null; point = point.next) {
+			points.add(point);
+		}
+		ViterbiPoint lastPoint = points.get(points.size() - 1);
+		if (lastPoint.scores == null) {
+			return null; // apply() has not been run
+		}
+		// All paths end in lastPoint, and take into account
+		// previous path segment's scores. Therefore, it is
+		// sufficient to find the best path from among the
+		// paths to the candidates of lastPoint; of paths with
+		// equal scores, the one found first.
+		int best = -1;
+		for (int j = 0; j < lastPoint.scores.length; j++) {
+			if (lastPoint.backPointers[j] == UNREACHED) {
+				continue;
+			}
+			if (best == -1 || lastPoint.scores[j] < lastPoint.scores[best] || lastPoint.scores[j] == lastPoint.scores[best]
+					&& lastPoint.order[j] < lastPoint.order[best]) {
+				best = j;
+			}
+		}
+		if (best == -1) {
 			// System.out.println("No best path found");
 			return null;
 		}
-		for (ViterbiPath path = best; path != null; path = path.getPrevious()) {
-			if (path.candidate != null) {
-				Unit u = path.candidate.unit;
-				Target t = path.candidate.target;
-				if (u instanceof DiphoneUnit) {
-					assert t instanceof DiphoneTarget;
-					DiphoneUnit du = (DiphoneUnit) u;
-					DiphoneTarget dt = (DiphoneTarget) t;
-					selectedUnits.addFirst(new SelectedUnit(du.right, dt.right));
-					selectedUnits.addFirst(new SelectedUnit(du.left, dt.left));
-				} else {
-					selectedUnits.addFirst(new SelectedUnit(u, t));
-				}
+		double bestScore = lastPoint.scores[best];
+		for (int p = points.size() - 1, j = best; p >= 0; j = points.get(p).backPointers[j], p--) {
+			ViterbiCandidate candidate = points.get(p).candidates.get(j);
+			Unit u = candidate.unit;
+			Target t = candidate.target;
+			if (u instanceof DiphoneUnit) {
+				assert t instanceof DiphoneTarget;
+				DiphoneUnit du = (DiphoneUnit) u;
+				DiphoneTarget dt = (DiphoneTarget) t;
+				selectedUnits.addFirst(new SelectedUnit(du.right, dt.right));
+				selectedUnits.addFirst(new SelectedUnit(du.left, dt.left));
+			} else {
+				selectedUnits.addFirst(new SelectedUnit(u, t));
 			}
 		}
 		if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
@@ -417,29 +476,32 @@ public class Viterbi {
 			DecimalFormat df = new DecimalFormat("0.000");
 			logger.debug("Avg. consecutive length: " + df.format(avgLength) + " units");
 			// Cost of best path
-			double totalCost = best.score;
+			double totalCost = bestScore;
 			int elements = selectedUnits.size();
 			double avgCostBestPath = totalCost / (elements - 1);
 			double avgTargetCost = cumulTargetCosts / nTargetCosts;
 			double avgJoinCost = cumulJoinCosts / nJoinCosts;
 			logger.debug("Avg. cost: best path " + df.format(avgCostBestPath) + ", avg. target " + df.format(avgTargetCost)
 					+ ", join " + df.format(avgJoinCost) + " (n=" + nTargetCosts + ")");
-			DebugStats stats = debugStats.get(database);
-			if (stats == null) {
-				stats = new DebugStats();
-				debugStats.put(database, stats);
+			// sentences of one request may be selected in parallel
+			synchronized (debugStats) {
+				DebugStats stats = debugStats.get(database);
+				if (stats == null) {
+					stats = new DebugStats();
+					debugStats.put(database, stats);
+				}
+				stats.n++;
+				// iterative computation of mean:
+				// m(n) = m(n-1) + (x(n) - m(n-1)) / n
+				stats.avgLength += (avgLength - stats.avgLength) / stats.n;
+				stats.avgCostBestPath += (avgCostBestPath - stats.avgCostBestPath) / stats.n;
+				stats.avgTargetCost += (avgTargetCost - stats.avgTargetCost) / stats.n;
+				stats.avgJoinCost += (avgJoinCost - stats.avgJoinCost) / stats.n;
+				logger.debug("Total average of " + stats.n + " utterances for this voice:");
+				logger.debug("Avg. length: " + df.format(stats.avgLength) + ", avg. cost best path: "
+						+ df.format(stats.avgCostBestPath) + ", avg. target cost: " + df.format(stats.avgTargetCost)
+						+ ", avg. join cost: " + df.format(stats.avgJoinCost));
 			}
-			stats.n++;
-			// iterative computation of mean:
-			// m(n) = m(n-1) + (x(n) - m(n-1)) / n
-			stats.avgLength += (avgLength - stats.avgLength) / stats.n;
-			stats.avgCostBestPath += (avgCostBestPath - stats.avgCostBestPath) / stats.n;
-			stats.avgTargetCost += (avgTargetCost - stats.avgTargetCost) / stats.n;
-			stats.avgJoinCost += (avgJoinCost - stats.avgJoinCost) / stats.n;
-			logger.debug("Total average of " + stats.n + " utterances for this voice:");
-			logger.debug("Avg. length: " + df.format(stats.avgLength) + ", avg. cost best path: "
-					+ df.format(stats.avgCostBestPath) + ", avg. target cost: " + df.format(stats.avgTargetCost)
-					+ ", avg. join cost: " + df.format(stats.avgJoinCost));
 
 		}
 
@@ -447,96 +509,33 @@ public class Viterbi {
 	}
 
 	/**
-	 * Construct a new path element linking a previous path to the given candidate. The (penalty) score associated with the new
-	 * path is calculated as the sum of the score of the old path plus the score of the candidate itself plus the join cost of
-	 * appending the candidate to the nearest candidate in the given path. This join cost takes into account optimal coupling if
-	 * the database has OPTIMAL_COUPLING set to 1. The join position is saved in the new path, as the features "unit_prev_move"
-	 * and "unit_this_move".
+	 * Compute the (penalty) score of adding the given candidate to a path, as a weighted sum of the candidate's target cost and
+	 * the join cost of appending it to the previous path's candidate. The score of the previous path and the statistical cost
+	 * are added by the caller.
 	 *
-	 * @param path
-	 *            the previous path, or null if this candidate starts a new path
-	 * @param candiate
+	 * @param candidate
 	 *            the candidate to add to the path
+	 * @param joinCost
+	 *            the cost of joining the candidate to the previous path's candidate, or 0 if it starts a new path
 	 *
-	 * @return a new path, consisting of this candidate appended to the previous path, and with the cumulative (penalty) score
-	 *         calculated.
+	 * @return the weighted join and target cost.
 	 */
-	private ViterbiPath getPath(ViterbiPath path, ViterbiCandidate candidate) {
-		double cost;
-
-		Target candidateTarget = candidate.target;
-		Unit candidateUnit = candidate.unit;
-
-		double joinCost;
-		double sCost = 0;
-		double targetCost;
+	private double getCost(ViterbiCandidate candidate, double joinCost) {
 		// Target costs:
-		targetCost = candidate.targetCost;
-
-		if (path == null || path.candidate == null) {
-			joinCost = 0;
-		} else {
-			// Join costs:
-			ViterbiCandidate prevCandidate = path.candidate;
-			Target prevTarget = prevCandidate.target;
-			Unit prevUnit = prevCandidate.unit;
-			joinCost = joinCostFunction.cost(prevTarget, prevUnit, candidateTarget, candidateUnit);
-			if (sCostFunction != null)
-				sCost = sCostFunction.cost(prevUnit, candidateUnit);
-		}
+		double targetCost = candidate.targetCost;
 		// Total cost is a weighted sum of join cost and target cost:
 		// cost = (1-r) * joinCost + r * targetCost,
 		// where r is given as the property "viterbi.wTargetCost" in a config file.
 		targetCost *= wTargetCosts;
 		joinCost *= wJoinCosts;
-		sCost *= wSCosts;
-		cost = joinCost + targetCost + sCost;
+		double cost = joinCost + targetCost;
 		if (joinCost < Float.POSITIVE_INFINITY)
 			cumulJoinCosts += joinCost;
 		nJoinCosts++;
 		cumulTargetCosts += targetCost;
 		nTargetCosts++;
-		// logger.debug(candidateUnit+": target cost "+targetCost+", join cost "+joinCost);
-
-		if (path != null) {
-			cost += path.score;
-		}
-
-		return new ViterbiPath(candidate, path, cost);
-	}
-
-	/**
-	 * Find the best path. This requires apply() to have been run. For this best path, we set the pointers to the *next* path
-	 * elements correctly.
-	 *
-	 * @return the best path, or null if no best path could be found.
-	 */
-	private ViterbiPath findBestPath() {
-		assert beamSize != 0;
-		// All paths end in lastPoint, and take into account
-		// previous path segment's scores. Therefore, it is
-		// sufficient to find the best path from among the
-		// paths for lastPoint.
-		List<ViterbiPath> paths = lastPoint.getPaths();
-		if (paths.isEmpty()) // no path, we failed
-			return null;
-
-		// as paths is no longer a SortedSet, they must be explicitly sorted:
-		Collections.sort(paths);
-		ViterbiPath best = paths.get(0);
-
-		// Set *next* pointers correctly:
-		ViterbiPath path = best;
-		double totalCost = best.score;
-		int elements = 0;
-		while (path != null) {
-			elements++;
-			ViterbiPath prev = path.previous;
-			if (prev != null)
-				prev.setNext(path);
-			path = prev;
-		}
-		return best;
+		// logger.debug(candidate.unit+": target cost "+targetCost+", join cost "+joinCost);
+		return cost;
 	}
 
 	private class DebugStats {
@@ -42,6 +42,7 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 	final Target target;
 	final Unit unit;
 	final double targetCost;
+	@Deprecated
 	ViterbiPath bestPath = null;
 	ViterbiCandidate next = null;
 
@@ -51,6 +52,22 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 		this.targetCost = tcf.cost(target, unit);
 	}
 
+	/**
+	 * Create a candidate whose target cost has already been computed, e.g. for a whole list of candidates at once.
+	 * 
+	 * @param target
+	 *            the target
+	 * @param unit
+	 *            the candidate unit
+	 * @param targetCost
+	 *            the target cost of unit for target
+	 */
+	public ViterbiCandidate(Target target, Unit unit, double targetCost) {
+		this.target = target;
+		this.unit = unit;
+		this.targetCost = targetCost;
+	}
+
 	/**
 	 * Calculates and returns the target cost for this candidate
 	 * 
@@ -103,7 +120,9 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 	 * 
 	 * @param bestPath
 	 *            bestPath
+	 * @deprecated the Viterbi search no longer uses path objects, and does not set or read the best path of a candidate
 	 */
+	@Deprecated
 	public void setBestPath(ViterbiPath bestPath) {
 		this.bestPath = bestPath;
 	}
@@ -112,7 +131,9 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 	 * Gets the best path leading to this candidate
 	 * 
 	 * @return the best path, or null
+	 * @deprecated the Viterbi search does not set the best path of a candidate; use {@link ViterbiPoint#getPaths()} instead
 	 */
+	@Deprecated
 	public ViterbiPath getBestPath() {
 		return bestPath;
 	}
@@ -123,8 +144,7 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 	 * @return the string form of this object
 	 */
 	public String toString() {
-		return "ViterbiCandidate: target " + target + ", unit " + unit
-				+ (bestPath != null ? ", best path score " + bestPath.score : ", no best path");
+		return "ViterbiCandidate: target " + target + ", unit " + unit + ", target cost " + targetCost;
 	}
 
 	/**
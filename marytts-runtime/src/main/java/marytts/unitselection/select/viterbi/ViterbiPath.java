@@ -33,7 +33,12 @@ package marytts.unitselection.select.viterbi;
 
 /**
  * Describes a Viterbi path.
+ * 
+ * @deprecated The Viterbi search keeps the scores and back pointers of its paths in arrays and no longer creates path objects;
+ *             they are only built on request by {@link ViterbiPoint#getPaths()}. Use {@link Viterbi#getSelectedUnits()} for the
+ *             result of the search.
  */
+@Deprecated
 public class ViterbiPath implements Comparable<ViterbiPath> {
 	final double score;
 	final ViterbiCandidate candidate;
@@ -32,6 +32,8 @@
 package marytts.unitselection.select.viterbi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import marytts.unitselection.select.Target;
@@ -43,7 +45,15 @@ import marytts.unitselection.select.Target;
 public class ViterbiPoint {
 	Target target = null;
 	List<ViterbiCandidate> candidates = null;
-	List<ViterbiPath> paths = new ArrayList<ViterbiPath>();
+	// For each of the first scores.length candidates: the score of the best path leading to it, and the index of the previous
+	// point's candidate on that path
+	double[] scores = null;
+	int[] backPointers = null;
+	// For each of these candidates, when the best path to it was found: later paths have larger values
+	int[] order = null;
+	// The candidates whose paths are extended to the next point, in the order in which their paths were found
+	int[] survivors = null;
+	ViterbiPoint previous = null;
 	ViterbiPoint next = null;
 
 	/**
@@ -95,15 +105,58 @@ public class ViterbiPoint {
 	}
 
 	/**
-	 * Gets the sorted set containting the paths of the candidates of this point, sorted by score. getPaths().first() will return
-	 * the path with the lowest score, i.e. the best path.
+	 * Gets the paths leading to the candidates of this point, in the order in which the search found them.
 	 * 
-	 * @return a sorted set.
+	 * @return a new list of paths, empty if the search has not reached this point
+	 * @deprecated The Viterbi search keeps the scores and back pointers of its paths in arrays; this builds path objects from
+	 *             them on every call. Unlike before, the paths lead to this point's own candidates rather than to those of the
+	 *             previous point. Use {@link Viterbi#getSelectedUnits()} for the result of the search.
 	 */
+	@Deprecated
 	public List<ViterbiPath> getPaths() {
+		List<ViterbiPath> paths = new ArrayList<ViterbiPath>();
+		if (scores == null) {
+			return paths;
+		}
+		Integer[] reached = new Integer[scores.length];
+		int n = 0;
+		for (int j = 0; j < scores.length; j++) {
+			if (backPointers[j] != Viterbi.UNREACHED) {
+				reached[n++] = j;
+			}
+		}
+		Arrays.sort(reached, 0, n, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return order[a] - order[b];
+			}
+		});
+		for (int k = 0; k < n; k++) {
+			paths.add(getPath(reached[k]));
+		}
 		return paths;
 	}
 
+	/* build the path leading to the given candidate: follow the back pointers to its start, then build it from there */
+	private ViterbiPath getPath(int candidate) {
+		List<ViterbiPoint> points = new ArrayList<ViterbiPoint>();
+		List<Integer> indexes = new ArrayList<Integer>();
+		ViterbiPoint p = this;
+		int j = candidate;
+		while (j != Viterbi.NO_PATH) {
+			points.add(p);
+			indexes.add(j);
+			j = p.backPointers[j];
+			p = p.previous;
+		}
+		ViterbiPath path = null;
+		for (int k = points.size() - 1; k >= 0; k--) {
+			ViterbiPoint point = points.get(k);
+			int i = indexes.get(k);
+			path = new ViterbiPath(point.candidates.get(i), path, point.scores[i]);
+		}
+		return path;
+	}
+
 	/**
 	 * Gets the next point in the queue
 	 * 
@@ -124,6 +177,6 @@ public class ViterbiPoint {
 	}
 
 	public String toString() {
-		return "ViterbiPoint: target " + target + "; " + paths.size() + " paths";
+		return "ViterbiPoint: target " + target + "; " + (survivors != null ? survivors.length : 0) + " paths";
 	}
 }
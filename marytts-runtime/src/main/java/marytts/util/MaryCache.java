@@ -21,22 +21,31 @@
 package marytts.util;
 
 import java.io.File;
-import java.net.MalformedURLException;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.io.IOException;
+import java.nio.charset.Charset;
 
+import marytts.datatypes.MaryData;
 import marytts.server.MaryProperties;
+import marytts.util.cache.CacheKey;
+import marytts.util.cache.CacheStatistics;
+import marytts.util.cache.TieredCache;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
 /**
+ * A cache for the results of processing MARY requests. Results are looked up by a hash of all request parameters that determine
+ * the result. The cache has two tiers: a size-bounded, striped LRU map on the heap holds the most recently used results, and an
+ * append-only store of memory-mapped segment files holds all results up to a configurable total size and persists them across
+ * restarts.
+ * 
  * @author marc
  * 
  */
 public class MaryCache {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final long MB = 1024 * 1024;
+
 	private static MaryCache maryCache;
 
 	/**
@@ -57,7 +66,9 @@ public class MaryCache {
 				if (!directory.isDirectory()) {
 					directory.mkdirs();
 				}
-				maryCache = new MaryCache(targetFile, MaryProperties.getBoolean("cache.clearOnStart", false));
+				maryCache = new MaryCache(targetFile, MaryProperties.getBoolean("cache.clearOnStart", false),
+						MaryProperties.getInteger("cache.memory.mb", 32) * MB, MaryProperties.getInteger("cache.segment.mb", 64)
+								* MB, MaryProperties.getInteger("cache.disk.mb", 1024) * MB);
 			} catch (Exception e) {
 				MaryUtils.getLogger(MaryCache.class).warn("Cannot set up cache", e);
 			}
@@ -76,66 +87,194 @@ public class MaryCache {
 
 	// //////////////////////////// non-static code /////////////////////////////
 
-	private Connection connection;
+	private final TieredCache cache;
+
+	/**
+	 * Create a MaryCache with the given file prefix and default sizes. This constructor is public only for tests; it should not
+	 * normally be called. User code should call {@link #getCache()} instead.
+	 * 
+	 * @param cacheFile
+	 *            the file name prefix with which to create the cache segment files.
+	 * @param clearCache
+	 *            if true, clear the cache; if false, keep it.
+	 * @throws IOException
+	 *             if the existing cache segments cannot be read
+	 */
+	public MaryCache(File cacheFile, boolean clearCache) throws IOException {
+		this(cacheFile, clearCache, 32 * MB, 64 * MB, 1024 * MB);
+	}
 
 	/**
-	 * Create a MaryCache with the given file prefix. This constructor is public only for tests; it should not normally be called.
-	 * User code should call {@link #getCache()} instead. TODO: Find a more elegant way to create a custom MaryCache from test
-	 * code.
+	 * Create a MaryCache with the given file prefix and sizes.
 	 * 
 	 * @param cacheFile
-	 *            the file name prefix with which to create the cache database.
+	 *            the file name prefix with which to create the cache segment files.
 	 * @param clearCache
 	 *            if true, clear the cache; if false, keep it.
-	 * @throws ClassNotFoundException
-	 *             if the HSQL JDBC driver is not in the classpath.
-	 * @throws SQLException
-	 *             if the database connection cannot be set up
+	 * @param memorySize
+	 *            the maximum number of bytes of results to keep on the heap.
+	 * @param segmentSize
+	 *            the size in bytes of each cache segment file.
+	 * @param diskSize
+	 *            the maximum total size in bytes of all cache segment files; when it is exceeded, the oldest segment is deleted.
+	 * @throws IOException
+	 *             if the existing cache segments cannot be read
+	 */
+	public MaryCache(File cacheFile, boolean clearCache, long memorySize, long segmentSize, long diskSize) throws IOException {
+		cache = new TieredCache(cacheFile, clearCache, memorySize, segmentSize, diskSize);
+	}
+
+	/**
+	 * Get the hit, miss and eviction counters of this cache.
+	 * 
+	 * @return the statistics object, which is updated live as the cache is used.
+	 */
+	public CacheStatistics getStatistics() {
+		return cache.getStatistics();
+	}
+
+	/**
+	 * Compute the cache key for a request. Only the digest of the input data is needed, not the data itself, so that a lookup
+	 * does not require serialising the input.
+	 * 
+	 * @param inputtype
+	 *            the request's input type. Must not be null.
+	 * @param outputtype
+	 *            the request's output type. Must not be null.
+	 * @param locale
+	 *            the locale of the request. Must not be null.
+	 * @param voice
+	 *            the voice of the request. Can be null.
+	 * @param outputparams
+	 *            optionally, any output parameters. Can be null.
+	 * @param style
+	 *            optionally, any style. Can be null.
+	 * @param effects
+	 *            optionally, any effects. Can be null.
+	 * @param content
+	 *            the digest of the input data, as computed by {@link #digestContent(MaryData)}. Must not be null.
+	 * @return the key
+	 */
+	public static CacheKey key(String inputtype, String outputtype, String locale, String voice, String outputparams,
+			String style, String effects, CacheKey content) {
+		return new CacheKey.Builder().add(inputtype).add(outputtype).add(locale).add(voice).add(outputparams).add(style)
+				.add(effects).add(content).build();
+	}
+
+	/**
+	 * Compute a digest of the content of the given data in a single pass: for XML data, by walking the DOM tree; for text data,
+	 * over the plain text.
+	 * 
+	 * @param data
+	 *            the data
+	 * @return the content digest, or null if data is neither XML nor text and therefore cannot be cached.
 	 */
-	public MaryCache(File cacheFile, boolean clearCache) throws ClassNotFoundException, SQLException {
-		// Load the HSQL Database Engine JDBC driver
-		Class.forName("org.hsqldb.jdbcDriver");
-		connection = DriverManager.getConnection("jdbc:hsqldb:" + cacheFile.toURI().toString(), "sa", "");
-		boolean mustCreateTable = false;
-		if (clearCache) {
-			Statement st = connection.createStatement();
-			st.executeUpdate("DROP TABLE MARYCACHE IF EXISTS");
-			st.close();
-			mustCreateTable = true;
-		} else { // don't clear -- check if table exists
-			DatabaseMetaData dbInfo = connection.getMetaData();
-			ResultSet rs = dbInfo.getTables(null, null, "MARYCACHE", new String[] { "TABLE" });
-			if (rs.next()) {
-				// table exists
-			} else {
-				mustCreateTable = true;
+	public static CacheKey digestContent(MaryData data) {
+		CacheKey.Builder b = new CacheKey.Builder();
+		if (data.getType().isXMLType()) {
+			if (data.getDocument() == null) {
+				return null;
 			}
+			digestNode(b, data.getDocument().getDocumentElement());
+		} else if (data.getType().isTextType()) {
+			b.add(data.getPlainText());
+		} else {
+			return null;
 		}
-		if (mustCreateTable) {
-			String query = "CREATE CACHED TABLE MARYCACHE (id INTEGER IDENTITY, " + "inputtype VARCHAR(50), "
-					+ "outputtype VARCHAR(50), " + "locale VARCHAR(10), " + "voice VARCHAR(100), "
-					+ "outputparams VARCHAR(1000), " + "style VARCHAR(50), " + "effects VARCHAR(1000), "
-					+ "inputtext LONGVARCHAR, " + "outputtext LONGVARCHAR, " + "outputaudio LONGVARBINARY, "
-					+ "UNIQUE(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext)" + ")";
-			update(query);
+		return b.build();
+	}
+
+	private static void digestNode(CacheKey.Builder b, Node node) {
+		if (node.getNodeType() == Node.ELEMENT_NODE) {
+			b.add(Node.ELEMENT_NODE).add(node.getNodeName());
+			NamedNodeMap attributes = node.getAttributes();
+			for (int i = 0, n = attributes.getLength(); i < n; i++) {
+				Node a = attributes.item(i);
+				b.add(Node.ATTRIBUTE_NODE).add(a.getNodeName()).add(a.getNodeValue());
+			}
+			for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+				digestNode(b, child);
+			}
+			b.add(-Node.ELEMENT_NODE);
+		} else if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+			b.add(Node.TEXT_NODE).add(node.getNodeValue());
 		}
 	}
 
 	/**
-	 * Carry out an UPDATE SQL command on the database.
+	 * Build the text from which a key is computed, for detecting hash collisions when inserting.
 	 * 
-	 * @param query
-	 *            the UPDATE SQL command to carry out
-	 * @throws SQLException
-	 *             if there is a problem executing the update.
+	 * @param fields
+	 *            the request parameters and the full input text
+	 * @return the fields, separated by null characters
 	 */
-	private synchronized void update(String query) throws SQLException {
-		Statement st = connection.createStatement();
-		int ok = st.executeUpdate(query);
-		if (ok == -1) {
-			throw new SQLException("DB problem with query: " + query);
+	public static String keyText(String... fields) {
+		StringBuilder sb = new StringBuilder();
+		for (String f : fields) {
+			sb.append(f).append('\0');
 		}
-		st.close();
+		return sb.toString();
+	}
+
+	/**
+	 * Look up the result stored for the given key.
+	 * 
+	 * @param key
+	 *            the key, as computed by {@link #key(String, String, String, String, String, String, String, CacheKey)}.
+	 * @return the stored data, or null if the cache does not contain a record for key.
+	 */
+	public byte[] lookup(CacheKey key) {
+		return cache.get(key);
+	}
+
+	/**
+	 * Look up the text result stored for the given key.
+	 * 
+	 * @param key
+	 *            the key, as computed by {@link #key(String, String, String, String, String, String, String, CacheKey)}.
+	 * @return the stored text, or null if the cache does not contain a record for key.
+	 */
+	public String lookupText(CacheKey key) {
+		byte[] outputtext = cache.get(key);
+		return outputtext != null ? new String(outputtext, UTF8) : null;
+	}
+
+	/**
+	 * Insert a text result for the given key. If a record with the same key exists already, this call does nothing.
+	 * 
+	 * @param key
+	 *            the key, as computed by {@link #key(String, String, String, String, String, String, String, CacheKey)}.
+	 * @param keyText
+	 *            the full request parameters including the input text, as computed by {@link #keyText(String...)}.
+	 * @param outputtext
+	 *            the request's output text. Must not be null.
+	 * @throws IOException
+	 *             if the record could not be entered into the cache.
+	 */
+	public void insertText(CacheKey key, String keyText, String outputtext) throws IOException {
+		cache.put(key, keyText, outputtext.getBytes(UTF8));
+	}
+
+	/**
+	 * Insert an audio result for the given key. If a record with the same key exists already, this call does nothing.
+	 * 
+	 * @param key
+	 *            the key, as computed by {@link #key(String, String, String, String, String, String, String, CacheKey)}.
+	 * @param keyText
+	 *            the full request parameters including the input text, as computed by {@link #keyText(String...)}.
+	 * @param audio
+	 *            the request's output data. Must not be null.
+	 * @throws IOException
+	 *             if the record could not be entered into the cache.
+	 */
+	public void insertAudio(CacheKey key, String keyText, byte[] audio) throws IOException {
+		cache.put(key, keyText, audio);
+	}
+
+	private static CacheKey textKey(String inputtype, String outputtype, String locale, String voice, String outputparams,
+			String style, String effects, String inputtext) {
+		return key(inputtype, outputtype, locale, voice, outputparams, style, effects, new CacheKey.Builder().add(inputtext)
+				.build());
 	}
 
 	/**
@@ -156,11 +295,11 @@ public class MaryCache {
 	 *            the request's output text. Must not be null.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
+	 * @throws IOException
 	 *             if the record could not be entered into the cache.
 	 */
 	public void insertText(String inputtype, String outputtype, String locale, String voice, String inputtext, String outputtext)
-			throws SQLException {
+			throws IOException {
 		insertText(inputtype, outputtype, locale, voice, null, null, null, inputtext, outputtext);
 	}
 
@@ -188,41 +327,16 @@ public class MaryCache {
 	 *            the request's output text. Must not be null.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
+	 * @throws IOException
 	 *             if the record could not be entered into the cache.
 	 */
-	public synchronized void insertText(String inputtype, String outputtype, String locale, String voice, String outputparams,
-			String style, String effects, String inputtext, String outputtext) throws SQLException {
+	public void insertText(String inputtype, String outputtype, String locale, String voice, String outputparams,
+			String style, String effects, String inputtext, String outputtext) throws IOException {
 		if (inputtype == null || outputtype == null || locale == null || voice == null || inputtext == null || outputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		// Need to verify, here in the synchronized code, once again that really we don't have this entry already.
-		// If we do, we ignore this call.
-		if (lookupText(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
-			return;
-		}
-
-		String query = "INSERT INTO MARYCACHE (inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext, outputtext) VALUES ('"
-				+ inputtype
-				+ "','"
-				+ outputtype
-				+ "','"
-				+ locale
-				+ "','"
-				+ voice
-				+ "','"
-				+ outputparams
-				+ "','"
-				+ style
-				+ "','"
-				+ effects + "',?,?)";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		// We set the input and output text separately because they could contain single quote characters
-		st.setString(1, inputtext);
-		st.setString(2, outputtext);
-		st.executeUpdate();
-		st.close();
+		insertText(textKey(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext),
+				keyText(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext), outputtext);
 	}
 
 	/**
@@ -241,10 +355,10 @@ public class MaryCache {
 	 *            the request's output data. Must not be null.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
+	 * @throws IOException
 	 *             if the record could not be entered into the cache.
 	 */
-	public void insertAudio(String inputtype, String locale, String voice, String inputtext, byte[] audio) throws SQLException {
+	public void insertAudio(String inputtype, String locale, String voice, String inputtext, byte[] audio) throws IOException {
 		insertAudio(inputtype, locale, voice, null, null, null, inputtext, audio);
 	}
 
@@ -270,39 +384,16 @@ public class MaryCache {
 	 *            the request's output data. Must not be null.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
+	 * @throws IOException
 	 *             if the record could not be entered into the cache.
 	 */
-	public synchronized void insertAudio(String inputtype, String locale, String voice, String outputparams, String style,
-			String effects, String inputtext, byte[] audio) throws SQLException {
+	public void insertAudio(String inputtype, String locale, String voice, String outputparams, String style,
+			String effects, String inputtext, byte[] audio) throws IOException {
 		if (inputtype == null || locale == null || voice == null || inputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		// Need to verify, here in the synchronized code, once again that really we don't have this entry already.
-		// If we do, we ignore this call.
-		if (lookupAudio(inputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
-			return;
-		}
-
-		String query = "INSERT INTO MARYCACHE (inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext, outputaudio) VALUES('"
-				+ inputtype
-				+ "','AUDIO','"
-				+ locale
-				+ "','"
-				+ voice
-				+ "','"
-				+ outputparams
-				+ "','"
-				+ style
-				+ "','"
-				+ effects
-				+ "',?,?)";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		st.setBytes(2, audio);
-		st.executeUpdate();
-		st.close();
+		insertAudio(textKey(inputtype, "AUDIO", locale, voice, outputparams, style, effects, inputtext),
+				keyText(inputtype, "AUDIO", locale, voice, outputparams, style, effects, inputtext), audio);
 	}
 
 	/**
@@ -322,11 +413,8 @@ public class MaryCache {
 	 *         these keys.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
-	 *             if there is a problem querying the cache.
 	 */
-	public String lookupText(String inputtype, String outputtype, String locale, String voice, String inputtext)
-			throws SQLException {
+	public String lookupText(String inputtype, String outputtype, String locale, String voice, String inputtext) {
 		return lookupText(inputtype, outputtype, locale, voice, null, null, null, inputtext);
 	}
 
@@ -353,27 +441,13 @@ public class MaryCache {
 	 *         these keys.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
-	 *             if there is a problem querying the cache.
 	 */
-	public synchronized String lookupText(String inputtype, String outputtype, String locale, String voice, String outputparams,
-			String style, String effects, String inputtext) throws SQLException {
+	public String lookupText(String inputtype, String outputtype, String locale, String voice, String outputparams,
+			String style, String effects, String inputtext) {
 		if (inputtype == null || outputtype == null || locale == null || voice == null || inputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		String outputtext = null;
-		String query = "SELECT outputtext FROM marycache WHERE inputtype = '" + inputtype + "' AND outputtype = '" + outputtype
-				+ "' AND locale = '" + locale + "' AND voice = '" + voice + "' AND outputparams = '" + outputparams
-				+ "' AND style = '" + style + "' AND effects = '" + effects + "' AND inputtext = ?";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		ResultSet results = st.executeQuery();
-		if (results.next()) { // we expect only a single result, if any, so no while loop
-			outputtext = results.getString(1);
-		}
-		st.close();
-		return outputtext;
+		return lookupText(textKey(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext));
 	}
 
 	/**
@@ -391,10 +465,8 @@ public class MaryCache {
 	 *         these keys.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
-	 *             if there is a problem querying the cache.
 	 */
-	public byte[] lookupAudio(String inputtype, String locale, String voice, String inputtext) throws SQLException {
+	public byte[] lookupAudio(String inputtype, String locale, String voice, String inputtext) {
 		return lookupAudio(inputtype, locale, voice, null, null, null, inputtext);
 	}
 
@@ -419,51 +491,30 @@ public class MaryCache {
 	 *         these keys.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
-	 *             if there is a problem querying the cache.
 	 */
-	public synchronized byte[] lookupAudio(String inputtype, String locale, String voice, String outputparams, String style,
-			String effects, String inputtext) throws SQLException {
+	public byte[] lookupAudio(String inputtype, String locale, String voice, String outputparams, String style,
+			String effects, String inputtext) {
 		if (inputtype == null || locale == null || voice == null || inputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		byte[] audio = null;
-		String query = "Select outputaudio FROM marycache WHERE inputtype = '" + inputtype
-				+ "' AND outputtype = 'AUDIO' AND locale = '" + locale + "' AND voice = '" + voice + "' AND outputparams = '"
-				+ outputparams + "' AND style = '" + style + "' AND effects = '" + effects + "' AND inputtext = ?";
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		ResultSet results = st.executeQuery();
-		if (results.next()) {
-			audio = results.getBytes(1);
-		}
-		return audio;
+		return lookup(textKey(inputtype, "AUDIO", locale, voice, outputparams, style, effects, inputtext));
 	}
 
 	/**
-	 * Shut down the cache. After this has been called, any further calls to the object will throw exceptions.
-	 * 
-	 * @throws SQLException
-	 *             if there is a problem executing the database SHUTDOWN command.
+	 * Shut down the cache, flushing the segment store to disk. After this has been called, any further calls to the object will
+	 * throw exceptions.
 	 */
-	public void shutdown() throws SQLException {
-
-		Statement st = connection.createStatement();
-		st.execute("SHUTDOWN");
-		connection.close(); // if there are no other open connection
+	public void shutdown() {
+		cache.close();
 	}
 
 	/**
 	 * @param args
 	 *            args
-	 * @throws SQLException
-	 *             SQLException
-	 * @throws MalformedURLException
-	 *             MalformedURLException
-	 * @throws ClassNotFoundException
-	 *             ClassNotFoundException
+	 * @throws IOException
+	 *             IOException
 	 */
-	public static void main(String[] args) throws SQLException, MalformedURLException, ClassNotFoundException {
+	public static void main(String[] args) throws IOException {
 		MaryCache c = new MaryCache(new File("/Users/marc/Desktop/testdb/testDB"), false);
 		// c.insertText("TEXT", "RAWMARYXML", "de", "de1", "Welcome to the world of speech synthesis", "<rawmaryxml/>");
 
@@ -475,6 +526,7 @@ public class MaryCache {
 		byte[] newones = c.lookupAudio("TEXT", "de", "de1", "some dummy text");
 		System.out.println("Retrieved binary data of length " + newones.length);
 
+		System.out.println(c.getStatistics());
 		c.shutdown();
 	}
 
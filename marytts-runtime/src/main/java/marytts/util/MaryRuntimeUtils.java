@@ -340,6 +340,18 @@ public class MaryRuntimeUtils {
 		return output;
 	}
 
+	/**
+	 * Get the hit, miss and eviction counters of the synthesis result cache.
+	 * 
+	 * @return one "name value" pair per line, or an empty string if caching is not enabled.
+	 */
+	public static String getCacheStatistics() {
+		if (!MaryCache.haveCache()) {
+			return "";
+		}
+		return MaryCache.getCache().getStatistics().toString();
+	}
+
 	public static String getDataTypes() {
 		String output = "";
 
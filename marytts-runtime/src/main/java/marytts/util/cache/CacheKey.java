@@ -0,0 +1,144 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A 128-bit key identifying one cached processing result. The key is an MD5 digest over all the parameters that determine the
+ * result of a request (input type, output type, locale, voice, output parameters, style, effects and input text).
+ */
+public final class CacheKey {
+	private final long hi;
+	private final long lo;
+
+	public CacheKey(long hi, long lo) {
+		this.hi = hi;
+		this.lo = lo;
+	}
+
+	public long getHi() {
+		return hi;
+	}
+
+	public long getLo() {
+		return lo;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (lo ^ (lo >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof CacheKey)) {
+			return false;
+		}
+		CacheKey other = (CacheKey) o;
+		return hi == other.hi && lo == other.lo;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", hi, lo);
+	}
+
+	/**
+	 * Incrementally compute a cache key from a sequence of fields.
+	 */
+	public static class Builder {
+		private final MessageDigest digest;
+		private final byte[] buf = new byte[512];
+
+		public Builder() {
+			try {
+				digest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				// every Java platform is required to support MD5
+				throw new AssertionError(e);
+			}
+		}
+
+		/**
+		 * Add one field to the key. Each field is length-prefixed so that field boundaries cannot be confused. The characters are
+		 * fed to the digest directly, without creating an encoded copy of the string.
+		 * 
+		 * @param field
+		 *            the field value, or null
+		 * @return this builder
+		 */
+		public Builder add(String field) {
+			if (field == null) {
+				return add(-1);
+			}
+			int len = field.length();
+			add(len);
+			int pos = 0;
+			for (int i = 0; i < len; i++) {
+				char c = field.charAt(i);
+				buf[pos++] = (byte) (c >>> 8);
+				buf[pos++] = (byte) c;
+				if (pos == buf.length) {
+					digest.update(buf, 0, pos);
+					pos = 0;
+				}
+			}
+			digest.update(buf, 0, pos);
+			return this;
+		}
+
+		/**
+		 * Add an int value to the key, e.g. to mark the type of the following field.
+		 * 
+		 * @param i
+		 *            the value
+		 * @return this builder
+		 */
+		public Builder add(int i) {
+			buf[0] = (byte) (i >>> 24);
+			buf[1] = (byte) (i >>> 16);
+			buf[2] = (byte) (i >>> 8);
+			buf[3] = (byte) i;
+			digest.update(buf, 0, 4);
+			return this;
+		}
+
+		/**
+		 * Add another key to this key, e.g. a digest of some content computed separately.
+		 * 
+		 * @param key
+		 *            the key
+		 * @return this builder
+		 */
+		public Builder add(CacheKey key) {
+			ByteBuffer.wrap(buf, 0, 16).putLong(key.hi).putLong(key.lo);
+			digest.update(buf, 0, 16);
+			return this;
+		}
+
+		public CacheKey build() {
+			ByteBuffer bb = ByteBuffer.wrap(digest.digest());
+			return new CacheKey(bb.getLong(), bb.getLong());
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing how well the synthesis result cache is doing. All counters are cumulative since the cache was opened.
+ */
+public class CacheStatistics {
+	final AtomicLong memoryHits = new AtomicLong();
+	final AtomicLong diskHits = new AtomicLong();
+	final AtomicLong misses = new AtomicLong();
+	final AtomicLong inserts = new AtomicLong();
+	final AtomicLong memoryEvictions = new AtomicLong();
+	final AtomicLong diskEvictions = new AtomicLong();
+
+	/**
+	 * @return the number of lookups answered from the in-memory tier
+	 */
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	/**
+	 * @return the number of lookups answered from the memory-mapped segment store
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/**
+	 * @return the total number of lookups that found an entry
+	 */
+	public long getHits() {
+		return memoryHits.get() + diskHits.get();
+	}
+
+	/**
+	 * @return the number of lookups that found no entry
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of entries added to the cache
+	 */
+	public long getInserts() {
+		return inserts.get();
+	}
+
+	/**
+	 * @return the number of entries dropped from the in-memory tier to stay within its size limit
+	 */
+	public long getMemoryEvictions() {
+		return memoryEvictions.get();
+	}
+
+	/**
+	 * @return the number of entries dropped from the segment store when its oldest segment was deleted
+	 */
+	public long getDiskEvictions() {
+		return diskEvictions.get();
+	}
+
+	/**
+	 * @return the fraction of lookups that found an entry, or 0 if there were no lookups yet
+	 */
+	public double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public String toString() {
+		String nl = System.getProperty("line.separator");
+		StringBuilder sb = new StringBuilder();
+		sb.append("hits ").append(getHits()).append(nl);
+		sb.append("memoryhits ").append(getMemoryHits()).append(nl);
+		sb.append("diskhits ").append(getDiskHits()).append(nl);
+		sb.append("misses ").append(getMisses()).append(nl);
+		sb.append("hitrate ").append(String.format(Locale.US, "%.3f", getHitRate())).append(nl);
+		sb.append("inserts ").append(getInserts()).append(nl);
+		sb.append("memoryevictions ").append(getMemoryEvictions()).append(nl);
+		sb.append("diskevictions ").append(getDiskEvictions()).append(nl);
+		return sb.toString();
+	}
+}
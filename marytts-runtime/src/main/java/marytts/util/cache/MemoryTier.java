@@ -0,0 +1,134 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The in-heap tier of the synthesis result cache: a size-bounded LRU map from {@link CacheKey} to data. In order not to have all
+ * request threads contend for a single lock, the map is split into a number of independently locked stripes, each of which gets
+ * an equal share of the total size budget.
+ */
+public class MemoryTier {
+	private static final int NUM_STRIPES = 16;
+
+	private final Stripe[] stripes;
+	private final CacheStatistics stats;
+
+	/**
+	 * @param maxBytes
+	 *            the maximum number of data bytes to keep in memory
+	 * @param stats
+	 *            the statistics object in which to count evictions
+	 */
+	public MemoryTier(long maxBytes, CacheStatistics stats) {
+		this.stats = stats;
+		stripes = new Stripe[NUM_STRIPES];
+		for (int i = 0; i < NUM_STRIPES; i++) {
+			stripes[i] = new Stripe(maxBytes / NUM_STRIPES);
+		}
+	}
+
+	/**
+	 * @param key
+	 *            key
+	 * @return the data stored for key, or null if there is none.
+	 */
+	public byte[] get(CacheKey key) {
+		Stripe s = stripeFor(key);
+		synchronized (s) {
+			return s.map.get(key);
+		}
+	}
+
+	/**
+	 * Store data for the given key, evicting the least recently used entries of the key's stripe as needed. Data larger than a
+	 * stripe's budget is not stored at all.
+	 * 
+	 * @param key
+	 *            key
+	 * @param data
+	 *            data
+	 */
+	public void put(CacheKey key, byte[] data) {
+		Stripe s = stripeFor(key);
+		synchronized (s) {
+			if (data.length > s.maxBytes) {
+				return;
+			}
+			byte[] old = s.map.put(key, data);
+			if (old != null) {
+				s.bytes -= old.length;
+			}
+			s.bytes += data.length;
+			Iterator<Map.Entry<CacheKey, byte[]>> it = s.map.entrySet().iterator();
+			while (s.bytes > s.maxBytes && it.hasNext()) {
+				Map.Entry<CacheKey, byte[]> eldest = it.next();
+				s.bytes -= eldest.getValue().length;
+				it.remove();
+				stats.memoryEvictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Remove the entry for the given key, if any.
+	 * 
+	 * @param key
+	 *            key
+	 */
+	public void remove(CacheKey key) {
+		Stripe s = stripeFor(key);
+		synchronized (s) {
+			byte[] old = s.map.remove(key);
+			if (old != null) {
+				s.bytes -= old.length;
+			}
+		}
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		for (Stripe s : stripes) {
+			synchronized (s) {
+				s.map.clear();
+				s.bytes = 0;
+			}
+		}
+	}
+
+	private Stripe stripeFor(CacheKey key) {
+		return stripes[(int) (key.getHi() >>> 60) & (NUM_STRIPES - 1)];
+	}
+
+	private static class Stripe {
+		final LinkedHashMap<CacheKey, byte[]> map = new LinkedHashMap<CacheKey, byte[]>(64, 0.75f, true);
+		final long maxBytes;
+		long bytes;
+
+		Stripe(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The persistent tier of the synthesis result cache: an append-only store of records kept in a series of memory-mapped segment
+ * files. New records are appended to the newest segment; when the total size of all segments exceeds the configured maximum, the
+ * oldest segment is deleted together with all records in it. On opening, the existing segments are scanned to rebuild the
+ * in-memory index, so that cache contents survive a restart.
+ * <p>
+ * Each segment file starts with a header of {@link #MAGIC} and {@link #VERSION}, followed by records of the form
+ * <code>int length, long keyHi, long keyLo, int keyTextLength, byte[] keyText, int dataLength, byte[] data</code>, where
+ * <code>length</code> is the number of bytes following it. The length field is written last, so that a partially written record
+ * is ignored when the segment is scanned.
+ */
+public class SegmentStore {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAGIC = 0x4d435347; // "MCSG"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final String SUFFIX = ".seg";
+
+	private final File prefix;
+	private final long segmentSize;
+	private final long maxSize;
+	private final CacheStatistics stats;
+
+	private final Map<CacheKey, Location> index = new ConcurrentHashMap<CacheKey, Location>();
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private long totalSize;
+	private boolean closed = false;
+
+	/**
+	 * Open the segment store with the given file name prefix.
+	 * 
+	 * @param prefix
+	 *            the file name prefix; segment files are named <code>prefix.N.seg</code>.
+	 * @param segmentSize
+	 *            the size in bytes of each newly created segment file
+	 * @param maxSize
+	 *            the maximum total size in bytes of all segment files
+	 * @param clear
+	 *            if true, delete any existing segments; if false, load them.
+	 * @param stats
+	 *            the statistics object in which to count evictions
+	 * @throws IOException
+	 *             if existing segments cannot be read
+	 */
+	public SegmentStore(File prefix, long segmentSize, long maxSize, boolean clear, CacheStatistics stats) throws IOException {
+		if (segmentSize <= HEADER_SIZE || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Illegal segment size: " + segmentSize);
+		}
+		this.prefix = prefix;
+		this.segmentSize = segmentSize;
+		this.maxSize = maxSize;
+		this.stats = stats;
+		for (File f : listSegmentFiles()) {
+			if (clear) {
+				if (!f.delete()) {
+					throw new IOException("Cannot delete cache segment " + f.getAbsolutePath());
+				}
+			} else {
+				Segment s = new Segment(f, segmentNumber(f), 0);
+				s.scan();
+				segments.add(s);
+				totalSize += s.capacity;
+			}
+		}
+	}
+
+	/**
+	 * Look up the data stored for the given key.
+	 * 
+	 * @param key
+	 *            key
+	 * @return a copy of the data, or null if the store has no record for key.
+	 */
+	public byte[] get(CacheKey key) {
+		Location loc = index.get(key);
+		if (loc == null) {
+			return null;
+		}
+		return loc.segment.read(loc.dataOffset, loc.dataLength);
+	}
+
+	/**
+	 * @param key
+	 *            key
+	 * @return true if the store has a record for key, false otherwise.
+	 */
+	public boolean contains(CacheKey key) {
+		return index.containsKey(key);
+	}
+
+	/**
+	 * Append a record for the given key, unless there is one already. If there is a record for the same key but with a different
+	 * key text, the two keys are a hash collision; in that case, the existing record is dropped as well, so that neither of the
+	 * two requests can be answered with the other one's data.
+	 * 
+	 * @param key
+	 *            key
+	 * @param keyText
+	 *            the full text from which the key was computed, used to detect hash collisions
+	 * @param data
+	 *            the data to store
+	 * @return true if the record was stored, false if there was a record for this key already.
+	 * @throws IOException
+	 *             if a new segment file cannot be created
+	 */
+	public synchronized boolean put(CacheKey key, String keyText, byte[] data) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("Cache store has been closed");
+		}
+		byte[] keyBytes = keyText.getBytes(UTF8);
+		Location existing = index.get(key);
+		if (existing != null) {
+			if (!Arrays.equals(keyBytes, existing.segment.readKeyText(existing))) {
+				index.remove(key);
+			}
+			return false;
+		}
+		int length = 8 + 8 + 4 + keyBytes.length + 4 + data.length;
+		Segment s = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if (s == null || s.writePos + 4 + length > s.capacity) {
+			s = newSegment(HEADER_SIZE + 4 + length);
+		}
+		int pos = s.writePos;
+		ByteBuffer buf = s.buffer.duplicate();
+		buf.position(pos + 4);
+		buf.putLong(key.getHi());
+		buf.putLong(key.getLo());
+		buf.putInt(keyBytes.length);
+		buf.put(keyBytes);
+		buf.putInt(data.length);
+		int dataOffset = buf.position();
+		buf.put(data);
+		s.buffer.putInt(pos, length);
+		s.writePos = pos + 4 + length;
+		index.put(key, new Location(s, pos, dataOffset, data.length));
+		return true;
+	}
+
+	/**
+	 * Flush all segments to disk and release them. Subsequent calls to {@link #put(CacheKey, String, byte[])} will fail.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (Segment s : segments) {
+			s.buffer.force();
+		}
+		segments.clear();
+		index.clear();
+	}
+
+	private Segment newSegment(long minSize) throws IOException {
+		long number = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).number + 1;
+		File f = new File(prefix.getPath() + "." + number + SUFFIX);
+		Segment s = new Segment(f, number, Math.max(segmentSize, minSize));
+		segments.add(s);
+		totalSize += s.capacity;
+		while (totalSize > maxSize && segments.size() > 1) {
+			evictOldestSegment();
+		}
+		return s;
+	}
+
+	private void evictOldestSegment() {
+		Segment oldest = segments.remove(0);
+		totalSize -= oldest.capacity;
+		for (Iterator<Location> it = index.values().iterator(); it.hasNext();) {
+			if (it.next().segment == oldest) {
+				it.remove();
+				stats.diskEvictions.incrementAndGet();
+			}
+		}
+		// The mapping stays valid for concurrent readers until it is garbage collected, even after the file is deleted.
+		oldest.file.delete();
+	}
+
+	private File[] listSegmentFiles() {
+		File dir = prefix.getAbsoluteFile().getParentFile();
+		final String name = prefix.getName() + ".";
+		File[] files = dir.listFiles(new FilenameFilter() {
+			public boolean accept(File d, String n) {
+				return n.startsWith(name) && n.endsWith(SUFFIX) && segmentNumber(new File(d, n)) >= 0;
+			}
+		});
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long na = segmentNumber(a);
+				long nb = segmentNumber(b);
+				return na < nb ? -1 : na == nb ? 0 : 1;
+			}
+		});
+		return files;
+	}
+
+	private long segmentNumber(File f) {
+		String n = f.getName();
+		String number = n.substring(prefix.getName().length() + 1, n.length() - SUFFIX.length());
+		try {
+			return Long.parseLong(number);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private class Segment {
+		final File file;
+		final long number;
+		final int capacity;
+		final MappedByteBuffer buffer;
+		int writePos;
+
+		/**
+		 * Map the given segment file, creating it with the given size if it does not exist.
+		 */
+		Segment(File file, long number, long size) throws IOException {
+			this.file = file;
+			this.number = number;
+			boolean isNew = !file.exists();
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				if (isNew) {
+					raf.setLength(size);
+				}
+				if (raf.length() > Integer.MAX_VALUE) {
+					throw new IOException("Cache segment " + file.getAbsolutePath() + " is too large");
+				}
+				capacity = (int) raf.length();
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			} finally {
+				raf.close();
+			}
+			if (isNew) {
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+			} else if (capacity < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException("Not a cache segment of version " + VERSION + ": " + file.getAbsolutePath());
+			}
+			writePos = HEADER_SIZE;
+		}
+
+		/**
+		 * Read all complete records in this segment into the index, and position the write pointer after the last one.
+		 */
+		void scan() {
+			int pos = HEADER_SIZE;
+			while (pos + 4 <= capacity) {
+				int length = buffer.getInt(pos);
+				if (length <= 0 || length > capacity - pos - 4) {
+					break;
+				}
+				CacheKey key = new CacheKey(buffer.getLong(pos + 4), buffer.getLong(pos + 12));
+				int keyTextLength = buffer.getInt(pos + 20);
+				int dataLengthPos = pos + 24 + keyTextLength;
+				index.put(key, new Location(this, pos, dataLengthPos + 4, buffer.getInt(dataLengthPos)));
+				pos += 4 + length;
+			}
+			writePos = pos;
+		}
+
+		byte[] readKeyText(Location loc) {
+			return read(loc.recordPos + 24, buffer.getInt(loc.recordPos + 20));
+		}
+
+		byte[] read(int offset, int length) {
+			byte[] data = new byte[length];
+			ByteBuffer buf = buffer.duplicate();
+			buf.position(offset);
+			buf.get(data);
+			return data;
+		}
+	}
+
+	private static class Location {
+		final Segment segment;
+		final int recordPos;
+		final int dataOffset;
+		final int dataLength;
+
+		Location(Segment segment, int recordPos, int dataOffset, int dataLength) {
+			this.segment = segment;
+			this.recordPos = recordPos;
+			this.dataOffset = dataOffset;
+			this.dataLength = dataLength;
+		}
+	}
+}
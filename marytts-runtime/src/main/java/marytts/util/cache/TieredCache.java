@@ -0,0 +1,108 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A two-tier cache combining a {@link MemoryTier} on the heap with a persistent {@link SegmentStore}. Lookups try the memory tier
+ * first; data found only in the segment store is promoted into the memory tier. All methods may be called concurrently.
+ */
+public class TieredCache {
+	private final CacheStatistics stats;
+	private final MemoryTier memory;
+	private final SegmentStore store;
+
+	/**
+	 * @param prefix
+	 *            the file name prefix of the segment files
+	 * @param clear
+	 *            if true, delete any existing segments; if false, load them.
+	 * @param memorySize
+	 *            the maximum number of data bytes to keep on the heap
+	 * @param segmentSize
+	 *            the size in bytes of each segment file
+	 * @param diskSize
+	 *            the maximum total size in bytes of all segment files
+	 * @throws IOException
+	 *             if existing segments cannot be read
+	 */
+	public TieredCache(File prefix, boolean clear, long memorySize, long segmentSize, long diskSize) throws IOException {
+		stats = new CacheStatistics();
+		memory = new MemoryTier(memorySize, stats);
+		store = new SegmentStore(prefix, segmentSize, diskSize, clear, stats);
+	}
+
+	/**
+	 * @param key
+	 *            key
+	 * @return the data cached for key, or null if there is none.
+	 */
+	public byte[] get(CacheKey key) {
+		byte[] data = memory.get(key);
+		if (data != null) {
+			stats.memoryHits.incrementAndGet();
+			return data;
+		}
+		data = store.get(key);
+		if (data != null) {
+			stats.diskHits.incrementAndGet();
+			memory.put(key, data);
+			return data;
+		}
+		stats.misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Cache data for the given key, unless there is an entry for it already.
+	 * 
+	 * @param key
+	 *            key
+	 * @param keyText
+	 *            the full text from which the key was computed, used to detect hash collisions
+	 * @param data
+	 *            data
+	 * @throws IOException
+	 *             if the data cannot be written to the segment store
+	 */
+	public void put(CacheKey key, String keyText, byte[] data) throws IOException {
+		if (store.put(key, keyText, data)) {
+			stats.inserts.incrementAndGet();
+			memory.put(key, data);
+		} else if (!store.contains(key)) {
+			// hash collision: the store has dropped the existing entry, so must we
+			memory.remove(key);
+		}
+	}
+
+	public CacheStatistics getStatistics() {
+		return stats;
+	}
+
+	/**
+	 * Flush the segment store to disk and release all resources.
+	 */
+	public void close() {
+		store.close();
+		memory.clear();
+	}
+}
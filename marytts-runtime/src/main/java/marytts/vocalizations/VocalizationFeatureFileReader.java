@@ -28,7 +28,6 @@ import java.nio.channels.FileChannel;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
-import marytts.features.FeatureVector;
 import marytts.util.data.MaryHeader;
 
 public class VocalizationFeatureFileReader extends marytts.unitselection.data.FeatureFileReader {
@@ -49,11 +48,7 @@ public class VocalizationFeatureFileReader extends marytts.unitselection.data.Fe
 			throw new MaryConfigurationException("File [" + fileName + "] is not a valid Mary listener feature file.");
 		}
 		featureDefinition = new FeatureDefinition(dis);
-		int numberOfUnits = dis.readInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
-		}
+		readFeatures(dis);
 	}
 
 	@Override
@@ -71,11 +66,7 @@ public class VocalizationFeatureFileReader extends marytts.unitselection.data.Fe
 			throw new MaryConfigurationException("File [" + fileName + "] is not a valid Mary listener feature file.");
 		}
 		featureDefinition = new FeatureDefinition(bb);
-		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
-		}
+		readFeatures(bb);
 	}
 
 	/**
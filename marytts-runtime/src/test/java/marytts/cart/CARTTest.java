@@ -0,0 +1,104 @@
+package marytts.cart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import marytts.cart.DecisionNode.BinaryByteDecisionNode;
+import marytts.cart.DecisionNode.BinaryFloatDecisionNode;
+import marytts.cart.DecisionNode.ByteDecisionNode;
+import marytts.cart.LeafNode.FloatLeafNode;
+import marytts.cart.LeafNode.IntArrayLeafNode;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CARTTest {
+
+	private FeatureDefinition featureDefinition;
+	private LeafNode a, b, c, d;
+	private DecisionNode stressed;
+	private CART cart;
+
+	@Before
+	public void setUp() throws Exception {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(
+				"ByteValuedFeatureProcessors\n" + "phone 0 a b c\n" + "stressed 0 1\n" + "ShortValuedFeatureProcessors\n"
+						+ "ContinuousFeatureProcessors\n" + "duration float\n")), false);
+		a = new IntArrayLeafNode(new int[] { 1, 2, 3 });
+		b = new IntArrayLeafNode(new int[] { 4 });
+		c = new FloatLeafNode(new float[] { 0.5f, 2 });
+		d = new FloatLeafNode(new float[] { 0.1f, 7 });
+		// phone: "0" -> a, "a" -> stressed, "b" -> duration, "c" -> missing
+		DecisionNode root = new ByteDecisionNode("phone", 4, featureDefinition);
+		stressed = new BinaryByteDecisionNode("stressed", "1", featureDefinition);
+		stressed.addDaughter(b);
+		stressed.addDaughter(a);
+		DecisionNode duration = new BinaryFloatDecisionNode("duration", 0.2f, featureDefinition);
+		duration.addDaughter(c);
+		duration.addDaughter(d);
+		root.addDaughter(a);
+		root.addDaughter(stressed);
+		root.addDaughter(duration);
+		root.addDaughter(null);
+		root.setIsRoot(true);
+		root.countData();
+		cart = new CART(root, featureDefinition);
+	}
+
+	private FeatureVector featureVector(String phone, String isStressed, float duration) {
+		byte[] bytes = new byte[] { featureDefinition.getFeatureValueAsByte("phone", phone),
+				featureDefinition.getFeatureValueAsByte("stressed", isStressed) };
+		return new FeatureVector(bytes, new short[0], new float[] { duration }, 0);
+	}
+
+	@Test
+	public void compiledTreeFindsSameNodes() {
+		FeatureVector[] featureVectors = new FeatureVector[] { featureVector("0", "0", 0), featureVector("a", "1", 0),
+				featureVector("a", "0", 0), featureVector("b", "0", 0.1f), featureVector("b", "1", 0.3f),
+				featureVector("c", "0", 0) };
+		Node[][] expected = new Node[featureVectors.length][3];
+		Object[] expectedData = new Object[featureVectors.length];
+		for (int i = 0; i < featureVectors.length; i++) {
+			for (int min = 0; min < 3; min++) {
+				expected[i][min] = cart.interpretToNode(featureVectors[i], min);
+			}
+			expectedData[i] = cart.interpret(featureVectors[i]);
+		}
+		assertFalse(cart.isCompiled());
+		assertTrue(cart.compile());
+		for (int i = 0; i < featureVectors.length; i++) {
+			for (int min = 0; min < 3; min++) {
+				assertSame(expected[i][min], cart.interpretToNode(featureVectors[i], min));
+			}
+			assertSame(expectedData[i], cart.interpret(featureVectors[i]));
+		}
+	}
+
+	@Test
+	public void compiledTreeReachesLeaves() {
+		assertTrue(cart.compile());
+		assertSame(b, cart.interpretToNode(featureVector("a", "1", 0), 0));
+		assertSame(a, cart.interpretToNode(featureVector("a", "0", 0), 0));
+		assertSame(stressed, cart.interpretToNode(featureVector("a", "0", 0), 4));
+		assertSame(c, cart.interpretToNode(featureVector("b", "0", 0.1f), 0));
+		assertSame(d, cart.interpretToNode(featureVector("b", "0", 0.2f), 0));
+		assertEquals(7f, ((float[]) cart.interpret(featureVector("b", "0", 0.3f)))[1], 0);
+		assertNull(cart.interpret(featureVector("c", "0", 0)));
+	}
+
+	@Test
+	public void settingRootNodeDiscardsProgram() {
+		assertTrue(cart.compile());
+		cart.setRootNode(b);
+		assertFalse(cart.isCompiled());
+		assertSame(b, cart.interpretToNode(featureVector("0", "0", 0), 0));
+	}
+}
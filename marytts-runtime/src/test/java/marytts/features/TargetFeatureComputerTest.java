@@ -2,6 +2,11 @@ package marytts.features;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import marytts.unitselection.select.Target;
@@ -44,6 +49,121 @@ public class TargetFeatureComputerTest {
 		}
 	}
 
+	/**
+	 * A feature computer with one feature of each type, all derived from the length of the target name.
+	 */
+	private TargetFeatureComputer nameLengthComputer() throws Exception {
+		FeatureProcessorManager manager = new FeatureProcessorManager(Locale.ROOT);
+		manager.addFeatureProcessor(new ByteValuedFeatureProcessor() {
+			public String getName() {
+				return "name_length";
+			}
+
+			public String[] getValues() {
+				return valueProvider();
+			}
+
+			public byte process(Target target) {
+				return (byte) target.getName().length();
+			}
+		});
+		manager.addFeatureProcessor(new ShortValuedFeatureProcessor() {
+			public String getName() {
+				return "twice_name_length";
+			}
+
+			public String[] getValues() {
+				return valueProvider();
+			}
+
+			public short process(Target target) {
+				return (short) (2 * target.getName().length());
+			}
+		});
+		manager.addFeatureProcessor(new ContinuousFeatureProcessor() {
+			public String getName() {
+				return "half_name_length";
+			}
+
+			public float process(Target target) {
+				return target.getName().length() / 2f;
+			}
+		});
+		return new TargetFeatureComputer(manager, "name_length twice_name_length half_name_length");
+	}
+
+	private static List<Target> targets() {
+		List<Target> targets = new ArrayList<Target>();
+		for (String name : new String[] { "a", "bc", "def", "_" }) {
+			targets.add(new Target(name, null));
+		}
+		return targets;
+	}
+
+	@Test
+	public void testFeatureMatrixMatchesFeatureVectors() throws Exception {
+		TargetFeatureComputer lengths = nameLengthComputer();
+		List<Target> targets = targets();
+		FeatureMatrix matrix = lengths.computeFeatureMatrix(targets, null);
+		assertEquals(targets.size(), matrix.getNumberOfTargets());
+		String[] values = lengths.toStringValues(matrix);
+		for (int t = 0; t < targets.size(); t++) {
+			FeatureVector expected = lengths.computeFeatureVector(targets.get(t));
+			assertArrayEquals(expected.getByteValuedDiscreteFeatures(), matrix.getFeatureVector(t).getByteValuedDiscreteFeatures());
+			assertEquals(lengths.toStringValues(expected), values[t]);
+			assertEquals(expected.toString(), matrix.toString(t));
+		}
+		// a smaller batch reuses the matrix:
+		assertSame(matrix, lengths.computeFeatureMatrix(targets.subList(0, 2), matrix));
+		assertEquals(2, matrix.getNumberOfTargets());
+		assertEquals(2, matrix.getByteFeature(1, 0));
+	}
+
+	@Test
+	public void testFeatureVectorsAreRowsOfMatrix() throws Exception {
+		TargetFeatureComputer lengths = nameLengthComputer();
+		List<Target> targets = targets();
+		lengths.computeFeatureVectors(targets);
+		for (Target target : targets) {
+			FeatureVector expected = lengths.computeFeatureVector(target);
+			FeatureVector row = target.getFeatureVector();
+			assertNull(row.byteValuedDiscreteFeatures);
+			assertEquals(expected.getLength(), row.getLength());
+			assertEquals(expected.getNumberOfByteFeatures(), row.getNumberOfByteFeatures());
+			assertEquals(expected.getNumberOfShortFeatures(), row.getNumberOfShortFeatures());
+			assertEquals(expected.getNumberOfContinuousFeatures(), row.getNumberOfContinuousFeatures());
+			assertEquals(expected.getByteFeature(0), row.getByteFeature(0));
+			assertEquals(expected.getShortFeature(1), row.getShortFeature(1));
+			assertEquals(expected.getContinuousFeature(2), row.getContinuousFeature(2), 0);
+			for (int i = 0; i < expected.getLength(); i++) {
+				assertEquals(expected.getFeature(i), row.getFeature(i));
+				assertEquals(expected.getFeatureType(i), row.getFeatureType(i));
+			}
+			assertArrayEquals(expected.getByteValuedDiscreteFeatures(), row.getByteValuedDiscreteFeatures());
+			assertArrayEquals(expected.getShortValuedDiscreteFeatures(), row.getShortValuedDiscreteFeatures());
+			assertArrayEquals(expected.getContinuousFeatures(), row.getContinuousFeatures(), 0);
+			assertEquals(lengths.getFeatureDefinition().toFeatureString(expected), lengths.getFeatureDefinition()
+					.toFeatureString(row));
+			assertEquals(expected.toString(), row.toString());
+			assertEquals(lengths.toStringValues(expected), lengths.toStringValues(row));
+			assertArrayEquals(bytesWritten(expected), bytesWritten(row));
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testRowChecksFeatureType() throws Exception {
+		TargetFeatureComputer lengths = nameLengthComputer();
+		List<Target> targets = targets();
+		lengths.computeFeatureVectors(targets);
+		targets.get(0).getFeatureVector().getShortFeature(0);
+	}
+
+	private static byte[] bytesWritten(FeatureVector features) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		features.writeTo(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
 	public class TestByteValuedFeatureProcessor implements ByteValuedFeatureProcessor {
 
 		private ByteStringTranslator values;
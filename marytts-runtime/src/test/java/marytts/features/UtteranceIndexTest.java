@@ -0,0 +1,117 @@
+package marytts.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import marytts.datatypes.MaryXML;
+import marytts.features.UtteranceIndex.Tier;
+import marytts.unitselection.select.Target;
+import marytts.util.dom.MaryDomUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.traversal.TreeWalker;
+
+public class UtteranceIndexTest {
+
+	private Element sentence;
+	private Element phrase1, phrase2;
+	private Element word1, punct, word2;
+	private Element syl1, syl2, syl3;
+	private Element a, b, c, d;
+	private Element boundary1, boundary2;
+	private UtteranceIndex index;
+
+	@Before
+	public void setUp() {
+		Document doc = MaryXML.newDocument();
+		Element para = MaryXML.appendChildElement(doc.getDocumentElement(), MaryXML.PARAGRAPH);
+		sentence = MaryXML.appendChildElement(para, MaryXML.SENTENCE);
+		phrase1 = MaryXML.appendChildElement(sentence, MaryXML.PHRASE);
+		word1 = MaryXML.appendChildElement(phrase1, MaryXML.TOKEN);
+		word1.setAttribute("ph", "a b");
+		syl1 = MaryXML.appendChildElement(word1, MaryXML.SYLLABLE);
+		a = MaryXML.appendChildElement(syl1, MaryXML.PHONE);
+		b = MaryXML.appendChildElement(syl1, MaryXML.PHONE);
+		punct = MaryXML.appendChildElement(phrase1, MaryXML.TOKEN);
+		boundary1 = MaryXML.appendChildElement(phrase1, MaryXML.BOUNDARY);
+		phrase2 = MaryXML.appendChildElement(sentence, MaryXML.PHRASE);
+		word2 = MaryXML.appendChildElement(phrase2, MaryXML.TOKEN);
+		word2.setAttribute("ph", "c - d");
+		syl2 = MaryXML.appendChildElement(word2, MaryXML.SYLLABLE);
+		c = MaryXML.appendChildElement(syl2, MaryXML.PHONE);
+		syl3 = MaryXML.appendChildElement(word2, MaryXML.SYLLABLE);
+		d = MaryXML.appendChildElement(syl3, MaryXML.PHONE);
+		boundary2 = MaryXML.appendChildElement(phrase2, MaryXML.BOUNDARY);
+		index = new UtteranceIndex(sentence);
+	}
+
+	@Test
+	public void navigatesSegmentsLikeTreeWalker() {
+		Element[] segments = new Element[] { a, b, boundary1, c, d, boundary2 };
+		for (Element segment : segments) {
+			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHONE, MaryXML.BOUNDARY);
+			tw.setCurrentNode(segment);
+			assertSame(tw.previousNode(), index.getPrevious(Tier.SEGMENT, segment, 1));
+			tw.setCurrentNode(segment);
+			tw.nextNode();
+			assertSame(tw.nextNode(), index.getNext(Tier.SEGMENT, segment, 2));
+		}
+	}
+
+	@Test
+	public void navigatesAcrossPhrases() {
+		assertSame(syl2, index.getNext(Tier.SYLLABLE, boundary1, 1));
+		assertSame(syl1, index.getPrevious(Tier.SYLLABLE, boundary1, 1));
+		assertNull(index.getPrevious(Tier.SYLLABLE, syl1, 1));
+		assertSame(word2, index.getNext(Tier.WORD, word1, 1));
+		assertSame(punct, index.getNext(Tier.TOKEN, word1, 1));
+		assertSame(word1, index.getPrevious(Tier.WORD, boundary1, 1));
+	}
+
+	@Test
+	public void findsFirstAndLastBelowRoot() {
+		assertSame(c, index.getFirst(Tier.PHONE, word2));
+		assertSame(d, index.getLast(Tier.PHONE, word2));
+		assertSame(syl3, index.getLast(Tier.SYLLABLE, phrase2));
+		assertSame(word2, index.getLast(Tier.WORD, sentence));
+		assertNull(index.getFirst(Tier.SYLLABLE, punct));
+	}
+
+	@Test
+	public void countsWithinRoot() {
+		assertEquals(2, index.count(Tier.PHRASE, sentence));
+		assertEquals(2, index.count(Tier.WORD, sentence));
+		assertEquals(2, index.count(Tier.TOKEN, phrase1));
+		assertEquals(1, index.countBefore(Tier.SYLLABLE, syl3, phrase2));
+		assertEquals(0, index.countBefore(Tier.SYLLABLE, syl2, phrase2));
+		assertEquals(1, index.countAfter(Tier.SYLLABLE, c, phrase2));
+		assertEquals(1, index.countAfter(Tier.WORD, a, sentence));
+	}
+
+	@Test
+	public void comparesDocumentOrder() {
+		assertTrue(index.isWithin(d, phrase2));
+		assertFalse(index.isWithin(d, phrase1));
+		assertTrue(index.precedes(boundary1, c));
+		assertFalse(index.precedes(c, boundary1));
+	}
+
+	@Test
+	public void attachesOneIndexPerSentence() {
+		List<Target> targets = new ArrayList<Target>();
+		targets.add(new Target("a", a));
+		targets.add(new Target("_", boundary1));
+		UtteranceIndex.attach(targets);
+		assertSame(targets.get(0).getUtteranceIndex(), targets.get(1).getUtteranceIndex());
+		assertSame(sentence, targets.get(0).getUtteranceIndex().getSentence());
+	}
+}
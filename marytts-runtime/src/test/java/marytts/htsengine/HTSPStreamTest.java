@@ -0,0 +1,125 @@
+package marytts.htsengine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import marytts.htsengine.HMMData.FeatureType;
+
+import org.junit.Test;
+
+public class HTSPStreamTest {
+
+	private static final int ORDER = 5;
+	private static final int FRAMES = 60;
+
+	/* a stream of piecewise constant pdfs, five frames per state, as the HMMs give them */
+	private static HTSPStream stream(long seed) throws Exception {
+		Random random = new Random(seed);
+		HTSPStream pst = new HTSPStream(3 * ORDER, FRAMES, FeatureType.MGC, 50);
+		double[] mean = new double[3 * ORDER];
+		double[] ivar = new double[3 * ORDER];
+		for (int t = 0; t < FRAMES; t++) {
+			if (t % 5 == 0) {
+				for (int j = 0; j < mean.length; j++) {
+					mean[j] = j < ORDER ? random.nextGaussian() : 0;
+					ivar[j] = (j < ORDER ? 1 : 10) * (0.5 + random.nextDouble());
+				}
+			}
+			for (int j = 0; j < mean.length; j++) {
+				pst.setMseq(t, j, mean[j]);
+				pst.setIvseq(t, j, ivar[j]);
+			}
+		}
+		for (int t = 0; t < FRAMES; t += 7) {
+			pst.setGvSwitch(t, false);
+		}
+		double[] gvMean = new double[ORDER];
+		double[] gvIvar = new double[ORDER];
+		for (int j = 0; j < ORDER; j++) {
+			gvMean[j] = 0.5 + random.nextDouble();
+			gvIvar[j] = 1 + random.nextDouble();
+		}
+		pst.setGvMeanVar(gvMean, gvIvar);
+		pst.fixDynFeatOnBoundaries();
+		return pst;
+	}
+
+	private static void assertSameParameters(HTSPStream expected, HTSPStream actual) {
+		for (int t = 0; t < FRAMES; t++) {
+			for (int m = 0; m < ORDER; m++) {
+				assertEquals("frame " + t + ", dimension " + m, Double.doubleToLongBits(expected.getPar(t, m)),
+						Double.doubleToLongBits(actual.getPar(t, m)));
+			}
+		}
+	}
+
+	private static void parallelEqualsSequential(String gvMethod) throws Exception {
+		HMMData htsData = new HMMData();
+		htsData.setGvMethod(gvMethod);
+		HTSPStream sequential = stream(7);
+		sequential.mlpg(htsData, true, null);
+		HTSPStream parallel = stream(7);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			parallel.mlpg(htsData, true, pool);
+		} finally {
+			pool.shutdown();
+		}
+		assertSameParameters(sequential, parallel);
+	}
+
+	@Test
+	public void parallelGradientGVEqualsSequential() throws Exception {
+		parallelEqualsSequential("gradient");
+	}
+
+	@Test
+	public void parallelDerivativeGVEqualsSequential() throws Exception {
+		parallelEqualsSequential("derivative");
+	}
+
+	@Test
+	public void windowsWithWholeContextEqualWholeUtterance() throws Exception {
+		HMMData htsData = new HMMData();
+		HTSPStream whole = stream(11);
+		whole.mlpg(htsData, false);
+		HTSPStream windowed = stream(11);
+		for (int from = 0; from < FRAMES; from += 8) {
+			windowed.mlpg(htsData, from, Math.min(FRAMES, from + 8), FRAMES);
+		}
+		assertSameParameters(whole, windowed);
+	}
+
+	@Test
+	public void windowsApproximateWholeUtterance() throws Exception {
+		HMMData htsData = new HMMData();
+		HTSPStream whole = stream(11);
+		whole.mlpg(htsData, false);
+		HTSPStream windowed = stream(11);
+		// generate the windows out of order, each must only depend on its own context
+		for (int from = FRAMES - 8; from >= 0; from -= 8) {
+			windowed.mlpg(htsData, from, from + 8, 25);
+		}
+		windowed.mlpg(htsData, 0, FRAMES % 8, 25);
+		for (int t = 0; t < FRAMES; t++) {
+			for (int m = 0; m < ORDER; m++) {
+				assertEquals("frame " + t + ", dimension " + m, whole.getPar(t, m), windowed.getPar(t, m), 1e-3);
+			}
+		}
+	}
+
+	@Test
+	public void windowLeavesOtherFramesAlone() throws Exception {
+		HTSPStream pst = stream(11);
+		pst.mlpg(new HMMData(), 20, 30, 5);
+		for (int t = 0; t < FRAMES; t++) {
+			if (t < 20 || t >= 30) {
+				for (int m = 0; m < ORDER; m++) {
+					assertEquals(0, pst.getPar(t, m), 0);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package marytts.htsengine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.DecisionNode.BinaryByteDecisionNode;
+import marytts.cart.LeafNode.PdfLeafNode;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.htsengine.HMMData.FeatureType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PdfLookupCacheTest {
+
+	private static final String[] PHONES = { "a", "b", "c" };
+
+	private FeatureDefinition featureDefinition;
+	/* the duration leaves, and for each of the three LF0 states the leaf for "yes" and the leaf for "no" */
+	private PdfLeafNode durA, durOther;
+	private PdfLeafNode[] lf0Yes, lf0No;
+	private CART[][] trees;
+	private int[] minNumberOfData;
+
+	/*
+	 * The duration model has one state, asking about the phone. The LF0 model has three states, each with a tree of its own
+	 * and leaves of its own: the first state asks whether the phone is "a", the second whether it is stressed, the third
+	 * whether the phone is "b". No tree asks about accent.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader("ByteValuedFeatureProcessors\n"
+				+ "phone 0 a b c\n" + "stressed 0 1\n" + "accent 0 1\n" + "ShortValuedFeatureProcessors\n"
+				+ "ContinuousFeatureProcessors\n")), false);
+		durA = leaf(1, 10);
+		durOther = leaf(2, 5);
+		lf0Yes = new PdfLeafNode[] { leaf(3, 4.5), leaf(5, 5.1), leaf(7, 4.8) };
+		lf0No = new PdfLeafNode[] { leaf(4, 4.6), leaf(6, 5.0), leaf(8, 4.9) };
+		trees = new CART[FeatureType.values().length][];
+		trees[FeatureType.DUR.ordinal()] = new CART[] { tree("phone", "a", durA, durOther) };
+		trees[FeatureType.LF0.ordinal()] = new CART[] { tree("phone", "a", lf0Yes[0], lf0No[0]),
+				tree("stressed", "1", lf0Yes[1], lf0No[1]), tree("phone", "b", lf0Yes[2], lf0No[2]) };
+		minNumberOfData = new int[trees.length];
+	}
+
+	private static PdfLeafNode leaf(int index, double mean) throws Exception {
+		return new PdfLeafNode(index, new double[][] { { mean, 1 } });
+	}
+
+	private CART tree(String feature, String value, PdfLeafNode yes, PdfLeafNode no) {
+		DecisionNode root = new BinaryByteDecisionNode(feature, value, featureDefinition);
+		root.addDaughter(yes);
+		root.addDaughter(no);
+		root.setIsRoot(true);
+		root.countData();
+		return new CART(root, featureDefinition);
+	}
+
+	private FeatureVector featureVector(String phone, String stressed, String accent) {
+		byte[] bytes = new byte[] { featureDefinition.getFeatureValueAsByte("phone", phone),
+				featureDefinition.getFeatureValueAsByte("stressed", stressed),
+				featureDefinition.getFeatureValueAsByte("accent", accent) };
+		return new FeatureVector(bytes, new short[0], new float[0], 0);
+	}
+
+	@Test
+	public void findsLeafOfEachState() {
+		PdfLookupCache cache = new PdfLookupCache(trees, minNumberOfData, 100);
+		FeatureVector fv = featureVector("a", "1", "0");
+		assertSame(durA, cache.getLeaves(fv, FeatureType.DUR)[0]);
+		assertArrayEquals(new PdfLeafNode[] { lf0Yes[0], lf0Yes[1], lf0No[2] }, cache.getLeaves(fv, FeatureType.LF0));
+		fv = featureVector("b", "0", "0");
+		assertSame(durOther, cache.getLeaves(fv, FeatureType.DUR)[0]);
+		assertArrayEquals(new PdfLeafNode[] { lf0No[0], lf0No[1], lf0Yes[2] }, cache.getLeaves(fv, FeatureType.LF0));
+	}
+
+	@Test
+	public void givesSameLeavesAsTrees() {
+		PdfLookupCache cache = new PdfLookupCache(trees, minNumberOfData, 100);
+		PdfLookupCache walker = new PdfLookupCache(trees, minNumberOfData, 0);
+		// twice over all contexts, so that the second round is answered from the cache
+		for (int round = 0; round < 2; round++) {
+			for (String phone : PHONES) {
+				for (String stressed : new String[] { "0", "1" }) {
+					for (String accent : new String[] { "0", "1" }) {
+						FeatureVector fv = featureVector(phone, stressed, accent);
+						for (FeatureType type : new FeatureType[] { FeatureType.DUR, FeatureType.LF0 }) {
+							assertArrayEquals(walker.getLeaves(fv, type), cache.getLeaves(fv, type));
+						}
+					}
+				}
+			}
+		}
+		// accent does not count: 3 phones times 2 stress values, each looked up once per round
+		assertEquals(6, cache.getMisses());
+		assertEquals(6, cache.getHits());
+	}
+
+	@Test
+	public void keysOnQueriedFeaturesOnly() {
+		PdfLookupCache cache = new PdfLookupCache(trees, minNumberOfData, 100);
+		assertEquals(2, cache.getNumberOfKeyFeatures());
+		PdfLeafNode[] unaccented = cache.getLeaves(featureVector("c", "1", "0"), FeatureType.LF0);
+		assertEquals(1, cache.getMisses());
+		// stressed is asked only by the second LF0 state:
+		PdfLeafNode[] unstressed = cache.getLeaves(featureVector("c", "0", "0"), FeatureType.LF0);
+		assertEquals(2, cache.getMisses());
+		// accent is not asked by any tree:
+		assertSame(unaccented, cache.getLeaves(featureVector("c", "1", "1"), FeatureType.LF0));
+		assertEquals(1, cache.getHits());
+		assertNotSame(unaccented, unstressed);
+		assertSame(unaccented[0], unstressed[0]);
+		assertSame(lf0Yes[1], unaccented[1]);
+		assertSame(lf0No[1], unstressed[1]);
+		assertSame(unaccented[2], unstressed[2]);
+		assertEquals(1.0 / 3, cache.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void countsOneLookupPerFeatureVector() {
+		PdfLookupCache cache = new PdfLookupCache(trees, minNumberOfData, 100);
+		FeatureVector fv = featureVector("b", "1", "0");
+		cache.getLeaves(fv, FeatureType.DUR);
+		cache.getLeaves(fv, FeatureType.LF0);
+		cache.getLeaves(fv, FeatureType.DUR);
+		assertEquals(1, cache.getMisses());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void changedFeatureVectorIsLookedUpAgain() {
+		PdfLookupCache cache = new PdfLookupCache(trees, minNumberOfData, 100);
+		FeatureVector fv = featureVector("a", "1", "0");
+		assertSame(durA, cache.getLeaves(fv, FeatureType.DUR)[0]);
+		fv.byteValuedDiscreteFeatures[0] = featureDefinition.getFeatureValueAsByte("phone", "b");
+		assertSame(durOther, cache.getLeaves(fv, FeatureType.DUR)[0]);
+		assertArrayEquals(new PdfLeafNode[] { lf0No[0], lf0Yes[1], lf0Yes[2] }, cache.getLeaves(fv, FeatureType.LF0));
+		assertEquals(2, cache.getMisses());
+		fv.byteValuedDiscreteFeatures[0] = featureDefinition.getFeatureValueAsByte("phone", "a");
+		assertSame(durA, cache.getLeaves(fv, FeatureType.DUR)[0]);
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void staysWithinSizeLimit() {
+		PdfLookupCache cache = new PdfLookupCache(trees, minNumberOfData, 1);
+		for (int i = 0; i < 60; i++) {
+			FeatureVector fv = featureVector(PHONES[i % 3], i % 2 == 0 ? "0" : "1", "0");
+			assertSame(i % 3 == 0 ? durA : durOther, cache.getLeaves(fv, FeatureType.DUR)[0]);
+		}
+		assertEquals(60, cache.getHits() + cache.getMisses());
+		// at most one entry in each of the 16 stripes
+		assertTrue(cache.getMisses() - cache.getEvictions() <= 16);
+	}
+
+	@Test
+	public void sizeZeroOnlyWalksTrees() {
+		PdfLookupCache cache = new PdfLookupCache(trees, minNumberOfData, 0);
+		assertArrayEquals(new PdfLeafNode[] { lf0No[0], lf0No[1], lf0Yes[2] },
+				cache.getLeaves(featureVector("b", "0", "1"), FeatureType.LF0));
+		assertEquals(0, cache.getHits() + cache.getMisses());
+	}
+}
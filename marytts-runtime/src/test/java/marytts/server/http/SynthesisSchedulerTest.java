@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SynthesisSchedulerTest {
+
+	private static Callable<Void> blockUntil(final CountDownLatch latch) {
+		return new Callable<Void>() {
+			public Void call() throws Exception {
+				latch.await();
+				return null;
+			}
+		};
+	}
+
+	@Test
+	public void rejectsWhenQueueIsFull() throws Exception {
+		SynthesisScheduler scheduler = new SynthesisScheduler(1, 1, 60000);
+		CountDownLatch release = new CountDownLatch(1);
+		SynthesisScheduler.Job running = scheduler.submit(blockUntil(release), null);
+		assertTrue(running.awaitStart());
+		SynthesisScheduler.Job waiting = scheduler.submit(blockUntil(release), null);
+		try {
+			scheduler.submit(blockUntil(release), null);
+			fail("Expected the third request to be rejected");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(1, scheduler.getRejected());
+		assertEquals(1, scheduler.getQueueDepth());
+		assertTrue(scheduler.getRetryAfterSeconds() >= 1);
+		release.countDown();
+		running.get();
+		assertTrue(waiting.awaitStart());
+		waiting.get();
+	}
+
+	@Test
+	public void dropsRequestsAtTheirDeadline() throws Exception {
+		SynthesisScheduler scheduler = new SynthesisScheduler(1, 1, 50);
+		CountDownLatch release = new CountDownLatch(1);
+		SynthesisScheduler.Job running = scheduler.submit(blockUntil(release), null);
+		assertTrue(running.awaitStart());
+		final CountDownLatch dropped = new CountDownLatch(1);
+		SynthesisScheduler.Job waiting = scheduler.submit(blockUntil(release), new Runnable() {
+			public void run() {
+				dropped.countDown();
+			}
+		});
+		// the waiting request is dropped although the worker is still busy:
+		assertTrue(dropped.await(5, TimeUnit.SECONDS));
+		assertFalse(waiting.awaitStart());
+		assertTrue(waiting.isCancelled());
+		assertEquals(1, scheduler.getExpired());
+		assertEquals(0, scheduler.getQueueDepth());
+		// and its place in the queue is free again:
+		SynthesisScheduler.Job next = scheduler.submit(blockUntil(release), null);
+		release.countDown();
+		running.get();
+		assertTrue(next.awaitStart());
+		next.get();
+	}
+
+	@Test
+	public void startsRequestsInOrderOfArrival() throws Exception {
+		SynthesisScheduler scheduler = new SynthesisScheduler(1, 10, 60000);
+		CountDownLatch release = new CountDownLatch(1);
+		SynthesisScheduler.Job running = scheduler.submit(blockUntil(release), null);
+		assertTrue(running.awaitStart());
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		List<SynthesisScheduler.Job> jobs = new ArrayList<SynthesisScheduler.Job>();
+		for (int i = 0; i < 5; i++) {
+			final int number = i;
+			jobs.add(scheduler.submit(new Callable<Void>() {
+				public Void call() {
+					order.add(number);
+					return null;
+				}
+			}, null));
+		}
+		release.countDown();
+		for (SynthesisScheduler.Job job : jobs) {
+			job.get();
+		}
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.unitselection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import marytts.datatypes.MaryXML;
+import marytts.unitselection.select.DiphoneTarget;
+import marytts.unitselection.select.DiphoneUnitSelector;
+import marytts.unitselection.select.HalfPhoneUnitSelector;
+import marytts.unitselection.select.Target;
+import marytts.unitselection.select.UnitSelector;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class UnitSelectionSynthesizerTest {
+
+	private static Element phone(Document doc, String p) {
+		Element ph = MaryXML.createElement(doc, MaryXML.PHONE);
+		ph.setAttribute("p", p);
+		return ph;
+	}
+
+	private static Element boundary(Document doc, String breakindex) {
+		Element b = MaryXML.createElement(doc, MaryXML.BOUNDARY);
+		if (breakindex != null) {
+			b.setAttribute("breakindex", breakindex);
+		}
+		return b;
+	}
+
+	private static List<Target> targets(List<Element> segmentsAndBoundaries) {
+		List<Target> targets = new ArrayList<Target>();
+		for (Element sOrB : segmentsAndBoundaries) {
+			targets.add(new Target(UnitSelector.getPhoneSymbol(sOrB), sOrB));
+		}
+		return targets;
+	}
+
+	private static List<Target> join(List<List<Target>> sentences) {
+		List<Target> all = new ArrayList<Target>();
+		for (List<Target> sentence : sentences) {
+			all.addAll(sentence);
+		}
+		return all;
+	}
+
+	@Test
+	public void splitsAfterSentenceBoundaries() {
+		Document doc = MaryXML.newDocument();
+		List<Element> segmentsAndBoundaries = new ArrayList<Element>();
+		segmentsAndBoundaries.add(phone(doc, "a"));
+		segmentsAndBoundaries.add(boundary(doc, "4"));
+		segmentsAndBoundaries.add(phone(doc, "b"));
+		Element sentenceEnd = boundary(doc, "5");
+		segmentsAndBoundaries.add(sentenceEnd);
+		segmentsAndBoundaries.add(phone(doc, "c"));
+		segmentsAndBoundaries.add(boundary(doc, null));
+		segmentsAndBoundaries.add(phone(doc, "d"));
+		segmentsAndBoundaries.add(boundary(doc, "6"));
+		List<Target> targets = targets(segmentsAndBoundaries);
+
+		List<List<Target>> sentences = UnitSelectionSynthesizer.splitAtMajorBoundaries(targets);
+		assertEquals(2, sentences.size());
+		assertEquals(4, sentences.get(0).size());
+		assertSame(sentenceEnd, sentences.get(0).get(3).getMaryxmlElement());
+		assertEquals(4, sentences.get(1).size());
+		assertEquals(targets, join(sentences));
+	}
+
+	@Test
+	public void keepsTrailingTargetsWithoutBoundary() {
+		Document doc = MaryXML.newDocument();
+		List<Element> segmentsAndBoundaries = new ArrayList<Element>();
+		segmentsAndBoundaries.add(phone(doc, "a"));
+		segmentsAndBoundaries.add(boundary(doc, "5"));
+		segmentsAndBoundaries.add(phone(doc, "b"));
+
+		List<List<Target>> sentences = UnitSelectionSynthesizer.splitAtMajorBoundaries(targets(segmentsAndBoundaries));
+		assertEquals(2, sentences.size());
+		assertEquals(1, sentences.get(1).size());
+	}
+
+	@Test
+	public void keepsBothHalvesOfBoundaryTogether() throws Exception {
+		Document doc = MaryXML.newDocument();
+		List<Element> segmentsAndBoundaries = new ArrayList<Element>();
+		segmentsAndBoundaries.add(phone(doc, "a"));
+		Element sentenceEnd = boundary(doc, "5");
+		segmentsAndBoundaries.add(sentenceEnd);
+		segmentsAndBoundaries.add(phone(doc, "b"));
+		segmentsAndBoundaries.add(boundary(doc, "5"));
+		List<Target> targets = new HalfPhones().createTargets(segmentsAndBoundaries);
+
+		List<List<Target>> sentences = UnitSelectionSynthesizer.splitAtMajorBoundaries(targets);
+		assertEquals(2, sentences.size());
+		assertEquals(4, sentences.get(0).size());
+		assertSame(sentenceEnd, sentences.get(0).get(3).getMaryxmlElement());
+		assertEquals(targets, join(sentences));
+	}
+
+	/*
+	 * Diphone targets created for each sentence on its own would begin with an extra silence and end with one; splitting the
+	 * targets of the whole chunk keeps the silence diphones of the sentence boundary as they are.
+	 */
+	@Test
+	public void addsNoSilencesBetweenDiphoneSentences() throws Exception {
+		Document doc = MaryXML.newDocument();
+		List<Element> segmentsAndBoundaries = new ArrayList<Element>();
+		segmentsAndBoundaries.add(phone(doc, "a"));
+		Element sentenceEnd = boundary(doc, "5");
+		segmentsAndBoundaries.add(sentenceEnd);
+		Element b = phone(doc, "b");
+		segmentsAndBoundaries.add(b);
+		segmentsAndBoundaries.add(boundary(doc, "5"));
+		// _-a a-_ _-b b-_ and the final _-_
+		List<Target> targets = new Diphones().createTargets(segmentsAndBoundaries);
+		assertEquals(5, targets.size());
+
+		List<List<Target>> sentences = UnitSelectionSynthesizer.splitAtMajorBoundaries(targets);
+		assertEquals(2, sentences.size());
+		assertEquals(targets, join(sentences));
+		DiphoneTarget last = (DiphoneTarget) sentences.get(0).get(1);
+		assertEquals("a-_", last.getName());
+		assertSame(sentenceEnd, last.right.getMaryxmlElement());
+		DiphoneTarget first = (DiphoneTarget) sentences.get(1).get(0);
+		assertEquals("_-b", first.getName());
+		assertSame(sentenceEnd, first.left.getMaryxmlElement());
+		assertSame(b, first.right.getMaryxmlElement());
+		// the final silence without an element stays with the last sentence
+		assertEquals(3, sentences.get(1).size());
+		assertNull(((DiphoneTarget) sentences.get(1).get(2)).right.getMaryxmlElement());
+	}
+
+	private static class HalfPhones extends HalfPhoneUnitSelector {
+		HalfPhones() throws Exception {
+			super();
+		}
+
+		@Override
+		public List<Target> createTargets(List<Element> segmentsAndBoundaries) {
+			return super.createTargets(segmentsAndBoundaries);
+		}
+	}
+
+	private static class Diphones extends DiphoneUnitSelector {
+		Diphones() throws Exception {
+			super();
+		}
+
+		@Override
+		public List<Target> createTargets(List<Element> segmentsAndBoundaries) {
+			return super.createTargets(segmentsAndBoundaries);
+		}
+	}
+}
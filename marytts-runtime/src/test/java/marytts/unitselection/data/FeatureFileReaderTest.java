@@ -0,0 +1,110 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.util.data.MaryHeader;
+
+import org.junit.Test;
+
+public class FeatureFileReaderTest {
+
+	private static final String FEATURE_DEFINITION = "ByteValuedFeatureProcessors\n" + "1 | phone 0 a b c\n"
+			+ "ShortValuedFeatureProcessors\n" + "1 | count c0 c1 c2 c3\n" + "ContinuousFeatureProcessors\n" + "1 linear | dur\n";
+
+	private static FeatureVector[] writeFeatureFile(File file, FeatureDefinition featureDefinition) throws Exception {
+		FeatureVector[] fvs = new FeatureVector[10];
+		for (int i = 0; i < fvs.length; i++) {
+			fvs[i] = new FeatureVector(new byte[] { (byte) (i % 4) }, new short[] { (short) (i % 5) }, new float[] { 0.1f * i }, i);
+		}
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			new MaryHeader(MaryHeader.UNITFEATS).writeTo(out);
+			featureDefinition.writeBinaryTo(out);
+			out.writeInt(fvs.length);
+			for (FeatureVector fv : fvs) {
+				fv.writeTo(out);
+			}
+		} finally {
+			out.close();
+		}
+		return fvs;
+	}
+
+	@Test
+	public void readsFeaturesIntoColumns() throws Exception {
+		FeatureDefinition featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(FEATURE_DEFINITION)), true);
+		File file = File.createTempFile("features", ".mry");
+		file.deleteOnExit();
+		FeatureVector[] fvs = writeFeatureFile(file, featureDefinition);
+
+		FeatureFileReader ffr = FeatureFileReader.getFeatureFileReader(file.getPath());
+		assertEquals(fvs.length, ffr.getNumberOfUnits());
+		for (int i = 0; i < fvs.length; i++) {
+			assertEquals(fvs[i].getByteFeature(0), ffr.getByteFeature(i, 0));
+			assertEquals(fvs[i].getShortFeature(1), ffr.getShortFeature(i, 1));
+			assertEquals(fvs[i].getContinuousFeature(2), ffr.getContinuousFeature(i, 2), 0);
+			assertEquals(fvs[i].getShortFeature(1), ffr.getShortFeatureColumn(1)[i]);
+			FeatureVector fv = ffr.getFeatureVector(i);
+			assertEquals(i, fv.getUnitIndex());
+			assertArrayEquals(fvs[i].byteValuedDiscreteFeatures, fv.byteValuedDiscreteFeatures);
+			assertArrayEquals(fvs[i].shortValuedDiscreteFeatures, fv.shortValuedDiscreteFeatures);
+			assertArrayEquals(fvs[i].continuousFeatures, fv.continuousFeatures, 0);
+		}
+		FeatureVector[] all = ffr.getFeatureVectors();
+		assertSame(all, ffr.getFeatureVectors());
+		assertSame(all[3], ffr.getFeatureVector(3));
+	}
+
+	@Test
+	public void readsMemoryMappedFeatures() throws Exception {
+		FeatureDefinition featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(FEATURE_DEFINITION)), true);
+		File file = File.createTempFile("features", ".mry");
+		file.deleteOnExit();
+		FeatureVector[] fvs = writeFeatureFile(file, featureDefinition);
+
+		FeatureFileReader ffr = FeatureFileReader.getFeatureFileReader(file.getPath(), true);
+		assertTrue(ffr.isMemoryMapped());
+		assertEquals(fvs.length, ffr.getNumberOfUnits());
+		for (int i = 0; i < fvs.length; i++) {
+			assertEquals(fvs[i].getByteFeature(0), ffr.getByteFeature(i, 0));
+			assertEquals(fvs[i].getShortFeature(1), ffr.getShortFeature(i, 1));
+			assertEquals(fvs[i].getContinuousFeature(2), ffr.getContinuousFeature(i, 2), 0);
+			assertEquals(fvs[i].getContinuousFeature(2), ffr.getContinuousFeatureColumn(2)[i], 0);
+			FeatureVector fv = ffr.getFeatureVector(i);
+			assertArrayEquals(fvs[i].byteValuedDiscreteFeatures, fv.byteValuedDiscreteFeatures);
+			assertArrayEquals(fvs[i].shortValuedDiscreteFeatures, fv.shortValuedDiscreteFeatures);
+			assertArrayEquals(fvs[i].continuousFeatures, fv.continuousFeatures, 0);
+		}
+	}
+}
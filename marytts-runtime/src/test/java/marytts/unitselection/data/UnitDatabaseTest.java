@@ -0,0 +1,237 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.DecisionNode.BinaryByteDecisionNode;
+import marytts.cart.LeafNode.IntArrayLeafNode;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureVector;
+import marytts.unitselection.select.Target;
+import marytts.unitselection.select.TargetCostFunction;
+import marytts.unitselection.select.viterbi.ViterbiCandidate;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class UnitDatabaseTest {
+
+	/* units 4 * f to 4 * f + 3 come from the file "file" + f */
+	private static final int NUMBER_OF_UNITS = 20;
+	private static final int[] A_UNITS = { 0, 3, 4, 9, 13, 17 };
+	private static final int[] B_UNITS = { 1, 2, 6, 10, 18, 19 };
+
+	private FeatureDefinition featureDefinition;
+	private CART cart;
+	private TestDatabase database;
+
+	@Before
+	public void setUp() throws Exception {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader("ByteValuedFeatureProcessors\n"
+				+ "phone 0 a b\n" + "ShortValuedFeatureProcessors\n" + "ContinuousFeatureProcessors\n")), false);
+		DecisionNode root = new BinaryByteDecisionNode("phone", "a", featureDefinition);
+		root.addDaughter(new IntArrayLeafNode(A_UNITS));
+		root.addDaughter(new IntArrayLeafNode(B_UNITS));
+		root.setIsRoot(true);
+		root.countData();
+		cart = new CART(root, featureDefinition);
+		database = new TestDatabase();
+		load(database, NUMBER_OF_UNITS);
+	}
+
+	private void load(UnitDatabase db, int numberOfUnits) {
+		db.load(new ZeroTargetCosts(), null, new TestUnits(numberOfUnits), cart, null, new TimelineReader() {
+		}, 0);
+	}
+
+	private Target target(String phone, String blacklist) throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element sentence = doc.createElement("s");
+		if (blacklist != null) {
+			sentence.setAttribute("blacklist", blacklist);
+		}
+		doc.appendChild(sentence);
+		Element element = doc.createElement("ph");
+		sentence.appendChild(element);
+		Target target = new Target(phone, element);
+		target.setFeatureVector(new FeatureVector(new byte[] { featureDefinition.getFeatureValueAsByte("phone", phone) },
+				new short[0], new float[0], 0));
+		return target;
+	}
+
+	private int[] candidateUnits(Target target) {
+		List<ViterbiCandidate> candidates = database.getCandidates(target);
+		int[] units = new int[candidates.size()];
+		for (int i = 0; i < units.length; i++) {
+			assertSame(target, candidates.get(i).getTarget());
+			units[i] = candidates.get(i).getUnit().index;
+		}
+		Arrays.sort(units);
+		return units;
+	}
+
+	@Test
+	public void preselectsUnitsOfLeaf() throws Exception {
+		assertArrayEquals(A_UNITS, candidateUnits(target("a", null)));
+		assertArrayEquals(B_UNITS, candidateUnits(target("b", "")));
+		assertEquals(2, database.preselectionCache.size());
+		assertSame(A_UNITS, database.preselectUnits(target("a", null)));
+	}
+
+	@Test
+	public void blacklistExcludesUnitsOfListedFiles() throws Exception {
+		// file1 has units 4-7, file4 has units 16-19; a blacklist excludes the files whose names it contains, so "file10"
+		// excludes file1
+		assertArrayEquals(new int[] { 0, 3, 9, 13 }, candidateUnits(target("a", "file1 file4")));
+		assertArrayEquals(new int[] { 1, 2, 10 }, candidateUnits(target("b", "file1 file4")));
+		assertArrayEquals(new int[] { 1, 2, 6, 18, 19 }, candidateUnits(target("b", "file2")));
+		assertArrayEquals(new int[] { 1, 2, 10, 18, 19 }, candidateUnits(target("b", "file10")));
+		assertEquals(3, database.blacklistCache.size());
+		BitSet excluded = database.getBlacklistedUnits("file1 file4");
+		assertEquals(8, excluded.cardinality());
+		assertEquals(4, excluded.nextSetBit(0));
+		assertEquals(16, excluded.nextSetBit(8));
+		assertNull(database.getBlacklistedUnits(""));
+	}
+
+	@Test
+	public void blacklistsAreLookedUpOnce() throws Exception {
+		BitSet excluded = database.getBlacklistedUnits("file3");
+		assertSame(excluded, database.getBlacklistedUnits("file3"));
+		assertEquals(NUMBER_OF_UNITS, database.filenamesLookedUp);
+		database.getBlacklistedUnits("file2");
+		assertEquals(NUMBER_OF_UNITS, database.filenamesLookedUp);
+	}
+
+	@Test
+	public void mostRecentlyUsedBlacklistsAreKept() throws Exception {
+		BitSet first = database.getBlacklistedUnits("file0");
+		for (int i = 1; i < 20; i++) {
+			database.getBlacklistedUnits("file0");
+			database.getBlacklistedUnits("file" + i);
+		}
+		assertTrue(database.blacklistCache.size() <= 16);
+		assertSame(first, database.getBlacklistedUnits("file0"));
+	}
+
+	@Test
+	public void loadClearsCaches() throws Exception {
+		candidateUnits(target("a", "file1"));
+		assertEquals(1, database.preselectionCache.size());
+		assertEquals(1, database.blacklistCache.size());
+		// a voice with fewer units, whose basenames must be looked up again
+		load(database, 8);
+		assertEquals(0, database.preselectionCache.size());
+		assertEquals(0, database.blacklistCache.size());
+		assertArrayEquals(new int[] { 0, 3, 9, 13, 17 }, candidateUnits(target("a", "file1")));
+		assertEquals(NUMBER_OF_UNITS + 8, database.filenamesLookedUp);
+
+		database.load(new ZeroTargetCosts(), null, null, new TestUnits(NUMBER_OF_UNITS), cart, null, new TimelineReader() {
+		}, 0);
+		assertEquals(0, database.preselectionCache.size());
+		assertEquals(0, database.blacklistCache.size());
+		assertArrayEquals(new int[] { 0, 3, 9, 13, 17 }, candidateUnits(target("a", "file1")));
+	}
+
+	/**
+	 * A database whose units come from files named after their index, so that no basename timeline is needed.
+	 */
+	private static class TestDatabase extends UnitDatabase {
+		int filenamesLookedUp = 0;
+
+		@Override
+		public String getFilename(Unit unit) {
+			filenamesLookedUp++;
+			return "file" + unit.index / 4;
+		}
+	}
+
+	private static class TestUnits extends UnitFileReader {
+		private final int numberOfUnits;
+
+		TestUnits(int numberOfUnits) {
+			this.numberOfUnits = numberOfUnits;
+		}
+
+		@Override
+		public int getNumberOfUnits() {
+			return numberOfUnits;
+		}
+
+		@Override
+		public Unit getUnit(int i) {
+			return new Unit(100 * i, 100, i);
+		}
+	}
+
+	private static class ZeroTargetCosts implements TargetCostFunction {
+		public void load(String featureFileName, InputStream weightsStream, FeatureProcessorManager featProc) {
+		}
+
+		public void load(FeatureFileReader featureFileReader, InputStream weightsStream, FeatureProcessorManager featProc) {
+		}
+
+		public double cost(Target target, Unit unit) {
+			return 0;
+		}
+
+		public void computeTargetFeatures(Target target) {
+		}
+
+		public void computeTargetFeatures(List<? extends Target> targets) {
+		}
+
+		public FeatureDefinition getFeatureDefinition() {
+			return null;
+		}
+
+		public String getFeature(Unit unit, String featureName) {
+			return null;
+		}
+
+		public FeatureVector getFeatureVector(Unit unit) {
+			return null;
+		}
+
+		public FeatureVector[] getFeatureVectors() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import marytts.features.ByteValuedFeatureProcessor;
+import marytts.features.ContinuousFeatureProcessor;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureVector;
+import marytts.features.ShortValuedFeatureProcessor;
+import marytts.unitselection.data.FeatureFileReader;
+import marytts.unitselection.data.Unit;
+import marytts.util.data.MaryHeader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FFRTargetCostFunctionTest {
+
+	/* two features of each type with a weight, one without; the phone feature has a similarity matrix */
+	private static final String WEIGHTS = "ByteValuedFeatureProcessors\n" + "3 | phone 0 a b c\n" + "1 | pos 0 n v\n"
+			+ "0 | accent 0 1\n" + "ShortValuedFeatureProcessors\n" + "2 | count 0 c1 c2 c3\n" + "0 | other s0 s1\n"
+			+ "ContinuousFeatureProcessors\n" + "1.5 linear | dur\n" + "0.5 step 20% | f0\n" + "0 linear | energy\n"
+			+ "FeatureSimilarity\n" + "phone 0 a b c\n" + "0\n" + "a 0.1\n" + "b 0.3 0.2\n" + "c 0.4 0.6 0.5\n" + "\n";
+	private static final int NUMBER_OF_UNITS = 40;
+	private static final int NUMBER_OF_TARGETS = 12;
+
+	private static File featureFile;
+
+	@BeforeClass
+	public static void writeFeatureFile() throws Exception {
+		FeatureDefinition featureDefinition = weights();
+		featureFile = File.createTempFile("targetCostFeatures", ".mry");
+		Random random = new Random(5);
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(featureFile));
+		try {
+			new MaryHeader(MaryHeader.UNITFEATS).writeTo(out);
+			featureDefinition.writeBinaryTo(out);
+			out.writeInt(NUMBER_OF_UNITS);
+			for (int i = 0; i < NUMBER_OF_UNITS; i++) {
+				randomFeatureVector(featureDefinition, random, i).writeTo(out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@AfterClass
+	public static void deleteFeatureFile() {
+		featureFile.delete();
+	}
+
+	private static FeatureDefinition weights() throws Exception {
+		return new FeatureDefinition(new BufferedReader(new StringReader(WEIGHTS)), true);
+	}
+
+	private static FeatureVector randomFeatureVector(FeatureDefinition featureDefinition, Random random, int index) {
+		int nBytes = featureDefinition.getNumberOfByteFeatures();
+		byte[] bytes = new byte[nBytes];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) random.nextInt(featureDefinition.getNumberOfValues(i));
+		}
+		short[] shorts = new short[featureDefinition.getNumberOfShortFeatures()];
+		for (int i = 0; i < shorts.length; i++) {
+			shorts[i] = (short) random.nextInt(featureDefinition.getNumberOfValues(nBytes + i));
+		}
+		float[] floats = new float[featureDefinition.getNumberOfContinuousFeatures()];
+		for (int i = 0; i < floats.length; i++) {
+			// an undefined feature does not count
+			floats[i] = random.nextInt(6) == 0 ? Float.NaN : 50 + 100 * random.nextFloat();
+		}
+		return new FeatureVector(bytes, shorts, floats, index);
+	}
+
+	private static FFRTargetCostFunction load(boolean memoryMapped) throws Exception {
+		FFRTargetCostFunction tcf = new FFRTargetCostFunction();
+		tcf.load(FeatureFileReader.getFeatureFileReader(featureFile.getPath(), memoryMapped),
+				new ByteArrayInputStream(WEIGHTS.getBytes("UTF-8")), new TestFeatureProcessors());
+		return tcf;
+	}
+
+	private static Target[] targets(FeatureDefinition featureDefinition) {
+		Random random = new Random(7);
+		Target[] targets = new Target[NUMBER_OF_TARGETS];
+		for (int t = 0; t < targets.length; t++) {
+			targets[t] = new Target("t" + t, null);
+			targets[t].setFeatureVector(randomFeatureVector(featureDefinition, random, 0));
+		}
+		return targets;
+	}
+
+	private static Unit[] units() {
+		Unit[] units = new Unit[NUMBER_OF_UNITS];
+		for (int i = 0; i < units.length; i++) {
+			units[i] = new Unit(100 * i, 100, i);
+		}
+		return units;
+	}
+
+	/**
+	 * A target cost function that compares the unit feature vectors one by one, as cost(Target, Unit) did before the unit
+	 * features were packed.
+	 */
+	private static FFRTargetCostFunction loadReference() throws Exception {
+		FFRTargetCostFunction tcf = load(false);
+		tcf.featureVectors = tcf.featureFileReader.getCopyOfFeatureVectors();
+		tcf.packedByteValues = null;
+		return tcf;
+	}
+
+	private static double[][] referenceCosts(Target[] targets, Unit[] units) throws Exception {
+		FFRTargetCostFunction tcf = loadReference();
+		double[][] costs = new double[targets.length][units.length];
+		for (int t = 0; t < targets.length; t++) {
+			for (int k = 0; k < units.length; k++) {
+				costs[t][k] = tcf.cost(targets[t], units[k]);
+			}
+		}
+		return costs;
+	}
+
+	private static void assertCostsEqualReference(FFRTargetCostFunction tcf) throws Exception {
+		assertCostsEqualReference(tcf, false);
+	}
+
+	/**
+	 * @param rowViews
+	 *            whether to replace the feature vectors of the targets by the rows of a feature matrix, as computed at run time
+	 */
+	private static void assertCostsEqualReference(FFRTargetCostFunction tcf, boolean rowViews) throws Exception {
+		Target[] targets = targets(tcf.getFeatureDefinition());
+		Unit[] units = units();
+		double[][] expected = referenceCosts(targets, units);
+		if (rowViews) {
+			tcf.computeTargetFeatures(Arrays.asList(targets));
+			assertNull(targets[0].getFeatureVector().byteValuedDiscreteFeatures);
+		}
+		double[] costs = new double[units.length];
+		for (int t = 0; t < targets.length; t++) {
+			tcf.cost(targets[t], units, costs);
+			for (int k = 0; k < units.length; k++) {
+				String message = "target " + t + ", unit " + k;
+				assertEquals(message, Double.doubleToLongBits(expected[t][k]),
+						Double.doubleToLongBits(tcf.cost(targets[t], units[k])));
+				assertEquals(message, Double.doubleToLongBits(expected[t][k]), Double.doubleToLongBits(costs[k]));
+			}
+		}
+	}
+
+	@Test
+	public void fixtureCoversAllFeatureKinds() throws Exception {
+		FFRTargetCostFunction tcf = load(false);
+		FeatureDefinition weights = tcf.getFeatureDefinition();
+		assertTrue(weights.hasSimilarityMatrix(0));
+		assertFalse(weights.hasSimilarityMatrix(1));
+		assertFalse(tcf.weightsNonZero[2]);
+		assertFalse(tcf.weightsNonZero[4]);
+		assertFalse(tcf.weightsNonZero[7]);
+		assertEquals(2, tcf.packedByteFeatures.length);
+		assertEquals(1, tcf.packedShortFeatures.length);
+		assertEquals(2, tcf.packedContinuousFeatures.length);
+	}
+
+	@Test
+	public void packedCostsEqualFeatureVectorCosts() throws Exception {
+		FFRTargetCostFunction tcf = load(false);
+		assertNotNull(tcf.packedByteValues);
+		assertCostsEqualReference(tcf);
+	}
+
+	@Test
+	public void readerCostsEqualFeatureVectorCosts() throws Exception {
+		FFRTargetCostFunction tcf = load(true);
+		assertNull(tcf.packedByteValues);
+		assertNull(tcf.featureVectors);
+		assertCostsEqualReference(tcf);
+	}
+
+	@Test
+	public void rowViewCostsEqualFeatureVectorCosts() throws Exception {
+		assertCostsEqualReference(load(false), true);
+		assertCostsEqualReference(load(true), true);
+		assertCostsEqualReference(loadReference(), true);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void similaritiesOfFeatureWithoutMatrixAreRefused() throws Exception {
+		weights().getSimilarities(1, (byte) 0);
+	}
+
+	/**
+	 * Feature processors with the names of the features in WEIGHTS; they copy the values of the feature vector that a target
+	 * already has.
+	 */
+	private static class TestFeatureProcessors extends FeatureProcessorManager {
+		TestFeatureProcessors() {
+			final String[] names = { "phone", "pos", "accent", "count", "other", "dur", "f0", "energy" };
+			for (int i = 0; i < 3; i++) {
+				final String name = names[i];
+				final int index = i;
+				addFeatureProcessor(new ByteValuedFeatureProcessor() {
+					public String getName() {
+						return name;
+					}
+
+					public String[] getValues() {
+						return new String[] { "0" };
+					}
+
+					public byte process(Target target) {
+						return target.getFeatureVector().getByteFeature(index);
+					}
+				});
+			}
+			for (int i = 3; i < 5; i++) {
+				final String name = names[i];
+				final int index = i;
+				addFeatureProcessor(new ShortValuedFeatureProcessor() {
+					public String getName() {
+						return name;
+					}
+
+					public String[] getValues() {
+						return new String[] { "0" };
+					}
+
+					public short process(Target target) {
+						return target.getFeatureVector().getShortFeature(index);
+					}
+				});
+			}
+			for (int i = 5; i < 8; i++) {
+				final String name = names[i];
+				final int index = i;
+				addFeatureProcessor(new ContinuousFeatureProcessor() {
+					public String getName() {
+						return name;
+					}
+
+					public float process(Target target) {
+						return target.getFeatureVector().getContinuousFeature(index);
+					}
+				});
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import marytts.unitselection.data.DiphoneUnit;
+import marytts.unitselection.data.Unit;
+import marytts.util.data.MaryHeader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JoinCostFeaturesTest {
+
+	private static final String[] WEIGHT_FUNCTIONS = { "linear", "", "step 20%", "linear" };
+	private static final int NUMBER_OF_UNITS = 12;
+
+	private static File joinFile;
+
+	@BeforeClass
+	public static void writeJoinFile() throws Exception {
+		joinFile = File.createTempFile("joinCostFeatures", ".mry");
+		Random random = new Random(3);
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(joinFile));
+		try {
+			new MaryHeader(MaryHeader.JOINFEATS).writeTo(out);
+			out.writeInt(WEIGHT_FUNCTIONS.length);
+			for (String weightFunction : WEIGHT_FUNCTIONS) {
+				out.writeFloat(0.1f + random.nextFloat());
+				out.writeUTF(weightFunction);
+			}
+			out.writeInt(NUMBER_OF_UNITS);
+			for (int i = 0; i < 2 * NUMBER_OF_UNITS * WEIGHT_FUNCTIONS.length; i++) {
+				// an undefined feature does not count
+				out.writeFloat(i % 7 == 3 ? Float.NaN : 1 + 5 * random.nextFloat());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@AfterClass
+	public static void deleteJoinFile() {
+		joinFile.delete();
+	}
+
+	private static JoinCostFeatures load(boolean memoryMapped, int cacheSize) throws Exception {
+		JoinCostFeatures jcf = new JoinCostFeatures();
+		jcf.load(joinFile.getPath(), null, null, 1, memoryMapped);
+		jcf.setCacheSize(cacheSize);
+		return jcf;
+	}
+
+	private static Unit[] rightUnits() {
+		Unit[] units = new Unit[NUMBER_OF_UNITS + 2];
+		for (int i = 0; i < NUMBER_OF_UNITS; i++) {
+			units[i] = new Unit(100 * i, i == 5 ? 0 : 100, i);
+		}
+		units[NUMBER_OF_UNITS] = new DiphoneUnit(units[2], units[3]);
+		units[NUMBER_OF_UNITS + 1] = new DiphoneUnit(units[8], units[9]);
+		return units;
+	}
+
+	private static void assertBatchEqualsPairs(JoinCostFeatures jcf, Unit left) {
+		Unit[] right = rightUnits();
+		double[] costs = new double[right.length];
+		jcf.cost(null, left, null, right, costs);
+		for (int k = 0; k < right.length; k++) {
+			assertEquals("right unit " + k, Double.doubleToLongBits(jcf.cost(null, left, null, right[k])),
+					Double.doubleToLongBits(costs[k]));
+		}
+	}
+
+	private static void assertBatchEqualsPairs(boolean memoryMapped, int cacheSize) throws Exception {
+		JoinCostFeatures jcf = load(memoryMapped, cacheSize);
+		Unit[] units = rightUnits();
+		for (Unit left : units) {
+			assertBatchEqualsPairs(jcf, left);
+		}
+		// again, with the costs in the cache if there is one
+		for (Unit left : units) {
+			assertBatchEqualsPairs(jcf, left);
+		}
+	}
+
+	@Test
+	public void batchCostsEqualPairCosts() throws Exception {
+		assertBatchEqualsPairs(false, 0);
+	}
+
+	@Test
+	public void batchCostsEqualPairCostsWithCache() throws Exception {
+		assertBatchEqualsPairs(false, JoinCostFeatures.DEFAULT_CACHE_SIZE);
+	}
+
+	@Test
+	public void batchCostsEqualPairCostsMemoryMapped() throws Exception {
+		assertBatchEqualsPairs(true, 0);
+		assertBatchEqualsPairs(true, 16);
+	}
+
+	@Test
+	public void batchCostsBeforePairCostsFillTheCacheEqually() throws Exception {
+		JoinCostFeatures batch = load(false, 4);
+		JoinCostFeatures pairs = load(false, 0);
+		Unit[] right = rightUnits();
+		double[] costs = new double[right.length];
+		for (int i = 0; i < NUMBER_OF_UNITS; i++) {
+			Unit left = right[(7 * i) % NUMBER_OF_UNITS];
+			batch.cost(null, left, null, right, costs);
+			for (int k = 0; k < right.length; k++) {
+				assertEquals(Double.doubleToLongBits(pairs.cost(null, left, null, right[k])), Double.doubleToLongBits(costs[k]));
+				assertEquals(Double.doubleToLongBits(costs[k]), Double.doubleToLongBits(batch.cost(null, left, null, right[k])));
+			}
+		}
+	}
+}
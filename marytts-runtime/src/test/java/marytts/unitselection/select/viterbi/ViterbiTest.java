@@ -0,0 +1,191 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.unitselection.select.viterbi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.JoinCostFunction;
+import marytts.unitselection.select.SelectedUnit;
+import marytts.unitselection.select.Target;
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Level;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ViterbiTest {
+
+	/*
+	 * Four points with four candidates each; the candidates of point p are units 10 * p + c, with target costs TARGET_COSTS[p][c].
+	 * Joins cost 4, except along the recorded chain 3-13-23-33, which costs 0. This chain is the best path, but it uses the
+	 * candidates with the worst target costs at points 1 and 2. Scores are sums of halves of integers, so they are exact.
+	 */
+	private static final int[][] TARGET_COSTS = { { 1, 0, 3, 2 }, { 0, 2, 1, 4 }, { 2, 0, 1, 3 }, { 1, 3, 0, 2 } };
+	private static final int[][] CHAIN = { { 3, 13 }, { 13, 23 }, { 23, 33 } };
+
+	@BeforeClass
+	public static void setUp() {
+		// the debug output of the selected units needs a real database
+		MaryUtils.getLogger("Viterbi").setLevel(Level.INFO);
+	}
+
+	private static Unit unit(int index) {
+		return new Unit(100 * index, 100, index);
+	}
+
+	private static List<Target> targets(int n) {
+		List<Target> targets = new ArrayList<Target>();
+		for (int p = 0; p < n; p++) {
+			targets.add(new Target("p" + p, null));
+		}
+		return targets;
+	}
+
+	private static int[] select(int[][] targetCosts, int[][] zeroJoins, int beamSize, double beamThreshold) throws Exception {
+		List<Target> targets = targets(targetCosts.length);
+		Viterbi viterbi = new Viterbi(targets, new LatticeDatabase(targets, targetCosts, zeroJoins), 0.5f, beamSize);
+		viterbi.setBeamThreshold(beamThreshold);
+		viterbi.apply();
+		List<SelectedUnit> selected = viterbi.getSelectedUnits();
+		assertEquals(targets.size(), selected.size());
+		int[] units = new int[selected.size()];
+		for (int p = 0; p < units.length; p++) {
+			assertSame(targets.get(p), selected.get(p).getTarget());
+			units[p] = selected.get(p).getUnit().index;
+		}
+		return units;
+	}
+
+	private static int[] select(int beamSize, double beamThreshold) throws Exception {
+		return select(TARGET_COSTS, CHAIN, beamSize, beamThreshold);
+	}
+
+	@Test
+	public void unlimitedBeamFindsBestPath() throws Exception {
+		assertArrayEquals(new int[] { 3, 13, 23, 33 }, select(-1, Double.POSITIVE_INFINITY));
+		assertArrayEquals(new int[] { 3, 13, 23, 33 }, select(0, Double.POSITIVE_INFINITY));
+	}
+
+	@Test
+	public void beamConsidersBestTargetCostsOnly() throws Exception {
+		// units 13 and 23 are not among the three best candidates of their points, so all joins cost 4
+		assertArrayEquals(new int[] { 1, 10, 21, 32 }, select(3, Double.POSITIVE_INFINITY));
+		assertArrayEquals(new int[] { 3, 13, 23, 33 }, select(4, Double.POSITIVE_INFINITY));
+	}
+
+	@Test
+	public void beamThresholdPrunesWorsePaths() throws Exception {
+		// unit 3 scores 1.0 at the first point, 1.0 worse than unit 1
+		assertArrayEquals(new int[] { 3, 13, 23, 33 }, select(-1, 1.0));
+		assertArrayEquals(new int[] { 1, 10, 21, 32 }, select(-1, 0.75));
+		assertArrayEquals(new int[] { 1, 10, 21, 32 }, select(0, 0));
+	}
+
+	@Test
+	public void equalScoresKeepPathFoundFirst() throws Exception {
+		/*
+		 * At the second point, the path 0-11 is found before 1-10 replaces 0-10, and both score 1. Both cost 3 to extend to unit
+		 * 20, so the path through 11, which is extended first, is kept, as the search always did.
+		 */
+		int[][] targetCosts = { { 0, 2 }, { 0, 2 }, { 0 } };
+		int[][] zeroJoins = { { 1, 10 }, { 0, 11 } };
+		for (int beamSize : new int[] { -1, 0, 3 }) {
+			assertArrayEquals(new int[] { 0, 11, 20 }, select(targetCosts, zeroJoins, beamSize, Double.POSITIVE_INFINITY));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void deprecatedPathsFollowBackPointers() throws Exception {
+		List<Target> targets = targets(TARGET_COSTS.length);
+		Viterbi viterbi = new Viterbi(targets, new LatticeDatabase(targets, TARGET_COSTS, CHAIN), 0.5f, -1);
+		viterbi.apply();
+		ViterbiPoint last = viterbi.firstPoint;
+		while (last.getNext() != null) {
+			last = last.getNext();
+		}
+		List<ViterbiPath> paths = last.getPaths();
+		assertEquals(4, paths.size());
+		ViterbiPath best = Collections.min(paths);
+		assertEquals(5.5, best.getScore(), 0);
+		int p = TARGET_COSTS.length;
+		for (ViterbiPath path = best; path != null; path = path.getPrevious()) {
+			assertEquals(10 * --p + 3, path.getCandidate().getUnit().index);
+		}
+		assertEquals(0, p);
+	}
+
+	/**
+	 * A database that offers the candidates of a hand-built lattice, in reverse order of their target costs.
+	 */
+	private static class LatticeDatabase extends UnitDatabase {
+		private final List<Target> targets;
+		private final int[][] targetCosts;
+
+		LatticeDatabase(List<Target> targets, int[][] targetCosts, int[][] zeroJoins) {
+			this.targets = targets;
+			this.targetCosts = targetCosts;
+			load(null, new LatticeJoinCosts(zeroJoins), null, null, null, null, 0);
+		}
+
+		@Override
+		public List<ViterbiCandidate> getCandidates(Target target) {
+			int p = targets.indexOf(target);
+			List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>();
+			for (int c = 0; c < targetCosts[p].length; c++) {
+				candidates.add(new ViterbiCandidate(target, unit(10 * p + c), targetCosts[p][c]));
+			}
+			Collections.sort(candidates, Collections.reverseOrder());
+			return candidates;
+		}
+	}
+
+	private static class LatticeJoinCosts implements JoinCostFunction {
+		private final Set<String> zeroJoins = new HashSet<String>();
+
+		LatticeJoinCosts(int[][] zeroJoins) {
+			for (int[] join : zeroJoins) {
+				this.zeroJoins.add(join[0] + "-" + join[1]);
+			}
+		}
+
+		public double cost(Target t1, Unit u1, Target t2, Unit u2) {
+			return zeroJoins.contains(u1.index + "-" + u2.index) ? 0 : 4;
+		}
+
+		public void init(String configPrefix) {
+		}
+
+		public void load(String joinFileName, InputStream weightStream, String precompiledCostFileName, float wSignal) {
+		}
+	}
+}
@@ -22,11 +22,17 @@ package marytts.util;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import java.io.File;
-import java.sql.SQLException;
+import java.io.IOException;
+import java.util.Locale;
+
+import marytts.datatypes.MaryData;
+import marytts.datatypes.MaryDataType;
+import marytts.util.cache.CacheKey;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -96,17 +102,35 @@ public class MaryCacheTest {
 		assertArrayEquals(targetAudio, lookupAudio);
 	}
 
+	@Test
+	public void lookupByContentDigest() throws Exception {
+		MaryData md = new MaryData(MaryDataType.TEXT, Locale.GERMAN);
+		md.setPlainText(inputtext);
+		CacheKey content = MaryCache.digestContent(md);
+		String lookupValue = c.lookupText(MaryCache.key(inputtype, outputtype, locale, voice, null, null, null, content));
+		assertEquals(targetValue, lookupValue);
+	}
+
+	@Test
+	public void digestDependsOnDocumentContent() throws Exception {
+		MaryData md1 = new MaryData(MaryDataType.RAWMARYXML, null, true);
+		MaryData md2 = new MaryData(MaryDataType.RAWMARYXML, null, true);
+		assertEquals(MaryCache.digestContent(md1), MaryCache.digestContent(md2));
+		md2.getDocument().getDocumentElement().appendChild(md2.getDocument().createTextNode(inputtext));
+		assertFalse(MaryCache.digestContent(md1).equals(MaryCache.digestContent(md2)));
+	}
+
 	@Test
 	public void canInsertAgain() throws Exception {
 		int numExceptions = 0;
 		try {
 			c.insertText(inputtype, outputtype, locale, voice, inputtext, targetValue);
-		} catch (SQLException e) {
+		} catch (IOException e) {
 			numExceptions++;
 		}
 		try {
 			c.insertAudio(inputtype, locale, voice, inputtext, targetAudio);
-		} catch (SQLException e) {
+		} catch (IOException e) {
 			numExceptions++;
 		}
 		assertEquals(0, numExceptions);
@@ -120,6 +144,31 @@ public class MaryCacheTest {
 		lookupAudio();
 	}
 
+	@Test
+	public void countsHitsAndMisses() throws Exception {
+		long hits = c.getStatistics().getHits();
+		long misses = c.getStatistics().getMisses();
+		c.lookupText(inputtype, outputtype, locale, voice, inputtext);
+		c.lookupText(inputtype, outputtype, locale, voice, "not in the cache");
+		assertEquals(hits + 1, c.getStatistics().getHits());
+		assertEquals(misses + 1, c.getStatistics().getMisses());
+	}
+
+	@Test
+	public void evictsOldestSegment() throws Exception {
+		File prefix = tmp.newFile();
+		// room for two segments of 100000 bytes, each of which holds a single record:
+		MaryCache small = new MaryCache(prefix, true, 1000, 100000, 200000);
+		byte[] audio = new byte[60000];
+		small.insertAudio(inputtype, locale, voice, "one", audio);
+		small.insertAudio(inputtype, locale, voice, "two", audio);
+		small.insertAudio(inputtype, locale, voice, "three", audio);
+		assertNull(small.lookupAudio(inputtype, locale, voice, "one"));
+		assertArrayEquals(audio, small.lookupAudio(inputtype, locale, voice, "three"));
+		assertEquals(1, small.getStatistics().getDiskEvictions());
+		small.shutdown();
+	}
+
 	@Test
 	public void zzz_isClearable() throws Exception {
 		c.shutdown();
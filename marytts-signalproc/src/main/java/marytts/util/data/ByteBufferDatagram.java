@@ -0,0 +1,155 @@
+/**
+ * Portions Copyright 2006 DFKI GmbH.
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute, 
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ * 
+ * Permission is hereby granted, free of charge, to use and distribute
+ * this software and its documentation without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of this work, and to
+ * permit persons to whom this work is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * 1. The code must retain the above copyright notice, this list of
+ *    conditions and the following disclaimer.
+ * 2. Any modifications must be clearly marked as such.
+ * 3. Original authors' names are not deleted.
+ * 4. The authors' names are not used to endorse or promote products
+ *    derived from this software without specific prior written
+ *    permission.
+ *
+ * DFKI GMBH AND THE CONTRIBUTORS TO THIS WORK DISCLAIM ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS, IN NO EVENT SHALL DFKI GMBH NOR THE
+ * CONTRIBUTORS BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR
+ * PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS
+ * ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF
+ * THIS SOFTWARE.
+ */
+package marytts.util.data;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A datagram whose data is not copied out of the byte buffer it was read from, but only referenced as an offset and a length into
+ * that buffer. This is meant for memory-mapped timelines: reading such a datagram allocates nothing but the view itself, and
+ * consumers that know about this class can decode the data straight from the mapping.
+ * 
+ * For all other consumers, {@link #getData()} copies the data into a byte array on first use, so that a ByteBufferDatagram can be
+ * used wherever a Datagram is expected.
+ */
+public class ByteBufferDatagram extends Datagram {
+	/**
+	 * The buffer holding the datagram's data. Only absolute get methods are used on it, so its position and limit do not matter.
+	 */
+	protected ByteBuffer buffer;
+	/**
+	 * Position of the first data byte in buffer.
+	 */
+	protected int offset;
+	/**
+	 * Number of data bytes.
+	 */
+	protected int length;
+
+	/**
+	 * Create a view on length bytes of buffer, starting at offset.
+	 * 
+	 * @param duration
+	 *            the datagram duration, in samples. Must be non-negative.
+	 * @param buffer
+	 *            the buffer holding the data. Its contents must not change during the lifetime of this datagram.
+	 * @param offset
+	 *            position of the first data byte in buffer
+	 * @param length
+	 *            number of data bytes
+	 * @throws IllegalArgumentException
+	 *             if duration is negative, or if offset and length do not describe a range within the buffer's capacity
+	 * @throws NullPointerException
+	 *             if buffer is null.
+	 */
+	public ByteBufferDatagram(long duration, ByteBuffer buffer, int offset, int length) {
+		super(duration);
+		if (buffer == null) {
+			throw new NullPointerException("null argument");
+		}
+		if (offset < 0 || length < 0 || offset > buffer.capacity() - length) {
+			throw new IllegalArgumentException("Range [" + offset + ", " + offset + "+" + length
+					+ "] is not within buffer of capacity " + buffer.capacity());
+		}
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * The buffer holding this datagram's data.
+	 * 
+	 * @return the buffer, to be accessed with absolute get methods only
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * The position of this datagram's first data byte in {@link #getBuffer()}.
+	 * 
+	 * @return the offset
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	@Override
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Get the datagram's data field. The data is copied from the buffer on the first call; subsequent calls return the same array.
+	 * 
+	 * @return the data in this Datagram
+	 */
+	@Override
+	public byte[] getData() {
+		if (data == null) {
+			byte[] copy = new byte[length];
+			ByteBuffer bb = buffer.duplicate();
+			bb.clear();
+			bb.position(offset);
+			bb.get(copy);
+			data = copy;
+		}
+		return data;
+	}
+
+	/**
+	 * Decode the data as 16 bit big-endian PCM samples, normalised to the range [-1, 1].
+	 * 
+	 * @param target
+	 *            the array to write the samples into
+	 * @param pos
+	 *            the position in target of the first sample
+	 * @return the number of samples written, i.e. half the data length
+	 */
+	public int getSamples(double[] target, int pos) {
+		ByteBuffer bb = buffer;
+		int nSamples = length / 2;
+		for (int i = offset, iMax = offset + 2 * nSamples; i < iMax; i += 2, pos++) {
+			int sample = bb.get(i) << 8 | bb.get(i + 1) & 0xFF; // big endian
+			target[pos] = sample / 32768.0; // normalise to range [-1, 1]
+		}
+		return nSamples;
+	}
+
+	@Override
+	public void write(DataOutput raf) throws IOException {
+		getData();
+		super.write(raf);
+	}
+}
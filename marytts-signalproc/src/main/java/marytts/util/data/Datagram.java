@@ -254,10 +254,12 @@ public class Datagram {
 		Datagram other = (Datagram) obj;
 		if (this.duration != other.duration)
 			return (false);
-		if (this.data.length != other.data.length)
+		byte[] thisData = this.getData();
+		byte[] otherData = other.getData();
+		if (thisData.length != otherData.length)
 			return (false);
-		for (int i = 0; i < this.data.length; i++) {
-			if (this.data[i] != other.data[i])
+		for (int i = 0; i < thisData.length; i++) {
+			if (thisData[i] != otherData[i])
 				return (false);
 		}
 		return (true);
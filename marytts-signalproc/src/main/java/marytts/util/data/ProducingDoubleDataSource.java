@@ -21,21 +21,76 @@
 package marytts.util.data;
 
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import marytts.signalproc.process.InlineDataProcessor;
 
 /**
+ * A data source whose data is produced by a separate thread, running the {@link #run()} method. The producer gives its data
+ * either a whole array section at a time through {@link #putDataPoints(double[], int, int)} or one value at a time through
+ * {@link #putOneDataPoint(double)}. The values are collected into blocks of {@link #BLOCKSIZE}, which are passed on to the
+ * reader when they are full or at the end of the stream. Blocks the reader has used up are given back to the producer for
+ * reuse, so that a producer whose reader keeps up does not allocate new memory for its data.
+ * 
  * @author marc
  *
  */
 public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource implements Runnable {
-	private static final Double END_OF_STREAM = Double.NEGATIVE_INFINITY;
+	private static final double[] END_OF_STREAM = new double[0];
 
-	protected ArrayBlockingQueue<Double> queue = new ArrayBlockingQueue<Double>(1024);
-	private Thread dataProducingThread = null;
-	private boolean hasSentEndOfStream = false;
+	/**
+	 * The size of the blocks in which data is passed from the producer to the reader.
+	 */
+	public static final int BLOCKSIZE = 256;
+
+	/**
+	 * The number of blocks that can be waiting for the reader before the producer has to wait. This limit applies only to
+	 * producers running on a thread of their own; see {@link #setExecutor(Executor)}.
+	 */
+	public static final int QUEUESIZE = 16;
+
+	private static volatile Executor producerExecutor = null;
+
+	/**
+	 * Set the executor on which {@link #start()} runs the producers from now on. A bounded executor limits the number of
+	 * producers running at the same time; producers started while it is busy wait until one of its threads is free.
+	 * <p>
+	 * A producer running on the executor never waits for its reader: it keeps all the data that has not been read yet, so
+	 * that a slow or stalled reader cannot keep one of the executor's threads busy and hold up the producers of other
+	 * requests. The data kept is at most that of one producer, e.g. one utterance of audio.
+	 * 
+	 * @param executor
+	 *            the executor to use, or null to start a new thread for each producer (the default).
+	 */
+	public static void setExecutor(Executor executor) {
+		producerExecutor = executor;
+	}
+
+	/**
+	 * @return the executor on which producers are run, or null if each producer gets a thread of its own.
+	 */
+	public static Executor getExecutor() {
+		return producerExecutor;
+	}
+
+	protected BlockingQueue<double[]> queue = new ArrayBlockingQueue<double[]>(QUEUESIZE);
+	private final AtomicInteger numInQueue = new AtomicInteger();
+	/** full-size blocks that the reader has used up, for the producer to fill again */
+	private final ArrayBlockingQueue<double[]> freeBlocks = new ArrayBlockingQueue<double[]>(QUEUESIZE);
+	private volatile boolean started = false;
 	private boolean hasReceivedEndOfStream = false;
 
+	// Used by the producing thread only:
+	private double[] pendingBlock = null;
+	private int pendingPos = 0;
+
+	// Used by the reading thread only:
+	private double[] currentBlock = null;
+	private int currentPos = 0;
+
 	protected ProducingDoubleDataSource() {
 		this(DoubleDataSource.NOT_SPECIFIED);
 	}
@@ -54,19 +109,28 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 	}
 
 	public void start() {
-		dataProducingThread = new Thread(this);
-		dataProducingThread.setDaemon(true);
-		dataProducingThread.start();
+		Executor executor = producerExecutor;
+		if (executor != null) {
+			queue = new LinkedBlockingQueue<double[]>();
+			executor.execute(this);
+		} else {
+			Thread dataProducingThread = new Thread(this);
+			dataProducingThread.setDaemon(true);
+			dataProducingThread.start();
+		}
+		started = true;
 	}
 
 	/**
-	 * Subclasses must implement this method such that it produces data and sends it through {@link #putOneDataPoint(double)}.
-	 * When all data is sent, the subclass must call {@link #putEndOfStream()} exactly once.
+	 * Subclasses must implement this method such that it produces data and sends it through {@link #putOneDataPoint(double)} or
+	 * {@link #putDataPoints(double[], int, int)}. When all data is sent, the subclass must call {@link #putEndOfStream()} exactly
+	 * once.
 	 */
 	public abstract void run();
 
 	/**
-	 * The producing thread tries to put ont data item into the queue.
+	 * The producing thread adds one data item. It is passed on to the reader as part of a block, when that block is full or at
+	 * the end of the stream.
 	 * 
 	 * @param value
 	 *            value
@@ -74,16 +138,74 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 	 *             runtime exception
 	 */
 	public void putOneDataPoint(double value) {
-		try {
-			queue.put(value);
-		} catch (InterruptedException e) {
-			throw new RuntimeException("Unexpected interruption", e);
+		if (pendingBlock == null) {
+			pendingBlock = newBlock();
+		}
+		pendingBlock[pendingPos++] = value;
+		if (pendingPos == pendingBlock.length) {
+			flushPendingBlock();
 		}
 	}
 
+	/**
+	 * The producing thread adds a section of an array of data. The data is copied, so the caller can reuse its array right away.
+	 * 
+	 * @param data
+	 *            the array holding the data
+	 * @param off
+	 *            the position of the first data item in data
+	 * @param len
+	 *            the number of data items to pass on
+	 * @throws RuntimeException
+	 *             runtime exception
+	 */
+	public void putDataPoints(double[] data, int off, int len) {
+		while (len > 0) {
+			if (pendingBlock == null) {
+				pendingBlock = newBlock();
+			}
+			int n = Math.min(len, pendingBlock.length - pendingPos);
+			System.arraycopy(data, off, pendingBlock, pendingPos, n);
+			pendingPos += n;
+			off += n;
+			len -= n;
+			if (pendingPos == pendingBlock.length) {
+				flushPendingBlock();
+			}
+		}
+	}
+
+	private double[] newBlock() {
+		double[] block = freeBlocks.poll();
+		return block != null ? block : new double[BLOCKSIZE];
+	}
+
 	protected void putEndOfStream() {
-		putOneDataPoint(END_OF_STREAM);
-		hasSentEndOfStream = true;
+		flushPendingBlock();
+		putBlock(END_OF_STREAM);
+	}
+
+	private void flushPendingBlock() {
+		if (pendingPos > 0) {
+			double[] block = pendingBlock;
+			if (pendingPos < block.length) {
+				block = new double[pendingPos];
+				System.arraycopy(pendingBlock, 0, block, 0, pendingPos);
+			} else {
+				pendingBlock = null;
+			}
+			pendingPos = 0;
+			putBlock(block);
+		}
+	}
+
+	private void putBlock(double[] block) {
+		try {
+			numInQueue.addAndGet(block.length);
+			queue.put(block);
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Unexpected interruption", e);
+		}
 	}
 
 	@Override
@@ -102,9 +224,9 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 		if (isAllProductionDataRead()) {
 			return 0;
 		}
-		int inQueue = queue.size();
-		if (hasSentEndOfStream && !hasReceivedEndOfStream) {
-			inQueue -= 1;
+		int inQueue = numInQueue.get();
+		if (currentBlock != null) {
+			inQueue += currentBlock.length - currentPos;
 		}
 		return inQueue;
 	}
@@ -125,14 +247,23 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 		// Now we have a buffer that can hold at least minLength new data points
 		int readSum = 0;
 		while (readSum < minLength) {
-			double data = getOneDataPoint();
-			if (data == END_OF_STREAM) {
-				hasReceivedEndOfStream = true;
-				break;
+			if (currentBlock == null || currentPos == currentBlock.length) {
+				if (currentBlock != null && currentBlock.length == BLOCKSIZE) {
+					freeBlocks.offer(currentBlock);
+				}
+				currentBlock = getOneBlock();
+				currentPos = 0;
+				if (currentBlock == END_OF_STREAM) {
+					currentBlock = null;
+					hasReceivedEndOfStream = true;
+					break;
+				}
 			}
-			buf[writePos] = data;
-			writePos++;
-			readSum++;
+			int n = Math.min(minLength - readSum, currentBlock.length - currentPos);
+			System.arraycopy(currentBlock, currentPos, buf, writePos, n);
+			currentPos += n;
+			writePos += n;
+			readSum += n;
 		}
 		if (dataProcessor != null) {
 			dataProcessor.applyInline(buf, writePos - readSum, readSum);
@@ -141,13 +272,15 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 	}
 
 	/**
-	 * The reading thread tries to get one data item from the queue.
+	 * The reading thread tries to get one block of data from the queue.
 	 * 
 	 * @return queue.take
 	 */
-	private double getOneDataPoint() {
+	private double[] getOneBlock() {
 		try {
-			return queue.take();
+			double[] block = queue.take();
+			numInQueue.addAndGet(-block.length);
+			return block;
 		} catch (InterruptedException e) {
 			throw new RuntimeException("Unexpected interruption", e);
 		}
@@ -163,7 +296,7 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 	}
 
 	private boolean isStarted() {
-		return dataProducingThread != null;
+		return started;
 	}
 
 	private boolean isAllProductionDataRead() {
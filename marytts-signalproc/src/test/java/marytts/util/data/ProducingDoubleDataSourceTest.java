@@ -1,8 +1,13 @@
 package marytts.util.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -103,7 +108,48 @@ public class ProducingDoubleDataSourceTest {
 		}
 	}
 
+	@Test
+	public void canRunOnSharedExecutor() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		ProducingDoubleDataSource.setExecutor(executor);
+		try {
+			int numDoubles = 4000;
+			TestProducer first = new TestProducer(numDoubles);
+			TestProducer second = new TestProducer(numDoubles);
+			first.start();
+			second.start();
+			assertEquals(numDoubles, first.getAllData().length);
+			assertEquals(numDoubles, second.getAllData().length);
+		} finally {
+			ProducingDoubleDataSource.setExecutor(null);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void stalledReaderDoesNotHoldUpSharedExecutor() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		ProducingDoubleDataSource.setExecutor(executor);
+		try {
+			// far more than fits into the queue of a producer running on its own thread:
+			int numDoubles = 10 * ProducingDoubleDataSource.QUEUESIZE * ProducingDoubleDataSource.BLOCKSIZE;
+			TestProducer stalled = new TestProducer(numDoubles);
+			TestProducer other = new TestProducer(numDoubles);
+			stalled.start();
+			other.start();
+			// nobody reads from the first producer, but the second one is still run on the executor's only thread:
+			assertTrue(other.finished.await(10, TimeUnit.SECONDS));
+			assertEquals(numDoubles, other.getAllData().length);
+			assertTrue(stalled.finished.await(10, TimeUnit.SECONDS));
+			assertEquals(numDoubles, stalled.getAllData().length);
+		} finally {
+			ProducingDoubleDataSource.setExecutor(null);
+			executor.shutdown();
+		}
+	}
+
 	private static class TestProducer extends ProducingDoubleDataSource {
+		final CountDownLatch finished = new CountDownLatch(1);
 		double DUMMY = 0.23;
 
 		public TestProducer(int numToSend) {
@@ -121,6 +167,7 @@ public class ProducingDoubleDataSourceTest {
 				numToSend--;
 			}
 			putEndOfStream();
+			finished.countDown();
 		}
 
 	}
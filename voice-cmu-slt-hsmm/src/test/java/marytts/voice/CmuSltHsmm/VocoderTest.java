@@ -0,0 +1,160 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ * <p>
+ * This file is part of MARY TTS.
+ * <p>
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package marytts.voice.CmuSltHsmm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.htsengine.HMMData;
+import marytts.htsengine.HTSParameterGeneration;
+import marytts.htsengine.HTSUttModel;
+import marytts.htsengine.HTSVocoder;
+import marytts.modules.HTSEngine;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Compares the output of the HTS vocoder for the voice's example utterance with the output of the vocoder as it was before
+ * it passed its audio on in frame blocks. The vocoder's noise source has a fixed seed, so the output is deterministic.
+ */
+public class VocoderTest {
+
+    private static final String voiceName = "cmu-slt-hsmm";
+
+    /** SHA-1 of the samples (as double bit patterns, little-endian) that the previous vocoder produced */
+    private static final String expectedSamples = "0f2309c8a0263efbea112d82801230563a8e1b30";
+    private static final int expectedNumSamples = 216960;
+    /** SHA-1 of the 16 bit audio that the previous vocoder streamed */
+    private static final String expectedAudio = "8d7071677214184d26da046972254cfe1506cc70";
+
+    private HMMData htsData;
+    private File feaFile;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        htsData = new HMMData();
+        htsData.initHMMData(voiceName);
+        feaFile = File.createTempFile("cmu_us_arctic_slt_b0487", ".pfeats");
+        feaFile.deleteOnExit();
+        InputStream in = getClass().getResourceAsStream("cmu_us_arctic_slt_b0487.pfeats");
+        OutputStream out = new FileOutputStream(feaFile);
+        try {
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private HTSParameterGeneration generateParameters() throws Exception {
+        return generateParameters(htsData, 0, 0);
+    }
+
+    private HTSParameterGeneration generateParameters(HMMData data, int window, int lookahead) throws Exception {
+        HTSUttModel um = new HTSEngine().processUttFromFile(feaFile.getPath(), data);
+        HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+        pdf2par.setIncremental(window, lookahead);
+        pdf2par.htsMaximumLikelihoodParameterGeneration(um, data);
+        return pdf2par;
+    }
+
+    private static byte[] readAll(AudioInputStream audio) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = audio.read(buf)) > 0) {
+            bytes.write(buf, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void samplesAreUnchanged() throws Exception {
+        HTSParameterGeneration pdf2par = generateParameters();
+        double[] samples = new HTSVocoder().htsMLSAVocoder(pdf2par.getlf0Pst(), pdf2par.getMcepPst(), pdf2par.getStrPst(),
+                pdf2par.getMagPst(), pdf2par.getVoicedArray(), htsData, null);
+        Assert.assertEquals(samples.length, expectedNumSamples);
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        for (double sample : samples) {
+            long bits = Double.doubleToLongBits(sample);
+            for (int i = 0; i < 8; i++) {
+                md.update((byte) (bits >>> (8 * i)));
+            }
+        }
+        Assert.assertEquals(hex(md.digest()), expectedSamples);
+    }
+
+    @Test
+    public void streamedAudioIsUnchanged() throws Exception {
+        AudioInputStream audio = new HTSVocoder().htsMLSAVocoder(generateParameters(), htsData);
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        byte[] buf = new byte[4096];
+        int n;
+        long numBytes = 0;
+        while ((n = audio.read(buf)) > 0) {
+            md.update(buf, 0, n);
+            numBytes += n;
+        }
+        Assert.assertEquals(numBytes, 2L * expectedNumSamples);
+        Assert.assertEquals(hex(md.digest()), expectedAudio);
+    }
+
+    @Test
+    public void incrementalGenerationWithWholeContextIsUnchanged() throws Exception {
+        // windows are generated without GV, so compare with whole-utterance generation without GV
+        HMMData data = new HMMData();
+        data.initHMMData(voiceName);
+        data.setUseGV(false);
+        HTSParameterGeneration whole = generateParameters(data, 0, 0);
+        HTSParameterGeneration incremental = generateParameters(data, 40, whole.getMcepPst().getT());
+        Assert.assertTrue(incremental.isIncremental());
+        Assert.assertEquals(incremental.generateUpTo(0), 40);
+        byte[] expected = readAll(new HTSVocoder().htsMLSAVocoder(whole, data));
+        byte[] actual = readAll(new HTSVocoder().htsMLSAVocoder(incremental, data));
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void incrementalGenerationProducesWholeUtterance() throws Exception {
+        HTSParameterGeneration incremental = generateParameters(htsData, 40, 25);
+        byte[] audio = readAll(new HTSVocoder().htsMLSAVocoder(incremental, htsData));
+        Assert.assertEquals(audio.length, 2 * expectedNumSamples);
+        Assert.assertEquals(incremental.generateUpTo(Integer.MAX_VALUE), incremental.getMcepPst().getT());
+    }
+}